@@ -25,16 +25,14 @@ package jworkspace.ui;
    anton.troshin@gmail.com
   ----------------------------------------------------------------------------
 */
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import bsh.EvalError;
 import bsh.Interpreter;
 /**
  * @author Anton Troshin
@@ -45,10 +43,6 @@ public final class WorkspaceInterpreter {
      * Default logger
      */
     private static final Logger LOG = LoggerFactory.getLogger(WorkspaceInterpreter.class);
-    /**
-     *
-     */
-    private static final String SEMICOLON = ";";
     /**
      *
      */
@@ -58,17 +52,13 @@ public final class WorkspaceInterpreter {
      */
     private static WorkspaceInterpreter ourInstance;
     /**
-     * Bean Shell interpreter for scripted methods invoked from different command sources like desktop shortcuts.
+     * Bean Shell console interpreter
      */
     private Interpreter interpreter = null;
     /**
      * Console is being executed in the separate thread
      */
     private Thread interpreterThread = null;
-    /**
-     * Stream for interpreter
-     */
-    private PipedOutputStream outPipe;
 
     public static synchronized WorkspaceInterpreter getInstance() {
 
@@ -88,7 +78,6 @@ public final class WorkspaceInterpreter {
     private synchronized void startInterpreter() {
 
         LOG.info("> Starting Bean Shell Interpreter");
-        outPipe = new PipedOutputStream();
         /*
          * Stream for interpreter
          */
@@ -102,40 +91,33 @@ public final class WorkspaceInterpreter {
     }
 
     /**
-     * Executes script file
+     * Executes script file on the script engine, failures are logged
+     *
+     * @see WorkspaceScriptEngine#sourceScriptFile(String)
      */
-    public void sourceScriptFile(String fileName) {
-        try {
-            if (!isAlive()) {
-                startInterpreter();
+    public CompletableFuture<Object> sourceScriptFile(String fileName) {
+        CompletableFuture<Object> result = WorkspaceScriptEngine.getInstance().sourceScriptFile(fileName);
+        result.whenComplete((value, ex) -> {
+            if (ex != null) {
+                LOG.error(CANNOT_INTERPRET + fileName, ex);
             }
-            interpreter.source(fileName);
-        } catch (EvalError | IOException ex) {
-            LOG.error(ex.getMessage(), ex);
-        }
+        });
+        return result;
     }
 
     /**
-     * Executes script
+     * Executes script on the script engine, failures are logged
+     *
+     * @see WorkspaceScriptEngine#executeScript(String)
      */
-    public synchronized void executeScript(String commandLine) {
-        String commandLineInt = commandLine;
-        try {
-            if (!isAlive()) {
-                startInterpreter();
-            }
-            if (!commandLineInt.endsWith(SEMICOLON)) {
-                commandLineInt = commandLineInt + SEMICOLON;
+    public CompletableFuture<Object> executeScript(String commandLine) {
+        CompletableFuture<Object> result = WorkspaceScriptEngine.getInstance().executeScript(commandLine);
+        result.whenComplete((value, ex) -> {
+            if (ex != null) {
+                LOG.error(CANNOT_INTERPRET + commandLine, ex);
             }
-            outPipe.write(commandLineInt.getBytes(StandardCharsets.UTF_8));
-            outPipe.flush();
-        } catch (IOException e) {
-            LOG.error(CANNOT_INTERPRET + commandLineInt, e);
-        }
-    }
-
-    private synchronized boolean isAlive() {
-        return interpreterThread.isAlive();
+        });
+        return result;
     }
 }
 
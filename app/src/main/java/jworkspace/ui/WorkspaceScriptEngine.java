@@ -0,0 +1,447 @@
+package jworkspace.ui;
+
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2018 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import bsh.BshMethod;
+import bsh.EvalError;
+import bsh.Interpreter;
+import bsh.NameSpace;
+import bsh.ParseException;
+import bsh.Parser;
+import bsh.Primitive;
+import bsh.TokenMgrError;
+import bsh.UtilEvalError;
+
+/**
+ * Runs Bean Shell scripts, like those bound to desktop icons, on a pool of interpreters.
+ * <p>
+ * The interpreters of the pool are separate from each other and from the console interpreter. Each of them
+ * parses a script once into a scripted method and keeps it until the script file is modified, so running
+ * a script again only invokes the method, in a new local namespace. Scripts run concurrently on a pool of
+ * worker threads, each run is stopped after a timeout, and results and errors are returned through futures.
+ * <p>
+ * Since a script runs as the body of a method, variables, methods and imports declared at its top level
+ * are local to the run: they are gone when the script returns and no other script sees them. Unlike
+ * scripts sourced into the console interpreter, scripts run by the engine cannot leave global state in an
+ * interpreter, which would differ from one interpreter of the pool to another anyway.
+ * <p>
+ * A script that times out is interrupted. Bean Shell does not check for interrupts, so a script busy in
+ * a loop goes on running; if it has not stopped within {@link #STOP_GRACE_PERIOD}, its worker thread and
+ * interpreter are abandoned and replaced by new ones, so that the pool keeps its size for other scripts.
+ *
+ * @author Anton Troshin
+ */
+public final class WorkspaceScriptEngine {
+
+    /**
+     * Default number of interpreters and worker threads
+     */
+    public static final int DEFAULT_POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /**
+     * Default time a script may run, in seconds
+     */
+    public static final long DEFAULT_TIMEOUT = 60;
+    /**
+     * Time a script has to stop after it has been interrupted, in milliseconds, before its worker thread and
+     * interpreter are replaced
+     */
+    public static final long STOP_GRACE_PERIOD = 1000;
+    /**
+     * Number of parsed scripts kept by each interpreter
+     */
+    private static final int CACHE_SIZE = 64;
+    /**
+     *
+     */
+    private static final String SEMICOLON = ";";
+    /**
+     * Prefix of the names of scripted methods
+     */
+    private static final String METHOD_PREFIX = "script$";
+    /**
+     * Single instance
+     */
+    private static WorkspaceScriptEngine ourInstance;
+    /**
+     * Idle interpreters
+     */
+    private final BlockingQueue<PooledInterpreter> interpreters;
+    /**
+     * Worker threads, as many as interpreters, plus the abandoned threads still running a script
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * Thread stopping scripts that run too long
+     */
+    private final ScheduledExecutorService timer;
+    /**
+     * Time a script may run, in milliseconds
+     */
+    private final long timeout;
+
+    /**
+     * Create engine
+     *
+     * @param poolSize number of interpreters, that is, of scripts running at the same time
+     * @param timeout  time a script may run
+     * @param unit     unit of the timeout
+     */
+    public WorkspaceScriptEngine(int poolSize, long timeout, TimeUnit unit) {
+        this.interpreters = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            interpreters.add(new PooledInterpreter());
+        }
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, STOP_GRACE_PERIOD, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), daemon("bsh-script"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemon("bsh-script-timer"));
+        this.timeout = unit.toMillis(timeout);
+    }
+
+    public static synchronized WorkspaceScriptEngine getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new WorkspaceScriptEngine(DEFAULT_POOL_SIZE, DEFAULT_TIMEOUT, TimeUnit.SECONDS);
+        }
+        return ourInstance;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Executes script file with the default timeout
+     *
+     * @param fileName path to script file
+     * @return future of the value of the last statement of the script, or of the value it returns
+     */
+    public CompletableFuture<Object> sourceScriptFile(String fileName) {
+        return sourceScriptFile(fileName, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Executes script file. The file is parsed again only if it has been modified since the last run.
+     *
+     * @param fileName path to script file
+     * @param timeout  time the script may run
+     * @param unit     unit of the timeout
+     * @return future of the value of the last statement of the script, or of the value it returns. The future
+     * fails with an {@link EvalError} for errors in the script, with an {@link IOException} if the file cannot
+     * be read and with a {@link TimeoutException} if the script runs too long.
+     */
+    public CompletableFuture<Object> sourceScriptFile(String fileName, long timeout, TimeUnit unit) {
+        final File file = new File(fileName).getAbsoluteFile();
+        return submit(interpreter -> interpreter.source(file), timeout, unit);
+    }
+
+    /**
+     * Executes script with the default timeout
+     *
+     * @param commandLine script text
+     * @return future of the value of the last statement of the script
+     */
+    public CompletableFuture<Object> executeScript(String commandLine) {
+        return executeScript(commandLine, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Executes script. The same script text is parsed only once.
+     *
+     * @param commandLine script text
+     * @param timeout     time the script may run
+     * @param unit        unit of the timeout
+     * @return future of the value of the last statement of the script, failing as the one of
+     * {@link #sourceScriptFile(String, long, TimeUnit)}
+     */
+    public CompletableFuture<Object> executeScript(String commandLine, long timeout, TimeUnit unit) {
+        final String script = commandLine.trim().endsWith(SEMICOLON) ? commandLine : commandLine + SEMICOLON;
+        return submit(interpreter -> interpreter.eval(script), timeout, unit);
+    }
+
+    /**
+     * Stops running scripts and worker threads
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Add a worker thread and an interpreter in place of those of a script that does not stop
+     */
+    private synchronized void replaceWorker() {
+        // the maximum may not be less than the core size
+        executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+        executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+        interpreters.add(new PooledInterpreter());
+    }
+
+    /**
+     * Let the worker thread of an abandoned script end, now that the script has stopped
+     */
+    private synchronized void releaseWorker() {
+        executor.setCorePoolSize(executor.getCorePoolSize() - 1);
+        executor.setMaximumPoolSize(executor.getMaximumPoolSize() - 1);
+    }
+
+    private CompletableFuture<Object> submit(Script script, long timeout, TimeUnit unit) {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        final ScriptRun run = new ScriptRun(script, result, unit.toMillis(timeout));
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                run.interrupt();
+            }
+        });
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Work done with an interpreter
+     */
+    @FunctionalInterface
+    private interface Script {
+        Object run(PooledInterpreter interpreter) throws EvalError, IOException;
+    }
+
+    /**
+     * One run of a script on a worker thread
+     */
+    private final class ScriptRun implements Runnable {
+
+        private final Script script;
+
+        private final CompletableFuture<Object> result;
+
+        private final long timeout;
+        /**
+         * Worker thread while the script runs, guarded by this
+         */
+        private Thread thread = null;
+        /**
+         * Interpreter while the script runs, guarded by this
+         */
+        private PooledInterpreter interpreter = null;
+        /**
+         * Set when the worker thread and the interpreter have been replaced, guarded by this
+         */
+        private boolean abandoned = false;
+
+        ScriptRun(Script script, CompletableFuture<Object> result, long timeout) {
+            this.script = script;
+            this.result = result;
+            this.timeout = timeout;
+        }
+
+        public void run() {
+            if (result.isDone()) {
+                // cancelled while waiting for a worker
+                return;
+            }
+            synchronized (this) {
+                thread = Thread.currentThread();
+            }
+            ScheduledFuture<?> stop = timer.schedule(() -> {
+                if (result.completeExceptionally(new TimeoutException("Script has run for " + timeout + " ms"))) {
+                    interrupt();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+
+            PooledInterpreter taken = null;
+            boolean completed = false;
+            try {
+                taken = interpreters.take();
+                synchronized (this) {
+                    interpreter = taken;
+                }
+                completed = result.complete(script.run(taken));
+            } catch (EvalError | IOException | InterruptedException | RuntimeException | StackOverflowError ex) {
+                completed = result.completeExceptionally(ex);
+            } finally {
+                stop.cancel(false);
+                boolean replaced;
+                synchronized (this) {
+                    thread = null;
+                    interpreter = null;
+                    replaced = abandoned;
+                }
+                // clear an interrupt which came after the script had finished
+                Thread.interrupted();
+                if (replaced) {
+                    releaseWorker();
+                } else if (taken != null) {
+                    // a script stopped halfway may have left its interpreter in any state
+                    interpreters.add(completed ? taken : new PooledInterpreter());
+                }
+            }
+        }
+
+        /**
+         * Interrupt the script, and replace its worker thread and interpreter if it does not stop in time
+         */
+        synchronized void interrupt() {
+            if (thread != null) {
+                thread.interrupt();
+                try {
+                    timer.schedule(this::abandon, STOP_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    // the engine has been shut down
+                }
+            }
+        }
+
+        private void abandon() {
+            synchronized (this) {
+                if (interpreter == null || abandoned) {
+                    return;
+                }
+                abandoned = true;
+            }
+            replaceWorker();
+        }
+    }
+
+    /**
+     * Interpreter with the scripts it has parsed
+     */
+    private static final class PooledInterpreter {
+
+        private final Interpreter interpreter = new Interpreter();
+        /**
+         * Parsed script files by path
+         */
+        private final Map<String, ParsedScript> files = newCache();
+        /**
+         * Parsed script texts
+         */
+        private final Map<String, ParsedScript> texts = newCache();
+
+        private int methods = 0;
+
+        private static Map<String, ParsedScript> newCache() {
+            return new LinkedHashMap<String, ParsedScript>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ParsedScript> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+        }
+
+        Object source(File file) throws EvalError, IOException {
+            long modified = file.lastModified();
+            ParsedScript script = files.get(file.getPath());
+            if (script == null || script.modified != modified) {
+                String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                script = new ParsedScript(parse(text, file.getPath()), modified);
+                files.put(file.getPath(), script);
+            }
+            return invoke(script.method);
+        }
+
+        Object eval(String text) throws EvalError {
+            ParsedScript script = texts.get(text);
+            if (script == null) {
+                script = new ParsedScript(parse(text, "inline evaluation"), 0);
+                texts.put(text, script);
+            }
+            return invoke(script.method);
+        }
+
+        /**
+         * Parse script into a method of its own namespace
+         */
+        private BshMethod parse(String text, String source) throws EvalError {
+            // the script alone must be complete, so that it cannot close the method it is put into
+            try {
+                Parser parser = new Parser(new StringReader(text));
+                while (!parser.Line()) {
+                    continue;
+                }
+            } catch (ParseException ex) {
+                ex.setErrorSourceFile(source);
+                throw ex;
+            } catch (TokenMgrError ex) {
+                throw new ParseException(source + ": " + ex.getMessage());
+            }
+            String name = METHOD_PREFIX + (++methods);
+            NameSpace nameSpace = new NameSpace(interpreter.getNameSpace(), source);
+            // the body starts on the first line, to keep line numbers of errors
+            interpreter.eval(new StringReader(name + "() {" + text + "\n}"), nameSpace, source);
+            try {
+                return nameSpace.getMethod(name, new Class[0]);
+            } catch (UtilEvalError ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private Object invoke(BshMethod method) throws EvalError {
+            Object value = method.invoke(new Object[0], interpreter);
+            return value == Primitive.VOID ? null : Primitive.unwrap(value);
+        }
+    }
+
+    /**
+     * Script parsed into a method, with the time its file was modified
+     */
+    private static final class ParsedScript {
+
+        private final BshMethod method;
+
+        private final long modified;
+
+        ParsedScript(BshMethod method, long modified) {
+            this.method = method;
+            this.modified = modified;
+        }
+    }
+}
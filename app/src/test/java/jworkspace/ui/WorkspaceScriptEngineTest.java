@@ -0,0 +1,176 @@
+package jworkspace.ui;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   VERSION 2 of the License, or (at your option) any later VERSION.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bsh.EvalError;
+
+/**
+ * @author Anton Troshin
+ */
+@SuppressWarnings("checkstyle:MagicNumber")
+public class WorkspaceScriptEngineTest {
+
+    /**
+     * Loop which does not check for interrupts
+     */
+    private static final String BUSY_LOOP = "long n = 0; while (true) { n++; } ";
+
+    private final TemporaryFolder testFolder = new TemporaryFolder();
+
+    private WorkspaceScriptEngine engine;
+
+    @Before
+    public void before() throws IOException {
+        testFolder.create();
+        engine = new WorkspaceScriptEngine(4, 2, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void after() {
+        engine.shutdown();
+        testFolder.delete();
+    }
+
+    @Test
+    public void testExecuteScript() throws Exception {
+        assertEquals(7, engine.executeScript("3 + 4").get());
+        assertEquals("ab", engine.executeScript("a = \"a\"; return a + \"b\";").get());
+        assertNull(engine.executeScript("void m() {}; m()").get());
+    }
+
+    @Test
+    public void testRunsAreIsolated() throws Exception {
+        assertEquals(1, engine.executeScript("x = 1").get());
+        assertEquals(Boolean.TRUE, engine.executeScript("x == void").get());
+    }
+
+    @Test
+    public void testSourceScriptFile() throws Exception {
+        File script = testFolder.newFile("script.bsh");
+        write(script, "import java.util.*;\nList l = new ArrayList();\nl.add(\"first\");\nl;", 1000);
+        assertEquals("[first]", engine.sourceScriptFile(script.getPath()).get().toString());
+        assertEquals("[first]", engine.sourceScriptFile(script.getPath()).get().toString());
+
+        // modified script is parsed again
+        write(script, "\"second\";", 2000);
+        assertEquals("second", engine.sourceScriptFile(script.getPath()).get());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        assertFailure(engine.executeScript("x = ;"), EvalError.class);
+        // script cannot close the method it is parsed into
+        assertFailure(engine.executeScript("} m() {"), EvalError.class);
+        assertFailure(engine.executeScript("throw new IllegalStateException()"), EvalError.class);
+        assertFailure(engine.sourceScriptFile(new File(testFolder.getRoot(), "missing.bsh").getPath()),
+            IOException.class);
+        assertEquals(2, engine.executeScript("1 + 1").get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CompletableFuture<Object> loop = engine.executeScript(BUSY_LOOP, 200, TimeUnit.MILLISECONDS);
+        assertFailure(loop, TimeoutException.class);
+        assertEquals(3, engine.executeScript("1 + 2").get());
+    }
+
+    @Test
+    public void testInterruptedScriptStops() throws Exception {
+        CompletableFuture<Object> loop = engine.executeScript("while (true) { Thread.sleep(10); }",
+            200, TimeUnit.MILLISECONDS);
+        assertFailure(loop, TimeoutException.class);
+        assertEquals(3, engine.executeScript("1 + 2").get());
+    }
+
+    @Test
+    public void testScriptsRunAfterPoolSizeTimeouts() throws Exception {
+        List<CompletableFuture<Object>> loops = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            loops.add(engine.executeScript(BUSY_LOOP + i, 200, TimeUnit.MILLISECONDS));
+        }
+        for (CompletableFuture<Object> loop : loops) {
+            assertFailure(loop, TimeoutException.class);
+        }
+        // every worker is stuck in a loop until it is replaced
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(engine.executeScript("1 + " + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1 + i, results.get(i).get(WorkspaceScriptEngine.STOP_GRACE_PERIOD * 3,
+                TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testConcurrentScripts() throws Exception {
+        long start = System.nanoTime();
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(engine.executeScript("Thread.sleep(500); " + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, results.get(i).get());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+    }
+
+    private static void write(File file, String text, long modified) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setLastModified(modified));
+    }
+
+    private static void assertFailure(CompletableFuture<Object> result, Class<? extends Throwable> type)
+        throws InterruptedException {
+        try {
+            result.get();
+            fail("Expected " + type.getName());
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause().toString(), type.isInstance(ex.getCause()));
+        }
+    }
+}
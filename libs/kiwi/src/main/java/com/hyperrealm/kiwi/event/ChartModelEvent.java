@@ -24,15 +24,21 @@ import java.util.EventObject;
 import com.hyperrealm.kiwi.ui.model.ChartModel;
 
 /**
- * A class that represents a general <code>ChartModel</code> event. Any
- * change in the data will require a complete repaint of the chart, so more
- * specific events would not be useful.
+ * A class that represents a general <code>ChartModel</code> event. Most
+ * changes in the data require a complete repaint of the chart. An
+ * <i>append</i> event reports that data samples were only added at the end
+ * of the model, and possibly as many removed from its start, so a view may
+ * repaint just the newly exposed region.
  *
  * @author Mark Lindner
  */
 
 public class ChartModelEvent extends EventObject {
 
+    private final int appendedCount;
+
+    private final int removedCount;
+
     /**
      * Construct a new <code>ChartModelEvent</code> for the specified source.
      *
@@ -41,7 +47,63 @@ public class ChartModelEvent extends EventObject {
      */
 
     public ChartModelEvent(ChartModel source) {
+        this(source, -1, 0);
+    }
+
+    /**
+     * Construct a new <i>append</i> <code>ChartModelEvent</code> for the
+     * specified source.
+     *
+     * @param source        The <code>ChartModel</code> that is the source of
+     *                      this event.
+     * @param appendedCount The number of data samples appended to the end of
+     *                      the model.
+     * @param removedCount  The number of data samples removed from the start
+     *                      of the model.
+     * @since Kiwi 2.4
+     */
+
+    public ChartModelEvent(ChartModel source, int appendedCount, int removedCount) {
         super(source);
+
+        this.appendedCount = appendedCount;
+        this.removedCount = removedCount;
+    }
+
+    /**
+     * Determine if this is an <i>append</i> event.
+     *
+     * @return <code>true</code> if data samples were only appended to the
+     * model (and removed from its start), <code>false</code> if the data may
+     * have changed in any way.
+     * @since Kiwi 2.4
+     */
+
+    public boolean isAppend() {
+        return (appendedCount >= 0);
+    }
+
+    /**
+     * Get the number of data samples appended to the end of the model.
+     *
+     * @return The number of appended data samples, or -1 if this is not an
+     * <i>append</i> event.
+     * @since Kiwi 2.4
+     */
+
+    public int getAppendedCount() {
+        return (appendedCount);
+    }
+
+    /**
+     * Get the number of data samples removed from the start of the model.
+     *
+     * @return The number of removed data samples.
+     * @since Kiwi 2.4
+     */
+
+    public int getRemovedCount() {
+        return (removedCount);
     }
 
 }
@@ -87,7 +87,7 @@ public class KListModelSupport {
      * @param endIndex   The offset of the last item in the range.
      */
 
-    private void fireItemsAdded(int startIndex, int endIndex) {
+    public void fireItemsAdded(int startIndex, int endIndex) {
 
         KListModelEvent evt = null;
 
@@ -162,7 +162,7 @@ public class KListModelSupport {
      * @since Kiwi 2.4.1
      */
 
-    private void fireItemsChanged(int startIndex, int endIndex, int field) {
+    public void fireItemsChanged(int startIndex, int endIndex, int field) {
         KListModelEvent evt = null;
 
         synchronized (listeners) {
@@ -24,14 +24,14 @@ import java.awt.GridLayout;
 import java.util.Date;
 
 import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
 import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultStyledDocument;
-import javax.swing.text.Segment;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyleContext;
 
+import com.hyperrealm.kiwi.ui.model.ConsoleModel;
 import com.hyperrealm.kiwi.util.LocaleManager;
 import com.hyperrealm.kiwi.util.LoggingEndpoint;
 
@@ -39,6 +39,11 @@ import com.hyperrealm.kiwi.util.LoggingEndpoint;
  * A GUI console panel. This class implements the
  * <code>LoggingEndpoint</code> interface and as such can be used as the
  * destination of log messages sent using that interface.
+ * <p>
+ * Messages may be logged from any thread. They are buffered and inserted
+ * into the console on the event dispatch thread in batches, and the oldest
+ * lines are discarded once the buffer size is exceeded; see
+ * {@link com.hyperrealm.kiwi.ui.model.ConsoleModel ConsoleModel}.
  *
  * @author Mark Lindner
  * @see com.hyperrealm.kiwi.ui.ConsoleFrame
@@ -51,19 +56,11 @@ public class ConsolePanel extends KPanel implements LoggingEndpoint {
 
     private static final int DEFAULT_BUFFER_SIZE = 4096; // 4K
 
-    private static final String CR = "\n";
-
     private Color[] colors = {Color.green, Color.yellow, Color.orange, Color.red};
 
     private JTextPane tBuffer;
 
-    private SimpleAttributeSet[] attrs;
-
-    private DefaultStyledDocument doc;
-
-    private int bufSize = DEFAULT_BUFFER_SIZE;
-
-    private Segment segment;
+    private ConsoleModel doc;
 
     private boolean timestamps = false;
 
@@ -88,19 +85,16 @@ public class ConsolePanel extends KPanel implements LoggingEndpoint {
         Style def = sc.getStyle(StyleContext.DEFAULT_STYLE);
         StyleConstants.setFontFamily(def, "Serif");
         StyleConstants.setFontSize(def, DEFAULT_FONT_SIZE);
-        doc = new DefaultStyledDocument(sc);
+        doc = new ConsoleModel(sc, DEFAULT_BUFFER_SIZE);
         tBuffer.setDocument(doc);
 
-        attrs = new SimpleAttributeSet[colors.length];
         for (int i = 0; i < colors.length; i++) {
-            attrs[i] = new SimpleAttributeSet();
-            StyleConstants.setBold(attrs[i], true);
-            StyleConstants.setBackground(attrs[i], Color.black);
-            StyleConstants.setForeground(attrs[i], colors[i]);
+            SimpleAttributeSet attrs = new SimpleAttributeSet();
+            StyleConstants.setBold(attrs, true);
+            StyleConstants.setBackground(attrs, Color.black);
+            StyleConstants.setForeground(attrs, colors[i]);
+            doc.setAttributes(i, attrs);
         }
-
-        segment = new Segment();
-        segment.setPartialReturn(true);
     }
 
     /**
@@ -118,12 +112,17 @@ public class ConsolePanel extends KPanel implements LoggingEndpoint {
     }
 
     /**
-     * Get all of the text currently in the console's buffer.
+     * Get all of the text currently in the console's buffer. If called on the
+     * event dispatch thread, any pending messages are flushed first.
      */
 
     public String getText() {
         String s = null;
 
+        if (SwingUtilities.isEventDispatchThread()) {
+            doc.flush();
+        }
+
         try {
             s = doc.getText(0, doc.getLength());
         } catch (BadLocationException ignored) {
@@ -137,10 +136,7 @@ public class ConsolePanel extends KPanel implements LoggingEndpoint {
      */
 
     public void clear() {
-        try {
-            doc.remove(0, doc.getLength());
-        } catch (BadLocationException ignored) {
-        }
+        doc.clear();
     }
 
     /**
@@ -150,7 +146,7 @@ public class ConsolePanel extends KPanel implements LoggingEndpoint {
      */
 
     public int getBufferSize() {
-        return (bufSize);
+        return (doc.getBufferSize());
     }
 
     /**
@@ -160,7 +156,7 @@ public class ConsolePanel extends KPanel implements LoggingEndpoint {
      */
 
     public void setBufferSize(int bufSize) {
-        this.bufSize = bufSize;
+        doc.setBufferSize(bufSize);
     }
 
     /**
@@ -191,55 +187,10 @@ public class ConsolePanel extends KPanel implements LoggingEndpoint {
             typeInt = 0;
         }
 
-        try {
-            int len = doc.getLength();
-            int slen = message.length();
-            int newlinePos = -1;
-
-            int over = (slen + len) - bufSize;
-            if (over > 0) {
-                // we need to remove at least _over_ bytes from the beginning of the
-                // buffer...up until the next newline. If we can't find a newline, then
-                // remove everything.
-
-                int offset = 0, left = len;
-
-                SEARCH:
-                while (left > 0) {
-                    doc.getText(offset, left, segment);
-
-                    int i = 0;
-
-                    for (char c = segment.first(); i < segment.count;
-                         c = segment.next(), i++) {
-                        if (c == '\n') {
-                            newlinePos = i;
-                            break SEARCH;
-                        }
-                    }
-
-                    left -= segment.count;
-                    offset += segment.count;
-                }
-
-                if (newlinePos >= 0) {
-                    doc.remove(0, newlinePos + 1);
-                } else {
-                    doc.remove(0, len);
-                }
-            }
-
-            if (timestamps) {
-                String timestamp = ('[' + lm.formatDateTime(new Date(), lm.SHORT)
-                    + "] ");
-                doc.insertString(doc.getLength(), timestamp, attrs[typeInt]);
-            }
-
-            doc.insertString(doc.getLength(), message, attrs[typeInt]);
-            if (!message.endsWith(CR)) {
-                doc.insertString(doc.getLength(), CR, null);
-            }
-        } catch (BadLocationException ignored) {
+        if (timestamps) {
+            doc.append(typeInt, '[' + lm.formatDateTime(new Date(), lm.SHORT) + "] " + message);
+        } else {
+            doc.append(typeInt, message);
         }
     }
 
@@ -56,6 +56,8 @@ public class FilesystemTableView extends KPanel {
 
     private boolean ignoreFiles;
 
+    private boolean asynchronous = false;
+
     /**
      * Construct a new <code>FilesystemTableView</code>. The table initially has
      * no data model; use <code>setRoot()</code> to initialize the component.
@@ -106,6 +108,31 @@ public class FilesystemTableView extends KPanel {
                 : ListSelectionModel.SINGLE_SELECTION);
     }
 
+    /**
+     * Specify whether directories should be listed in the background. The
+     * setting takes effect the next time the root is set.
+     *
+     * @param flag If <code>true</code>, directories are listed asynchronously
+     *             and their children appear in batches as they are read;
+     *             otherwise directories are listed when they are expanded (the default).
+     * @see com.hyperrealm.kiwi.ui.model.FilesystemDataSource#setAsynchronous
+     */
+
+    public void setAsynchronous(boolean flag) {
+        asynchronous = flag;
+    }
+
+    /**
+     * Determine if directories are listed in the background.
+     *
+     * @return <code>true</code> if directories are listed asynchronously,
+     * and <code>false</code> otherwise.
+     */
+
+    public boolean isAsynchronous() {
+        return (asynchronous);
+    }
+
     /**
      * Set the root of the filesystem to be displayed by this component. This
      * causes the component to be reset and repainted.
@@ -116,7 +143,10 @@ public class FilesystemTableView extends KPanel {
      */
     public void setRoot(File root) {
         FilesystemDataSource fds = new FilesystemDataSource(root, ignoreFiles);
-        KTreeModel model = new ExternalKTreeModel(fds);
+        ExternalKTreeModel model = new ExternalKTreeModel(fds);
+        if (asynchronous) {
+            fds.setAsynchronous(null, model);
+        }
 
         table.setTreeModel(model);
 
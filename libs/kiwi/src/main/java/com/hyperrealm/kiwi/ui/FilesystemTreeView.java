@@ -32,7 +32,6 @@ import javax.swing.tree.TreeSelectionModel;
 import static com.hyperrealm.kiwi.ui.dialog.ComponentDialog.CENTER_POSITION;
 import static com.hyperrealm.kiwi.ui.dialog.ComponentDialog.DEFAULT_ROW_HEIGHT;
 
-import com.hyperrealm.kiwi.ui.model.DefaultKTreeModel;
 import com.hyperrealm.kiwi.ui.model.ExternalKTreeModel;
 import com.hyperrealm.kiwi.ui.model.FilesystemDataSource;
 import com.hyperrealm.kiwi.ui.model.KTreeModelTreeAdapter;
@@ -61,6 +60,8 @@ public class FilesystemTreeView extends KPanel {
 
     private boolean ignoreFiles;
 
+    private boolean asynchronous = false;
+
     /**
      * Construct a new <code>FilesystemTreeView</code>. The tree initially has
      * no data model; use <code>setRoot()</code> to initialize the component.
@@ -111,6 +112,31 @@ public class FilesystemTreeView extends KPanel {
                 : TreeSelectionModel.SINGLE_TREE_SELECTION);
     }
 
+    /**
+     * Specify whether directories should be listed in the background. The
+     * setting takes effect the next time the root is set.
+     *
+     * @param flag If <code>true</code>, directories are listed asynchronously
+     *             and their children appear in batches as they are read;
+     *             otherwise directories are listed when they are expanded (the default).
+     * @see com.hyperrealm.kiwi.ui.model.FilesystemDataSource#setAsynchronous
+     */
+
+    public void setAsynchronous(boolean flag) {
+        asynchronous = flag;
+    }
+
+    /**
+     * Determine if directories are listed in the background.
+     *
+     * @return <code>true</code> if directories are listed asynchronously,
+     * and <code>false</code> otherwise.
+     */
+
+    public boolean isAsynchronous() {
+        return (asynchronous);
+    }
+
     /**
      * Set the root of the filesystem to be displayed by this component. This
      * causes the component to be reset and repainted.
@@ -121,7 +147,10 @@ public class FilesystemTreeView extends KPanel {
 
     public void setRoot(File root) {
         FilesystemDataSource fds = new FilesystemDataSource(root, ignoreFiles);
-        DefaultKTreeModel model = new ExternalKTreeModel(fds);
+        ExternalKTreeModel model = new ExternalKTreeModel(fds);
+        if (asynchronous) {
+            fds.setAsynchronous(null, model);
+        }
         adapter.setTreeModel(model);
         tree.setCellRenderer(new KTreeModelTreeCellRenderer(model));
         tree.setRootVisible(false);
@@ -21,12 +21,16 @@ package com.hyperrealm.kiwi.ui;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Container;
+import java.awt.Point;
 import java.awt.Rectangle;
 
 import javax.swing.DefaultListSelectionModel;
 import javax.swing.Icon;
 import javax.swing.JTable;
+import javax.swing.JViewport;
 import javax.swing.UIManager;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.TableModelEvent;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellEditor;
@@ -35,6 +39,9 @@ import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
 
+import com.hyperrealm.kiwi.ui.model.KListModel;
+import com.hyperrealm.kiwi.ui.model.KListModelTableAdapter;
+import com.hyperrealm.kiwi.ui.model.PagedKListModel;
 import com.hyperrealm.kiwi.ui.model.TableSorter;
 import com.hyperrealm.kiwi.util.KiwiUtils;
 
@@ -62,6 +69,8 @@ public class KTable extends JTable {
 
     private boolean internalSelectionChange = false;
 
+    private final ChangeListener viewportListener = evt -> prefetchVisibleRows();
+
     /**
      * Construct a new <code>KTable</code>.
      */
@@ -272,6 +281,66 @@ public class KTable extends JTable {
         return (editable && getModel().isCellEditable(row, col));
     }
 
+    /**
+     * Overridden to track scrolling of the enclosing viewport, so that a
+     * <code>PagedKListModel</code> can fetch the pages around the visible rows.
+     */
+
+    protected void configureEnclosingScrollPane() {
+        super.configureEnclosingScrollPane();
+
+        JViewport viewport = getEnclosingViewport();
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+
+    /**
+     *
+     */
+
+    protected void unconfigureEnclosingScrollPane() {
+        JViewport viewport = getEnclosingViewport();
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+        }
+
+        super.unconfigureEnclosingScrollPane();
+    }
+
+    /* Get the viewport this table is the view of, if any. */
+
+    private JViewport getEnclosingViewport() {
+        Container parent = getParent();
+        if (parent instanceof JViewport && ((JViewport) parent).getView() == this) {
+            return ((JViewport) parent);
+        }
+        return (null);
+    }
+
+    /* Ask a paged list model for the pages around the visible rows. Sorted
+     * rows are not contiguous in the model, so sortable tables are skipped.
+     */
+
+    private void prefetchVisibleRows() {
+        if (sortable || !(realModel instanceof KListModelTableAdapter)) {
+            return;
+        }
+
+        KListModel<?> model = ((KListModelTableAdapter<?>) realModel).getListModel();
+        int rows = getRowCount();
+        if (!(model instanceof PagedKListModel) || rows == 0) {
+            return;
+        }
+
+        Rectangle r = getVisibleRect();
+        int first = rowAtPoint(r.getLocation());
+        int last = rowAtPoint(new Point(r.x, r.y + r.height - 1));
+
+        ((PagedKListModel<?>) model).prefetch(first < 0 ? 0 : first, last < 0 ? rows - 1 : last);
+    }
+
     /**
      * Scroll the table to ensure that a given row is visible.
      *
@@ -121,6 +121,8 @@ public abstract class ChartView extends JComponent implements ChartModelListener
 
     private double maxValue = 0.0;
 
+    private double minValue = 0.0;
+
     private double tickInterval = DEFAULT_TICK_INTERVAL;
 
     /**
@@ -336,18 +338,20 @@ public abstract class ChartView extends JComponent implements ChartModelListener
     }
 
     /*
+     * Recalculate the scale for the current size and range of values.
      */
 
-    private void recalculateScale() {
+    void recalculateScale() {
         if (hasScale()) {
             Dimension d = getSize();
 
             maxValue = getMaxValue();
+            minValue = getMinValue();
 
             if (orientation == VERTICAL) {
-                scale = (d.height - (2 * verticalPad)) / maxValue;
+                scale = (d.height - (2 * verticalPad)) / (maxValue - minValue);
             } else {
-                scale = (d.width - (2 * horizontalPad)) / maxValue;
+                scale = (d.width - (2 * horizontalPad)) / (maxValue - minValue);
             }
         }
     }
@@ -374,6 +378,27 @@ public abstract class ChartView extends JComponent implements ChartModelListener
         return (0.0);
     }
 
+    /**
+     * Compute the minimum value, which is plotted at the origin of the scale.
+     * The default implementation returns <code>0.0</code>.
+     *
+     * @return The minimum value to be plotted.
+     * @since Kiwi 2.4
+     */
+
+    protected double getMinValue() {
+        return (0.0);
+    }
+
+    /**
+     * Get the first tick of the scale; the smallest multiple of the tick
+     * interval that is not less than the minimum value.
+     */
+
+    private double getFirstTick() {
+        return (Math.ceil(minValue / tickInterval) * tickInterval);
+    }
+
     /**
      * A convenience method for drawing a vertical scale with tickmarks and
      * tick labels.
@@ -392,8 +417,8 @@ public abstract class ChartView extends JComponent implements ChartModelListener
         gc.setColor(Color.black);
         gc.drawLine(x, y, x, verticalPad);
 
-        for (double tick = 0.0; tick <= maxValue; tick += tickInterval) {
-            int yp = (int) (y - (tick * scale));
+        for (double tick = getFirstTick(); tick <= maxValue; tick += tickInterval) {
+            int yp = (int) (y - ((tick - minValue) * scale));
             gc.drawLine(x - 1, yp, x - LINE_OFFSET, yp);
 
             String label = lm.formatDecimal(tick, precision);
@@ -418,8 +443,8 @@ public abstract class ChartView extends JComponent implements ChartModelListener
         gc.setColor(Color.black);
         gc.drawLine(x, y, d.width - horizontalPad, y);
 
-        for (double tick = 0.0; tick <= maxValue; tick += tickInterval) {
-            int xp = (int) (x + (tick * scale));
+        for (double tick = getFirstTick(); tick <= maxValue; tick += tickInterval) {
+            int xp = (int) (x + ((tick - minValue) * scale));
             gc.drawLine(xp, y - 1, xp, y - LINE_OFFSET);
         }
 
@@ -429,8 +454,8 @@ public abstract class ChartView extends JComponent implements ChartModelListener
         AffineTransform rotate = new AffineTransform(0, 1, -1, 0, 0, 0);
         gc2d.transform(rotate);
 
-        for (double tick = 0.0; tick <= maxValue; tick += tickInterval) {
-            int xp = (int) (x + (tick * scale));
+        for (double tick = getFirstTick(); tick <= maxValue; tick += tickInterval) {
+            int xp = (int) (x + ((tick - minValue) * scale));
 
             String label = lm.formatDecimal(tick, precision);
             // in the rotated coordinate system, (x', y') = (y, -x)
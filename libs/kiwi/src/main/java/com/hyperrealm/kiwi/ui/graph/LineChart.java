@@ -19,14 +19,27 @@
 
 package com.hyperrealm.kiwi.ui.graph;
 
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.Iterator;
 
+import com.hyperrealm.kiwi.event.ChartModelEvent;
+import com.hyperrealm.kiwi.ui.model.ChartModel;
+import com.hyperrealm.kiwi.ui.model.StreamingChartModel;
+
 /**
  * A chart that renders the value of each variable as a series of points
  * connected by lines. This type of chart is used to illustrate trends across
  * data samples.
+ * <p>
+ * The lines are rendered into an off-screen strip. When samples are
+ * appended, only the new points are rendered; when the oldest samples are
+ * evicted, as in a full {@link StreamingChartModel}, the strip is scrolled
+ * and only the exposed part is rendered. Any other change of the model, the
+ * scale or the geometry renders the strip again.
  *
  * <p><center><img src="snapshot/LineChart.gif"><br>
  * <i>An example LineChart.</i>
@@ -45,6 +58,14 @@ public class LineChart extends ChartView {
 
     private int pointSize;
 
+    /* the rendered lines, without the scale; null when they must be rendered again */
+
+    private BufferedImage strip = null;
+
+    private double stripScale;
+
+    private Color stripBackground;
+
     /**
      * Construct a new <code>LineChart</code> for the specified chart
      * definition.
@@ -82,6 +103,7 @@ public class LineChart extends ChartView {
     public void setPointSpacing(int spacing) {
         if (spacing > 0) {
             pointSpacing = spacing;
+            strip = null;
         }
     }
 
@@ -110,49 +132,185 @@ public class LineChart extends ChartView {
         }
 
         pointSize = (pointRadius * 2) + 1;
+        strip = null;
+    }
+
+    /**
+     * Set the chart definition.
+     *
+     * @param chart The chart definition.
+     */
+
+    public void setChart(Chart chart) {
+        super.setChart(chart);
+        strip = null;
+    }
+
+    /**
+     * Set the data model for this view.
+     *
+     * @param model The data model.
+     */
+
+    public void setModel(ChartModel model) {
+        super.setModel(model);
+        strip = null;
+    }
+
+    /**
+     * Handle <i>chart data changed</i> events. If data samples were only
+     * appended, or appended and evicted from the front, and the scale has not
+     * changed, the existing points are scrolled and only the region of the new
+     * points is rendered.
+     *
+     * @param event The event.
+     */
+
+    public void chartDataChanged(ChartModelEvent event) {
+        double oldScale = scale;
+        recalculateScale();
+
+        int count = model.getDataSampleCount();
+        int appended = event.isAppend() ? event.getAppendedCount() : -1;
+        int removed = event.isAppend() ? event.getRemovedCount() : -1;
+        if (appended < 0 || appended >= count || removed * pointSpacing >= getWidth() || scale != oldScale
+            || !isStripValid()) {
+            strip = null;
+            repaint();
+            return;
+        }
+
+        Graphics gc = strip.getGraphics();
+        try {
+            int width = strip.getWidth();
+            int height = strip.getHeight();
+            int dx = removed * pointSpacing;
+            if (dx > 0) {
+                gc.copyArea(dx, 0, width - dx, height, -dx, 0);
+
+                // the line into the new first point came from an evicted one
+
+                renderLines(gc, new Rectangle(0, 0, getPointX(0) + pointRadius + 1, height));
+            }
+
+            // from the previous last point, which is joined to the first new one,
+            // or from the exposed part if that point is further right
+
+            int x0 = Math.min(getPointX(count - appended - 1) - pointRadius, width - dx);
+            renderLines(gc, new Rectangle(x0, 0, width - x0, height));
+
+            if (dx > 0) {
+                repaint();
+            } else {
+                repaint(x0, 0, getPointX(count - 1) + pointRadius + 1 - x0, height);
+            }
+        } finally {
+            gc.dispose();
+        }
     }
 
     /**
-     * Paint the chart.
+     * Paint the chart. The lines are copied from the off-screen strip, which
+     * is rendered first if it is not up to date.
      */
 
     protected void paintChart(Graphics gc) {
-        int lx = 0, ly = 0, px, py;
         Dimension d = getSize();
+        if (d.width <= 0 || d.height <= 0) {
+            return;
+        }
+
+        if (!isStripValid()) {
+            strip = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_RGB);
+            stripScale = scale;
+            stripBackground = getBackground();
+
+            Graphics sgc = strip.getGraphics();
+            try {
+                renderLines(sgc, new Rectangle(0, 0, d.width, d.height));
+            } finally {
+                sgc.dispose();
+            }
+        }
+
+        gc.drawImage(strip, 0, 0, null);
+        drawVerticalScale(gc, horizontalPad + DEFAULT_SCALE_WIDTH);
+    }
+
+    /*
+     * Whether the strip shows the current model at the current geometry.
+     */
+
+    private boolean isStripValid() {
+        return (strip != null && strip.getWidth() == getWidth() && strip.getHeight() == getHeight()
+            && stripScale == scale && getBackground().equals(stripBackground));
+    }
+
+    /*
+     * Render the points within a region, and the lines leading to them, over
+     * the background.
+     */
+
+    private void renderLines(Graphics gc, Rectangle clip) {
+        gc.setClip(clip);
+        gc.setColor(getBackground());
+        gc.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int height = getHeight();
+        int count = model.getDataSampleCount();
+        int first = Math.max((clip.x - getPointX(0) - pointRadius) / pointSpacing, 0);
+        int last = Math.min((clip.x + clip.width - getPointX(0) + pointRadius) / pointSpacing + 1, count - 1);
+
+        StreamingChartModel streaming = (model instanceof StreamingChartModel)
+            ? (StreamingChartModel) model : null;
 
         Iterator<ChartValue> viter = chart.getValues();
-        int scaleWidth = DEFAULT_SCALE_WIDTH;
         while (viter.hasNext()) {
-            boolean first = true;
-            px = (horizontalPad * 2) + scaleWidth;
+            int lx = 0, ly = 0;
+            boolean connect = false;
 
             ChartValue cv = viter.next();
             String var = cv.getName();
             gc.setColor(cv.getColor());
 
-            for (DataSample ds : model) {
-                Object o = ds.getValue(var);
-                double value = 0.0;
-                if (o instanceof Number) {
-                    value = ((Number) o).doubleValue();
+            for (int i = Math.max(first - 1, 0); i <= last; i++) {
+                double value = (streaming != null) ? streaming.getValue(i, var) : getValue(i, var);
+                if (Double.isNaN(value)) {
+                    value = 0.0;
                 }
 
-                py = (int) (d.height - verticalPad - (value * scale));
+                int px = getPointX(i);
+                int py = (int) (height - verticalPad - (value * scale));
 
-                if (!first) {
+                if (connect) {
                     gc.drawLine(lx, ly, px, py);
                 }
 
-                gc.fillRect(px - pointRadius, py - pointRadius, pointSize, pointSize);
+                if (i >= first) {
+                    gc.fillRect(px - pointRadius, py - pointRadius, pointSize, pointSize);
+                }
                 lx = px;
                 ly = py;
-                first = false;
-
-                px += pointSpacing;
+                connect = true;
             }
         }
+    }
 
-        drawVerticalScale(gc, horizontalPad + scaleWidth);
+    /*
+     * The value of a variable in the data sample at the given index, or NaN.
+     */
+
+    private double getValue(int index, String var) {
+        Object o = model.getDataSample(index).getValue(var);
+        return ((o instanceof Number) ? ((Number) o).doubleValue() : Double.NaN);
+    }
+
+    /*
+     * The x coordinate of the data sample at the given index.
+     */
+
+    private int getPointX(int index) {
+        return ((horizontalPad * 2) + DEFAULT_SCALE_WIDTH + index * pointSpacing);
     }
 
     /**
@@ -167,12 +325,10 @@ public class LineChart extends ChartView {
             ChartValue cv = viter.next();
             String var = cv.getName();
 
-            for (DataSample ds : model) {
-                Object o = ds.getValue(var);
-                double value = 0.0;
-                if (o instanceof Number) {
-                    value = ((Number) o).doubleValue();
-                }
+            int count = model.getDataSampleCount();
+            for (int i = 0; i < count; i++) {
+                double value = (model instanceof StreamingChartModel)
+                    ? ((StreamingChartModel) model).getValue(i, var) : getValue(i, var);
 
                 if (value > maxval) {
                     maxval = value;
@@ -0,0 +1,192 @@
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+package com.hyperrealm.kiwi.ui.graph;
+
+import java.util.Arrays;
+
+/**
+ * Downsampling of long series of values for plotting. Both algorithms split
+ * the series into buckets of a fixed number of samples and select a few
+ * representative samples of every bucket, so the shape of a series with far
+ * more samples than there are pixels is preserved while only a couple of
+ * points per pixel need to be drawn.
+ * <p>
+ * The buckets are aligned to the start of the series rather than to a view,
+ * so the samples selected for a given bucket size are the same for any
+ * visible range; a decimated series may therefore be computed once per zoom
+ * level and sliced while panning.
+ * <p>
+ * Missing values are represented by <code>NaN</code>. A bucket that has no
+ * values at all is represented by its first sample, so gaps in the data stay
+ * visible in the decimated series.
+ *
+ * @author Anton Troshin
+ * @see com.hyperrealm.kiwi.ui.graph.TimeSeriesChart
+ */
+
+public final class SeriesDecimator {
+
+    private SeriesDecimator() {
+    }
+
+    /**
+     * Decimate a series with the <i>Largest-Triangle-Three-Buckets</i>
+     * algorithm. The first and the last samples are always selected; from every
+     * bucket in between, the sample that forms the largest triangle with the
+     * sample selected from the previous bucket and the average of the next
+     * bucket is selected. The sample index is used as the x coordinate.
+     *
+     * @param values     The values of the series.
+     * @param bucketSize The number of samples in a bucket.
+     * @return The indexes of the selected samples, in ascending order.
+     */
+
+    public static int[] lttb(double[] values, int bucketSize) {
+        int n = values.length;
+        if (bucketSize <= 1 || n <= 2) {
+            return (identity(n));
+        }
+
+        int buckets = (n - 2 + bucketSize - 1) / bucketSize;
+        int[] selected = new int[buckets + 2];
+        int count = 0;
+        selected[count++] = 0;
+
+        int a = 0;
+        for (int start = 1; start < n - 1; start += bucketSize) {
+            int end = Math.min(start + bucketSize, n - 1);
+
+            // The average of the next bucket; the last sample for the last bucket.
+
+            int nextEnd = Math.min(end + bucketSize, n - 1);
+            double cx = 0;
+            double cy = 0;
+            int valid = 0;
+            if (end == n - 1) {
+                cx = n - 1;
+                cy = values[n - 1];
+                valid = Double.isNaN(cy) ? 0 : 1;
+            } else {
+                for (int i = end; i < nextEnd; i++) {
+                    if (!Double.isNaN(values[i])) {
+                        cx += i;
+                        cy += values[i];
+                        valid++;
+                    }
+                }
+                if (valid > 0) {
+                    cx /= valid;
+                    cy /= valid;
+                }
+            }
+
+            double ay = values[a];
+            if (valid == 0) {
+                cx = (end + nextEnd) / 2.0;
+                cy = ay;
+            }
+            if (Double.isNaN(ay)) {
+                ay = cy;
+            }
+
+            int best = -1;
+            double bestArea = -1;
+            for (int i = start; i < end; i++) {
+                double v = values[i];
+                if (Double.isNaN(v)) {
+                    continue;
+                }
+                double area = Math.abs((a - cx) * (v - ay) - (a - i) * (cy - ay));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+
+            a = (best < 0) ? start : best;
+            selected[count++] = a;
+        }
+
+        selected[count++] = n - 1;
+        return (selected);
+    }
+
+    /**
+     * Decimate a series by selecting the smallest and the largest value of
+     * every bucket. At most two samples are selected from a bucket, in the
+     * order in which they appear in the series, so the vertical extent of the
+     * series is exactly preserved.
+     *
+     * @param values     The values of the series.
+     * @param bucketSize The number of samples in a bucket.
+     * @return The indexes of the selected samples, in ascending order.
+     */
+
+    public static int[] minMax(double[] values, int bucketSize) {
+        int n = values.length;
+        if (bucketSize <= 1) {
+            return (identity(n));
+        }
+
+        int[] selected = new int[2 * ((n + bucketSize - 1) / bucketSize)];
+        int count = 0;
+
+        for (int start = 0; start < n; start += bucketSize) {
+            int end = Math.min(start + bucketSize, n);
+            int min = -1;
+            int max = -1;
+
+            for (int i = start; i < end; i++) {
+                double v = values[i];
+                if (Double.isNaN(v)) {
+                    continue;
+                }
+                if (min < 0 || v < values[min]) {
+                    min = i;
+                }
+                if (max < 0 || v > values[max]) {
+                    max = i;
+                }
+            }
+
+            if (min < 0) {
+                selected[count++] = start;
+            } else if (min == max) {
+                selected[count++] = min;
+            } else {
+                selected[count++] = Math.min(min, max);
+                selected[count++] = Math.max(min, max);
+            }
+        }
+
+        return (count == selected.length ? selected : Arrays.copyOf(selected, count));
+    }
+
+    /*
+     */
+
+    private static int[] identity(int n) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        return (indexes);
+    }
+}
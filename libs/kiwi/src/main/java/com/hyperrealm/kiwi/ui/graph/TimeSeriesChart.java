@@ -0,0 +1,586 @@
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+package com.hyperrealm.kiwi.ui.graph;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+
+import com.hyperrealm.kiwi.event.ChartModelEvent;
+import com.hyperrealm.kiwi.ui.model.ChartModel;
+
+/**
+ * A line chart for long series of data samples, such as years of hourly
+ * measurements. Unlike <code>LineChart</code>, which places the points at a
+ * fixed spacing, this chart fits the visible range of data samples into the
+ * width of the component.
+ * <p>
+ * Each series is decimated to at most a few points per pixel with
+ * <code>SeriesDecimator</code>; the decimated series are cached per zoom
+ * level, where the zoom levels are powers of two samples per bucket, so
+ * panning never decimates again. The chart is drawn into an off-screen image
+ * on a background executor; until the image for the current range is ready,
+ * the previous image is stretched to the current range, so panning and
+ * zooming stay smooth even for hundreds of thousands of data samples.
+ * <p>
+ * The values of the series are read from the model on the event dispatch
+ * thread, once after every change of the model; only the decimation and the
+ * drawing run on the background executor. Dragging the chart with the mouse
+ * pans it, and the mouse wheel zooms in and out around the pointer.
+ *
+ * @author Anton Troshin
+ * @see com.hyperrealm.kiwi.ui.graph.SeriesDecimator
+ */
+
+public class TimeSeriesChart extends ChartView {
+
+    /**
+     * Decimation with the Largest-Triangle-Three-Buckets algorithm.
+     */
+    public static final int LTTB = 0;
+
+    /**
+     * Decimation to the smallest and the largest value of every bucket.
+     */
+    public static final int MIN_MAX = 1;
+
+    private static final int MIN_VISIBLE_SAMPLES = 2;
+
+    private static final double ZOOM_FACTOR = 2.0;
+
+    private static ExecutorService defaultExecutor = null;
+
+    private final ExecutorService executor;
+
+    private int decimation = LTTB;
+
+    private int firstVisible = 0;
+
+    private int visibleCount = 0;
+
+    /* the series extracted from the model, null when the model has changed */
+
+    private Series[] series = null;
+
+    /* bumped whenever the image has to be redrawn */
+
+    private volatile int serial = 0;
+
+    private int requestedSerial = -1;
+
+    private BufferedImage image = null;
+
+    private int imageSerial = -1;
+
+    private int imageFirst;
+
+    private int imageCount;
+
+    /**
+     * Construct a new <code>TimeSeriesChart</code> for the specified chart
+     * definition. The chart is drawn on a shared background executor.
+     *
+     * @param chart The chart definition.
+     */
+
+    public TimeSeriesChart(Chart chart) {
+        this(chart, null);
+    }
+
+    /**
+     * Construct a new <code>TimeSeriesChart</code> for the specified chart
+     * definition.
+     *
+     * @param chart    The chart definition.
+     * @param executor The executor on which the chart is drawn, or
+     *                 <code>null</code> for a shared background executor.
+     */
+
+    public TimeSeriesChart(Chart chart, ExecutorService executor) {
+        super(chart);
+        this.executor = (executor != null) ? executor : getDefaultExecutor();
+
+        setOrientation(VERTICAL);
+
+        MouseAdapter mouse = new Navigator();
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /**
+     * Get the decimation algorithm.
+     *
+     * @return The decimation algorithm; one of the constants <code>LTTB</code>
+     * or <code>MIN_MAX</code>.
+     */
+
+    public int getDecimation() {
+        return (decimation);
+    }
+
+    /**
+     * Set the decimation algorithm.
+     *
+     * @param decimation The decimation algorithm; one of the constants
+     *                   <code>LTTB</code> or <code>MIN_MAX</code>.
+     */
+
+    public void setDecimation(int decimation) {
+        if (decimation < LTTB || decimation > MIN_MAX) {
+            throw (new IllegalArgumentException("bad decimation value"));
+        }
+
+        if (this.decimation != decimation) {
+            this.decimation = decimation;
+            invalidateImage();
+        }
+    }
+
+    /**
+     * Get the index of the first visible data sample.
+     *
+     * @return The index of the first visible data sample.
+     */
+
+    public int getFirstVisibleSample() {
+        return (firstVisible);
+    }
+
+    /**
+     * Get the number of visible data samples.
+     *
+     * @return The number of visible data samples.
+     */
+
+    public int getVisibleSampleCount() {
+        int count = getSampleCount();
+        return (visibleCount == 0 ? count : Math.min(visibleCount, count));
+    }
+
+    /**
+     * Set the range of visible data samples. The range is adjusted to lie
+     * within the model.
+     *
+     * @param first The index of the first visible data sample.
+     * @param count The number of visible data samples.
+     */
+
+    public void setVisibleRange(int first, int count) {
+        int samples = getSampleCount();
+        count = Math.max(Math.min(count, samples), Math.min(MIN_VISIBLE_SAMPLES, samples));
+        first = Math.max(Math.min(first, samples - count), 0);
+
+        if (first != firstVisible || count != getVisibleSampleCount()) {
+            firstVisible = first;
+            visibleCount = (count == samples) ? 0 : count;
+            invalidateImage();
+        }
+    }
+
+    /**
+     * Show all data samples.
+     */
+
+    public void showAll() {
+        setVisibleRange(0, getSampleCount());
+    }
+
+    /**
+     * Set the data model for this view.
+     *
+     * @param model The data model.
+     */
+
+    public void setModel(ChartModel model) {
+        super.setModel(model);
+        firstVisible = 0;
+        visibleCount = 0;
+        chartDataChanged(new ChartModelEvent(model));
+    }
+
+    /**
+     * Handle <i>chart data changed</i> events. The series are read from the
+     * model again the next time the chart is painted, so a burst of changes
+     * is handled at once.
+     *
+     * @param event The event.
+     */
+
+    public void chartDataChanged(ChartModelEvent event) {
+        series = null;
+        invalidateImage();
+    }
+
+    /**
+     * Overridden to redraw the chart when the component geometry changes.
+     */
+
+    public void setBounds(int x, int y, int width, int height) {
+        boolean resized = (width != getWidth() || height != getHeight());
+        super.setBounds(x, y, width, height);
+
+        if (resized) {
+            invalidateImage();
+        }
+    }
+
+    /**
+     * Paint the chart.
+     */
+
+    protected void paintChart(Graphics gc) {
+        if (series == null) {
+            recalculateScale();
+        }
+
+        int x = getPlotX();
+        int width = getPlotWidth();
+        // the minimum value is drawn at the plot height, so the image is one pixel taller
+        int height = getPlotHeight() + 1;
+        int count = getVisibleSampleCount();
+        int first = Math.max(Math.min(firstVisible, getSampleCount() - count), 0);
+
+        if (width > 0 && height > 0 && count > 0) {
+            if (image != null) {
+                Graphics g = gc.create(x, verticalPad, width, height);
+                if (imageSerial == serial) {
+                    g.drawImage(image, 0, 0, null);
+                } else {
+                    // stretch the previous image to the current range
+                    double dx = (double) width / count;
+                    int left = (int) Math.round((imageFirst - first) * dx);
+                    int right = (int) Math.round((imageFirst + imageCount - first) * dx);
+                    g.drawImage(image, left, 0, right - left, height, null);
+                }
+                g.dispose();
+            }
+
+            if (imageSerial != serial && requestedSerial != serial) {
+                requestImage(first, count, width, height);
+            }
+        }
+
+        drawVerticalScale(gc, horizontalPad + scaleWidth);
+    }
+
+    /**
+     * Compute the maximum value.
+     */
+
+    protected double getMaxValue() {
+        double[] range = getValueRange();
+        return (range[1]);
+    }
+
+    /**
+     * Compute the minimum value.
+     */
+
+    protected double getMinValue() {
+        double[] range = getValueRange();
+        return (range[0]);
+    }
+
+    /* internal code follows */
+
+    private void invalidateImage() {
+        serial++;
+        repaint();
+    }
+
+    private int getSampleCount() {
+        return (model == null ? 0 : model.getDataSampleCount());
+    }
+
+    private int getPlotX() {
+        return ((horizontalPad * 2) + scaleWidth);
+    }
+
+    private int getPlotWidth() {
+        return (getWidth() - getPlotX() - horizontalPad);
+    }
+
+    private int getPlotHeight() {
+        return (getHeight() - (2 * verticalPad));
+    }
+
+    private Series[] getSeries() {
+        if (series == null) {
+            List<Series> list = new ArrayList<>();
+            if (model != null) {
+                Iterator<ChartValue> viter = chart.getValues();
+                while (viter.hasNext()) {
+                    ChartValue cv = viter.next();
+                    list.add(new Series(model, cv.getName(), cv.getColor()));
+                }
+            }
+            series = list.toArray(new Series[0]);
+        }
+        return (series);
+    }
+
+    private double[] getValueRange() {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (Series s : getSeries()) {
+            min = Math.min(min, s.min);
+            max = Math.max(max, s.max);
+        }
+
+        if (min > max) {
+            return (new double[]{0.0, 1.0});
+        }
+        return (new double[]{min, (max > min) ? max : min + 1.0});
+    }
+
+    private void requestImage(int first, int count, int width, int height) {
+        int request = serial;
+        requestedSerial = request;
+
+        Series[] snapshot = getSeries();
+        int mode = decimation;
+        double min = getMinValue();
+        double yscale = scale;
+
+        executor.execute(() -> {
+            if (request != serial) {
+                return;
+            }
+
+            BufferedImage result = render(snapshot, mode, first, count, width, height, min, yscale);
+            SwingUtilities.invokeLater(() -> imageRendered(request, result, first, count));
+        });
+    }
+
+    /* called on the EDT; a newer image replaces the current one even if it is already stale */
+
+    private void imageRendered(int request, BufferedImage result, int first, int count) {
+        if (request > imageSerial) {
+            image = result;
+            imageSerial = request;
+            imageFirst = first;
+            imageCount = count;
+            repaint();
+        }
+    }
+
+    /**
+     * Draw the visible range of the given series into an image of the given
+     * size.
+     */
+
+    static BufferedImage render(Series[] series, int mode, int first, int count, int width, int height,
+                                double min, double yscale) {
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = result.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        double dx = (double) width / count;
+        int level = getLevel(count, width);
+
+        for (Series s : series) {
+            int[] indexes = s.getIndexes(level, mode);
+            int size = (indexes == null) ? s.values.length : indexes.length;
+            if (size == 0) {
+                continue;
+            }
+
+            // one point on either side of the range, so the lines reach the edges
+
+            int from = Math.max(lowerBound(indexes, size, first) - 1, 0);
+            int to = Math.min(lowerBound(indexes, size, first + count), size - 1);
+
+            int[] xs = new int[to - from + 1];
+            int[] ys = new int[to - from + 1];
+            int n = 0;
+
+            g.setColor(s.color);
+            for (int k = from; k <= to; k++) {
+                int i = (indexes == null) ? k : indexes[k];
+                double v = s.values[i];
+                if (Double.isNaN(v)) {
+                    g.drawPolyline(xs, ys, n);
+                    n = 0;
+                    continue;
+                }
+                xs[n] = (int) Math.round((i - first) * dx);
+                ys[n] = (int) Math.round(height - 1 - ((v - min) * yscale));
+                n++;
+            }
+            g.drawPolyline(xs, ys, n);
+        }
+
+        g.dispose();
+        return (result);
+    }
+
+    /**
+     * Get the zoom level for a range of data samples drawn at the given width;
+     * the level is the base 2 logarithm of the bucket size.
+     */
+
+    static int getLevel(int count, int width) {
+        int samplesPerPixel = count / Math.max(width, 1);
+        return (samplesPerPixel < 2 ? 0 : Integer.SIZE - 1 - Integer.numberOfLeadingZeros(samplesPerPixel));
+    }
+
+    /* the position of the first selected sample at or after the given index */
+
+    private static int lowerBound(int[] indexes, int size, int index) {
+        if (indexes == null) {
+            return (Math.max(Math.min(index, size), 0));
+        }
+
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexes[mid] < index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return (lo);
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(2, r -> {
+                Thread thread = new Thread(r, "TimeSeriesChart");
+                thread.setDaemon(true);
+                return (thread);
+            });
+        }
+        return (defaultExecutor);
+    }
+
+    /*
+     * The values of one chart value, with the decimated series cached per
+     * zoom level and algorithm.
+     */
+
+    static final class Series {
+
+        private static final int LEVELS = Integer.SIZE - 1;
+
+        final double[] values;
+
+        final Color color;
+
+        final double min;
+
+        final double max;
+
+        private final int[][][] levels = new int[2][LEVELS][];
+
+        Series(ChartModel model, String var, Color color) {
+            this.color = color;
+            values = new double[model.getDataSampleCount()];
+
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            int i = 0;
+            for (DataSample ds : model) {
+                Object o = ds.getValue(var);
+                double value = (o instanceof Number) ? ((Number) o).doubleValue() : Double.NaN;
+                values[i++] = value;
+                if (!Double.isNaN(value)) {
+                    lo = Math.min(lo, value);
+                    hi = Math.max(hi, value);
+                }
+            }
+
+            min = lo;
+            max = hi;
+        }
+
+        /*
+         * The indexes of the samples selected at the given level, or null if
+         * all samples are drawn at this level.
+         */
+
+        synchronized int[] getIndexes(int level, int mode) {
+            if (level == 0) {
+                return (null);
+            }
+
+            int[] indexes = levels[mode][level];
+            if (indexes == null) {
+                indexes = (mode == MIN_MAX) ? SeriesDecimator.minMax(values, 1 << level)
+                    : SeriesDecimator.lttb(values, 1 << level);
+                levels[mode][level] = indexes;
+            }
+            return (indexes);
+        }
+    }
+
+    /*
+     * Pans the chart by dragging and zooms it with the mouse wheel.
+     */
+
+    private class Navigator extends MouseAdapter {
+
+        private int dragX;
+
+        private int dragFirst;
+
+        public void mousePressed(MouseEvent event) {
+            dragX = event.getX();
+            dragFirst = firstVisible;
+        }
+
+        public void mouseDragged(MouseEvent event) {
+            int width = getPlotWidth();
+            if (width > 0) {
+                int count = getVisibleSampleCount();
+                setVisibleRange(dragFirst - (int) ((long) (event.getX() - dragX) * count / width), count);
+            }
+        }
+
+        public void mouseWheelMoved(MouseWheelEvent event) {
+            int width = getPlotWidth();
+            if (width <= 0) {
+                return;
+            }
+
+            int count = getVisibleSampleCount();
+            double offset = Math.max(Math.min(event.getX() - getPlotX(), width), 0) / (double) width;
+            int anchor = firstVisible + (int) (offset * count);
+
+            int newCount = (int) Math.round(count * Math.pow(ZOOM_FACTOR, event.getWheelRotation()));
+            newCount = Math.max(Math.min(newCount, getSampleCount()), MIN_VISIBLE_SAMPLES);
+            setVisibleRange(anchor - (int) (offset * newCount), newCount);
+        }
+    }
+}
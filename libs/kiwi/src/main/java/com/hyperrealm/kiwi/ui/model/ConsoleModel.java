@@ -0,0 +1,371 @@
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+package com.hyperrealm.kiwi.ui.model;
+
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleContext;
+
+/**
+ * A styled document model for console-like, append-only output with a
+ * bounded size. Messages may be appended from any thread; they are
+ * accumulated in a pending buffer and coalesced into a single document
+ * insert on the next pass of the event dispatch thread.
+ * <p>
+ * The start offset of every line in the document is kept in a primitive
+ * ring index, so trimming the oldest lines when the buffer size is exceeded
+ * is a single <code>remove()</code> call and never requires scanning the
+ * document text.
+ *
+ * @author Anton Troshin
+ * @see com.hyperrealm.kiwi.ui.ConsolePanel
+ */
+
+public class ConsoleModel extends DefaultStyledDocument {
+
+    /**
+     * A constant specifying a buffer size of 'unlimited.'
+     */
+    public static final int NO_LIMIT = 0;
+
+    private static final int INITIAL_LINES = 256;
+
+    private static final int INITIAL_RUNS = 16;
+
+    private static final char NEWLINE = '\n';
+
+    private final Object lock = new Object();
+
+    private AttributeSet[] attrs = new AttributeSet[0];
+
+    private int bufSize = NO_LIMIT;
+
+    /* ring index of absolute line start positions */
+
+    private long[] lineStarts = new long[INITIAL_LINES];
+
+    private int head = 0;
+
+    private int lineCount = 0;
+
+    /* absolute position of the first character in the document */
+
+    private long base = 0;
+
+    /* absolute position just past the last character in the document */
+
+    private long end = 0;
+
+    /* pending text and its attribute runs, guarded by lock */
+
+    private StringBuilder pending = new StringBuilder();
+
+    private int[] runTypes = new int[INITIAL_RUNS];
+
+    private int[] runLengths = new int[INITIAL_RUNS];
+
+    private int runCount = 0;
+
+    private boolean flushScheduled = false;
+
+    /* whether the document is cleared on the next flush, guarded by lock */
+
+    private boolean clearPending = false;
+
+    private final Runnable flusher = this::flush;
+
+    /**
+     * Construct a new <code>ConsoleModel</code> with unlimited size.
+     *
+     * @param styles The style context for the document.
+     */
+
+    public ConsoleModel(StyleContext styles) {
+        super(styles);
+    }
+
+    /**
+     * Construct a new <code>ConsoleModel</code> with the specified buffer size.
+     *
+     * @param styles  The style context for the document.
+     * @param bufSize The buffer size, in characters. The constant
+     *                <code>NO_LIMIT</code> may be passed to specify unlimited size.
+     */
+
+    public ConsoleModel(StyleContext styles, int bufSize) {
+        super(styles);
+        setBufferSize(bufSize);
+    }
+
+    /**
+     * Get the buffer size.
+     *
+     * @return The buffer size, in characters.
+     */
+
+    public int getBufferSize() {
+        return (bufSize);
+    }
+
+    /**
+     * Set the buffer size. If the document is currently longer than this
+     * size, the oldest lines are removed on the next flush.
+     *
+     * @param bufSize The buffer size, in characters.
+     */
+
+    public void setBufferSize(int bufSize) {
+        this.bufSize = Math.max(bufSize, 0);
+    }
+
+    /**
+     * Set the attributes to be used for messages of the given type.
+     *
+     * @param type  The message type.
+     * @param attrs The attributes for the message type.
+     */
+
+    public void setAttributes(int type, AttributeSet attrs) {
+        if (type < 0) {
+            return;
+        }
+
+        synchronized (lock) {
+            if (type >= this.attrs.length) {
+                this.attrs = Arrays.copyOf(this.attrs, type + 1);
+            }
+            this.attrs[type] = attrs;
+        }
+    }
+
+    /**
+     * Get the number of complete lines currently in the document.
+     *
+     * @return The line count.
+     */
+
+    public int getLineCount() {
+        return (lineCount);
+    }
+
+    /**
+     * Append a message to the console. This method may be called from any
+     * thread; the text is added to the document on the event dispatch thread.
+     * Every appended message is terminated with a newline, if it does not
+     * already end with one.
+     *
+     * @param type    The message type; selects the attributes for the text.
+     * @param message The message text.
+     */
+
+    public void append(int type, String message) {
+        synchronized (lock) {
+            int start = pending.length();
+            pending.append(message);
+            if (message.isEmpty() || message.charAt(message.length() - 1) != NEWLINE) {
+                pending.append(NEWLINE);
+            }
+            addRun(type, pending.length() - start);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Insert all pending messages into the document and trim the oldest lines
+     * if the buffer size is exceeded. This method is normally invoked
+     * automatically and must be called on the event dispatch thread.
+     */
+
+    public void flush() {
+        String text;
+        int[] types;
+        int[] lengths;
+        int runs;
+        AttributeSet[] styles;
+        boolean clearing;
+
+        synchronized (lock) {
+            flushScheduled = false;
+            clearing = clearPending;
+            clearPending = false;
+            if (pending.length() == 0 && !clearing) {
+                return;
+            }
+            text = pending.toString();
+            types = runTypes;
+            lengths = runLengths;
+            runs = runCount;
+            styles = attrs;
+
+            pending.setLength(0);
+            runTypes = new int[INITIAL_RUNS];
+            runLengths = new int[INITIAL_RUNS];
+            runCount = 0;
+        }
+
+        try {
+            if (clearing) {
+                removeAll();
+            }
+            if (text.isEmpty()) {
+                return;
+            }
+
+            int offset = getLength();
+            insertString(offset, text, getAttributes(styles, types[0]));
+
+            int pos = offset + lengths[0];
+            for (int i = 1; i < runs; i++) {
+                if (types[i] != types[0]) {
+                    setCharacterAttributes(pos, lengths[i], getAttributes(styles, types[i]), true);
+                }
+                pos += lengths[i];
+            }
+
+            indexLines(text);
+            trim();
+        } catch (BadLocationException ignored) {
+        }
+    }
+
+    /**
+     * Remove all text from the document, including any pending messages.
+     * This method may be called from any thread; the text is removed on the
+     * event dispatch thread, immediately if called on it, and always before
+     * messages appended later are inserted.
+     */
+
+    public void clear() {
+        synchronized (lock) {
+            pending.setLength(0);
+            runCount = 0;
+            clearPending = true;
+            scheduleFlush();
+        }
+
+        if (SwingUtilities.isEventDispatchThread()) {
+            flush();
+        }
+    }
+
+    /* Schedule a flush unless one is pending; called with the lock held. */
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(flusher);
+        }
+    }
+
+    /* Remove the text and the line index; called on the event dispatch thread. */
+
+    private void removeAll() throws BadLocationException {
+        remove(0, getLength());
+
+        head = 0;
+        lineCount = 0;
+        base = end;
+    }
+
+    /* Record the start positions of the lines in a freshly inserted chunk. */
+
+    private void indexLines(String text) {
+        long lineStart = end;
+        int len = text.length();
+
+        for (int i = 0; i < len; i++) {
+            if (text.charAt(i) == NEWLINE) {
+                pushLine(lineStart);
+                lineStart = end + i + 1;
+            }
+        }
+
+        end += len;
+    }
+
+    /* Drop the oldest lines until the document fits in the buffer. */
+
+    private void trim() throws BadLocationException {
+        if (bufSize == NO_LIMIT) {
+            return;
+        }
+
+        long over = (end - base) - bufSize;
+        if (over <= 0) {
+            return;
+        }
+
+        // always keep the newest line, even if it alone exceeds the buffer
+
+        long newBase = base;
+        while (lineCount > 1 && newBase - base < over) {
+            head = (head + 1) % lineStarts.length;
+            lineCount--;
+            newBase = lineStarts[head];
+        }
+
+        if (newBase > base) {
+            remove(0, (int) (newBase - base));
+            base = newBase;
+        }
+    }
+
+    private void pushLine(long start) {
+        if (lineCount == lineStarts.length) {
+            long[] grown = new long[lineStarts.length * 2];
+            for (int i = 0; i < lineCount; i++) {
+                grown[i] = lineStarts[(head + i) % lineStarts.length];
+            }
+            lineStarts = grown;
+            head = 0;
+        }
+
+        lineStarts[(head + lineCount) % lineStarts.length] = start;
+        lineCount++;
+    }
+
+    private void addRun(int type, int length) {
+        if (runCount > 0 && runTypes[runCount - 1] == type) {
+            runLengths[runCount - 1] += length;
+            return;
+        }
+
+        if (runCount == runTypes.length) {
+            runTypes = Arrays.copyOf(runTypes, runCount * 2);
+            runLengths = Arrays.copyOf(runLengths, runCount * 2);
+        }
+
+        runTypes[runCount] = type;
+        runLengths[runCount] = length;
+        runCount++;
+    }
+
+    private static AttributeSet getAttributes(AttributeSet[] styles, int type) {
+        if (type >= 0 && type < styles.length && styles[type] != null) {
+            return (styles[type]);
+        }
+        return (SimpleAttributeSet.EMPTY);
+    }
+}
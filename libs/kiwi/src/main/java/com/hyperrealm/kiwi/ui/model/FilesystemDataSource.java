@@ -20,13 +20,25 @@
 package com.hyperrealm.kiwi.ui.model;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.Icon;
+import javax.swing.SwingUtilities;
 
 import com.hyperrealm.kiwi.util.KiwiUtils;
+import com.hyperrealm.kiwi.util.LRUCache;
 import com.hyperrealm.kiwi.util.LocaleData;
 import com.hyperrealm.kiwi.util.LocaleManager;
 
@@ -37,6 +49,18 @@ import com.hyperrealm.kiwi.util.LocaleManager;
  * <code>ignoreFiles</code> argument of some forms of the constructor allows
  * for the creation of directory-only data sources. These are useful for
  * driving a directory chooser, for example.
+ * <p>
+ * The attributes of every entry are read once per entry while listing. In
+ * <i>asynchronous</i> mode (see {@link #setAsynchronous}), directories are
+ * listed on a background executor: a placeholder child is shown at first,
+ * and the children are published to the tree model in batches as they are
+ * read. Listings are then cached; a cached listing is reused until the
+ * modification time of its directory changes or it was finished longer ago
+ * than the cache timeout (see {@link #setCacheTimeout}), since the size and
+ * date of an entry can change without touching its directory. A listing that
+ * is still running never expires. An expired listing keeps being shown until
+ * the directory has been read again. In synchronous mode
+ * every request lists the directory afresh.
  *
  * @author Mark Lindner
  * @see java.io.File
@@ -71,8 +95,20 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
 
     private static final String ALL_FILESYSTEMS;
 
+    private static final String LOADING;
+
     private static final int KILOBYTE = 1024;
 
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int MAX_CACHED_DIRECTORIES = 256;
+
+    private static final long DEFAULT_CACHE_TIMEOUT = 5000;
+
+    private static final Comparator<File> BY_NAME = Comparator.comparing(File::getName);
+
+    private static ExecutorService defaultExecutor = null;
+
     static {
         LocaleManager lm = LocaleManager.getDefault();
         LocaleData loc = lm.getLocaleData("KiwiMisc");
@@ -82,6 +118,7 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
         DATE_COLUMN = loc.getMessage("kiwi.column.date");
         TIME_COLUMN = loc.getMessage("kiwi.column.time");
         ALL_FILESYSTEMS = loc.getMessage("kiwi.label.all_filesystems");
+        LOADING = loc.getMessage("kiwi.label.loading");
 
         COLUMNS = new String[]{FILE_COLUMN, SIZE_COLUMN, DATE_COLUMN, TIME_COLUMN};
 
@@ -95,6 +132,14 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
 
     private LocaleManager lm;
 
+    private final LRUCache<File, Listing> listings = new LRUCache<>(MAX_CACHED_DIRECTORIES);
+
+    private ExecutorService executor = null;
+
+    private ExternalKTreeModel<Object> model = null;
+
+    private long cacheTimeout = DEFAULT_CACHE_TIMEOUT;
+
     /**
      * Construct a new <code>FilesystemDataSource</code> with roots
      * for all available filesystems.
@@ -191,7 +236,58 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
     }
 
     /**
-     * Get the children of a given node.
+     * Switch this data source to asynchronous mode. Directories will be
+     * listed on a background executor, and the given model will be reloaded
+     * on the event dispatch thread as batches of children become available.
+     *
+     * @param executor The executor to list directories on, or
+     *                 <code>null</code> to use a shared default executor.
+     * @param model    The model that is backed by this data source.
+     */
+
+    public void setAsynchronous(ExecutorService executor, ExternalKTreeModel<Object> model) {
+        this.executor = (executor == null) ? getDefaultExecutor() : executor;
+        this.model = model;
+    }
+
+    /**
+     * Set the time for which a directory listing is reused in asynchronous
+     * mode. The default is 5 seconds.
+     *
+     * @param millis The timeout in milliseconds; 0 lists the directory again
+     *               on every request.
+     */
+
+    public void setCacheTimeout(long millis) {
+        cacheTimeout = millis;
+    }
+
+    /**
+     * Get the time for which a directory listing is reused in asynchronous
+     * mode.
+     *
+     * @return The timeout in milliseconds.
+     */
+
+    public long getCacheTimeout() {
+        return (cacheTimeout);
+    }
+
+    /**
+     * Determine if this data source lists directories asynchronously.
+     *
+     * @return <code>true</code> if the data source is in asynchronous mode,
+     * and <code>false</code> otherwise.
+     */
+
+    public boolean isAsynchronous() {
+        return (executor != null);
+    }
+
+    /**
+     * Get the children of a given node. In asynchronous mode, a directory
+     * that has not been listed yet has a single <code>Placeholder</code>
+     * child, followed by the children read so far.
      */
 
     public Object[] getChildren(Object node) {
@@ -200,45 +296,118 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
             return (((FileRoot) node).getRoots());
         }
 
+        if (!(node instanceof File)) {
+            return (EMPTY_LIST);
+        }
+
         File f = (File) node;
-        String[] children = EMPTY_LIST;
 
-        try {
-            children = f.list();
-        } catch (Exception ignored) {
+        if (executor == null) {
+            Listing listing = new Listing(f, 0, null);
+            list(listing);
+            return (listing.getChildren());
         }
 
-        if (children != null) {
-            Arrays.sort(children);
+        long mtime = f.lastModified();
+        long now = System.currentTimeMillis();
+        Listing listing;
+        boolean stale;
+
+        synchronized (listings) {
+            listing = listings.get(f);
+            stale = (listing == null || listing.isExpired(mtime, now, cacheTimeout));
+            if (stale) {
+                listing = new Listing(f, mtime, listing);
+                listings.put(f, listing);
+            }
         }
 
-        return (makeNodes(f, children));
-    }
+        if (stale) {
+            final Listing pending = listing;
+            executor.execute(() -> list(pending));
+        }
 
-    /* create an array of Files from an array of filenames */
+        return (listing.getChildren());
+    }
 
-    private File[] makeNodes(File parent, String[] list) {
+    /* read a directory, with one attribute read per entry */
 
-        File f;
-        ArrayList<File> v = new ArrayList<File>();
+    private void list(Listing listing) {
+        List<FileNode> nodes = new ArrayList<>();
 
-        if (list != null) {
-            for (String name : list) {
-                if (parent == null) {
-                    f = new File(name);
-                } else {
-                    f = new File(parent, name);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(listing.directory.toPath())) {
+            for (Path path : stream) {
+                FileNode node = makeNode(listing.directory, path);
+                if (ignoreFiles && !node.isDirectoryNode()) {
+                    continue;
                 }
 
-                if (ignoreFiles && !f.isDirectory()) {
-                    continue;
+                nodes.add(node);
+                if (executor != null && !listing.isComplete() && nodes.size() % BATCH_SIZE == 0) {
+                    publish(listing, nodes, false);
                 }
-                v.add(f);
+            }
+        } catch (IOException | DirectoryIteratorException | SecurityException ignored) {
+        }
+
+        publish(listing, nodes, true);
+    }
+
+    /* make a node, reading the file attributes once */
+
+    private static FileNode makeNode(File parent, Path path) {
+        String name = path.getFileName().toString();
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            boolean directory = attrs.isDirectory();
+
+            return (new FileNode(parent, name, directory, !directory || Files.isReadable(path),
+                attrs.size(), attrs.lastModifiedTime().toMillis()));
+        } catch (IOException | SecurityException ex) {
+            // dangling link or no permission to stat the entry
+            return (new FileNode(parent, name, false, false, 0, 0));
+        }
+    }
+
+    /* make the children read so far visible to the model */
+
+    private void publish(Listing listing, List<FileNode> nodes, boolean complete) {
+        FileNode[] children = nodes.toArray(new FileNode[0]);
+        Arrays.sort(children, BY_NAME);
+
+        boolean notify;
+        synchronized (listing) {
+            listing.children = children;
+            listing.complete = complete;
+            if (complete) {
+                listing.listed = System.currentTimeMillis();
+            }
+            notify = (model != null && !listing.publishPending);
+            if (notify) {
+                listing.publishPending = true;
             }
         }
 
-        File[] nodes = new File[v.size()];
-        return (v.toArray(nodes));
+        if (notify) {
+            SwingUtilities.invokeLater(() -> {
+                synchronized (listing) {
+                    listing.publishPending = false;
+                }
+                model.reload(listing.directory);
+            });
+        }
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(2, r -> {
+                Thread thread = new Thread(r, "FilesystemDataSource");
+                thread.setDaemon(true);
+                return (thread);
+            });
+        }
+        return (defaultExecutor);
     }
 
     /*
@@ -248,6 +417,8 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
 
         if (node.getClass() == FileRoot.class) {
             return (ALL_FILESYSTEMS);
+        } else if (node.getClass() == Placeholder.class) {
+            return (LOADING);
         }
 
         File f = (File) node;
@@ -263,15 +434,12 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
 
         if (node.getClass() == FileRoot.class) {
             ret = COMPUTER_ICON;
+        } else if (node.getClass() == Placeholder.class) {
+            ret = null;
+        } else if (isDirectory(node)) {
+            ret = !canRead(node) ? FOLDER_LOCKED_ICON : (isExpanded ? FOLDER_OPEN_ICON : FOLDER_CLOSED_ICON);
         } else {
-
-            File f = (File) node;
-
-            if (f.isDirectory()) {
-                ret = !f.canRead() ? FOLDER_LOCKED_ICON : (isExpanded ? FOLDER_OPEN_ICON : FOLDER_CLOSED_ICON);
-            } else {
-                ret = DOCUMENT_ICON;
-            }
+            ret = DOCUMENT_ICON;
         }
 
         return ret;
@@ -283,11 +451,29 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
     public boolean isExpandable(Object node) {
         if (node.getClass() == FileRoot.class) {
             return (true);
+        } else if (node.getClass() == Placeholder.class) {
+            return (false);
         }
 
-        File f = (File) node;
+        return (isDirectory(node) && canRead(node));
+    }
+
+    /* attribute accessors that use the cached attributes where possible */
 
-        return (f.isDirectory() && f.canRead());
+    private static boolean isDirectory(Object node) {
+        return (node instanceof FileNode ? ((FileNode) node).isDirectoryNode() : ((File) node).isDirectory());
+    }
+
+    private static boolean canRead(Object node) {
+        return (node instanceof FileNode ? ((FileNode) node).readable : ((File) node).canRead());
+    }
+
+    private static long length(File f) {
+        return (f instanceof FileNode ? ((FileNode) f).length : f.length());
+    }
+
+    private static long lastModified(File f) {
+        return (f instanceof FileNode ? ((FileNode) f).lastModified : f.lastModified());
     }
 
     /**
@@ -320,7 +506,7 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
                 ret = f;
             } else if (property.equals(SIZE_COLUMN)) {
 
-                long len = f.length();
+                long len = length(f);
 
                 len = (len + KILOBYTE - 1) / KILOBYTE;
                 ret = len < KILOBYTE
@@ -329,12 +515,12 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
 
             } else if (property.equals(DATE_COLUMN)) {
 
-                date.setTime(f.lastModified());
+                date.setTime(lastModified(f));
                 ret = lm.formatDate(date, lm.MEDIUM);
 
             } else if (property.equals(TIME_COLUMN)) {
 
-                date.setTime(f.lastModified());
+                date.setTime(lastModified(f));
                 ret = lm.formatTime(date, lm.SHORT);
 
             } else {
@@ -402,4 +588,132 @@ public class FilesystemDataSource implements TreeDataSource<Object> {
         }
     }
 
+    /**
+     * A file node with attributes that were read when its parent directory
+     * was listed. The attributes are not refreshed until the parent
+     * directory is listed again.
+     */
+
+    public static final class FileNode extends File {
+
+        private final boolean directory;
+
+        private final boolean readable;
+
+        private final long length;
+
+        private final long lastModified;
+
+        FileNode(File parent, String name, boolean directory, boolean readable,
+                 long length, long lastModified) {
+            super(parent, name);
+
+            this.directory = directory;
+            this.readable = readable;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Determine if this node was a directory when it was listed.
+         */
+
+        public boolean isDirectoryNode() {
+            return (directory);
+        }
+    }
+
+    /**
+     * A placeholder child that is shown while a directory is being listed.
+     */
+
+    public static final class Placeholder {
+
+        private final File parent;
+
+        Placeholder(File parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Get the directory being listed.
+         */
+
+        public File getParent() {
+            return (parent);
+        }
+
+        /**
+         * Get the string representation of this object.
+         */
+
+        public String toString() {
+            return (LOADING);
+        }
+    }
+
+    /*
+     * A cached directory listing.
+     */
+
+    private static final class Listing {
+
+        final File directory;
+
+        final long mtime;
+
+        /* when the listing finished, 0 while it is running */
+
+        long listed = 0;
+
+        final Placeholder placeholder;
+
+        FileNode[] children = new FileNode[0];
+
+        boolean complete = false;
+
+        boolean publishPending = false;
+
+        /*
+         * A listing that replaces an expired one shows the expired children
+         * until the directory has been read again.
+         */
+
+        Listing(File directory, long mtime, Listing expired) {
+            this.directory = directory;
+            this.mtime = mtime;
+            placeholder = new Placeholder(directory);
+
+            if (expired != null) {
+                synchronized (expired) {
+                    children = expired.children;
+                    complete = expired.complete;
+                }
+            }
+        }
+
+        /*
+         * A listing expires once finished, when the directory has changed
+         * or the listing is older than the timeout.
+         */
+
+        synchronized boolean isExpired(long mtime, long now, long timeout) {
+            return (listed != 0 && (this.mtime != mtime || now - listed >= timeout));
+        }
+
+        synchronized boolean isComplete() {
+            return (complete);
+        }
+
+        synchronized Object[] getChildren() {
+            if (complete) {
+                return (children);
+            }
+
+            Object[] list = new Object[children.length + 1];
+            list[0] = placeholder;
+            System.arraycopy(children, 0, list, 1, children.length);
+            return (list);
+        }
+    }
 }
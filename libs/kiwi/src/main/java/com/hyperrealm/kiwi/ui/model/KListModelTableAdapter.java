@@ -20,6 +20,7 @@
 package com.hyperrealm.kiwi.ui.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
@@ -80,23 +81,34 @@ public class KListModelTableAdapter<T> extends KListModelAdapter<T> implements T
 
     public void setListModel(KListModel<T> model) {
         super.setListModel(model);
+        readColumns();
+    }
+
+    /* Read the columns from the model; returns true if they have changed.
+     */
+
+    private boolean readColumns() {
+        String[] names = DEFAULT_COLUMN_NAMES;
+        Class[] types = DEFAULT_COLUMN_TYPES;
 
         if (model != null) {
             int cols = model.getFieldCount();
-            columnNames = new String[cols];
-            columnTypes = new Class[cols];
+            names = new String[cols];
+            types = new Class[cols];
 
             for (int i = 0; i < cols; i++) {
-                columnNames[i] = model.getFieldLabel(i);
-                columnTypes[i] = model.getFieldType(i);
+                names[i] = model.getFieldLabel(i);
+                types[i] = model.getFieldType(i);
             }
-
-            columnsAvailable = true;
-        } else {
-            columnNames = DEFAULT_COLUMN_NAMES;
-            columnTypes = DEFAULT_COLUMN_TYPES;
-            columnsAvailable = false;
         }
+
+        boolean changed = !Arrays.equals(names, columnNames) || !Arrays.equals(types, columnTypes);
+
+        columnNames = names;
+        columnTypes = types;
+        columnsAvailable = (model != null);
+
+        return (changed);
     }
 
     /* Fire table events.
@@ -145,7 +157,28 @@ public class KListModelTableAdapter<T> extends KListModelAdapter<T> implements T
      */
 
     public void dataChanged(KListModelEvent evt) {
-        fireModelChangedEvent();
+        if (readColumns()) {
+            fireTableStructureChanged();
+        } else {
+            fireModelChangedEvent();
+        }
+    }
+
+    /* Fire a table event for a change in the columns of the model, such as
+     * a model that learns its columns after it has been created.
+     */
+
+    private void fireTableStructureChanged() {
+        TableModelEvent evt = null;
+
+        synchronized (listeners) {
+            for (TableModelListener listener : listeners) {
+                if (evt == null) {
+                    evt = new TableModelEvent(this, TableModelEvent.HEADER_ROW);
+                }
+                listener.tableChanged(evt);
+            }
+        }
     }
 
     /* implementation of ListModelAdapter */
@@ -0,0 +1,691 @@
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+package com.hyperrealm.kiwi.ui.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+
+import com.hyperrealm.kiwi.event.KListModelListener;
+import com.hyperrealm.kiwi.event.KListModelSupport;
+import com.hyperrealm.kiwi.util.LRUCache;
+import com.hyperrealm.kiwi.util.LocaleData;
+import com.hyperrealm.kiwi.util.LocaleManager;
+
+/**
+ * An implementation of <code>KListModel</code> for very large, read-only
+ * lists. Only the item count is known up front; the items themselves are
+ * fetched from a <code>PagedListDataSource</code> one page at a time on a
+ * background executor and kept in a cache with a fixed number of pages, so
+ * memory use is bounded regardless of the number of items.
+ * <p>
+ * An item that is not resident is reported as <code>null</code> and its
+ * page is requested; once the page arrives an <i>items changed</i> event is
+ * fired for exactly the rows of that page. Changes in the item count are
+ * likewise reported as <i>items added</i> or <i>items removed</i> events for
+ * the affected range only, never as a <i>data changed</i> event.
+ * <p>
+ * The column names and types are fetched from the source on the background
+ * executor together with the first item count, and a <i>data changed</i>
+ * event is fired when they arrive; until then the model has a single field.
+ * They can also be passed to the constructor, in which case the source is
+ * not asked for them.
+ * <p>
+ * A view should call <code>prefetch()</code> with its visible range of rows
+ * whenever it scrolls; <code>KTable</code> does this automatically for a
+ * paged model wrapped in a <code>KListModelTableAdapter</code>. Pages that
+ * fall out of the prefetch window before their fetch starts are skipped.
+ * <p>
+ * Like the Swing models, this model must only be accessed on the event
+ * dispatch thread.
+ *
+ * @param <T>
+ * @author Anton Troshin
+ * @see com.hyperrealm.kiwi.ui.model.PagedListDataSource
+ * @see com.hyperrealm.kiwi.ui.model.KListModelTableAdapter
+ */
+
+public class PagedKListModel<T> implements KListModel<T> {
+
+    /**
+     * The default number of items in a page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 256;
+
+    /**
+     * The default maximum number of resident pages.
+     */
+    public static final int DEFAULT_MAX_PAGES = 32;
+
+    private static final int MIN_PAGES = 4;
+
+    private static final int PREFETCH_PAGES = 1;
+
+    private static final String LOADING;
+
+    private static ExecutorService defaultExecutor = null;
+
+    static {
+        LocaleManager lm = LocaleManager.getDefault();
+        LocaleData loc = lm.getLocaleData("KiwiMisc");
+
+        LOADING = loc.getMessage("kiwi.label.loading");
+    }
+
+    /**
+     * The data source for this model.
+     */
+    protected PagedListDataSource<T> source;
+
+    /**
+     * The support object for firing <code>KListModelEvent</code>s.
+     */
+    protected KListModelSupport support;
+
+    private final int pageSize;
+
+    private final int maxPages;
+
+    private final ExecutorService executor;
+
+    private final LRUCache<Integer, List<T>> pages;
+
+    private final Set<Integer> pending = new HashSet<>();
+
+    private String[] columnNames;
+
+    private Class<?>[] columnTypes;
+
+    private boolean columnsKnown = false;
+
+    private int itemCount = 0;
+
+    /* bumped by reload() to discard fetches that are in flight */
+
+    private volatile int generation = 0;
+
+    /* the pages a view currently wants, read by the fetch tasks */
+
+    private volatile int wantedFirst = 0;
+
+    private volatile int wantedLast = Integer.MAX_VALUE;
+
+    /**
+     * Construct a new <code>PagedKListModel</code> with the given data source
+     * and the default page size and cache size.
+     *
+     * @param source The data source.
+     */
+
+    public PagedKListModel(PagedListDataSource<T> source) {
+        this(source, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, null);
+    }
+
+    /**
+     * Construct a new <code>PagedKListModel</code>.
+     *
+     * @param source   The data source.
+     * @param pageSize The number of items in a page.
+     * @param maxPages The maximum number of pages to keep in memory. This
+     *                 should be well above the number of pages a view shows at
+     *                 once.
+     * @param executor The executor to fetch pages on, or <code>null</code> to
+     *                 use a shared default executor.
+     */
+
+    public PagedKListModel(PagedListDataSource<T> source, int pageSize, int maxPages,
+                           ExecutorService executor) {
+        this.source = source;
+        this.pageSize = Math.max(pageSize, 1);
+        this.maxPages = Math.max(maxPages, MIN_PAGES);
+        this.executor = (executor == null) ? getDefaultExecutor() : executor;
+
+        support = new KListModelSupport(this);
+        pages = new LRUCache<>(this.maxPages + 1, this.maxPages);
+
+        reload();
+    }
+
+    /**
+     * Construct a new <code>PagedKListModel</code> with the given columns.
+     * The data source is not asked for its column names and types.
+     *
+     * @param source      The data source.
+     * @param columnNames The names of the columns, which are also the
+     *                    properties read from the data source.
+     * @param columnTypes The types of the columns.
+     * @param pageSize    The number of items in a page.
+     * @param maxPages    The maximum number of pages to keep in memory.
+     * @param executor    The executor to fetch pages on, or <code>null</code>
+     *                    to use a shared default executor.
+     */
+
+    public PagedKListModel(PagedListDataSource<T> source, String[] columnNames,
+                           Class<?>[] columnTypes, int pageSize, int maxPages,
+                           ExecutorService executor) {
+        this.source = source;
+        this.pageSize = Math.max(pageSize, 1);
+        this.maxPages = Math.max(maxPages, MIN_PAGES);
+        this.executor = (executor == null) ? getDefaultExecutor() : executor;
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+
+        columnsKnown = true;
+        support = new KListModelSupport(this);
+        pages = new LRUCache<>(this.maxPages + 1, this.maxPages);
+
+        reload();
+    }
+
+    /**
+     * Get the number of items in a page.
+     *
+     * @return The page size.
+     */
+
+    public int getPageSize() {
+        return (pageSize);
+    }
+
+    /**
+     * Get the maximum number of pages kept in memory.
+     *
+     * @return The maximum number of pages.
+     */
+
+    public int getMaxPages() {
+        return (maxPages);
+    }
+
+    /**
+     * Get the number of pages currently in memory.
+     *
+     * @return The number of resident pages.
+     */
+
+    public int getResidentPageCount() {
+        return (pages.size());
+    }
+
+    /**
+     * Discard all resident pages and fetch the item count again. The rows
+     * that are still in range are reported as changed and are fetched again
+     * when they are next displayed.
+     */
+
+    public void reload() {
+        generation++;
+        pages.clear();
+        pending.clear();
+
+        fetchItemCount(true);
+    }
+
+    /**
+     * Fetch the item count again, keeping the resident pages. This is
+     * intended for sources that only grow or shrink at the end, such as a
+     * log; new items are reported with an <i>items added</i> event.
+     */
+
+    public void refreshItemCount() {
+        fetchItemCount(false);
+    }
+
+    /**
+     * Request the pages that cover the given range of items, plus a page on
+     * either side of it. Pages outside of this window whose fetch has not
+     * started yet are skipped.
+     *
+     * @param first The index of the first visible item.
+     * @param last  The index of the last visible item.
+     */
+
+    public void prefetch(int first, int last) {
+        if (itemCount == 0 || last < first) {
+            return;
+        }
+
+        int lastPage = (itemCount - 1) / pageSize;
+        int visibleFirst = Math.max(0, Math.min(first / pageSize, lastPage));
+        int visibleLast = Math.max(visibleFirst, Math.min(last / pageSize, lastPage));
+
+        // never ask for more pages than the cache can hold
+
+        visibleLast = Math.min(visibleLast, visibleFirst + maxPages - 1 - 2 * PREFETCH_PAGES);
+
+        int windowFirst = Math.max(0, visibleFirst - PREFETCH_PAGES);
+        int windowLast = Math.min(lastPage, visibleLast + PREFETCH_PAGES);
+
+        wantedFirst = windowFirst;
+        wantedLast = windowLast;
+
+        // visible pages first, then the ones below and above
+
+        for (int page = visibleFirst; page <= visibleLast; page++) {
+            ensurePage(page);
+        }
+        for (int page = visibleLast + 1; page <= windowLast; page++) {
+            ensurePage(page);
+        }
+        for (int page = visibleFirst - 1; page >= windowFirst; page--) {
+            ensurePage(page);
+        }
+    }
+
+    /* implementation of KListModel */
+
+    /*
+     */
+
+    public boolean isEmpty() {
+        return (itemCount == 0);
+    }
+
+    /**
+     * This model is read-only; this method throws an
+     * <code>ImmutableModelException</code>.
+     */
+
+    public void clear() {
+        throw (new ImmutableModelException());
+    }
+
+    /*
+     */
+
+    public int getItemCount() {
+        return (itemCount);
+    }
+
+    /**
+     * Get an iterator over the items that are currently resident, in index
+     * order. Items that have not been fetched are not included.
+     */
+
+    public Iterator<T> iterator() {
+        List<T> items = new ArrayList<>();
+
+        for (Map.Entry<Integer, List<T>> entry : new TreeMap<>(pages).entrySet()) {
+            int start = entry.getKey() * pageSize;
+            List<T> page = entry.getValue();
+            items.addAll(page.subList(0, Math.max(0, Math.min(page.size(), itemCount - start))));
+        }
+
+        return (items.iterator());
+    }
+
+    /**
+     * Get the item at the given index. If the item is not resident,
+     * its page is requested and <code>null</code> is returned.
+     */
+
+    public T getItemAt(int index) {
+        if (index < 0 || index >= itemCount) {
+            throw (new IndexOutOfBoundsException("Index: " + index + ", Size: " + itemCount));
+        }
+
+        int page = index / pageSize;
+        int offset = index - page * pageSize;
+        List<T> items = pages.get(page);
+
+        if (items == null || offset >= items.size()) {
+            // a short page may have grown since it was fetched
+            requestPage(page, false);
+            return (null);
+        }
+
+        return (items.get(offset));
+    }
+
+    /**
+     * Get the index of an item. Only resident items are searched.
+     */
+
+    public int indexOf(T item) {
+        for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+            int index = entry.getValue().indexOf(item);
+            if (index >= 0) {
+                return (entry.getKey() * pageSize + index);
+            }
+        }
+
+        return (-1);
+    }
+
+    /**
+     *
+     */
+
+    public void addItem(T item) {
+        throw (new ImmutableModelException());
+    }
+
+    /**
+     *
+     */
+
+    public void insertItemAt(T item, int index) {
+        throw (new ImmutableModelException());
+    }
+
+    /**
+     *
+     */
+
+    public void removeItemAt(int index) {
+        throw (new ImmutableModelException());
+    }
+
+    /**
+     *
+     */
+
+    public void removeItem(T item) {
+        throw (new ImmutableModelException());
+    }
+
+    /**
+     * Fetch the page that contains the given item again.
+     */
+
+    public void updateItem(T item) {
+        int index = indexOf(item);
+        if (index >= 0) {
+            updateItemAt(index);
+        }
+    }
+
+    /**
+     * Fetch the page that contains the given item again.
+     */
+
+    public void updateItem(T item, int field) {
+        updateItem(item);
+    }
+
+    /**
+     * Fetch the page that contains the item at the given index again. The
+     * stale items remain visible until the page arrives.
+     */
+
+    public void updateItemAt(int index) {
+        if (index >= 0 && index < itemCount) {
+            requestPage(index / pageSize, false);
+        }
+    }
+
+    /**
+     * Fetch the page that contains the item at the given index again.
+     */
+
+    public void updateItemAt(int index, int field) {
+        updateItemAt(index);
+    }
+
+    /*
+     */
+
+    public void addListModelListener(KListModelListener listener) {
+        support.addListModelListener(listener);
+    }
+
+    /*
+     */
+
+    public void removeListModelListener(KListModelListener listener) {
+        support.removeListModelListener(listener);
+    }
+
+    /**
+     * Get the label for an item. A placeholder label is returned for an item
+     * that has not been fetched yet.
+     */
+
+    public String getLabel(T item) {
+        if (item == null) {
+            return (LOADING);
+        }
+
+        String label = source.getLabel(item);
+
+        return (label == null ? item.toString() : label);
+    }
+
+    /*
+     */
+
+    public Icon getIcon(T item) {
+        return (item == null ? null : source.getIcon(item));
+    }
+
+    /*
+     */
+
+    public int getFieldCount() {
+        return (columnNames == null ? 1 : columnNames.length);
+    }
+
+    /*
+     */
+
+    public String getFieldLabel(int field) {
+        return (columnNames == null ? null : columnNames[field]);
+    }
+
+    /*
+     */
+
+    public Class getFieldType(int field) {
+        return (columnTypes == null ? Object.class : columnTypes[field]);
+    }
+
+    /**
+     * Get the value of a field. <code>null</code> is returned for every field
+     * of an item that has not been fetched yet.
+     */
+
+    public Object getField(T item, int field) {
+        if (item == null) {
+            return (null);
+        }
+
+        return (columnNames == null ? item : source.getValueForProperty(item, columnNames[field]));
+    }
+
+    /*
+     */
+
+    public void setField(T item, int field, Object value) {
+        throw (new ImmutableModelException());
+    }
+
+    /*
+     */
+
+    public boolean isFieldMutable(T item, int field) {
+        return (false);
+    }
+
+    /* internal code follows */
+
+    private void ensurePage(int page) {
+        if (pages.get(page) == null) {
+            requestPage(page, true);
+        }
+    }
+
+    /* a windowed request is skipped if the page has scrolled out of view
+     * by the time the fetch starts; a page that is being painted is not
+     */
+
+    private void requestPage(int page, boolean windowed) {
+        if (!pending.add(page)) {
+            return;
+        }
+
+        int gen = generation;
+
+        executor.execute(() -> {
+            if (gen != generation) {
+                return;
+            }
+
+            List<T> items = null;
+            if (!windowed || (page >= wantedFirst && page <= wantedLast)) {
+                try {
+                    items = source.getItems(page * pageSize, pageSize);
+                } catch (RuntimeException ignored) {
+                    // leave the rows empty; they are requested again when next shown
+                }
+            }
+
+            List<T> result = items;
+            SwingUtilities.invokeLater(() -> pageFetched(gen, page, result));
+        });
+    }
+
+    /* called on the EDT when a fetch completes or is skipped */
+
+    private void pageFetched(int gen, int page, List<T> items) {
+        if (gen != generation) {
+            return;
+        }
+
+        pending.remove(page);
+        if (items == null) {
+            return;
+        }
+
+        pages.put(page, new ArrayList<>(items));
+
+        int start = page * pageSize;
+        int end = Math.min(start + items.size(), itemCount) - 1;
+        if (end >= start) {
+            support.fireItemsChanged(start, end, -1);
+        }
+    }
+
+    /* the columns are fetched with the count until they are known */
+
+    private void fetchItemCount(boolean reloaded) {
+        int gen = generation;
+        boolean withColumns = !columnsKnown;
+
+        executor.execute(() -> {
+            if (gen != generation) {
+                return;
+            }
+
+            int count;
+            try {
+                count = Math.max(source.getItemCount(), 0);
+            } catch (RuntimeException ex) {
+                count = 0;
+            }
+
+            Columns columns = withColumns ? fetchColumns() : null;
+            int result = count;
+            SwingUtilities.invokeLater(() -> itemCountFetched(gen, result, reloaded, columns));
+        });
+    }
+
+    private Columns fetchColumns() {
+        try {
+            return (new Columns(
+                (String[]) source.getValueForProperty(null, ListDataSource.COLUMN_NAMES_PROPERTY),
+                (Class<?>[]) source.getValueForProperty(null, ListDataSource.COLUMN_TYPES_PROPERTY)));
+        } catch (RuntimeException ex) {
+            return (new Columns(null, null));
+        }
+    }
+
+    /* called on the EDT; reports the change in size as a range event, or
+     * the whole model as changed when the columns have arrived
+     */
+
+    private void itemCountFetched(int gen, int count, boolean reloaded, Columns columns) {
+        if (gen != generation) {
+            return;
+        }
+
+        int oldCount = itemCount;
+        itemCount = count;
+
+        if (columns != null) {
+            columnNames = columns.names;
+            columnTypes = columns.types;
+            columnsKnown = true;
+
+            int lastPage = (count + pageSize - 1) / pageSize;
+            pages.keySet().removeIf(page -> page >= lastPage);
+            support.fireDataChanged();
+            return;
+        }
+
+        if (count < oldCount) {
+            int lastPage = (count + pageSize - 1) / pageSize;
+            pages.keySet().removeIf(page -> page >= lastPage);
+            support.fireItemsRemoved(count, oldCount - 1);
+        } else if (count > oldCount) {
+            support.fireItemsAdded(oldCount, count - 1);
+        }
+
+        int kept = Math.min(oldCount, count);
+        if (reloaded && kept > 0) {
+            support.fireItemsChanged(0, kept - 1, -1);
+        }
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(2, r -> {
+                Thread thread = new Thread(r, "PagedKListModel");
+                thread.setDaemon(true);
+                return (thread);
+            });
+        }
+        return (defaultExecutor);
+    }
+
+    /*
+     * Column names and types fetched from the data source.
+     */
+
+    private static final class Columns {
+
+        final String[] names;
+
+        final Class<?>[] types;
+
+        Columns(String[] names, Class<?>[] types) {
+            this.names = names;
+            this.types = types;
+        }
+    }
+}
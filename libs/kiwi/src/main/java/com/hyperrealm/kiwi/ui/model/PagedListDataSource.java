@@ -0,0 +1,104 @@
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+package com.hyperrealm.kiwi.ui.model;
+
+import java.util.List;
+
+import javax.swing.Icon;
+
+/**
+ * An interface that defines a data source for <code>PagedKListModel</code>s.
+ * Unlike a <code>ListDataSource</code>, a paged data source is never asked
+ * for all of its items at once; items are requested one page at a time, so
+ * the source may be backed by a very large table, file or query result.
+ * <p>
+ * The model calls the methods on two threads:
+ * <ul>
+ * <li><code>getItemCount()</code>, <code>getItems()</code> and
+ * <code>getValueForProperty()</code> with a <code>null</code> item, which
+ * asks for the column names and types, are called on a background thread of
+ * the model's executor and may block.
+ * <li><code>getValueForProperty()</code> with an item, <code>getLabel()</code>
+ * and <code>getIcon()</code> are called on the event dispatch thread while
+ * the items are rendered, and must return at once, without querying the
+ * backing store.
+ * </ul>
+ * The model itself answers for its size and its pages on the event dispatch
+ * thread, from the count and the pages it has fetched.
+ *
+ * @param <T>
+ * @author Anton Troshin
+ * @see com.hyperrealm.kiwi.ui.model.PagedKListModel
+ */
+
+public interface PagedListDataSource<T> extends ModelProperties {
+    /**
+     * Get the total number of items in the data source. Called on a
+     * background thread.
+     *
+     * @return The item count.
+     */
+
+    int getItemCount();
+
+    /**
+     * Get a contiguous range of items from the data source. Called on a
+     * background thread.
+     *
+     * @param offset The index of the first item to get.
+     * @param count  The maximum number of items to get.
+     * @return A list of at most <code>count</code> items. A shorter list
+     * means the source has no items past the end of the returned range.
+     */
+
+    List<T> getItems(int offset, int count);
+
+    /**
+     * Get the value of an arbitrary property for a given item. Called on the
+     * event dispatch thread for an item, and on a background thread for the
+     * column properties, which are asked for with a <code>null</code> item.
+     *
+     * @param item     The item, or <code>null</code>.
+     * @param property The name of the property.
+     * @return The value of the specified property, or <code>null</code> if
+     * there is no value for this property.
+     */
+
+    Object getValueForProperty(T item, String property);
+
+    /**
+     * Get the label for an item. Called on the event dispatch thread.
+     *
+     * @param item The item.
+     * @return A label for the item.
+     */
+
+    String getLabel(T item);
+
+    /**
+     * Get the icon for an item. Called on the event dispatch thread.
+     *
+     * @param item The item.
+     * @return An icon for the item.
+     */
+
+    Icon getIcon(T item);
+
+}
@@ -99,7 +99,7 @@ public class ProxyTableModel extends AbstractTableModel
         return model.getColumnName(col);
     }
 
-    public Class getColumnClass(int col) {
+    public Class<?> getColumnClass(int col) {
         return model.getColumnClass(col);
     }
 
@@ -0,0 +1,400 @@
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+package com.hyperrealm.kiwi.ui.model;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.EventListenerList;
+
+import com.hyperrealm.kiwi.event.ChartModelEvent;
+import com.hyperrealm.kiwi.event.ChartModelListener;
+import com.hyperrealm.kiwi.ui.graph.Chart;
+import com.hyperrealm.kiwi.ui.graph.ChartValue;
+import com.hyperrealm.kiwi.ui.graph.DataSample;
+
+/**
+ * A <code>ChartModel</code> for live data, such as memory use or throughput
+ * sampled at regular intervals. The model keeps a fixed number of the most
+ * recent data samples in one primitive ring buffer per chart value; once it
+ * is full, every new sample replaces the oldest one. Appending a sample
+ * allocates no memory.
+ * <p>
+ * Samples may be appended from any thread. The appends are coalesced and
+ * published to the model on the next pass of the event dispatch thread,
+ * with a single <i>append</i> event that reports the number of samples
+ * appended and evicted, so a view can repaint only the newly exposed region.
+ * The index of a sample, its value and the sample count only change when the
+ * appends are published. A sample that is about to be evicted by the pending
+ * appends may however already show the values of a newer one.
+ * <p>
+ * The chart values are taken from the chart definition when the model is
+ * constructed. All other methods must be called on the event dispatch thread.
+ *
+ * @author Anton Troshin
+ * @see com.hyperrealm.kiwi.event.ChartModelEvent
+ */
+
+public class StreamingChartModel implements ChartModel {
+
+    private final Object lock = new Object();
+
+    private final EventListenerList listeners = new EventListenerList();
+
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    private final int capacity;
+
+    /* one ring of values per chart value, indexed by sample number modulo capacity */
+
+    private final double[][] rings;
+
+    /* sample numbers of the oldest sample and just past the newest one, guarded by lock */
+
+    private long first = 0;
+
+    private long end = 0;
+
+    private boolean flushScheduled = false;
+
+    /* the samples visible through the model, changed on the EDT only */
+
+    private long publishedFirst = 0;
+
+    private long publishedEnd = 0;
+
+    private final Runnable flusher = this::flush;
+
+    /**
+     * Construct a new <code>StreamingChartModel</code> for the specified chart
+     * definition, holding the maximum sample count of the chart.
+     *
+     * @param chart The chart definition.
+     */
+
+    public StreamingChartModel(Chart chart) {
+        this(chart, chart.getMaxSampleCount());
+    }
+
+    /**
+     * Construct a new <code>StreamingChartModel</code> for the specified chart
+     * definition.
+     *
+     * @param chart    The chart definition.
+     * @param capacity The maximum number of data samples in the model.
+     */
+
+    public StreamingChartModel(Chart chart, int capacity) {
+        if (capacity < 1) {
+            throw (new IllegalArgumentException("Capacity must be positive"));
+        }
+
+        this.capacity = capacity;
+
+        Iterator<ChartValue> viter = chart.getValues();
+        while (viter.hasNext()) {
+            columns.put(viter.next().getName(), columns.size());
+        }
+        rings = new double[columns.size()][capacity];
+    }
+
+    /**
+     * Get the maximum number of data samples in this model.
+     *
+     * @return The capacity.
+     */
+
+    public int getCapacity() {
+        return (capacity);
+    }
+
+    /**
+     * Append a data sample with a value for the first chart value only; any
+     * other chart values have no value in this sample. This method may be
+     * called from any thread.
+     *
+     * @param value The value.
+     */
+
+    public void append(double value) {
+        synchronized (lock) {
+            int slot = nextSlot();
+            for (int c = 0; c < rings.length; c++) {
+                rings[c][slot] = (c == 0) ? value : Double.NaN;
+            }
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Append a data sample. This method may be called from any thread; the
+     * values are copied, so the array may be reused for the next sample.
+     *
+     * @param values The values, one for each chart value in the order of the
+     *               chart definition. <code>NaN</code> stands for no value.
+     */
+
+    public void append(double[] values) {
+        synchronized (lock) {
+            int slot = nextSlot();
+            for (int c = 0; c < rings.length; c++) {
+                rings[c][slot] = (c < values.length) ? values[c] : Double.NaN;
+            }
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Add a data sample to this model. The values are copied from the sample;
+     * values which are not numbers are treated as no value.
+     *
+     * @param ds The data sample to add.
+     */
+
+    public void addDataSample(DataSample ds) {
+        synchronized (lock) {
+            int slot = nextSlot();
+            for (Map.Entry<String, Integer> column : columns.entrySet()) {
+                Object o = ds.getValue(column.getKey());
+                rings[column.getValue()][slot] = (o instanceof Number) ? ((Number) o).doubleValue() : Double.NaN;
+            }
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Publish the pending appends and notify the listeners. This method is
+     * normally invoked automatically and must be called on the event dispatch
+     * thread.
+     */
+
+    public void flush() {
+        long newFirst;
+        long newEnd;
+
+        synchronized (lock) {
+            flushScheduled = false;
+            newFirst = first;
+            newEnd = end;
+        }
+
+        if (newFirst == publishedFirst && newEnd == publishedEnd) {
+            return;
+        }
+
+        // samples appended and evicted between two flushes are never reported
+        int removed = (int) (Math.min(newFirst, publishedEnd) - publishedFirst);
+        int appended = (int) (newEnd - Math.max(newFirst, publishedEnd));
+        publishedFirst = newFirst;
+        publishedEnd = newEnd;
+
+        fireChartDataChanged(new ChartModelEvent(this, appended, removed));
+    }
+
+    /**
+     * Get the number of data samples in this model.
+     *
+     * @return The number of data samples.
+     */
+
+    public int getDataSampleCount() {
+        return ((int) (publishedEnd - publishedFirst));
+    }
+
+    /**
+     * Get the value of a chart value in a data sample.
+     *
+     * @param index The index of the data sample.
+     * @param var   The chart value name.
+     * @return The value, or <code>NaN</code> if the sample has no value for
+     * this chart value.
+     */
+
+    public double getValue(int index, String var) {
+        Integer column = columns.get(var);
+        if (column == null || index < 0 || index >= getDataSampleCount()) {
+            return (Double.NaN);
+        }
+
+        synchronized (lock) {
+            return (rings[column][(int) ((publishedFirst + index) % capacity)]);
+        }
+    }
+
+    /**
+     * Get the data sample at the specified index.
+     *
+     * @param index The index of the desired data sample.
+     * @return The <code>DataSample</code> at the specified index, or
+     * <code>null</code> if there is no data sample at that index.
+     */
+
+    public DataSample getDataSample(int index) {
+        if (index < 0 || index >= getDataSampleCount()) {
+            return (null);
+        }
+
+        return (new Sample(index));
+    }
+
+    /**
+     * Get an iterator to the data samples in this model.
+     */
+
+    public Iterator<DataSample> iterator() {
+        return (new Iterator<DataSample>() {
+            private int index = 0;
+
+            public boolean hasNext() {
+                return (index < getDataSampleCount());
+            }
+
+            public DataSample next() {
+                if (!hasNext()) {
+                    throw (new NoSuchElementException());
+                }
+                return (new Sample(index++));
+            }
+        });
+    }
+
+    /**
+     * Remove the data sample at the specified index from this model. Any
+     * pending appends are published first.
+     *
+     * @param index The index of the data sample to remove.
+     */
+
+    public void removeDataSample(int index) {
+        synchronized (lock) {
+            publishedFirst = first;
+            publishedEnd = end;
+            if (index < 0 || index >= end - first) {
+                return;
+            }
+
+            // move the older samples up by one and drop the oldest
+
+            for (long n = first + index; n > first; n--) {
+                int to = (int) (n % capacity);
+                int from = (int) ((n - 1) % capacity);
+                for (double[] ring : rings) {
+                    ring[to] = ring[from];
+                }
+            }
+            first++;
+            publishedFirst = first;
+        }
+
+        fireChartDataChanged(new ChartModelEvent(this));
+    }
+
+    /**
+     * Remove all data samples from this model, including any pending appends.
+     */
+
+    public void clear() {
+        synchronized (lock) {
+            first = end;
+            publishedFirst = end;
+            publishedEnd = end;
+        }
+
+        fireChartDataChanged(new ChartModelEvent(this));
+    }
+
+    /**
+     * Add a <code>ChartModelListener</code> to this model's list of listeners.
+     *
+     * @param listener The listener to add.
+     */
+
+    public void addChartModelListener(ChartModelListener listener) {
+        listeners.add(ChartModelListener.class, listener);
+    }
+
+    /**
+     * Remove a <code>ChartModelListener</code> from this model's list of
+     * listeners.
+     *
+     * @param listener The listener to remove.
+     */
+
+    public void removeChartModelListener(ChartModelListener listener) {
+        listeners.remove(ChartModelListener.class, listener);
+    }
+
+    /**
+     * Fire a chart model event.
+     *
+     * @param event The event.
+     */
+
+    protected void fireChartDataChanged(ChartModelEvent event) {
+        Object[] list = listeners.getListenerList();
+
+        for (int i = list.length - 2; i >= 0; i -= 2) {
+            if (list[i] == ChartModelListener.class) {
+                ((ChartModelListener) list[i + 1]).chartDataChanged(event);
+            }
+        }
+    }
+
+    /* internal code follows */
+
+    /* reserve the slot for a new sample, evicting the oldest one if full; called with the lock held */
+
+    private int nextSlot() {
+        int slot = (int) (end % capacity);
+        end++;
+        if (end - first > capacity) {
+            first++;
+        }
+        return (slot);
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(flusher);
+        }
+    }
+
+    /*
+     * A view of one data sample in the rings.
+     */
+
+    private class Sample implements DataSample {
+
+        private final int index;
+
+        Sample(int index) {
+            this.index = index;
+        }
+
+        public Object getValue(String var) {
+            double value = StreamingChartModel.this.getValue(index, var);
+            return (Double.isNaN(value) ? null : value);
+        }
+    }
+}
@@ -0,0 +1,547 @@
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+package com.hyperrealm.kiwi.ui.model;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.swing.table.TableModel;
+
+/**
+ * The sorting engine behind {@link TableSorter}. The values of every sorted
+ * column are read from the model exactly once and stored in a key array:
+ * a <code>long[]</code> for integral numbers, booleans and dates, a
+ * <code>double[]</code> for other numbers and an array of
+ * <code>Comparable</code> values for everything else. Row indexes are then sorted against the key arrays
+ * only, with a stable merge sort that runs in parallel for large tables.
+ * <p>
+ * A model may change a value object it has returned, or return the same
+ * holder for several cells, so mutable <code>Comparable</code> values are
+ * copied when they are stored. A column with mutable values that cannot be
+ * copied is compared on the model's current values instead, and the table
+ * is then sorted on the calling thread only.
+ * <p>
+ * Null values are considered less than any other value. The ordering is
+ * the same as the one the original <code>TableSorter</code> comparison
+ * produced.
+ * <p>
+ * The key arrays must be extracted on the thread that owns the model
+ * (normally the event dispatch thread); only the comparisons run on the
+ * worker threads.
+ *
+ * @author Anton Troshin
+ * @see com.hyperrealm.kiwi.ui.model.TableSorter
+ */
+
+class TableSortEngine {
+
+    /**
+     * Tables with at least this many rows are sorted in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 8192;
+
+    private static final int INSERTION_SORT_THRESHOLD = 12;
+
+    private static final int SORT_DELTA = 4;
+
+    private static final ColumnKeys[] NO_KEYS = new ColumnKeys[0];
+
+    private final TableModel model;
+
+    private ColumnKeys[] keys = NO_KEYS;
+
+    private boolean ascending = true;
+
+    private int size = 0;
+
+    TableSortEngine(TableModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Extract the keys for the given sort columns from the model.
+     *
+     * @param columns   The model columns to sort on, in order of precedence.
+     * @param ascending The sort direction.
+     */
+
+    void setSortColumns(int[] columns, boolean ascending) {
+        this.ascending = ascending;
+        size = model.getRowCount();
+        keys = new ColumnKeys[columns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            keys[i] = createKeys(model.getColumnClass(columns[i]), columns[i], size);
+            keys[i].load(model, 0, size);
+        }
+    }
+
+    /**
+     * Determine if keys have been extracted for the given number of rows.
+     */
+
+    boolean isValid(int rowCount) {
+        return (keys.length > 0 && size == rowCount);
+    }
+
+    /**
+     * Drop all extracted keys.
+     */
+
+    void invalidate() {
+        keys = NO_KEYS;
+        size = 0;
+    }
+
+    /**
+     * Sort the rows of the model.
+     *
+     * @return A new array of model row indexes, in sorted order.
+     */
+
+    int[] sort() {
+        int[] to = new int[size];
+        for (int i = 0; i < size; i++) {
+            to[i] = i;
+        }
+
+        int[] from = to.clone();
+        if (size >= PARALLEL_THRESHOLD && !readsModel()) {
+            ForkJoinPool.commonPool().invoke(new SortTask(from, to, 0, size));
+        } else {
+            mergeSort(from, to, 0, size);
+        }
+
+        return (to);
+    }
+
+    /**
+     * Extract the keys for rows just inserted into the model. The rows must
+     * form a contiguous range; keys of the following rows are shifted.
+     *
+     * @param first The first inserted row.
+     * @param last  The last inserted row.
+     */
+
+    void rowsInserted(int first, int last) {
+        int count = last - first + 1;
+
+        for (ColumnKeys k : keys) {
+            k.insert(first, count, size);
+            k.load(model, first, last + 1);
+        }
+
+        size += count;
+    }
+
+    /**
+     * Extract the keys again for rows whose values have changed in the model.
+     *
+     * @param first The first changed row.
+     * @param last  The last changed row.
+     */
+
+    void rowsUpdated(int first, int last) {
+        for (ColumnKeys k : keys) {
+            k.load(model, first, last + 1);
+        }
+    }
+
+    /**
+     * Determine if the given model column is one of the sort columns.
+     */
+
+    boolean isSortColumn(int column) {
+        for (ColumnKeys k : keys) {
+            if (k.column == column) {
+                return (true);
+            }
+        }
+
+        return (false);
+    }
+
+    /**
+     * Find the position at which a row should be inserted into a sorted
+     * order. Rows that compare equal to the new row stay in front of it.
+     *
+     * @param order  The sorted model row indexes.
+     * @param length The number of valid entries in <code>order</code>.
+     * @param row    The model row to insert.
+     * @return The insertion position.
+     */
+
+    int insertionPoint(int[] order, int length, int row) {
+        int lo = 0;
+        int hi = length;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(order[mid], row) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return (lo);
+    }
+
+    /**
+     * Compare two model rows by the sort columns.
+     */
+
+    int compare(int row1, int row2) {
+        for (ColumnKeys k : keys) {
+            int result = k.compare(row1, row2);
+            if (result != 0) {
+                return (ascending ? result : -result);
+            }
+        }
+
+        return (0);
+    }
+
+    /* internal code follows */
+
+    private boolean readsModel() {
+        for (ColumnKeys k : keys) {
+            if (k instanceof ObjectKeys && ((ObjectKeys) k).live) {
+                return (true);
+            }
+        }
+
+        return (false);
+    }
+
+    // A stable merge sort that shuttles the values between the two arrays
+    // rather than copying them back; both arrays must contain the same values
+    // in [low, high) on entry, the sorted result ends up in "to".
+
+    private void mergeSort(int[] from, int[] to, int low, int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            insertionSort(to, low, high);
+            return;
+        }
+
+        int middle = (low + high) >>> 1;
+        mergeSort(to, from, low, middle);
+        mergeSort(to, from, middle, high);
+        merge(from, to, low, middle, high);
+    }
+
+    private void merge(int[] from, int[] to, int low, int middle, int high) {
+
+        // If the halves are already ordered, no further comparisons are needed
+        // and the range can just be copied.
+
+        if (high - low >= SORT_DELTA && compare(from[middle - 1], from[middle]) <= 0) {
+            System.arraycopy(from, low, to, low, high - low);
+            return;
+        }
+
+        int p = low;
+        int q = middle;
+
+        for (int i = low; i < high; i++) {
+            if (q >= high || (p < middle && compare(from[p], from[q]) <= 0)) {
+                to[i] = from[p++];
+            } else {
+                to[i] = from[q++];
+            }
+        }
+    }
+
+    private void insertionSort(int[] a, int low, int high) {
+        for (int i = low + 1; i < high; i++) {
+            int row = a[i];
+            int j = i - 1;
+            while (j >= low && compare(a[j], row) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = row;
+        }
+    }
+
+    private ColumnKeys createKeys(Class<?> type, int column, int capacity) {
+        if (type == Integer.class || type == Long.class || type == Short.class
+            || type == Byte.class) {
+            return (new LongKeys(column, capacity, LongKeys.NUMBER));
+        } else if (type == Boolean.class) {
+            return (new LongKeys(column, capacity, LongKeys.BOOLEAN));
+        } else if (type == Date.class) {
+            return (new LongKeys(column, capacity, LongKeys.DATE));
+        } else if (type != null && type.getSuperclass() == Number.class) {
+            return (new DoubleKeys(column, capacity));
+        }
+        return (new ObjectKeys(model, column, capacity));
+    }
+
+    /*
+     */
+
+    private class SortTask extends RecursiveAction {
+
+        private final int[] from;
+
+        private final int[] to;
+
+        private final int low;
+
+        private final int high;
+
+        SortTask(int[] from, int[] to, int low, int high) {
+            this.from = from;
+            this.to = to;
+            this.low = low;
+            this.high = high;
+        }
+
+        protected void compute() {
+            if (high - low < PARALLEL_THRESHOLD) {
+                mergeSort(from, to, low, high);
+                return;
+            }
+
+            int middle = (low + high) >>> 1;
+            invokeAll(new SortTask(to, from, low, middle),
+                new SortTask(to, from, middle, high));
+            merge(from, to, low, middle, high);
+        }
+    }
+
+    /*
+     * Keys of one column, indexed by model row.
+     */
+
+    private abstract static class ColumnKeys {
+
+        final int column;
+
+        boolean[] nulls;
+
+        ColumnKeys(int column, int capacity) {
+            this.column = column;
+            nulls = new boolean[capacity];
+        }
+
+        abstract int compareValues(int row1, int row2);
+
+        abstract void set(int row, Object value);
+
+        abstract void shift(int first, int count, int size);
+
+        final int compare(int row1, int row2) {
+            boolean n1 = nulls[row1];
+            boolean n2 = nulls[row2];
+
+            if (n1 || n2) {
+                // Define null less than everything.
+                return (n1 == n2 ? 0 : (n1 ? -1 : 1));
+            }
+            return (compareValues(row1, row2));
+        }
+
+        final void load(TableModel model, int fromRow, int toRow) {
+            for (int row = fromRow; row < toRow; row++) {
+                Object value = model.getValueAt(row, column);
+                nulls[row] = (value == null);
+                if (value != null) {
+                    set(row, value);
+                }
+            }
+        }
+
+        final void insert(int first, int count, int size) {
+            nulls = grow(nulls, first, count, size);
+            shift(first, count, size);
+        }
+
+        static boolean[] grow(boolean[] a, int first, int count, int size) {
+            boolean[] b = new boolean[size + count];
+            System.arraycopy(a, 0, b, 0, first);
+            System.arraycopy(a, first, b, first + count, size - first);
+            return (b);
+        }
+    }
+
+    private static final class LongKeys extends ColumnKeys {
+
+        static final int NUMBER = 0;
+
+        static final int BOOLEAN = 1;
+
+        static final int DATE = 2;
+
+        private final int kind;
+
+        private long[] values;
+
+        LongKeys(int column, int capacity, int kind) {
+            super(column, capacity);
+            this.kind = kind;
+            values = new long[capacity];
+        }
+
+        int compareValues(int row1, int row2) {
+            return (Long.compare(values[row1], values[row2]));
+        }
+
+        void set(int row, Object value) {
+            switch (kind) {
+                case BOOLEAN:
+                    values[row] = ((Boolean) value) ? 1 : 0;
+                    break;
+                case DATE:
+                    values[row] = ((Date) value).getTime();
+                    break;
+                default:
+                    values[row] = ((Number) value).longValue();
+                    break;
+            }
+        }
+
+        void shift(int first, int count, int size) {
+            long[] b = new long[size + count];
+            System.arraycopy(values, 0, b, 0, first);
+            System.arraycopy(values, first, b, first + count, size - first);
+            values = b;
+        }
+    }
+
+    private static final class DoubleKeys extends ColumnKeys {
+
+        private double[] values;
+
+        DoubleKeys(int column, int capacity) {
+            super(column, capacity);
+            values = new double[capacity];
+        }
+
+        int compareValues(int row1, int row2) {
+            return (Double.compare(values[row1], values[row2]));
+        }
+
+        void set(int row, Object value) {
+            values[row] = ((Number) value).doubleValue();
+        }
+
+        void shift(int first, int count, int size) {
+            double[] b = new double[size + count];
+            System.arraycopy(values, 0, b, 0, first);
+            System.arraycopy(values, first, b, first + count, size - first);
+            values = b;
+        }
+    }
+
+    private static final class ObjectKeys extends ColumnKeys {
+
+        // values that are not Comparable are stored as their string form
+
+        private final TableModel model;
+
+        private Object[] values;
+
+        // set once a value cannot be copied; the column is then compared
+        // on the values in the model
+
+        boolean live = false;
+
+        ObjectKeys(TableModel model, int column, int capacity) {
+            super(column, capacity);
+            this.model = model;
+            values = new Object[capacity];
+        }
+
+        @SuppressWarnings("unchecked")
+        int compareValues(int row1, int row2) {
+            Object v1 = values[row1];
+            Object v2 = values[row2];
+
+            if (live) {
+                v1 = key(model.getValueAt(row1, column));
+                v2 = key(model.getValueAt(row2, column));
+                if (v1 == null || v2 == null) {
+                    return (v1 == v2 ? 0 : (v1 == null ? -1 : 1));
+                }
+            }
+            return (((Comparable<Object>) v1).compareTo(v2));
+        }
+
+        void set(int row, Object value) {
+            Object key = key(value);
+            Object copy = copy(key);
+            if (copy == null) {
+                live = true;
+                copy = key;
+            }
+            values[row] = copy;
+        }
+
+        void shift(int first, int count, int size) {
+            Object[] b = new Object[size + count];
+            System.arraycopy(values, 0, b, 0, first);
+            System.arraycopy(values, first, b, first + count, size - first);
+            values = b;
+        }
+
+        private static Object key(Object value) {
+            return ((value == null || value instanceof Comparable<?>) ? value : value.toString());
+        }
+
+        /*
+         * Copy a mutable value, so that it does not change once stored.
+         * Returns null if the value cannot be copied.
+         */
+
+        private static Object copy(Object value) {
+            if (value instanceof String || value instanceof Boolean || value instanceof Character
+                || value instanceof Enum<?> || value instanceof UUID || isImmutableNumber(value)
+                || value.getClass().getName().startsWith("java.time.")) {
+                return (value);
+            }
+            if (value instanceof Date) {
+                return (((Date) value).clone());
+            }
+            if (value instanceof Cloneable) {
+                try {
+                    Method clone = value.getClass().getMethod("clone");
+                    return (clone.invoke(value));
+                } catch (ReflectiveOperationException | RuntimeException ex) {
+                    // no public clone() method
+                }
+            }
+            return (null);
+        }
+
+        private static boolean isImmutableNumber(Object value) {
+            Class<?> type = value.getClass();
+            return (type == Integer.class || type == Long.class || type == Double.class
+                || type == Float.class || type == Short.class || type == Byte.class
+                || type == BigInteger.class || type == BigDecimal.class);
+        }
+    }
+}
@@ -43,7 +43,7 @@ import java.awt.Point;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 
 import javax.swing.JTable;
 import javax.swing.event.TableModelEvent;
@@ -52,7 +52,6 @@ import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
 
 import com.hyperrealm.kiwi.util.KiwiUtils;
-import com.hyperrealm.kiwi.util.ValueHolder;
 
 /**
  * A sorter for <code>TableModel</code>s. The sorter has a model (conforming
@@ -69,6 +68,14 @@ import com.hyperrealm.kiwi.util.ValueHolder;
  * means that it does not move around rows when its comparison function
  * returns 0 to denote that they are equivalent.
  * <p>
+ * The values of the sorted column are read from the model only once per
+ * sort (see {@link TableSortEngine}), and large tables are sorted in
+ * parallel. While the table is sorted, rows inserted into the model in
+ * small batches are merged into the sorted order incrementally, and rows
+ * updated in place that keep their sorted position are reported as row
+ * updates; any other change to the model data causes the table to be
+ * resorted.
+ * <p>
  * <b>This class is unsynchronized</b>. Instances of this class should not
  * be accessed concurrently by multiple threads without explicit
  * synchronization.
@@ -81,10 +88,12 @@ public class TableSorter extends ProxyTableModel {
 
     private static final int MAX_ROW_COUNT = 10000;
 
-    private static final int SORT_DELTA = 4;
+    private static final int INCREMENTAL_INSERT_LIMIT = 32;
 
     private int[] indexes;
 
+    private TableSortEngine engine;
+
     private ArrayList<Integer> sortingColumns = new ArrayList<Integer>();
 
     private boolean ascending = true;
@@ -153,6 +162,8 @@ public class TableSorter extends ProxyTableModel {
 
     public void setModel(TableModel model) {
         super.setModel(model);
+        engine = new TableSortEngine(model);
+        sortingColumns.clear();
         reallocateIndexes();
     }
 
@@ -211,7 +222,7 @@ public class TableSorter extends ProxyTableModel {
 
     public void sortByColumn(int column, boolean ascending) {
 
-        boolean bigTable = (getRowCount() > MAX_ROW_COUNT);
+        boolean bigTable = (getRowCount() > MAX_ROW_COUNT && tableView != null);
 
         if (bigTable) {
             KiwiUtils.busyOn(tableView);
@@ -268,12 +279,23 @@ public class TableSorter extends ProxyTableModel {
     }
 
     /**
-     * Handle <i>table changed</i> events.
+     * Handle <i>table changed</i> events. If the table is sorted, rows
+     * inserted in small batches are merged into the sorted order, updates
+     * that leave the sorted order intact are forwarded as row updates and
+     * other data changes cause the table to be resorted.
      */
 
     public void tableChanged(TableModelEvent e) {
-        reallocateIndexes();
-        super.tableChanged(e);
+        if (sortingColumns.isEmpty() || e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+            reallocateIndexes();
+            super.tableChanged(e);
+        } else if (isIncrementalInsert(e)) {
+            insertRows(e.getFirstRow(), e.getLastRow());
+        } else if (!isRowUpdate(e) || !updateRows(e.getFirstRow(), e.getLastRow(), e.getColumn())) {
+            reallocateIndexes();
+            sort();
+            super.tableChanged(new TableModelEvent(this));
+        }
     }
 
     /**
@@ -339,79 +361,94 @@ public class TableSorter extends ProxyTableModel {
     }
 
     /* internal code follows */
-    @SuppressWarnings("ReturnCount")
-    private int compareRowsByColumn(int row1, int row2, int column) {
 
-        Class type = model.getColumnClass(column);
+    private boolean isIncrementalInsert(TableModelEvent e) {
+        int count = e.getLastRow() - e.getFirstRow() + 1;
 
-        TableModel data = model;
-
-        // Check for nulls
+        return (e.getType() == TableModelEvent.INSERT
+            && count > 0 && count <= INCREMENTAL_INSERT_LIMIT
+            && engine.isValid(indexes.length)
+            && indexes.length + count == model.getRowCount());
+    }
 
-        Object o1 = data.getValueAt(row1, column);
-        Object o2 = data.getValueAt(row2, column);
+    private boolean isRowUpdate(TableModelEvent e) {
+        return (e.getType() == TableModelEvent.UPDATE
+            && e.getFirstRow() >= 0 && e.getLastRow() < indexes.length
+            && engine.isValid(indexes.length)
+            && indexes.length == model.getRowCount());
+    }
 
-        // If both values are null return 0
+    /*
+     * Forward an update of model rows as a row-level update of the sorted
+     * rows, so that the selection in the view is kept. Returns false if the
+     * update has moved any of the rows out of the sorted order, in which case
+     * nothing has been fired and the table has to be resorted.
+     */
 
-        if ((o1 == null) && (o2 == null)) {
-            return (0);
-        } else if (o1 == null) {
-            // Define null less than everything.
-            return (-1);
-        } else if (o2 == null) {
-            return (1);
+    private boolean updateRows(int first, int last, int column) {
+        if (column == TableModelEvent.ALL_COLUMNS || engine.isSortColumn(column)) {
+            engine.rowsUpdated(first, last);
         }
 
-        /* We copy all returned values from the getValue call in case an optimised
-         * model is reusing one object to return many values. The Number
-         * subclasses in the JDK are immutable and so will not be used in this way
-         * but other subclasses of Number might want to do this to save space and
-         * avoid unnecessary heap allocation.
-         */
-
-        Class stype = type.getSuperclass();
-
-        if (stype == Number.class) {
-            Number n1 = (Number) o1;
-            double d1 = n1.doubleValue();
-            Number n2 = (Number) o2;
-            double d2 = n2.doubleValue();
-
-            return Double.compare(d1, d2);
-        } else if ((type == String.class) || (type == Date.class)
-            || (stype == ValueHolder.class)) {
-            Comparable c1 = (Comparable) o1;
-            Comparable c2 = (Comparable) o2;
-
-            return (c1.compareTo(c2));
-        } else if (type == Boolean.class) {
-            Boolean bb1 = (Boolean) o1;
-            Boolean bb2 = (Boolean) o2;
-
-            boolean b1 = bb1;
-            boolean b2 = bb2;
-
-            return (b1 == b2 ? 0 : (b1 ? 1 : -1));
-        } else {
-            if (o1 instanceof Comparable) {
-                return (((Comparable) o1).compareTo(o2));
-            } else {
-                String s1 = o1.toString();
-                String s2 = o2.toString();
-
-                return (s1.compareTo(s2));
+        int from = indexes.length;
+        int to = -1;
+
+        for (int i = 0; i < indexes.length; i++) {
+            int row = indexes[i];
+            if (row < first || row > last) {
+                continue;
             }
+            if ((i > 0 && engine.compare(indexes[i - 1], row) > 0)
+                || (i < indexes.length - 1 && engine.compare(row, indexes[i + 1]) > 0)) {
+                return (false);
+            }
+            from = Math.min(from, i);
+            to = i;
         }
+
+        if (to >= 0) {
+            super.tableChanged(new TableModelEvent(this, from, to, column, TableModelEvent.UPDATE));
+        }
+
+        return (true);
     }
 
-    private int compare(int row1, int row2) {
-        for (Integer column : sortingColumns) {
-            int result = compareRowsByColumn(row1, row2, column);
-            if (result != 0) {
-                return ascending ? result : -result;
+    /*
+     * Merge rows newly inserted into the model into the sorted order, and
+     * notify listeners of the position of every inserted row.
+     */
+
+    private void insertRows(int first, int last) {
+        int count = last - first + 1;
+        int length = indexes.length;
+
+        // model rows after the insertion point have moved down
+
+        for (int i = 0; i < length; i++) {
+            if (indexes[i] >= first) {
+                indexes[i] += count;
             }
         }
-        return 0;
+
+        engine.rowsInserted(first, last);
+
+        int[] grown = Arrays.copyOf(indexes, length + count);
+        int[] positions = new int[count];
+
+        for (int row = first; row <= last; row++) {
+            int pos = engine.insertionPoint(grown, length, row);
+            System.arraycopy(grown, pos, grown, pos + 1, length - pos);
+            grown[pos] = row;
+            positions[row - first] = pos;
+            length++;
+        }
+
+        indexes = grown;
+
+        for (int pos : positions) {
+            super.tableChanged(new TableModelEvent(this, pos, pos,
+                TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT));
+        }
     }
 
     /*
@@ -430,6 +467,8 @@ public class TableSorter extends ProxyTableModel {
         for (int row = 0; row < rowCount; row++) {
             indexes[row] = row;
         }
+
+        engine.invalidate();
     }
 
     /*
@@ -447,62 +486,13 @@ public class TableSorter extends ProxyTableModel {
     private void sort() {
 
         checkModel();
-        shuttlesort(indexes.clone(), indexes, 0, indexes.length);
-    }
 
-    // This is a home-grown implementation which we have not had time to research
-    // - it may perform poorly in some circumstances. It requires twice the space
-    // of an in-place algorithm and makes NlogN assigments shuttling the values
-    // between the two arrays. The number of compares appears to vary between N-1
-    // and NlogN depending on the initial order but the main reason for using it
-    // here is that, unlike qsort, it is stable.
-    @SuppressWarnings("ReturnCount")
-    private void shuttlesort(int[] from, int[] to, int low, int high) {
-
-        if (high - low < 2) {
-            return;
+        int[] columns = new int[sortingColumns.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = sortingColumns.get(i);
         }
 
-        //If the values being averaged are very large, this can overflow
-        // (resulting in the computation of a negative average). Assuming
-        // that the result is intended to be nonnegative, you can use an
-        // unsigned right shift instead
-        int middle = (low + high) >>> 1;
-        shuttlesort(to, from, low, middle);
-        shuttlesort(to, from, middle, high);
-
-        int p = low;
-        int q = middle;
-
-        /* This is an optional short-cut; at each recursive call, check to see if
-         * the elements in this subset are already ordered.  If so, no further
-         * comparisons are needed; the sub-array can just be copied.  The array
-         * must be copied rather than assigned otherwise sister calls in the
-         * recursion might get out of sinc.  When the number of elements is three
-         * they are partitioned so that the first set, [low, mid), has one element
-         * and the second, [mid, high), has two. We skip the optimisation when the
-         * number of elements is three or less as the first compare in the normal
-         * merge will produce the same sequence of steps. This optimisation seems
-         * to be worthwhile for partially ordered lists but some analysis is
-         * needed to find out how the performance drops to Nlog(N) as the initial
-         * order diminishes - it may drop very quickly.
-         */
-
-        if (high - low >= SORT_DELTA && compare(from[middle - 1], from[middle]) <= 0) {
-            if (high - low >= 0) {
-                System.arraycopy(from, low, to, low, high - low);
-            }
-            return;
-        }
-
-        // A normal merge.
-
-        for (int i = low; i < high; i++) {
-            if (q >= high || (p < middle && compare(from[p], from[q]) <= 0)) {
-                to[i] = from[p++];
-            } else {
-                to[i] = from[q++];
-            }
-        }
+        engine.setSortColumns(columns, ascending);
+        indexes = engine.sort();
     }
 }
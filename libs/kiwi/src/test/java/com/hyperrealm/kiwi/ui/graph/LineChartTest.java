@@ -0,0 +1,92 @@
+package com.hyperrealm.kiwi.ui.graph;
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import javax.swing.SwingUtilities;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import com.hyperrealm.kiwi.ui.model.StreamingChartModel;
+
+/**
+ * @author Anton Troshin
+ */
+public class LineChartTest {
+
+    private static final String VAR = "load";
+
+    private static final int CAPACITY = 12;
+
+    private static final int WIDTH = 200;
+
+    private static final int HEIGHT = 120;
+
+    @Test
+    public void scrollsEvictedSamples() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            Chart chart = new Chart("load");
+            chart.addValue(new ChartValue(VAR, VAR, Color.red));
+            StreamingChartModel model = new StreamingChartModel(chart, CAPACITY);
+            LineChart scrolled = createChart(chart, model);
+
+            int sample = 0;
+            for (; sample < CAPACITY; sample++) {
+                model.append(valueOf(sample));
+            }
+            model.flush();
+            paint(scrolled);
+
+            // every window holds a sample of the maximum value, so the scale stays
+            for (int tick = 0; tick < 5; tick++) {
+                for (int i = 0; i <= tick % 2; i++) {
+                    model.append(valueOf(sample++));
+                }
+                model.flush();
+
+                assertArrayEquals(paint(createChart(chart, model)), paint(scrolled));
+            }
+        });
+    }
+
+    private static double valueOf(int sample) {
+        return ((sample % 3 == 0) ? 10 : sample % 7);
+    }
+
+    private static LineChart createChart(Chart chart, StreamingChartModel model) {
+        LineChart view = new LineChart(chart);
+        view.setPointSpacing(10);
+        view.setModel(model);
+        view.setSize(WIDTH, HEIGHT);
+        return (view);
+    }
+
+    private static int[] paint(LineChart view) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics gc = image.getGraphics();
+        view.paintComponent(gc);
+        gc.dispose();
+        return (image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+    }
+}
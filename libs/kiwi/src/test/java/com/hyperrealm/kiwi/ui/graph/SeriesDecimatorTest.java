@@ -0,0 +1,132 @@
+package com.hyperrealm.kiwi.ui.graph;
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.hyperrealm.kiwi.ui.model.DefaultChartModel;
+
+/**
+ * @author Anton Troshin
+ */
+public class SeriesDecimatorTest {
+
+    private static final String VAR = "t";
+
+    @Test
+    public void lttbKeepsEndsAndPeaks() {
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sin(i / 50.0);
+        }
+        values[333] = 10;
+        values[666] = -10;
+
+        int[] selected = SeriesDecimator.lttb(values, 16);
+
+        assertEquals(2 + (values.length - 2 + 15) / 16, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(values.length - 1, selected[selected.length - 1]);
+        assertAscending(selected);
+        assertContains(selected, 333);
+        assertContains(selected, 666);
+    }
+
+    @Test
+    public void minMaxKeepsExtremesInOrder() {
+        double[] values = {1, 5, 3, 2, 0, 4, 7, 7, Double.NaN, Double.NaN, Double.NaN, Double.NaN, 2};
+
+        assertArrayEquals(new int[]{0, 1, 4, 6, 8, 12}, SeriesDecimator.minMax(values, 4));
+        assertArrayEquals(new int[]{0, 1, 2}, SeriesDecimator.minMax(new double[]{1, 2, 3}, 1));
+    }
+
+    @Test
+    public void lttbKeepsGaps() {
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i >= 40 && i < 60) ? Double.NaN : i;
+        }
+
+        int[] selected = SeriesDecimator.lttb(values, 10);
+        int gaps = 0;
+        for (int index : selected) {
+            if (Double.isNaN(values[index])) {
+                gaps++;
+            }
+        }
+        assertEquals(1, gaps);
+    }
+
+    @Test
+    public void rendersVisibleRangeOfDecimatedSeries() {
+        Chart chart = new Chart("test");
+        chart.addValue(new ChartValue(VAR, VAR, Color.red));
+        DefaultChartModel model = new DefaultChartModel(chart);
+        for (int i = 0; i < 100000; i++) {
+            BasicDataSample sample = new BasicDataSample();
+            sample.putValue(VAR, i < 50000 ? 0 : 1);
+            model.addDataSample(sample);
+        }
+
+        TimeSeriesChart.Series series = new TimeSeriesChart.Series(model, VAR, Color.red);
+        assertEquals(0.0, series.min, 0.0);
+        assertEquals(1.0, series.max, 0.0);
+
+        int level = TimeSeriesChart.getLevel(model.getDataSampleCount(), 200);
+        assertEquals(8, level);
+        assertTrue(series.getIndexes(level, TimeSeriesChart.MIN_MAX).length <= 2 * 200 * 2);
+        assertTrue(series.getIndexes(level, TimeSeriesChart.LTTB)
+            == series.getIndexes(level, TimeSeriesChart.LTTB));
+
+        // the step at sample 50000 is in the middle of the visible range
+
+        BufferedImage image = TimeSeriesChart.render(new TimeSeriesChart.Series[]{series},
+            TimeSeriesChart.LTTB, 25000, 50000, 200, 101, 0.0, 100.0);
+        assertTrue(alpha(image, 50, 100) > 0);
+        assertTrue(alpha(image, 150, 0) > 0);
+        assertEquals(0, alpha(image, 50, 50));
+        assertEquals(0, alpha(image, 150, 50));
+    }
+
+    private static int alpha(BufferedImage image, int x, int y) {
+        return (image.getRGB(x, y) >>> 24);
+    }
+
+    private static void assertAscending(int[] indexes) {
+        for (int i = 1; i < indexes.length; i++) {
+            assertTrue(indexes[i - 1] < indexes[i]);
+        }
+    }
+
+    private static void assertContains(int[] indexes, int index) {
+        for (int i : indexes) {
+            if (i == index) {
+                return;
+            }
+        }
+        throw new AssertionError("index " + index + " not selected");
+    }
+}
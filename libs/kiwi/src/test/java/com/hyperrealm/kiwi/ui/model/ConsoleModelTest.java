@@ -0,0 +1,96 @@
+package com.hyperrealm.kiwi.ui.model;
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+import java.awt.Color;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class ConsoleModelTest {
+
+    private static final int BUFFER_SIZE = 20;
+
+    @Test
+    public void trimsWholeLines() throws Exception {
+        ConsoleModel model = new ConsoleModel(new StyleContext(), BUFFER_SIZE);
+
+        model.append(0, "first line");
+        model.append(0, "second");
+        model.append(0, "third\n");
+        SwingUtilities.invokeAndWait(model::flush);
+
+        assertEquals("second\nthird\n", model.getText(0, model.getLength()));
+        assertEquals(2, model.getLineCount());
+
+        model.append(0, "0123456789012345678901234");
+        SwingUtilities.invokeAndWait(model::flush);
+
+        // the newest line is kept even if it alone exceeds the buffer
+        assertEquals("0123456789012345678901234\n", model.getText(0, model.getLength()));
+        assertEquals(1, model.getLineCount());
+    }
+
+    @Test
+    public void keepsAttributesPerType() throws Exception {
+        ConsoleModel model = new ConsoleModel(new StyleContext());
+        SimpleAttributeSet red = new SimpleAttributeSet();
+        StyleConstants.setForeground(red, Color.red);
+        model.setAttributes(1, red);
+
+        model.append(0, "plain");
+        model.append(1, "error");
+        model.append(1, "error again");
+        SwingUtilities.invokeAndWait(model::flush);
+
+        assertEquals(3, model.getLineCount());
+        assertEquals(Color.black,
+            StyleConstants.getForeground(model.getCharacterElement(0).getAttributes()));
+        assertEquals(Color.red,
+            StyleConstants.getForeground(model.getCharacterElement("plain\n".length()).getAttributes()));
+
+        SwingUtilities.invokeAndWait(model::clear);
+        assertEquals(0, model.getLength());
+        assertEquals(0, model.getLineCount());
+    }
+
+    @Test
+    public void clearsOnTheEventThreadBeforeLaterMessages() throws Exception {
+        ConsoleModel model = new ConsoleModel(new StyleContext());
+        model.append(0, "old");
+        SwingUtilities.invokeAndWait(model::flush);
+
+        // called off the event thread, with a message pending before and after
+        model.append(0, "dropped");
+        model.clear();
+        model.append(0, "new");
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals("new\n", model.getText(0, model.getLength()));
+        assertEquals(1, model.getLineCount());
+    }
+}
@@ -0,0 +1,174 @@
+package com.hyperrealm.kiwi.ui.model;
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Anton Troshin
+ */
+public class FilesystemDataSourceTest {
+
+    private static final long HOUR = 3600000L;
+
+    private final TemporaryFolder testFolder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private File directory;
+
+    private File child;
+
+    @Before
+    public void before() throws IOException {
+        testFolder.create();
+        directory = testFolder.newFolder("dir");
+        child = new File(directory, "a.txt");
+        write(child, 10);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+        testFolder.delete();
+    }
+
+    @Test
+    public void reusesCachedListing() throws Exception {
+        FilesystemDataSource source = createAsynchronous(HOUR);
+
+        Object[] children = list(source);
+        assertEquals(1, children.length);
+        assertSame(children, list(source));
+    }
+
+    @Test
+    public void listsChangedDirectoryAgain() throws Exception {
+        FilesystemDataSource source = createAsynchronous(HOUR);
+        assertEquals(1, list(source).length);
+
+        write(new File(directory, "b.txt"), 1);
+        assertTrue(directory.setLastModified(directory.lastModified() + HOUR));
+        assertEquals(2, list(source).length);
+    }
+
+    @Test
+    public void listsAgainWhenCacheExpires() throws Exception {
+        FilesystemDataSource source = createAsynchronous(HOUR);
+        Object[] children = list(source);
+
+        write(child, 5000);
+        assertSame(children, list(source));
+        assertEquals("1 Kb", size(source, children[0]));
+
+        source.setCacheTimeout(0);
+        Object[] updated = list(source);
+        assertNotSame(children, updated);
+        assertEquals("5 Kb", size(source, updated[0]));
+    }
+
+    @Test
+    public void runningListingDoesNotExpire() throws Exception {
+        ThreadPoolExecutor slow = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            FilesystemDataSource source = new FilesystemDataSource(directory, false);
+            source.setAsynchronous(slow, null);
+            source.setCacheTimeout(0);
+
+            // the listing cannot finish while the executor is busy
+            slow.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException ignored) {
+                }
+            });
+            for (int i = 0; i < 3; i++) {
+                source.getChildren(directory);
+            }
+            // the blocking task and a single listing
+            assertEquals(2, slow.getTaskCount());
+
+            // once finished, the listing expires at once
+            blocked.countDown();
+            slow.submit(() -> { }).get();
+            assertEquals(1, source.getChildren(directory).length);
+            assertEquals(4, slow.getTaskCount());
+        } finally {
+            blocked.countDown();
+            slow.shutdownNow();
+        }
+    }
+
+    @Test
+    public void synchronousModeDoesNotCache() throws Exception {
+        FilesystemDataSource source = new FilesystemDataSource(directory, false);
+
+        Object[] children = source.getChildren(directory);
+        assertEquals("1 Kb", size(source, children[0]));
+
+        write(child, 5000);
+        children = source.getChildren(directory);
+        assertEquals("5 Kb", size(source, children[0]));
+    }
+
+    private FilesystemDataSource createAsynchronous(long timeout) {
+        FilesystemDataSource source = new FilesystemDataSource(directory, false);
+        source.setAsynchronous(executor, null);
+        source.setCacheTimeout(timeout);
+        return source;
+    }
+
+    /*
+     * Request the children of the directory and wait for a listing started
+     * by the request to finish.
+     */
+    private Object[] list(FilesystemDataSource source) throws Exception {
+        source.getChildren(directory);
+        executor.submit(() -> { }).get();
+        return source.getChildren(directory);
+    }
+
+    private static void write(File file, int length) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+    }
+
+    private static Object size(FilesystemDataSource source, Object node) {
+        String[] columns = (String[]) source.getValueForProperty(null, TreeDataSource.COLUMN_NAMES_PROPERTY);
+        return source.getValueForProperty(node, columns[1]);
+    }
+}
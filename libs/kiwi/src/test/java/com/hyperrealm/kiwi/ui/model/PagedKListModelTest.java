@@ -0,0 +1,254 @@
+package com.hyperrealm.kiwi.ui.model;
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.hyperrealm.kiwi.event.KListModelEvent;
+import com.hyperrealm.kiwi.event.KListModelListener;
+
+/**
+ * @author Anton Troshin
+ */
+public class PagedKListModelTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final int MAX_PAGES = 4;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Source source = new Source();
+
+    private final List<String> events = new ArrayList<>();
+
+    private PagedKListModel<Integer> model;
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void fetchesPagesOffTheEventThread() throws Exception {
+        source.count = 1000;
+        SwingUtilities.invokeAndWait(this::createModel);
+        settle();
+
+        assertEquals(1000, (int) onEdt(() -> model.getItemCount()));
+        assertEquals("data", events.remove(0));
+
+        assertNull(onEdt(() -> model.getItemAt(25)));
+        settle();
+
+        assertEquals("changed 20-29", events.remove(0));
+        assertEquals(25, (int) onEdt(() -> model.getItemAt(25)));
+        assertEquals("x25", onEdt(() -> model.getField(model.getItemAt(25), 0)));
+        assertEquals(1, source.fetches);
+    }
+
+    @Test
+    public void fetchesColumnsOffTheEventThread() throws Exception {
+        source.count = 5;
+        SwingUtilities.invokeAndWait(this::createModel);
+        settle();
+        assertFalse(source.columnsOnEdt);
+        assertEquals(1, source.columnFetches);
+        assertEquals("Value", onEdt(() -> model.getFieldLabel(0)));
+        assertEquals(String.class, onEdt(() -> model.getFieldType(0)));
+        assertEquals("data", events.remove(0));
+
+        // the columns are fetched once only
+        SwingUtilities.invokeAndWait(() -> model.reload());
+        settle();
+        assertEquals(1, source.columnFetches);
+        assertEquals("changed 0-4", events.remove(0));
+    }
+
+    @Test
+    public void usesGivenColumns() throws Exception {
+        source.count = 5;
+        SwingUtilities.invokeAndWait(() -> {
+            model = new PagedKListModel<>(source, new String[]{"Name"}, new Class<?>[]{Integer.class},
+                PAGE_SIZE, MAX_PAGES, executor);
+            model.addListModelListener(new Recorder());
+        });
+        settle();
+
+        assertEquals(0, source.columnFetches);
+        assertEquals("Name", onEdt(() -> model.getFieldLabel(0)));
+        assertEquals("added 0-4", events.remove(0));
+    }
+
+    @Test
+    public void keepsPageCacheBounded() throws Exception {
+        source.count = 100000;
+        SwingUtilities.invokeAndWait(this::createModel);
+        settle();
+
+        for (int row = 0; row < source.count; row += 5000) {
+            int first = row;
+            SwingUtilities.invokeAndWait(() -> model.prefetch(first, first + 25));
+            settle();
+            assertTrue(onEdt(() -> model.getResidentPageCount()) <= MAX_PAGES);
+        }
+
+        // the visible pages are resident, with a page on either side
+        assertEquals(95000, (int) onEdt(() -> model.getItemAt(95000)));
+        assertEquals(95019, (int) onEdt(() -> model.getItemAt(95019)));
+    }
+
+    @Test
+    public void reportsGrowthAsRangeEvents() throws Exception {
+        source.count = 15;
+        SwingUtilities.invokeAndWait(this::createModel);
+        settle();
+        SwingUtilities.invokeAndWait(() -> model.prefetch(0, 14));
+        settle();
+        events.clear();
+
+        source.count = 18;
+        SwingUtilities.invokeAndWait(() -> model.refreshItemCount());
+        settle();
+        assertEquals("added 15-17", events.remove(0));
+
+        // the short last page is fetched again for the new rows only
+        assertEquals(14, (int) onEdt(() -> model.getItemAt(14)));
+        assertNull(onEdt(() -> model.getItemAt(16)));
+        settle();
+        assertEquals("changed 10-17", events.remove(0));
+        assertEquals(16, (int) onEdt(() -> model.getItemAt(16)));
+
+        source.count = 5;
+        SwingUtilities.invokeAndWait(() -> model.refreshItemCount());
+        settle();
+        assertEquals("removed 5-17", events.remove(0));
+        assertEquals(1, (int) onEdt(() -> model.getResidentPageCount()));
+    }
+
+    private void createModel() {
+        model = new PagedKListModel<>(source, PAGE_SIZE, MAX_PAGES, executor);
+        model.addListModelListener(new Recorder());
+    }
+
+    /* wait for the fetch tasks, then for the results posted to the EDT */
+
+    private void settle() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            executor.submit(() -> { }).get(1, TimeUnit.SECONDS);
+            SwingUtilities.invokeAndWait(() -> { });
+        }
+    }
+
+    private static <V> V onEdt(Callable<V> callable) throws Exception {
+        List<V> result = new ArrayList<>();
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result.add(callable.call());
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        return result.get(0);
+    }
+
+    private class Recorder implements KListModelListener {
+
+        public void itemsAdded(KListModelEvent evt) {
+            record("added", evt);
+        }
+
+        public void itemsChanged(KListModelEvent evt) {
+            record("changed", evt);
+        }
+
+        public void itemsRemoved(KListModelEvent evt) {
+            record("removed", evt);
+        }
+
+        public void dataChanged(KListModelEvent evt) {
+            events.add("data");
+        }
+
+        private void record(String type, KListModelEvent evt) {
+            events.add(type + " " + evt.getStartIndex() + "-" + evt.getEndIndex());
+        }
+    }
+
+    private static class Source implements PagedListDataSource<Integer> {
+
+        private volatile int count;
+
+        private volatile int fetches;
+
+        private volatile int columnFetches;
+
+        private volatile boolean columnsOnEdt;
+
+        public int getItemCount() {
+            return count;
+        }
+
+        public List<Integer> getItems(int offset, int max) {
+            fetches++;
+            List<Integer> items = new ArrayList<>();
+            for (int i = offset; i < Math.min(count, offset + max); i++) {
+                items.add(i);
+            }
+            return items;
+        }
+
+        public Object getValueForProperty(Integer item, String property) {
+            if (item == null) {
+                columnsOnEdt |= SwingUtilities.isEventDispatchThread();
+            }
+            if (COLUMN_NAMES_PROPERTY.equals(property)) {
+                columnFetches++;
+                return new String[]{"Value"};
+            } else if (COLUMN_TYPES_PROPERTY.equals(property)) {
+                return new Class[]{String.class};
+            }
+            return "x" + item;
+        }
+
+        public String getLabel(Integer item) {
+            return null;
+        }
+
+        public Icon getIcon(Integer item) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.hyperrealm.kiwi.ui.model;
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.hyperrealm.kiwi.event.ChartModelEvent;
+import com.hyperrealm.kiwi.ui.graph.BasicDataSample;
+import com.hyperrealm.kiwi.ui.graph.Chart;
+import com.hyperrealm.kiwi.ui.graph.ChartValue;
+import com.hyperrealm.kiwi.ui.graph.DataSample;
+
+/**
+ * @author Anton Troshin
+ */
+public class StreamingChartModelTest {
+
+    private static final String USED = "used";
+
+    private static final String FREE = "free";
+
+    private static final int CAPACITY = 4;
+
+    private final List<ChartModelEvent> events = new ArrayList<>();
+
+    @Test
+    public void keepsTheNewestSamples() throws Exception {
+        StreamingChartModel model = createModel();
+        double[] values = new double[2];
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 6; i++) {
+                values[0] = i;
+                values[1] = -i;
+                model.append(values);
+            }
+        });
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertEquals(CAPACITY, model.getDataSampleCount());
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).isAppend());
+        assertEquals(CAPACITY, events.get(0).getAppendedCount());
+        assertEquals(0, events.get(0).getRemovedCount());
+
+        int i = 2;
+        for (DataSample sample : model) {
+            assertEquals((double) i, sample.getValue(USED));
+            assertEquals((double) -i, sample.getValue(FREE));
+            i++;
+        }
+        assertEquals(6, i);
+
+        model.append(6);
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertEquals(2, events.size());
+        assertEquals(1, events.get(1).getAppendedCount());
+        assertEquals(1, events.get(1).getRemovedCount());
+        assertEquals(3.0, model.getValue(0, USED), 0.0);
+        assertEquals(6.0, model.getValue(CAPACITY - 1, USED), 0.0);
+        assertNull(model.getDataSample(CAPACITY - 1).getValue(FREE));
+    }
+
+    @Test
+    public void publishesAppendsOnTheEventThread() throws Exception {
+        StreamingChartModel model = createModel();
+
+        // the event thread is blocked until the producer is done
+        SwingUtilities.invokeAndWait(() -> {
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 3; i++) {
+                    model.append(i);
+                }
+            });
+            producer.start();
+            try {
+                producer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            assertEquals(0, model.getDataSampleCount());
+        });
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals(3, model.getDataSampleCount());
+        assertEquals(3, events.get(0).getAppendedCount());
+    }
+
+    @Test
+    public void removesSamples() throws Exception {
+        StreamingChartModel model = createModel();
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < 6; i++) {
+                BasicDataSample sample = new BasicDataSample();
+                sample.putValue(USED, i);
+                model.addDataSample(sample);
+            }
+            model.removeDataSample(1);
+        });
+        assertEquals(3, model.getDataSampleCount());
+        assertEquals(2.0, model.getValue(0, USED), 0.0);
+        assertEquals(4.0, model.getValue(1, USED), 0.0);
+        assertEquals(5.0, model.getValue(2, USED), 0.0);
+        assertFalse(events.get(events.size() - 1).isAppend());
+
+        SwingUtilities.invokeAndWait(model::clear);
+        assertEquals(0, model.getDataSampleCount());
+        model.append(7);
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals(7.0, model.getValue(0, USED), 0.0);
+    }
+
+    private StreamingChartModel createModel() {
+        Chart chart = new Chart("memory");
+        chart.addValue(new ChartValue(USED, USED, Color.red));
+        chart.addValue(new ChartValue(FREE, FREE, Color.green));
+        StreamingChartModel model = new StreamingChartModel(chart, CAPACITY);
+        model.addChartModelListener(events::add);
+        return (model);
+    }
+}
@@ -0,0 +1,237 @@
+package com.hyperrealm.kiwi.ui.model;
+/* ----------------------------------------------------------------------------
+   The Kiwi Toolkit - A Java Class Library
+   Copyright (C) 1998-2008 Mark A. Lindner
+
+   This library is free software; you can redistribute it and/or
+   modify it under the terms of the GNU General Public License as
+   published by the Free Software Foundation; either version 2 of the
+   License, or (at your option) any later version.
+
+   This library is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   General Public License for more details.
+
+   You should have received a copy of the GNU General Public License
+   along with this library; if not, see <http://www.gnu.org/licenses/>.
+   ----------------------------------------------------------------------------
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class TableSorterTest {
+
+    private static final String NAME = "Name";
+
+    private static final String SIZE = "Size";
+
+    @Test
+    public void sortsNumbersStableWithNullsFirst() {
+        TableSorter sorter = new TableSorter(createModel(Integer.class, new Object[][]{
+            {"a", 3}, {"b", null}, {"c", 1}, {"d", 3}, {"e", 2}
+        }));
+
+        sorter.sortByColumn(1, true);
+        assertColumn(sorter, 0, "b", "c", "e", "a", "d");
+
+        sorter.sortByColumn(1, false);
+        assertColumn(sorter, 0, "a", "d", "e", "c", "b");
+
+        sorter.sortByColumn(0, true);
+        assertColumn(sorter, 0, "a", "b", "c", "d", "e");
+    }
+
+    @Test
+    public void mergesInsertedRows() {
+        DefaultTableModel model = createModel(Integer.class, new Object[][]{{"x", 5}, {"y", 1}, {"z", 9}});
+        TableSorter sorter = new TableSorter(model);
+        sorter.sortByColumn(1, true);
+
+        model.insertRow(1, new Object[]{"w", 5});
+        model.addRow(new Object[]{"v", 0});
+
+        assertColumn(sorter, 0, "v", "y", "x", "w", "z");
+        assertEquals(1, sorter.getRowTranslation(3));
+
+        model.setValueAt(10, 0, 1);
+        assertColumn(sorter, 0, "v", "y", "w", "z", "x");
+    }
+
+    @Test
+    public void forwardsUpdatesKeepingTheOrderAsRowUpdates() {
+        DefaultTableModel model = createModel(Integer.class, new Object[][]{{"x", 5}, {"y", 1}, {"z", 9}});
+        TableSorter sorter = new TableSorter(model);
+        sorter.sortByColumn(1, true);
+        List<TableModelEvent> events = new ArrayList<>();
+        sorter.addTableModelListener(events::add);
+
+        model.setValueAt("a", 2, 0);
+        assertEquals(1, events.size());
+        assertRowUpdate(events.get(0), 2, 0);
+        assertColumn(sorter, 0, "y", "x", "a");
+
+        model.setValueAt(6, 0, 1);
+        assertEquals(2, events.size());
+        assertRowUpdate(events.get(1), 1, 1);
+        assertColumn(sorter, 1, 1, 6, 9);
+
+        model.setValueAt(0, 2, 1);
+        assertEquals(3, events.size());
+        assertEquals(Integer.MAX_VALUE, events.get(2).getLastRow());
+        assertColumn(sorter, 0, "a", "y", "x");
+    }
+
+    @Test
+    public void sortsLargeTablesInParallel() {
+        int rows = TableSortEngine.PARALLEL_THRESHOLD * 4;
+        Object[][] data = new Object[rows][];
+        Random random = new Random(1);
+        for (int i = 0; i < rows; i++) {
+            data[i] = new Object[]{String.valueOf(i), random.nextDouble()};
+        }
+
+        TableSorter sorter = new TableSorter(createModel(Double.class, data));
+        sorter.sortByColumn(1, true);
+
+        for (int i = 1; i < rows; i++) {
+            assertTrue((Double) sorter.getValueAt(i - 1, 1) <= (Double) sorter.getValueAt(i, 1));
+        }
+    }
+
+    @Test
+    public void copiesReusedValueHolders() {
+        int[] values = {5, 1, 9, 3};
+        // one holder for all cells, set to the value of the cell asked for
+        Holder holder = new Holder();
+        TableSorter sorter = new TableSorter(new AbstractTableModel() {
+            public int getRowCount() {
+                return values.length;
+            }
+
+            public int getColumnCount() {
+                return 1;
+            }
+
+            public Object getValueAt(int row, int column) {
+                holder.value = values[row];
+                return holder;
+            }
+        });
+        sorter.sortByColumn(0, true);
+
+        int[] sorted = new int[values.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ((Holder) sorter.getValueAt(i, 0)).value;
+        }
+        assertEquals("[1, 3, 5, 9]", Arrays.toString(sorted));
+    }
+
+    @Test
+    public void comparesMutableValuesThatCannotBeCopied() {
+        Counter[] counters = {new Counter(5), new Counter(1), new Counter(9)};
+        AbstractTableModel model = new AbstractTableModel() {
+            public int getRowCount() {
+                return counters.length;
+            }
+
+            public int getColumnCount() {
+                return 1;
+            }
+
+            public Object getValueAt(int row, int column) {
+                return counters[row];
+            }
+        };
+        TableSorter sorter = new TableSorter(model);
+        sorter.sortByColumn(0, true);
+        assertColumn(sorter, 0, counters[1], counters[0], counters[2]);
+
+        // changed in place, then announced
+        counters[2].value = 0;
+        model.fireTableRowsUpdated(2, 2);
+        assertColumn(sorter, 0, counters[2], counters[1], counters[0]);
+    }
+
+    private static DefaultTableModel createModel(Class<?> sizeClass, Object[][] data) {
+        return new DefaultTableModel(data, new Object[]{NAME, SIZE}) {
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 0 ? String.class : sizeClass;
+            }
+        };
+    }
+
+    /*
+     * A mutable value with a public clone() method
+     */
+
+    private static final class Holder implements Comparable<Holder>, Cloneable {
+
+        int value;
+
+        public int compareTo(Holder other) {
+            return Integer.compare(value, other.value);
+        }
+
+        @Override
+        public Holder clone() {
+            try {
+                return (Holder) super.clone();
+            } catch (CloneNotSupportedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /*
+     * A mutable value that cannot be copied
+     */
+
+    private static final class Counter implements Comparable<Counter> {
+
+        int value;
+
+        Counter(int value) {
+            this.value = value;
+        }
+
+        public int compareTo(Counter other) {
+            return Integer.compare(value, other.value);
+        }
+    }
+
+    private static void assertRowUpdate(TableModelEvent event, int row, int column) {
+        assertEquals(TableModelEvent.UPDATE, event.getType());
+        assertEquals(row, event.getFirstRow());
+        assertEquals(row, event.getLastRow());
+        assertEquals(column, event.getColumn());
+    }
+
+    private static void assertColumn(TableSorter sorter, int column, Object... expected) {
+        assertEquals(expected.length, sorter.getRowCount());
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == null) {
+                assertNull(sorter.getValueAt(i, column));
+            } else {
+                assertEquals(expected[i], sorter.getValueAt(i, column));
+            }
+        }
+    }
+}
@@ -28,14 +28,17 @@ import java.awt.*;
 import java.io.*;
 import java.util.*;
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.text.*;
 import java.net.URL;
+import java.util.regex.PatternSyntaxException;
 
 import bsh.Interpreter;
 import com.hyperrealm.kiwi.io.ConfigFile;
-import com.hyperrealm.kiwi.io.StreamUtils;
 import com.hyperrealm.kiwi.ui.KButton;
 import com.hyperrealm.kiwi.ui.KPanel;
+import com.hyperrealm.kiwi.util.ProgressObserver;
 import jworkspace.kernel.Workspace;
 import jworkspace.ui.WorkspaceClassCache;
 import jworkspace.ui.WorkspaceGUI;
@@ -115,6 +118,23 @@ public abstract class AbstractEditor extends KPanel
     * Current file
     */
     protected File current_file = null;
+    /**
+     * Files larger than this are opened as memory mapped documents,
+     * without syntax highlighting
+     */
+    public static final long LARGE_FILE_SIZE = 16 * 1024 * 1024;
+    /**
+    * Load or save running in the background
+    */
+    protected DocumentIO transfer = null;
+    /**
+     * Line, start and end column to select when the file being opened is loaded
+     */
+    protected int[] pendingSelection = null;
+    /**
+     * Find in files dialog, kept with its results
+     */
+    protected FindInFilesDialog findInFilesDialog = null;
     /**
     * Text area defaults
     */
@@ -141,6 +161,14 @@ public abstract class AbstractEditor extends KPanel
      * Last search item
      */
     private String lastSearch = null;
+    /**
+     * Whether the last search item is a regular expression
+     */
+    private boolean lastRegex = false;
+    /**
+     * Whether the last search item only matches whole words
+     */
+    private boolean lastWholeWord = false;
     /**
     * Cut selected text
     */
@@ -406,6 +434,7 @@ public abstract class AbstractEditor extends KPanel
       /**
        * Save previously edited text if any
        */
+      stopTransfer();
       if (!checkClose())
       {
         return;
@@ -422,28 +451,268 @@ public abstract class AbstractEditor extends KPanel
       if (chooser.showOpenDialog(Workspace.getUI().getFrame())
                  == JFileChooser.APPROVE_OPTION)
       {
-          current_file = chooser.getSelectedFile();
-          updateTokenMarker();
-          try
+          pendingSelection = null;
+          load(chooser.getSelectedFile());
+      }
+    }
+    /**
+    * Open a file and select a range of one of its lines once the file
+    * is loaded. A file already opened is not loaded again.
+    * @param file file to open
+    * @param line line to select in, starting from 0
+    * @param start column the selection starts at
+    * @param end column the selection ends at
+    */
+    public void open(File file, int line, int start, int end)
+    {
+        pendingSelection = new int[] {line, start, end};
+        if (file.equals(current_file))
+        {
+            if (transfer == null || !transfer.isLoading())
+            {
+                selectPending();
+            }
+            return;
+        }
+        stopTransfer();
+        if (!checkClose())
+        {
+            pendingSelection = null;
+            return;
+        }
+        load(file);
+    }
+    /**
+    * Load a file into a new document
+    */
+    protected void load(File file)
+    {
+        current_file = file;
+        try
+        {
+          if (current_file.length() > LARGE_FILE_SIZE)
           {
-            java.io.InputStream is = new java.io.FileInputStream(current_file);
-            byte data[] = StreamUtils.readStreamToByteArray(is);
-            is.close();
-
-            setText(new String(data));
-            firePropertyChange("NAME", getName(), current_file.getName());
-            setName(current_file.getName());
-            getTextPane().setOrigin(0,0);
-            getTextPane().setModified(false);
+              openLargeFile(current_file);
           }
-          catch(java.io.IOException ex)
+          else
           {
-             Workspace.getLogger().warning(LangResource.getString("message#269") +
-                 ex.toString());
-             JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
-                 LangResource.getString("message#269") + ex.toString());
+              SyntaxDocument document = new SyntaxDocument();
+              setDocument(document);
+              updateTokenMarker();
+              startTransfer(DocumentIO.load(current_file, document, null),
+                  "Loading " + current_file.getName());
+              return;
           }
-      }
+          opened();
+        }
+        catch(java.io.IOException ex)
+        {
+           pendingSelection = null;
+           Workspace.getLogger().warning(LangResource.getString("message#269") +
+               ex.toString());
+           JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
+               LangResource.getString("message#269") + ex.toString());
+        }
+    }
+    /**
+    * Show the name of the opened file
+    */
+    protected void opened()
+    {
+        firePropertyChange("NAME", getName(), current_file.getName());
+        setName(current_file.getName());
+        getTextPane().setOrigin(0,0);
+        getTextPane().setModified(false);
+        selectPending();
+    }
+    /**
+    * Select the range given to open(), if its line has been loaded. While
+    * a large file is indexed, the range is kept until its line is.
+    */
+    protected void selectPending()
+    {
+        int[] selection = pendingSelection;
+        if (selection == null)
+        {
+            return;
+        }
+        if (selection[0] >= getTextPane().getLineCount())
+        {
+            SyntaxDocument document = getTextPane().getDocument();
+            if (!(document instanceof LargeFileDocument)
+                || !((LargeFileDocument) document).isLoading())
+            {
+                pendingSelection = null;
+            }
+            return;
+        }
+        pendingSelection = null;
+        int start = getTextPane().getLineStartOffset(selection[0]);
+        int end = getTextPane().getLineEndOffset(selection[0]) - 1;
+        getTextPane().select(Math.min(start + selection[1], end),
+            Math.min(start + selection[2], end));
+    }
+    /**
+    * Open a file too large to be read into memory. The file is mapped
+    * and loaded in the background, the format label shows the progress.
+    */
+    protected void openLargeFile(File file) throws IOException
+    {
+        final LargeFileDocument document = new LargeFileDocument(file);
+        setDocument(document);
+        getFormatLabel().setText(document.getProgress() + "%");
+        document.addChangeListener(new ChangeListener()
+        {
+            public void stateChanged(ChangeEvent e)
+            {
+                getFormatLabel().setText(document.isLoading()
+                    ? document.getProgress() + "%" : "text");
+                if (document.getError() != null)
+                {
+                    Workspace.getLogger().warning(LangResource.getString("message#269") +
+                        document.getError().toString());
+                    JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
+                        LangResource.getString("message#269") + document.getError().toString());
+                }
+                if (getTextPane().getDocument() == document)
+                {
+                    selectPending();
+                }
+            }
+        });
+    }
+    /**
+    * Replace the document of the text area
+    */
+    protected void setDocument(SyntaxDocument document)
+    {
+        SyntaxDocument old = getTextPane().getDocument();
+        if (old instanceof LargeFileDocument)
+        {
+            ((LargeFileDocument) old).dispose();
+        }
+        getTextPane().setDocument(document);
+        getTextPane().setTokenMarker(null);
+    }
+    /**
+    * Write current text to file in the background
+    */
+    protected void write(File file)
+    {
+        startTransfer(DocumentIO.save(getTextPane().getDocument(), file),
+            "Saving " + file.getName());
+    }
+    /**
+    * Run a load or a save in the background. The text area is read only
+    * until it finishes, a progress monitor lets the user cancel it.
+    */
+    protected void startTransfer(final DocumentIO io, String message)
+    {
+        stopTransfer();
+        transfer = io;
+        getTextPane().setEditable(false);
+        final ProgressMonitor monitor = new ProgressMonitor(this, message,
+            io.getFile().getAbsolutePath(), 0, 100);
+        io.addProgressObserver(new ProgressObserver()
+        {
+            public void setProgress(int progress)
+            {
+                if (monitor.isCanceled())
+                {
+                    io.cancel();
+                }
+                else
+                {
+                    monitor.setProgress(progress);
+                }
+            }
+        });
+        io.addChangeListener(new ChangeListener()
+        {
+            public void stateChanged(ChangeEvent e)
+            {
+                monitor.close();
+                if (transfer == io)
+                {
+                    transfer = null;
+                    transferFinished(io);
+                }
+            }
+        });
+        io.start();
+    }
+    /**
+    * Stop a load, dropping the text read so far, or wait for a save
+    * to write the file
+    */
+    protected void stopTransfer()
+    {
+        DocumentIO io = transfer;
+        if (io == null || io.isDone())
+        {
+            return;
+        }
+        if (io.isLoading())
+        {
+            io.cancel();
+            getTextPane().setModified(false);
+        }
+        else
+        {
+            try
+            {
+                io.await();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    /**
+    * Called when a load or a save has finished
+    */
+    protected void transferFinished(DocumentIO io)
+    {
+        getTextPane().setEditable(true);
+        boolean loading = io.isLoading();
+        if (io.getError() != null)
+        {
+            if (loading)
+            {
+                Workspace.getLogger().warning(LangResource.getString("message#269") +
+                    io.getError().toString());
+                JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
+                    LangResource.getString("message#269") + io.getError().toString());
+            }
+            else
+            {
+                Workspace.getLogger().warning(LangResource.getString("message#264") +
+                    io.getError().toString());
+                JOptionPane.showMessageDialog(Workspace.getUI().
+                    getFrame(), LangResource.getString("message#262") +
+                    io.getError().toString(), LangResource.getString("message#259"),
+                    JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        if (loading)
+        {
+            if (io.getError() != null || io.isCancelled())
+            {
+                pendingSelection = null;
+                current_file = null;
+                setText("");
+                getTextPane().setModified(false);
+            }
+            else
+            {
+                opened();
+            }
+        }
+        else if (io.getError() == null && !io.isCancelled())
+        {
+            getTextPane().setModified(false);
+        }
     }
     /**
     * Choose font
@@ -471,6 +740,7 @@ public abstract class AbstractEditor extends KPanel
     */
     public void close()
     {
+     stopTransfer();
      if (getTextPane().isModified() && current_file != null)
      {
         int result = JOptionPane.
@@ -501,6 +771,7 @@ public abstract class AbstractEditor extends KPanel
                 save();
         }
      }
+     stopTransfer();
     }
     /**
     * Get currently edited file.
@@ -614,6 +885,9 @@ public abstract class AbstractEditor extends KPanel
        boolean bIsFindReplace, boolean bCaseSensitive, boolean bStartAtTop)
     {
         boolean bReplaceAll = false;
+        boolean bCountOnly = false;
+        boolean bRegex = lastRegex;
+        boolean bWholeWord = lastWholeWord;
         SearchDialog sdSearchInput = null;
         if ( searchFindTerm == null )
         {
@@ -638,26 +912,44 @@ public abstract class AbstractEditor extends KPanel
             bCaseSensitive    = sdSearchInput.getCaseSensitive();
             bStartAtTop       = sdSearchInput.getStartAtTop();
             bReplaceAll       = sdSearchInput.getReplaceAll();
+            bCountOnly        = sdSearchInput.getCountOnly();
+            bRegex            = sdSearchInput.getRegex();
+            bWholeWord        = sdSearchInput.getWholeWord();
         }
-        if(searchFindTerm != null && (!bIsFindReplace || searchReplaceTerm != null))
+        if(searchFindTerm != null && searchFindTerm.length() > 0
+                && (!bIsFindReplace || searchReplaceTerm != null))
         {
-          if(bReplaceAll)
+          TextSearch search;
+          try
+          {
+            search = new TextSearch(searchFindTerm, bCaseSensitive, bRegex, bWholeWord);
+          }
+          catch (PatternSyntaxException ex)
+          {
+            JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
+                    ex.getMessage(), "Search", JOptionPane.ERROR_MESSAGE);
+            return;
+          }
+          if(bCountOnly)
           {
-            int results = findText(searchFindTerm, searchReplaceTerm, bCaseSensitive, 0);
-            int findOffset = results;
-            if(results > -1)
+            JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
+                    "Occurrences found: " + search.count(getTextPane().getDocument()),
+                    "Search", JOptionPane.INFORMATION_MESSAGE);
+          }
+          else if(bReplaceAll)
+          {
+            int results;
+            try
             {
-              findOffset = ((findOffset - searchFindTerm.length())
-                                  + searchReplaceTerm.length()) + 1;
-              while(results > -1)
-              {
-                results    = findText(searchFindTerm, searchReplaceTerm,
-                                bCaseSensitive, findOffset);
-                findOffset = ((results - searchFindTerm.length()) +
-                                searchReplaceTerm.length()) + 1;
-              }
+              results = search.replaceAll(getTextPane().getDocument(), searchReplaceTerm);
             }
-            else
+            catch (BadLocationException | IllegalArgumentException | IndexOutOfBoundsException ex)
+            {
+              JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
+                      ex.getMessage(), "Replace", JOptionPane.ERROR_MESSAGE);
+              return;
+            }
+            if(results == 0)
             {
               JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
                       "No occurrences found: " + searchFindTerm, "Search",
@@ -666,8 +958,18 @@ public abstract class AbstractEditor extends KPanel
           }
           else
           {
-            int results = findText(searchFindTerm, searchReplaceTerm,
-              bCaseSensitive, (bStartAtTop ? 0 : getTextPane().getCaretPosition()));
+            int results;
+            try
+            {
+              results = findText(search, searchReplaceTerm,
+                (bStartAtTop ? 0 : getTextPane().getCaretPosition()));
+            }
+            catch (IllegalArgumentException | IndexOutOfBoundsException ex)
+            {
+              JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
+                      ex.getMessage(), "Replace", JOptionPane.ERROR_MESSAGE);
+              return;
+            }
             if(results == -1)
             {
               JOptionPane.showMessageDialog(Workspace.getUI().getFrame(),
@@ -677,6 +979,8 @@ public abstract class AbstractEditor extends KPanel
           }
         }
         lastSearch = searchFindTerm;
+        lastRegex = bRegex;
+        lastWholeWord = bWholeWord;
     }
     /**
     * Method to initiate a find/replace operation
@@ -687,6 +991,46 @@ public abstract class AbstractEditor extends KPanel
         lastSearch = null;
         doSearchMore( searchFindTerm, searchReplaceTerm, bIsFindReplace, bCaseSensitive, bStartAtTop);
     }
+    /**
+    * Shows the dialog searching the files of a folder, starting at the
+    * folder of the opened file
+    */
+    public void findInFiles()
+    {
+        if (findInFilesDialog == null)
+        {
+            File folder = current_file != null && current_file.getParentFile() != null
+                ? current_file.getParentFile() : new File(System.getProperty("user.dir"));
+            findInFilesDialog = new FindInFilesDialog(Workspace.getUI().getFrame(), this, folder);
+        }
+        String selection = getTextPane().getSelectedText();
+        if (selection != null && selection.length() > 0 && selection.indexOf('\n') < 0)
+        {
+            findInFilesDialog.setTerm(selection);
+        }
+        findInFilesDialog.setVisible(true);
+    }
+    /**
+    * Asks for the name of a declaration of the document and selects it
+    */
+    public void gotoSymbol()
+    {
+        SymbolIndex index = getTextPane().getDocument().getSymbolIndex();
+        if (!index.isEnabled())
+        {
+            getToolkit().beep();
+            return;
+        }
+        GotoSymbolDialog dialog = new GotoSymbolDialog(Workspace.getUI().getFrame(),
+                "Go To Symbol", index);
+        dialog.setVisible(true);
+        SymbolIndex.Match match = dialog.getSelectedMatch();
+        if (match != null)
+        {
+            int start = getTextPane().getLineStartOffset(match.line);
+            getTextPane().select(start + match.symbol.getStart(), start + match.symbol.getEnd());
+        }
+    }
 
     /**
     * Returns true if the document can be closed, false otherwise
@@ -707,6 +1051,7 @@ public abstract class AbstractEditor extends KPanel
               break;
             case JOptionPane.YES_OPTION:
               save();
+              stopTransfer();
               break;
             case JOptionPane.NO_OPTION:
               ret = true;
@@ -726,21 +1071,20 @@ public abstract class AbstractEditor extends KPanel
     }
     /**
     *  Method for finding (and optionally replacing)
-    *  a string in the text
+    *  a string in the text, continuing from the top
+    *  if there is no match below the offset
     */
-    private int findText(String findTerm, String replaceTerm,
-                  boolean bCaseSenstive, int iOffset)
+    private int findText(TextSearch search, String replaceTerm, int iOffset)
     {
-        int searchPlace =(bCaseSenstive ?
-            getTextPane().getText().indexOf(findTerm, iOffset) :
-            getTextPane().getText().toLowerCase().indexOf(findTerm.toLowerCase(), iOffset)
-          );
+        CharSequence text = TextSearch.getChars(getTextPane().getDocument());
+        int searchPlace = search.find(text, iOffset, true);
         if(searchPlace > -1)
         {
-          getTextPane().select(searchPlace, searchPlace + findTerm.length());
-          if(replaceTerm != null)
+          String replacement = replaceTerm != null ? search.replacement(replaceTerm) : null;
+          getTextPane().select(searchPlace, search.getMatchEnd());
+          if(replacement != null)
           {
-            getTextPane().setSelectedText(replaceTerm);
+            getTextPane().setSelectedText(replacement);
           }
         }
         return searchPlace;
@@ -785,22 +1129,7 @@ public abstract class AbstractEditor extends KPanel
         }
         else
         {
-          try
-          {
-            java.io.OutputStream os = new java.io.FileOutputStream(current_file);
-            os.write(getTextPane().getText().getBytes());
-            os.close();
-            getTextPane().setModified(false);
-          }
-          catch(java.io.IOException ex)
-          {
-            Workspace.getLogger().warning(LangResource.getString("message#264") +
-                            ex.toString());
-            JOptionPane.showMessageDialog(Workspace.getUI().
-                   getFrame(), LangResource.getString("message#262") +
-                   ex.toString(), LangResource.getString("message#259"),
-                   JOptionPane.ERROR_MESSAGE);
-          }
+          write(current_file);
         }
     }
     /**
@@ -819,23 +1148,9 @@ public abstract class AbstractEditor extends KPanel
             return;
 
         current_file = chooser.getSelectedFile();
-        try
-        {
-          String file_name = current_file.getAbsolutePath();
-          current_file = new File(file_name);
-          java.io.OutputStream os = new java.io.FileOutputStream(current_file);
-          os.write(getTextPane().getText().getBytes());
-          os.close();
-          getTextPane().setModified(false);
-        }
-        catch(java.io.IOException ex)
-        {
-          Workspace.getLogger().warning(LangResource.getString("message#264") +
-                          ex.toString());
-          JOptionPane.showMessageDialog(Workspace.getUI().
-                          getFrame(), LangResource.getString("message#262") +
-                          ex.toString(), LangResource.getString("message#259"), JOptionPane.ERROR_MESSAGE);
-        }
+        String file_name = current_file.getAbsolutePath();
+        current_file = new File(file_name);
+        write(current_file);
     }
     public void undo() { }
     /**
@@ -843,7 +1158,13 @@ public abstract class AbstractEditor extends KPanel
     */
     public void updateTokenMarker()
     {
-    if (current_file == null)
+    if (getTextPane().getDocument() instanceof LargeFileDocument)
+    {
+       // token markers keep state for every line
+       getTextPane().setTokenMarker(null);
+       getFormatLabel().setText("text");
+    }
+    else if (current_file == null)
     {
        getTextPane().setTokenMarker(new JavaTokenMarker());
        getFormatLabel().setText("java");
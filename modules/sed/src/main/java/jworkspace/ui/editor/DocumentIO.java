@@ -0,0 +1,625 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.EventListenerList;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+import com.hyperrealm.kiwi.util.Task;
+
+import jworkspace.ui.editor.jedit.LargeFileDocument;
+import jworkspace.ui.editor.jedit.SyntaxDocument;
+
+/**
+ * Loads and saves editor documents on background threads.
+ * <p>
+ * A load detects the charset from the byte order mark of the file, or uses
+ * the configured default charset, decodes the file in chunks and appends
+ * each chunk to the document on the event dispatch thread, so the beginning
+ * of a file is shown while the rest is still being read. A save encodes the
+ * document into a temporary file next to the target and renames it over the
+ * target, so a failed or cancelled save leaves the original file alone.
+ * <p>
+ * Progress is reported to the progress observers of the task and the change
+ * listeners are told when the transfer has finished; both are called on the
+ * event dispatch thread. Transfers run on a shared pool, so several editors
+ * can load and save at the same time.
+ */
+public class DocumentIO extends Task {
+    /**
+     * Document property holding the charset the document was loaded with
+     */
+    public static final String CHARSET_PROPERTY = "charset";
+    /**
+     * Document property telling whether the file started with a byte order mark
+     */
+    public static final String BOM_PROPERTY = "bom";
+    /**
+     * Number of bytes read or written at a time
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * Threads of the shared pool
+     */
+    private static final int THREADS = 4;
+    /**
+     * Byte order marks, with their charsets
+     */
+    private static final byte[][] BOMS = {
+        {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+        {(byte) 0xFF, (byte) 0xFE},
+        {(byte) 0xFE, (byte) 0xFF}
+    };
+    private static final Charset[] BOM_CHARSETS = {
+        StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE
+    };
+    /**
+     * Charset of files without a byte order mark
+     */
+    private static Charset defaultCharset = Charset.defaultCharset();
+    /**
+     * Shared pool
+     */
+    private static ExecutorService defaultExecutor = null;
+    /**
+     * File to load or to save to
+     */
+    private final File file;
+    /**
+     * Document to load into or to save
+     */
+    private final SyntaxDocument document;
+    /**
+     * True to load, false to save
+     */
+    private final boolean loading;
+    /**
+     * Charset, null to detect it on load
+     */
+    private Charset charset;
+    /**
+     * Whether the file has a byte order mark
+     */
+    private boolean bom;
+    /**
+     * Set to stop the transfer
+     */
+    private volatile boolean cancelled = false;
+    /**
+     * Set on the event dispatch thread when the transfer has finished
+     */
+    private boolean done = false;
+    /**
+     * Failure of the transfer
+     */
+    private IOException error = null;
+    /**
+     * Copy of a large document saved over the file it is mapped from, which
+     * replaces the file on the event dispatch thread; set by the transfer
+     * before it stops
+     */
+    private File savedCopy = null;
+    /**
+     * Failure to replace the mapped file with the saved copy
+     */
+    private IOException replaceError = null;
+    /**
+     * Released when the transfer has stopped touching the file and the document
+     */
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    /**
+     * Listeners told when the transfer has finished
+     */
+    private final EventListenerList listenerList = new EventListenerList();
+
+    private DocumentIO(File file, SyntaxDocument document, boolean loading, Charset charset, boolean bom) {
+        this.file = file;
+        this.document = document;
+        this.loading = loading;
+        this.charset = charset;
+        this.bom = bom;
+    }
+
+    /**
+     * Create a transfer appending a file to a document. The document should
+     * be empty and should not be edited until the transfer has finished.
+     * The chunks are not undoable: the undo history of the document is
+     * cleared when the load finishes.
+     *
+     * @param file     file to read
+     * @param document document to append to
+     * @param charset  charset of the file, or null to detect a byte order mark
+     *                 and fall back to the default charset
+     * @return transfer, to be started
+     */
+    public static DocumentIO load(File file, SyntaxDocument document, Charset charset) {
+        return new DocumentIO(file, document, true, charset, false);
+    }
+
+    /**
+     * Create a transfer saving a document with the charset it was loaded
+     * with, or with the default charset. The document must not be edited
+     * until the transfer has finished.
+     *
+     * @param document document to save
+     * @param file     file to write
+     * @return transfer, to be started
+     */
+    public static DocumentIO save(SyntaxDocument document, File file) {
+        Object charset = document.getProperty(CHARSET_PROPERTY);
+        return new DocumentIO(file, document, false,
+            charset instanceof Charset ? (Charset) charset : getDefaultCharset(),
+            Boolean.TRUE.equals(document.getProperty(BOM_PROPERTY)));
+    }
+
+    /**
+     * Get charset of files without a byte order mark
+     *
+     * @return the charset
+     */
+    public static synchronized Charset getDefaultCharset() {
+        return defaultCharset;
+    }
+
+    /**
+     * Set charset of files without a byte order mark. It is the platform
+     * charset unless configured.
+     *
+     * @param charset the charset
+     */
+    public static synchronized void setDefaultCharset(Charset charset) {
+        defaultCharset = charset;
+    }
+
+    /**
+     * Start the transfer on the shared pool
+     *
+     * @return this transfer
+     */
+    public DocumentIO start() {
+        getDefaultExecutor().execute(this);
+        return this;
+    }
+
+    /**
+     * Stop the transfer at the next chunk. A cancelled load leaves the chunks
+     * read so far in the document, a cancelled save leaves the target alone.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true for a load, false for a save
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * @return true if the transfer was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Wait until a save has written the file. The change listeners are told
+     * later, so this may be called on the event dispatch thread, before the
+     * document is discarded. A load needs the event dispatch thread to go on.
+     * <p>
+     * A large document saved over the file it is mapped from only writes a
+     * copy in the background; the copy replaces the file on the event
+     * dispatch thread, here or when the transfer finishes, whichever comes
+     * first. The save never waits for the event dispatch thread.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+        boolean eventThread = SwingUtilities.isEventDispatchThread();
+        if (loading && eventThread) {
+            throw new IllegalStateException("Cannot wait for a load on the event dispatch thread");
+        }
+        stopped.await();
+        if (eventThread) {
+            replaceMappedFile();
+        }
+    }
+
+    /**
+     * @return true if the transfer has finished, must be called on the event
+     * dispatch thread
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return failure of a finished transfer, or null
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * @return file being loaded or saved
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return document being loaded or saved
+     */
+    public SyntaxDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * @return charset of the file, known once a load has started decoding
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Add listener told on the event dispatch thread when the transfer has
+     * finished, whether it succeeded, failed or was cancelled
+     *
+     * @param l listener
+     */
+    public void addChangeListener(ChangeListener l) {
+        listenerList.add(ChangeListener.class, l);
+    }
+
+    /**
+     * Remove listener
+     *
+     * @param l listener
+     */
+    public void removeChangeListener(ChangeListener l) {
+        listenerList.remove(ChangeListener.class, l);
+    }
+
+    /**
+     * Run the transfer, on a thread other than the event dispatch thread
+     */
+    public void run() {
+        IOException failure = null;
+        try {
+            if (loading) {
+                read();
+            } else if (!cancelled) {
+                write();
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (InterruptedException ex) {
+            failure = new InterruptedIOException(ex.toString());
+        } catch (InvocationTargetException ex) {
+            failure = new IOException(ex.getCause());
+        } finally {
+            stopped.countDown();
+        }
+        final IOException result = failure;
+        SwingUtilities.invokeLater(() -> finished(result));
+    }
+
+    private void read() throws IOException, InterruptedException, InvocationTargetException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = Math.max(in.size(), 1);
+            long position = 0;
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+            CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+            CharsetDecoder decoder = null;
+            boolean eof = false;
+
+            while (!eof && !cancelled) {
+                int n = in.read(bytes);
+                eof = n < 0;
+                if (n > 0) {
+                    position += n;
+                }
+                bytes.flip();
+                if (decoder == null) {
+                    // wait for enough bytes to see the longest byte order mark
+                    if (!eof && bytes.remaining() < BOMS[0].length) {
+                        bytes.compact();
+                        continue;
+                    }
+                    decoder = newDecoder(bytes);
+                }
+                int percent = (int) (position * 100 / size);
+                while (decoder.decode(bytes, chars, eof).isOverflow()) {
+                    append(chars, percent);
+                }
+                if (eof) {
+                    while (decoder.flush(chars).isOverflow()) {
+                        append(chars, percent);
+                    }
+                }
+                bytes.compact();
+            }
+            if (!cancelled) {
+                append(chars, 100);
+            }
+        }
+    }
+
+    /**
+     * Skip the byte order mark at the start of the buffer and create the
+     * decoder for the charset it stands for
+     */
+    private CharsetDecoder newDecoder(ByteBuffer bytes) {
+        if (charset == null) {
+            Charset marked = skipByteOrderMark(bytes);
+            bom = marked != null;
+            charset = bom ? marked : getDefaultCharset();
+        } else {
+            int i = indexOf(charset);
+            if (i >= 0 && startsWith(bytes, BOMS[i])) {
+                bom = true;
+                bytes.position(bytes.position() + BOMS[i].length);
+            }
+        }
+        return charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Skip the byte order mark at the start of the buffer
+     *
+     * @param bytes file content
+     * @return charset the mark stands for, or null if the buffer does not start with a mark
+     */
+    static Charset skipByteOrderMark(ByteBuffer bytes) {
+        for (int i = 0; i < BOMS.length; i++) {
+            if (startsWith(bytes, BOMS[i])) {
+                bytes.position(bytes.position() + BOMS[i].length);
+                return BOM_CHARSETS[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+        if (bytes.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes.get(bytes.position() + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(Charset charset) {
+        for (int i = 0; i < BOM_CHARSETS.length; i++) {
+            if (BOM_CHARSETS[i].equals(charset)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Append the decoded characters to the document on the event dispatch
+     * thread, waiting for it, and empty the buffer
+     */
+    private void append(CharBuffer chars, final int percent)
+        throws InterruptedException, InvocationTargetException {
+        chars.flip();
+        final String text = chars.toString();
+        chars.clear();
+        SwingUtilities.invokeAndWait(() -> {
+            if (cancelled) {
+                return;
+            }
+            try {
+                if (text.length() > 0) {
+                    document.insertString(document.getLength(), text, null);
+                }
+            } catch (BadLocationException ex) {
+                // appending at the end is always valid
+                throw new IllegalStateException(ex);
+            }
+            notifyObservers(percent);
+        });
+    }
+
+    private void write() throws IOException {
+        if (document instanceof LargeFileDocument) {
+            // the mapped document writes its pieces through a temporary file itself
+            LargeFileDocument large = (LargeFileDocument) document;
+            if (large.isMappedFrom(file)) {
+                savedCopy = large.writeCopy(file);
+            } else {
+                large.save(file);
+            }
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("sed", ".tmp", dir);
+        try {
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                encode(out);
+                out.force(false);
+            }
+            if (!cancelled) {
+                try {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Encode the document into the channel. The document is read under its
+     * read lock, through the segments of its content.
+     */
+    private void encode(final FileChannel out) throws IOException {
+        final CharsetEncoder encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        final IOException[] failure = new IOException[1];
+
+        if (bom) {
+            bytes.put(BOMS[indexOf(charset)]);
+        }
+        document.render(() -> {
+            try {
+                Segment segment = new Segment();
+                segment.setPartialReturn(true);
+                int length = document.getLength();
+                int offset = 0;
+                while (offset < length && !cancelled) {
+                    document.getText(offset, Math.min(CHUNK_SIZE, length - offset), segment);
+                    offset += segment.count;
+                    CharBuffer chars = CharBuffer.wrap(segment.array, segment.offset, segment.count);
+                    encode(encoder, chars, bytes, out, false);
+                    progress(offset, length);
+                }
+                encode(encoder, CharBuffer.allocate(0), bytes, out, true);
+                while (encoder.flush(bytes).isOverflow()) {
+                    drain(bytes, out);
+                }
+                drain(bytes, out);
+            } catch (IOException ex) {
+                failure[0] = ex;
+            } catch (BadLocationException ex) {
+                failure[0] = new IOException(ex.toString());
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer bytes,
+                               FileChannel out, boolean endOfInput) throws IOException {
+        while (encoder.encode(chars, bytes, endOfInput).isOverflow()) {
+            drain(bytes, out);
+        }
+    }
+
+    private static void drain(ByteBuffer bytes, FileChannel out) throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void progress(long offset, long length) {
+        final int percent = (int) (offset * 100 / Math.max(length, 1));
+        SwingUtilities.invokeLater(() -> {
+            if (!done) {
+                notifyObservers(percent);
+            }
+        });
+    }
+
+    /**
+     * Replace the file a large document is mapped from with the copy saved
+     * by the transfer, on the event dispatch thread
+     */
+    private void replaceMappedFile() {
+        File copy = savedCopy;
+        savedCopy = null;
+        if (copy == null) {
+            return;
+        }
+        try {
+            if (!cancelled) {
+                ((LargeFileDocument) document).replaceFile(copy);
+            }
+        } catch (IOException ex) {
+            replaceError = ex;
+        } finally {
+            copy.delete();
+        }
+    }
+
+    private void finished(IOException failure) {
+        replaceMappedFile();
+        error = (failure != null) ? failure : replaceError;
+        done = true;
+        if (loading) {
+            // each chunk was appended as an edit of its own
+            document.getUndoManager().discardAllEdits();
+        }
+        if (loading && !cancelled && failure == null) {
+            document.putProperty(CHARSET_PROPERTY, charset);
+            document.putProperty(BOM_PROPERTY, bom);
+        }
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener l : listenerList.getListeners(ChangeListener.class)) {
+            l.stateChanged(event);
+        }
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread thread = new Thread(r, "DocumentIO");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return defaultExecutor;
+    }
+}
@@ -138,6 +138,14 @@ public class EditorActions implements CaretListener
    * Replace action name
    */
   public static final String replaceActionName = "replace";
+  /**
+   * Go to symbol action name
+   */
+  public static final String gotoSymbolActionName = "goto_symbol";
+  /**
+   * Find in files action name
+   */
+  public static final String findInFilesActionName = "find_in_files";
   /**
    * Evaluate action name
    */
@@ -218,6 +226,14 @@ public class EditorActions implements CaretListener
    * Replace action
    */
   protected Action replaceAction;
+  /**
+   * Go to symbol action
+   */
+  protected Action gotoSymbolAction;
+  /**
+   * Find in files action
+   */
+  protected Action findInFilesAction;
   /**
    * Evaluate action
    */
@@ -499,6 +515,36 @@ public class EditorActions implements CaretListener
       editor.doSearchMore(null, null, false, false, false);
     }
   }
+ /**
+  * Go to symbol action
+  */
+  protected class GotoSymbolAction extends TextAction
+  {
+    public GotoSymbolAction ()
+    {
+      super(gotoSymbolActionName);
+      putValue(ACTION_TYPE, DOCUMENT_ACTION);
+    }
+    public void actionPerformed (ActionEvent evt)
+    {
+      editor.gotoSymbol();
+    }
+  }
+ /**
+  * Find in files action
+  */
+  protected class FindInFilesAction extends AbstractAction
+  {
+    public FindInFilesAction ()
+    {
+      super(findInFilesActionName);
+      putValue(ACTION_TYPE, APPLICATION_ACTION);
+    }
+    public void actionPerformed (ActionEvent evt)
+    {
+      editor.findInFiles();
+    }
+  }
  /**
   * Evaluate action
   */
@@ -679,6 +725,8 @@ public class EditorActions implements CaretListener
        findAction      = new FindAction();
        findMoreAction  = new FindMoreAction();
        replaceAction   = new ReplaceAction();
+       gotoSymbolAction = new GotoSymbolAction();
+       findInFilesAction = new FindInFilesAction();
        evalAction      = new EvalAction();
        evalAllAction   = new EvalAllAction();
        chooseFontAction = new ChooseFontAction();
@@ -700,6 +748,8 @@ public class EditorActions implements CaretListener
        actions.put(findActionName, findAction);
        actions.put(findMoreActionName, findMoreAction);
        actions.put(replaceActionName, replaceAction);
+       actions.put(gotoSymbolActionName, gotoSymbolAction);
+       actions.put(findInFilesActionName, findInFilesAction);
        actions.put(evalActionName, evalAction);
        actions.put(evalAllActionName, evalAllAction);
        actions.put(chooseFontActionName, chooseFontAction);
@@ -0,0 +1,636 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.EventListenerList;
+
+/**
+ * Searches the files of a directory tree for a literal term or a regular
+ * expression.
+ * <p>
+ * The tree is walked by a fork/join pool, each directory and each file being
+ * a task of its own, so directories are listed and files are read and matched
+ * on all cores at once. Large files are memory-mapped, small ones are read in
+ * one go; files with a zero byte in their first block are taken for binary and
+ * skipped. Text is decoded like <code>DocumentIO</code> decodes it on load and
+ * matched by <code>TextSearch</code>, a window of whole lines at a time, so a
+ * match cannot span two windows. Files that cannot be read or that the regular
+ * expression fails on are skipped and counted apart.
+ * <p>
+ * Files and directories can be selected by include and exclude glob patterns.
+ * A pattern with a slash is matched against the path relative to the root,
+ * any other against the file name alone; excluded directories are not walked.
+ * <p>
+ * Matches are handed to the listeners in batches on the event dispatch thread
+ * while the search is running, so they can be shown at once.
+ */
+public class FileSearch {
+    /**
+     * Files of at least this size are memory-mapped
+     */
+    public static final long MAP_SIZE = 256 * 1024;
+    /**
+     * Files larger than this are skipped
+     */
+    public static final long MAX_FILE_SIZE = 64 * 1024 * 1024;
+    /**
+     * The search stops after this number of matches
+     */
+    public static final int MAX_MATCHES = 10000;
+    /**
+     * Number of characters decoded and matched at a time
+     */
+    public static final int WINDOW_SIZE = 1024 * 1024;
+    /**
+     * Number of bytes looked at to tell binary files
+     */
+    private static final int BINARY_PROBE = 8 * 1024;
+    /**
+     * Number of characters of a line kept with a match
+     */
+    private static final int MAX_LINE_TEXT = 256;
+    /**
+     * Shared pool
+     */
+    private static ForkJoinPool defaultPool = null;
+    /**
+     * Directory to search
+     */
+    private final File root;
+    /**
+     * Search term
+     */
+    private final String term;
+    /**
+     * Whether the case of letters matters
+     */
+    private final boolean caseSensitive;
+    /**
+     * Whether the term is a regular expression
+     */
+    private final boolean regex;
+    /**
+     * Patterns of files to search, empty for all files
+     */
+    private List<PathMatcher> includes = new ArrayList<>();
+    /**
+     * Patterns of files and directories to skip
+     */
+    private List<PathMatcher> excludes = new ArrayList<>();
+    /**
+     * Set to stop the search
+     */
+    private volatile boolean cancelled = false;
+    /**
+     * Set when the search has stopped at the maximum number of matches
+     */
+    private volatile boolean truncated = false;
+    /**
+     * Set on the event dispatch thread when the search has finished
+     */
+    private boolean done = false;
+    /**
+     * Number of files searched
+     */
+    private final AtomicInteger fileCount = new AtomicInteger();
+    /**
+     * Number of matches found
+     */
+    private final AtomicInteger matchCount = new AtomicInteger();
+    /**
+     * Files that could not be read or searched
+     */
+    private final ConcurrentLinkedQueue<File> skipped = new ConcurrentLinkedQueue<>();
+    /**
+     * Matches not yet handed to the listeners
+     */
+    private final ConcurrentLinkedQueue<Match> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * Set while a delivery of pending matches is queued on the event dispatch thread
+     */
+    private final AtomicBoolean posted = new AtomicBoolean();
+    /**
+     * Listeners told about matches and the end of the search
+     */
+    private final EventListenerList listenerList = new EventListenerList();
+
+    /**
+     * Create search
+     *
+     * @param root          directory to search
+     * @param term          text or regular expression to find
+     * @param caseSensitive whether the case of letters matters
+     * @param regex         whether the term is a regular expression
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    public FileSearch(File root, String term, boolean caseSensitive, boolean regex) {
+        this.root = root.getAbsoluteFile();
+        this.term = term;
+        this.caseSensitive = caseSensitive;
+        this.regex = regex;
+        // fail here rather than in every file on an invalid regular expression
+        new TextSearch(term, caseSensitive, regex);
+    }
+
+    /**
+     * Set the files to search
+     *
+     * @param globs glob patterns separated by commas, semicolons or spaces; empty to search all files
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    public void setIncludes(String globs) {
+        includes = parseGlobs(globs);
+    }
+
+    /**
+     * Set the files and directories to skip
+     *
+     * @param globs glob patterns separated by commas, semicolons or spaces
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    public void setExcludes(String globs) {
+        excludes = parseGlobs(globs);
+    }
+
+    private static List<PathMatcher> parseGlobs(String globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (globs != null) {
+            for (String glob : globs.trim().split("[,;\\s]+")) {
+                if (glob.length() > 0) {
+                    matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+                }
+            }
+        }
+        return matchers;
+    }
+
+    /**
+     * Directory searched
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Search term
+     */
+    public String getTerm() {
+        return term;
+    }
+
+    /**
+     * Start the search on the shared pool
+     *
+     * @return this search
+     */
+    public FileSearch start() {
+        getDefaultPool().execute(new RecursiveAction() {
+            protected void compute() {
+                try {
+                    new DirectoryTask(root).invoke();
+                } finally {
+                    SwingUtilities.invokeLater(() -> finished());
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Stop the search. Matches found so far but not yet handed to the
+     * listeners are dropped.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * True if the search has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * True if the search has stopped at the maximum number of matches
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * True once the listeners have been told that the search has finished
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Number of files searched so far
+     */
+    public int getFileCount() {
+        return fileCount.get();
+    }
+
+    /**
+     * Number of matches found so far
+     */
+    public int getMatchCount() {
+        return Math.min(matchCount.get(), MAX_MATCHES);
+    }
+
+    /**
+     * Number of files that could not be read or searched so far
+     */
+    public int getSkippedCount() {
+        return skipped.size();
+    }
+
+    /**
+     * Files that could not be read or searched so far
+     */
+    public List<File> getSkippedFiles() {
+        return new ArrayList<>(skipped);
+    }
+
+    /**
+     * Add listener told about matches and the end of the search
+     */
+    public void addListener(Listener l) {
+        listenerList.add(Listener.class, l);
+    }
+
+    /**
+     * Remove listener
+     */
+    public void removeListener(Listener l) {
+        listenerList.remove(Listener.class, l);
+    }
+
+    private boolean isStopped() {
+        return cancelled || truncated;
+    }
+
+    /*
+     * Whether a file or a directory is selected by the patterns; a pattern
+     * with a slash is matched against the relative path
+     */
+    private boolean matches(List<PathMatcher> matchers, Path relative) {
+        Path name = relative.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(name) || matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Path relativize(File file) {
+        return root.toPath().relativize(file.toPath());
+    }
+
+    /**
+     * Search a file and queue its matches
+     */
+    private void search(File file) throws IOException {
+        ByteBuffer bytes = read(file);
+        if (bytes == null) {
+            return;
+        }
+        Charset charset = DocumentIO.skipByteOrderMark(bytes);
+        if (charset == null) {
+            if (isBinary(bytes)) {
+                return;
+            }
+            charset = DocumentIO.getDefaultCharset();
+        }
+        CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // a small file is decoded in a single window
+        CharBuffer window = CharBuffer.allocate((int) Math.min(WINDOW_SIZE, bytes.remaining() + 2L));
+
+        TextSearch search = new TextSearch(term, caseSensitive, regex);
+        List<Match> found = new ArrayList<>();
+        int line = 0;
+        // characters of the current line in the windows before
+        int column = 0;
+        boolean flushing = false;
+        boolean last = false;
+        while (!last && !isStopped()) {
+            CoderResult result = flushing ? decoder.flush(window) : decoder.decode(bytes, window, true);
+            if (!flushing && result.isUnderflow()) {
+                flushing = true;
+                result = decoder.flush(window);
+            }
+            last = result.isUnderflow();
+            window.flip();
+            int limit = window.limit();
+            if (!last) {
+                // keep the last line for the next window, unless it fills this one
+                int lineEnd = limit;
+                while (lineEnd > 0 && window.get(lineEnd - 1) != '\n') {
+                    lineEnd--;
+                }
+                if (lineEnd > 0) {
+                    limit = lineEnd;
+                }
+            }
+            CharBuffer text = (CharBuffer) window.duplicate().limit(limit);
+
+            int lineStart = 0;
+            int counted = 0;
+            int offset = 0;
+            int start;
+            while (!isStopped() && (start = search.find(text, offset)) >= 0) {
+                for (; counted < start; counted++) {
+                    if (text.get(counted) == '\n') {
+                        line++;
+                        lineStart = counted + 1;
+                        column = 0;
+                    }
+                }
+                int lineEnd = start;
+                while (lineEnd < limit && text.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int end = Math.min(search.getMatchEnd(), lineEnd);
+                int textEnd = lineEnd > lineStart && text.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                textEnd = Math.min(textEnd, Math.max(end, lineStart + MAX_LINE_TEXT));
+                found.add(new Match(file, line, column + start - lineStart, column + end - lineStart,
+                    text.subSequence(lineStart, textEnd).toString()));
+                if (matchCount.get() + found.size() >= MAX_MATCHES) {
+                    truncated = true;
+                }
+                offset = (search.getMatchEnd() > start) ? search.getMatchEnd() : start + 1;
+            }
+            for (; counted < limit; counted++) {
+                if (text.get(counted) == '\n') {
+                    line++;
+                    lineStart = counted + 1;
+                    column = 0;
+                }
+            }
+            column += limit - lineStart;
+            window.position(limit);
+            window.compact();
+        }
+        // a file and its matches are counted once searched, so a skipped file leaves none
+        fileCount.incrementAndGet();
+        if (!found.isEmpty()) {
+            matchCount.addAndGet(found.size());
+            pending.addAll(found);
+            if (posted.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> deliver());
+            }
+        }
+    }
+
+    /**
+     * Read or map a file, or return null to skip it
+     */
+    private static ByteBuffer read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > MAX_FILE_SIZE) {
+                return null;
+            }
+            if (size >= MAP_SIZE) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                continue;
+            }
+            bytes.flip();
+            return bytes;
+        }
+    }
+
+    private static boolean isBinary(ByteBuffer bytes) {
+        int end = Math.min(bytes.limit(), bytes.position() + BINARY_PROBE);
+        for (int i = bytes.position(); i < end; i++) {
+            if (bytes.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hand the pending matches to the listeners
+     */
+    private void deliver() {
+        posted.set(false);
+        List<Match> matches = new ArrayList<>();
+        Match match;
+        while ((match = pending.poll()) != null) {
+            matches.add(match);
+        }
+        if (!cancelled && !matches.isEmpty()) {
+            for (Listener l : listenerList.getListeners(Listener.class)) {
+                l.found(this, matches);
+            }
+        }
+    }
+
+    private void finished() {
+        deliver();
+        done = true;
+        for (Listener l : listenerList.getListeners(Listener.class)) {
+            l.finished(this);
+        }
+    }
+
+    private static synchronized ForkJoinPool getDefaultPool() {
+        if (defaultPool == null) {
+            defaultPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Listener of a search, called on the event dispatch thread
+     */
+    public interface Listener extends EventListener {
+        /**
+         * Matches have been found
+         *
+         * @param search search
+         * @param matches matches of one or more files, in the order of each file
+         */
+        void found(FileSearch search, List<Match> matches);
+
+        /**
+         * Search has finished, has been cancelled or has stopped at the maximum number of matches
+         *
+         * @param search search
+         */
+        void finished(FileSearch search);
+    }
+
+    /**
+     * Match of the term in a line of a file
+     */
+    public static final class Match {
+
+        private final File file;
+
+        private final int line;
+
+        private final int start;
+
+        private final int end;
+
+        private final String text;
+
+        Match(File file, int line, int start, int end, String text) {
+            this.file = file;
+            this.line = line;
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+
+        /**
+         * File of the match
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Line of the match, starting from 0
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * Column the match starts at
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Column after the match, at most the end of the line
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Text of the line, cut after a few hundred characters
+         */
+        public String getText() {
+            return text;
+        }
+
+        public String toString() {
+            return file.getPath() + ":" + (line + 1) + ": " + text;
+        }
+    }
+
+    /**
+     * Lists a directory and searches its files and subdirectories in parallel
+     */
+    private final class DirectoryTask extends RecursiveAction {
+
+        private final File directory;
+
+        DirectoryTask(File directory) {
+            this.directory = directory;
+        }
+
+        protected void compute() {
+            File[] files = directory.listFiles();
+            if (files == null || isStopped()) {
+                return;
+            }
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (File file : files) {
+                Path relative = relativize(file);
+                if (matches(excludes, relative) || Files.isSymbolicLink(file.toPath())) {
+                    continue;
+                }
+                if (file.isDirectory()) {
+                    tasks.add(new DirectoryTask(file));
+                } else if (includes.isEmpty() || matches(includes, relative)) {
+                    tasks.add(new FileTask(file));
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Searches a file
+     */
+    private final class FileTask extends RecursiveAction {
+
+        private final File file;
+
+        FileTask(File file) {
+            this.file = file;
+        }
+
+        protected void compute() {
+            if (isStopped()) {
+                return;
+            }
+            try {
+                search(file);
+            } catch (IOException | RuntimeException | StackOverflowError ex) {
+                // a file that cannot be read, or that the expression fails on, does not stop the search
+                skipped.add(file);
+            }
+        }
+    }
+}
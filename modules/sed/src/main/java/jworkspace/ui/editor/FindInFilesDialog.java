@@ -0,0 +1,341 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.Window;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+
+import com.hyperrealm.kiwi.ui.dialog.KDialog;
+
+/**
+ * Dialog searching the files of a directory tree and listing the matches.
+ * <p>
+ * Matches are listed as the search finds them; the search can be stopped at
+ * any time. A double click or enter on a match opens its file in the editor
+ * and selects the match. The dialog is not modal, so the editor can be used
+ * while the search is running and the results stay at hand.
+ */
+public class FindInFilesDialog extends KDialog implements FileSearch.Listener {
+    /**
+     * Directories skipped by default
+     */
+    public static final String DEFAULT_EXCLUDES = ".git .svn CVS target build";
+    /**
+     * Number of skipped files listed in the tool tip of the status
+     */
+    private static final int MAX_SKIPPED_TIP = 20;
+    /**
+     * Editor opening the matches
+     */
+    private final AbstractEditor editor;
+
+    private final JTextField termField = new JTextField(30);
+
+    private final JTextField folderField = new JTextField(30);
+
+    private final JTextField includeField = new JTextField("*", 30);
+
+    private final JTextField excludeField = new JTextField(DEFAULT_EXCLUDES, 30);
+
+    private final JCheckBox caseBox = new JCheckBox("Case Sensitive");
+
+    private final JCheckBox regexBox = new JCheckBox("Regular Expression");
+
+    private final JButton searchButton = new JButton("Search");
+
+    private final JButton stopButton = new JButton("Stop");
+
+    private final JLabel status = new JLabel(" ");
+    /**
+     * Matches found
+     */
+    private final DefaultListModel<FileSearch.Match> model = new DefaultListModel<>();
+
+    private final JList<FileSearch.Match> results = new JList<>(model);
+    /**
+     * Running or last search
+     */
+    private FileSearch search = null;
+
+    /**
+     * Create dialog
+     *
+     * @param parent parent window
+     * @param editor editor opening the matches
+     * @param folder directory to search first
+     */
+    public FindInFilesDialog(Window parent, AbstractEditor editor, File folder) {
+        super(parent, "Find In Files", false);
+        this.editor = editor;
+        folderField.setText(folder.getAbsolutePath());
+
+        JButton browse = new JButton("...");
+        browse.addActionListener(e -> browse());
+        searchButton.addActionListener(e -> search());
+        termField.addActionListener(e -> search());
+        stopButton.addActionListener(e -> stop());
+        stopButton.setEnabled(false);
+        JButton close = new JButton("Close");
+        close.addActionListener(e -> doCancel());
+
+        JPanel form = new JPanel(new GridBagLayout());
+        form.setOpaque(false);
+        addRow(form, 0, "Find", termField, null);
+        addRow(form, 1, "In Folder", folderField, browse);
+        addRow(form, 2, "Include", includeField, null);
+        addRow(form, 3, "Exclude", excludeField, null);
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        options.setOpaque(false);
+        caseBox.setOpaque(false);
+        regexBox.setOpaque(false);
+        options.add(caseBox);
+        options.add(regexBox);
+        addRow(form, 4, null, options, null);
+
+        results.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        results.setCellRenderer(new MatchRenderer());
+        results.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    openSelected();
+                }
+            }
+        });
+        results.addKeyListener(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    openSelected();
+                    e.consume();
+                }
+            }
+        });
+        JScrollPane scroller = new JScrollPane(results);
+        scroller.setPreferredSize(new Dimension(600, 300));
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.setOpaque(false);
+        buttons.add(searchButton);
+        buttons.add(stopButton);
+        buttons.add(close);
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setOpaque(false);
+        bottom.add(status, BorderLayout.CENTER);
+        bottom.add(buttons, BorderLayout.EAST);
+
+        getMainContainer().setLayout(new BorderLayout(5, 5));
+        getMainContainer().setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        getMainContainer().add(form, BorderLayout.NORTH);
+        getMainContainer().add(scroller, BorderLayout.CENTER);
+        getMainContainer().add(bottom, BorderLayout.SOUTH);
+        getRootPane().setDefaultButton(searchButton);
+
+        pack();
+        setLocationRelativeTo(parent);
+    }
+
+    private static void addRow(JPanel form, int row, String label, Component field, Component button) {
+        GridBagConstraints c = new GridBagConstraints();
+        c.gridy = row;
+        c.insets = new Insets(2, 2, 2, 2);
+        c.anchor = GridBagConstraints.WEST;
+        if (label != null) {
+            form.add(new JLabel(label), c);
+        }
+        c.gridx = 1;
+        c.weightx = 1;
+        c.fill = GridBagConstraints.HORIZONTAL;
+        form.add(field, c);
+        if (button != null) {
+            c.gridx = 2;
+            c.weightx = 0;
+            c.fill = GridBagConstraints.NONE;
+            form.add(button, c);
+        }
+    }
+
+    /**
+     * Set the text to find, for example the selection of the editor
+     */
+    public void setTerm(String term) {
+        termField.setText(term);
+        termField.selectAll();
+    }
+
+    protected void startFocus() {
+        termField.requestFocus();
+    }
+
+    /**
+     * Stop the search when the dialog is closed
+     */
+    protected void cancel() {
+        stop();
+    }
+
+    private void browse() {
+        JFileChooser chooser = new JFileChooser(folderField.getText());
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            folderField.setText(chooser.getSelectedFile().getAbsolutePath());
+        }
+    }
+
+    /**
+     * Start a new search, stopping the running one
+     */
+    private void search() {
+        String term = termField.getText();
+        File folder = new File(folderField.getText());
+        if (term.length() == 0) {
+            return;
+        }
+        if (!folder.isDirectory()) {
+            JOptionPane.showMessageDialog(this, "Not a folder: " + folder);
+            return;
+        }
+        FileSearch next;
+        try {
+            next = new FileSearch(folder, term, caseBox.isSelected(), regexBox.isSelected());
+            next.setIncludes(includeField.getText());
+            next.setExcludes(excludeField.getText());
+        } catch (PatternSyntaxException ex) {
+            JOptionPane.showMessageDialog(this, ex.getMessage());
+            return;
+        } catch (IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(this, "Invalid pattern: " + ex.getMessage());
+            return;
+        }
+        stop();
+        model.clear();
+        search = next;
+        search.addListener(this);
+        stopButton.setEnabled(true);
+        status.setText("Searching...");
+        status.setToolTipText(null);
+        search.start();
+    }
+
+    private void stop() {
+        if (search != null && !search.isDone()) {
+            search.cancel();
+        }
+    }
+
+    private void openSelected() {
+        FileSearch.Match match = results.getSelectedValue();
+        if (match != null) {
+            editor.open(match.getFile(), match.getLine(), match.getStart(), match.getEnd());
+        }
+    }
+
+    public void found(FileSearch source, List<FileSearch.Match> matches) {
+        if (source != search) {
+            return;
+        }
+        for (FileSearch.Match match : matches) {
+            model.addElement(match);
+        }
+        status.setText(source.getMatchCount() + " matches in " + source.getFileCount() + " files searched"
+            + skipped(source));
+    }
+
+    public void finished(FileSearch source) {
+        if (source != search) {
+            return;
+        }
+        stopButton.setEnabled(false);
+        String state = source.isCancelled() ? ", stopped" : source.isTruncated() ? ", too many matches" : "";
+        status.setText(model.getSize() + " matches in " + source.getFileCount() + " files" + state + skipped(source));
+        List<File> files = source.getSkippedFiles();
+        StringBuilder tip = new StringBuilder();
+        for (int i = 0; i < Math.min(files.size(), MAX_SKIPPED_TIP); i++) {
+            tip.append(i == 0 ? "<html>Skipped:<br>" : "<br>").append(files.get(i).getPath());
+        }
+        if (files.size() > MAX_SKIPPED_TIP) {
+            tip.append("<br>...");
+        }
+        status.setToolTipText(files.isEmpty() ? null : tip.toString());
+    }
+
+    private static String skipped(FileSearch source) {
+        int count = source.getSkippedCount();
+        return count == 0 ? "" : ", " + count + (count == 1 ? " file" : " files") + " skipped";
+    }
+
+    /**
+     * Shows the path of the file relative to the searched folder, the line
+     * and the text of the line with the match in bold
+     */
+    private class MatchRenderer extends DefaultListCellRenderer {
+
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            FileSearch.Match match = (FileSearch.Match) value;
+            String path = match.getFile().getPath();
+            if (search != null && path.startsWith(search.getRoot().getPath())) {
+                path = path.substring(search.getRoot().getPath().length() + 1);
+            }
+            String line = match.getText();
+            int start = Math.min(match.getStart(), line.length());
+            int end = Math.min(match.getEnd(), line.length());
+            String text = "<html><font color=gray>" + escape(path) + ":" + (match.getLine() + 1) + ":</font> "
+                + escape(line.substring(0, start)) + "<b>" + escape(line.substring(start, end)) + "</b>"
+                + escape(line.substring(end)) + "</html>";
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+
+        private String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\t", "    ");
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Window;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import com.hyperrealm.kiwi.ui.dialog.KDialog;
+
+import jworkspace.ui.editor.jedit.SymbolIndex;
+
+/**
+ * Dialog that finds a declaration of the edited document by name.
+ * <p>
+ * The symbols of the document are matched against the typed text on every
+ * keystroke, best matches first; with no text, the symbols are listed in the
+ * order they are declared. Up and down move through the list, enter or a
+ * double click accepts the selected symbol and escape closes the dialog.
+ * <p>
+ * While the document is still being tokenized in the background, the
+ * matches found so far are listed and the list is refreshed as the index
+ * grows.
+ */
+public class GotoSymbolDialog extends KDialog {
+    /**
+     * Number of matches listed
+     */
+    public static final int MAX_MATCHES = 100;
+    /**
+     * Time between refreshes of the list while the index is incomplete, in milliseconds
+     */
+    public static final int REFRESH_DELAY = 250;
+    /**
+     * Index of the document
+     */
+    private final SymbolIndex index;
+    /**
+     * Typed text
+     */
+    private final JTextField pattern = new JTextField(30);
+    /**
+     * Matches of the typed text
+     */
+    private final JList<SymbolIndex.Match> matches = new JList<>();
+    /**
+     * Shown while the index is incomplete
+     */
+    private final JLabel status = new JLabel("Indexing...");
+    /**
+     * Refreshes the list while the index is incomplete
+     */
+    private final Timer refresher = new Timer(REFRESH_DELAY, e -> refresh());
+
+    /**
+     * Create dialog
+     *
+     * @param parent parent window
+     * @param title  dialog title
+     * @param index  index of the edited document
+     */
+    public GotoSymbolDialog(Window parent, String title, SymbolIndex index) {
+        super(parent, title, true);
+        this.index = index;
+
+        matches.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        matches.setVisibleRowCount(15);
+        matches.setCellRenderer(new MatchRenderer());
+        matches.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && matches.getSelectedValue() != null) {
+                    doAccept();
+                }
+            }
+        });
+
+        pattern.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                update();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                update();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        pattern.addKeyListener(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_UP:
+                        move(-1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_DOWN:
+                        move(1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if (matches.getSelectedValue() != null) {
+                            doAccept();
+                        }
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        doCancel();
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        JScrollPane scroller = new JScrollPane(matches);
+        scroller.setPreferredSize(new Dimension(420, 300));
+        getMainContainer().setLayout(new BorderLayout(5, 5));
+        getMainContainer().setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        getMainContainer().add(pattern, BorderLayout.NORTH);
+        getMainContainer().add(scroller, BorderLayout.CENTER);
+        getMainContainer().add(status, BorderLayout.SOUTH);
+        status.setVisible(!index.isComplete());
+
+        update();
+        pack();
+        setLocationRelativeTo(parent);
+    }
+
+    /**
+     * Returns the accepted match, or null if the dialog was cancelled
+     */
+    public SymbolIndex.Match getSelectedMatch() {
+        return isCancelled() ? null : matches.getSelectedValue();
+    }
+
+    protected void startFocus() {
+        pattern.requestFocus();
+        if (!index.isComplete() && !refresher.isRunning()) {
+            refresher.start();
+        }
+    }
+
+    /**
+     * Lists the matches of the typed text and selects the best one
+     */
+    private void update() {
+        matches.setListData(index.find(pattern.getText(), MAX_MATCHES));
+        if (matches.getModel().getSize() > 0) {
+            matches.setSelectedIndex(0);
+            matches.ensureIndexIsVisible(0);
+        }
+    }
+
+    /**
+     * Lists the matches again as the index grows, keeping the selected symbol
+     */
+    private void refresh() {
+        if (!isShowing()) {
+            refresher.stop();
+            return;
+        }
+        if (index.isComplete()) {
+            refresher.stop();
+            status.setVisible(false);
+        }
+        SymbolIndex.Match selected = matches.getSelectedValue();
+        matches.setListData(index.find(pattern.getText(), MAX_MATCHES));
+        int size = matches.getModel().getSize();
+        for (int i = 0; i < size && selected != null; i++) {
+            if (matches.getModel().getElementAt(i).symbol == selected.symbol) {
+                matches.setSelectedIndex(i);
+                matches.ensureIndexIsVisible(i);
+                return;
+            }
+        }
+        if (size > 0) {
+            matches.setSelectedIndex(0);
+        }
+    }
+
+    private void move(int delta) {
+        int size = matches.getModel().getSize();
+        if (size > 0) {
+            int selected = Math.max(0, Math.min(size - 1, matches.getSelectedIndex() + delta));
+            matches.setSelectedIndex(selected);
+            matches.ensureIndexIsVisible(selected);
+        }
+    }
+
+    /**
+     * Shows the name, the kind and the line of a symbol
+     */
+    private static class MatchRenderer extends DefaultListCellRenderer {
+
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            SymbolIndex.Match match = (SymbolIndex.Match) value;
+            String text = "<html>" + escape(match.symbol.getName()) + " <font color=gray>"
+                + match.symbol.getKindName() + ", line " + (match.line + 1) + "</font></html>";
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
+
+        private static String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+    }
+}
@@ -206,6 +206,8 @@ public class JSourceEditor extends AbstractEditor
         pane = new JEditTextArea(paneSettings);
         paneSettings.inputHandler.addKeyBinding("C+S", actions.getAction( EditorActions.saveActionName ));
         paneSettings.inputHandler.addKeyBinding("F3", actions.getAction( EditorActions.findMoreActionName ));
+        paneSettings.inputHandler.addKeyBinding("CS+F", actions.getAction( EditorActions.findInFilesActionName ));
+        paneSettings.inputHandler.addKeyBinding("C+G", actions.getAction( EditorActions.gotoSymbolActionName ));
         if (pane.getDocument() != null)
         {
             pane.getDocument().getDocumentProperties().
@@ -73,6 +73,7 @@ public class JSourceViewer extends AbstractEditor
      {
         pane = new JEditTextArea(paneSettings);
         paneSettings.inputHandler.addKeyBinding("F3", actions.getAction( EditorActions.findMoreActionName ));
+        paneSettings.inputHandler.addKeyBinding("CS+F", actions.getAction( EditorActions.findInFilesActionName ));
         if (pane.getDocument() != null)
         {
           pane.getDocument().getDocumentProperties().
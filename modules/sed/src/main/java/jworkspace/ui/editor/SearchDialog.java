@@ -42,6 +42,9 @@ public class SearchDialog extends KDialog
   private boolean bCaseSensitive  = false;
   private boolean bStartAtTop     = false;
   private boolean bReplaceAll     = false;
+  private boolean bCountOnly      = false;
+  private boolean bRegex          = false;
+  private boolean bWholeWord      = false;
   private JOptionPane jOptionPane;
 
   public SearchDialog(Frame parent, String title, boolean bModal,
@@ -56,6 +59,9 @@ public class SearchDialog extends KDialog
     final JCheckBox  jchkTop         = new JCheckBox("Start At Top",
                                                      bTopSetting);
     final JCheckBox  jchkAll         = new JCheckBox("Replace All", false);
+    final JCheckBox  jchkCount       = new JCheckBox("Count Matches", false);
+    final JCheckBox  jchkRegex       = new JCheckBox("Regular Expression", false);
+    final JCheckBox  jchkWord        = new JCheckBox("Whole Word", false);
     final Object[]   buttonLabels    = { "Accept", "Cancel" };
     if(bIsReplace)
     {
@@ -66,6 +72,8 @@ public class SearchDialog extends KDialog
         jtxfReplaceTerm,
         jchkAll,
         jchkCase,
+        jchkWord,
+        jchkRegex,
         jchkTop
       };
       jOptionPane = new JOptionPane(panelContents,
@@ -77,7 +85,7 @@ public class SearchDialog extends KDialog
     }
     else
     {
-      Object[] panelContents = { "Find", jtxfFindTerm, jchkCase, jchkTop  };
+      Object[] panelContents = { "Find", jtxfFindTerm, jchkCase, jchkWord, jchkRegex, jchkTop, jchkCount };
       jOptionPane = new JOptionPane(panelContents,
          JOptionPane.QUESTION_MESSAGE, JOptionPane.OK_CANCEL_OPTION,
          null, buttonLabels, buttonLabels[0]);
@@ -110,9 +118,13 @@ public class SearchDialog extends KDialog
                     inputFindTerm = jtxfFindTerm.getText();
                     bCaseSensitive = jchkCase.isSelected();
                     bStartAtTop = jchkTop.isSelected();
+                    bRegex = jchkRegex.isSelected();
+                    bWholeWord = jchkWord.isSelected();
                     if (isReplaceDialog) {
                         inputReplaceTerm = jtxfReplaceTerm.getText();
                         bReplaceAll = jchkAll.isSelected();
+                    } else {
+                        bCountOnly = jchkCount.isSelected();
                     }
                     setVisible(false);
                 } else {
@@ -121,6 +133,9 @@ public class SearchDialog extends KDialog
                     bCaseSensitive = false;
                     bStartAtTop = false;
                     bReplaceAll = false;
+                    bCountOnly = false;
+                    bRegex = false;
+                    bWholeWord = false;
                     setVisible(false);
                 }
             }
@@ -140,4 +155,7 @@ public class SearchDialog extends KDialog
     public boolean getCaseSensitive() { return bCaseSensitive; }
     public boolean getStartAtTop()    { return bStartAtTop; }
     public boolean getReplaceAll()    { return bReplaceAll; }
+    public boolean getCountOnly()     { return bCountOnly; }
+    public boolean getRegex()         { return bRegex; }
+    public boolean getWholeWord()     { return bWholeWord; }
   }
@@ -0,0 +1,476 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+import jworkspace.ui.editor.jedit.SyntaxDocument;
+
+/**
+ * Search engine for editor documents. The document text is scanned in place
+ * through the segments of its content, so neither finding the next match nor
+ * replacing all matches copies the document. A literal term is searched with
+ * the Boyer-Moore-Horspool algorithm, a regular expression with
+ * <code>java.util.regex</code>. A whole word search only accepts matches that
+ * are neither preceded nor followed by a letter, digit or underscore.
+ * <p>
+ * The segments are only valid until the document is modified; a search must
+ * run on the event dispatch thread.
+ */
+public class TextSearch {
+    /**
+     * Size of the bad character shift table, characters are folded into it
+     */
+    private static final int TABLE_SIZE = 256;
+    /**
+     * Search term
+     */
+    private final String term;
+    /**
+     * Compiled regular expression, null for literal search
+     */
+    private final Pattern pattern;
+    /**
+     * Whether a literal search matches case
+     */
+    private final boolean caseSensitive;
+    /**
+     * Whether only whole words match
+     */
+    private final boolean wholeWord;
+    /**
+     * Literal term, case folded when the search ignores case
+     */
+    private final char[] needle;
+    /**
+     * Bad character shifts of the literal term
+     */
+    private final int[] shifts = new int[TABLE_SIZE];
+    /**
+     * End offset of the last match
+     */
+    private int matchEnd = -1;
+    /**
+     * Matcher of the last match of a regular expression
+     */
+    private Matcher lastMatcher = null;
+
+    /**
+     * Create search for the given term
+     *
+     * @param term          text or regular expression to find
+     * @param caseSensitive whether the case of letters matters
+     * @param regex         whether the term is a regular expression
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    public TextSearch(String term, boolean caseSensitive, boolean regex) {
+        this(term, caseSensitive, regex, false);
+    }
+
+    /**
+     * Create search for the given term
+     *
+     * @param term          text or regular expression to find
+     * @param caseSensitive whether the case of letters matters
+     * @param regex         whether the term is a regular expression
+     * @param wholeWord     whether only whole words match
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    public TextSearch(String term, boolean caseSensitive, boolean regex, boolean wholeWord) {
+        this.term = term;
+        this.caseSensitive = caseSensitive;
+        this.wholeWord = wholeWord;
+        if (regex) {
+            pattern = Pattern.compile(term, caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            needle = null;
+        } else {
+            pattern = null;
+            needle = new char[term.length()];
+            for (int i = 0; i < needle.length; i++) {
+                needle[i] = fold(term.charAt(i));
+            }
+            int last = needle.length - 1;
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                shifts[i] = needle.length;
+            }
+            for (int i = 0; i < last; i++) {
+                shifts[needle[i] % TABLE_SIZE] = last - i;
+            }
+        }
+    }
+
+    /**
+     * Search term
+     */
+    public String getTerm() {
+        return term;
+    }
+
+    /**
+     * Find the first match at or after the given offset
+     *
+     * @param document document to search
+     * @param offset   offset to start the search at
+     * @return start offset of the match, or -1 if there is none
+     */
+    public int find(Document document, int offset) {
+        return find(getChars(document), offset);
+    }
+
+    /**
+     * Find the first match at or after the given offset
+     *
+     * @param text   text to search
+     * @param offset offset to start the search at
+     * @return start offset of the match, or -1 if there is none
+     */
+    public int find(CharSequence text, int offset) {
+        int start = findNext(text, (pattern != null) ? pattern.matcher(text) : null, offset);
+        if (start < 0) {
+            matchEnd = -1;
+        }
+        return start;
+    }
+
+    /**
+     * Find the first match at or after the given offset, continuing from the
+     * start of the text if there is none
+     *
+     * @param text   text to search
+     * @param offset offset to start the search at
+     * @param wrap   whether to continue from the start of the text
+     * @return start offset of the match, or -1 if there is none
+     */
+    public int find(CharSequence text, int offset, boolean wrap) {
+        int start = find(text, offset);
+        if (start < 0 && wrap && offset > 0) {
+            start = find(text, 0);
+        }
+        return start;
+    }
+
+    /**
+     * Replacement of the last match found. Groups of a regular expression are
+     * referred to with <code>$n</code> or <code>${name}</code> and a
+     * backslash escapes the next character, as in
+     * <code>Matcher.appendReplacement</code>; the replacement of a literal
+     * term is taken as it is.
+     *
+     * @param replacement replacement text
+     * @return replacement for the last match
+     * @throws IllegalStateException    if no match has been found
+     * @throws IllegalArgumentException if the replacement refers to a group
+     *                                  that does not exist
+     */
+    public String replacement(String replacement) {
+        if (matchEnd < 0) {
+            throw new IllegalStateException("No match found");
+        }
+        StringBuilder result = new StringBuilder();
+        appendReplacement(replacement, result);
+        return result.toString();
+    }
+
+    /**
+     * End offset of the last match found
+     */
+    public int getMatchEnd() {
+        return matchEnd;
+    }
+
+    /**
+     * Count all matches in the document
+     *
+     * @param document document to search
+     * @return number of matches
+     */
+    public int count(Document document) {
+        CharSequence text = getChars(document);
+        Matcher matcher = (pattern != null) ? pattern.matcher(text) : null;
+        int count = 0;
+        int offset = 0;
+        while (offset <= text.length()) {
+            int start = findNext(text, matcher, offset);
+            if (start < 0) {
+                break;
+            }
+            count++;
+            offset = next(start);
+        }
+        return count;
+    }
+
+    /**
+     * Replace all matches in the document. The replaced text is built in a
+     * single pass from the first match to the last one and then replaces this
+     * region of the document in one compound edit, so the whole replacement is
+     * undone at once.
+     *
+     * @param document    document to change
+     * @param replacement replacement text; may refer to groups with <code>$n</code>
+     *                    if the term is a regular expression
+     * @return number of replaced matches
+     * @throws BadLocationException if the document is changed concurrently
+     */
+    public int replaceAll(SyntaxDocument document, String replacement) throws BadLocationException {
+        CharSequence text = getChars(document);
+        StringBuilder result = new StringBuilder();
+        Matcher matcher = (pattern != null) ? pattern.matcher(text) : null;
+        int first = -1;
+        int last = 0;
+        int count = 0;
+        int offset = 0;
+
+        while (offset <= text.length()) {
+            int start = findNext(text, matcher, offset);
+            if (start < 0) {
+                break;
+            }
+            if (first < 0) {
+                first = start;
+            } else {
+                result.append(text, last, start);
+            }
+            appendReplacement(replacement, result);
+            last = matchEnd;
+            count++;
+            offset = next(start);
+        }
+
+        if (count > 0) {
+            String replaced = result.toString();
+            document.beginCompoundEdit();
+            try {
+                document.remove(first, last - first);
+                document.insertString(first, replaced, null);
+            } finally {
+                document.endCompoundEdit();
+            }
+        }
+        return count;
+    }
+
+    private void appendReplacement(String replacement, StringBuilder result) {
+        if (pattern != null) {
+            expand(lastMatcher, replacement, result);
+        } else {
+            result.append(replacement);
+        }
+    }
+
+    /*
+     * Append the replacement for the current match. The syntax is the one of
+     * Matcher.appendReplacement, which cannot be used here as it also copies
+     * all text from the start of the document to the first match.
+     */
+    private static void expand(Matcher matcher, String replacement, StringBuilder result) {
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\' && i < replacement.length()) {
+                result.append(replacement.charAt(i++));
+            } else if (c == '$' && i < replacement.length() && replacement.charAt(i) == '{') {
+                int close = replacement.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                }
+                result.append(nullToEmpty(matcher.group(replacement.substring(i + 1, close))));
+                i = close + 1;
+            } else if (c == '$' && i < replacement.length() && Character.isDigit(replacement.charAt(i))) {
+                int group = replacement.charAt(i++) - '0';
+                // take more digits as long as the group exists
+                while (i < replacement.length() && Character.isDigit(replacement.charAt(i))) {
+                    int next = group * 10 + (replacement.charAt(i) - '0');
+                    if (next > matcher.groupCount()) {
+                        break;
+                    }
+                    group = next;
+                    i++;
+                }
+                result.append(nullToEmpty(matcher.group(group)));
+            } else {
+                result.append(c);
+            }
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    /*
+     * Offset to continue after a match; an empty match moves one character on
+     */
+    private int next(int start) {
+        return (matchEnd > start) ? matchEnd : start + 1;
+    }
+
+    /*
+     * First match at or after the offset, skipping matches that are parts of
+     * words in a whole word search
+     */
+    private int findNext(CharSequence text, Matcher matcher, int offset) {
+        while (true) {
+            int start = (matcher != null) ? findPattern(matcher, offset) : findLiteral(text, offset);
+            if (start < 0 || !wholeWord || isWholeWord(text, start, matchEnd)) {
+                return start;
+            }
+            offset = start + 1;
+        }
+    }
+
+    private static boolean isWholeWord(CharSequence text, int start, int end) {
+        return (start == 0 || !isWordChar(text.charAt(start - 1)))
+            && (end == text.length() || !isWordChar(text.charAt(end)));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private int findPattern(Matcher matcher, int offset) {
+        if (offset > matcher.regionEnd() || !matcher.find(offset)) {
+            return -1;
+        }
+        matchEnd = matcher.end();
+        lastMatcher = matcher;
+        return matcher.start();
+    }
+
+    /*
+     * Boyer-Moore-Horspool search of the literal term
+     */
+    private int findLiteral(CharSequence text, int offset) {
+        int m = needle.length;
+        if (m == 0) {
+            return -1;
+        }
+        int last = m - 1;
+        int end = text.length() - m;
+        int i = Math.max(offset, 0);
+
+        while (i <= end) {
+            int j = last;
+            while (j >= 0 && fold(text.charAt(i + j)) == needle[j]) {
+                j--;
+            }
+            if (j < 0) {
+                matchEnd = i + m;
+                return i;
+            }
+            i += shifts[fold(text.charAt(i + last)) % TABLE_SIZE];
+        }
+        return -1;
+    }
+
+    private char fold(char c) {
+        return caseSensitive ? c : Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * View of the document text as a character sequence, backed by the
+     * segments of the document content without copying
+     *
+     * @param document document to view
+     * @return document text
+     */
+    public static CharSequence getChars(Document document) {
+        int length = document.getLength();
+        List<Segment> segments = new ArrayList<>();
+        try {
+            int offset = 0;
+            while (offset < length) {
+                Segment segment = new Segment();
+                segment.setPartialReturn(true);
+                document.getText(offset, length - offset, segment);
+                segments.add(segment);
+                offset += segment.count;
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return segments.size() == 1 ? segments.get(0) : new SegmentSequence(segments, 0, length);
+    }
+
+    /**
+     * Character sequence over consecutive segments
+     */
+    private static final class SegmentSequence implements CharSequence {
+
+        private final List<Segment> segments;
+
+        private final int start;
+
+        private final int length;
+
+        /* index of the segment of the last access and its start in the document */
+
+        private int current = 0;
+
+        private int currentStart = 0;
+
+        SegmentSequence(List<Segment> segments, int start, int length) {
+            this.segments = segments;
+            this.start = start;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            int position = start + index;
+            Segment segment = segments.get(current);
+            if (position < currentStart || position >= currentStart + segment.count) {
+                current = 0;
+                currentStart = 0;
+                segment = segments.get(0);
+                while (position >= currentStart + segment.count) {
+                    currentStart += segment.count;
+                    segment = segments.get(++current);
+                }
+            }
+            return segment.array[segment.offset + position - currentStart];
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            return new SegmentSequence(segments, start + from, to - from);
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder(length);
+            sb.append(this, 0, length);
+            return sb.toString();
+        }
+    }
+}
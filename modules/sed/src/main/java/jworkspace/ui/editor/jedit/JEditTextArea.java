@@ -357,8 +357,21 @@ public class JEditTextArea extends JComponent
       select(newStart,newEnd);
     }
 
+    /**
+     * Fired by the background tokenizer of the document when
+     * the tokens of a range of lines have changed.
+     */
     public void changedUpdate(DocumentEvent evt)
     {
+      if (evt.getDocument() != document) return;
+
+      int first = getLineOfOffset(evt.getOffset());
+      int last = getLineOfOffset(evt.getOffset() + evt.getLength());
+
+      painter.currentLineTokens = null;
+
+      // also drops the layouts of lines scrolled out of view
+      painter.invalidateLineRange(first,last);
     }
   }
 
@@ -689,6 +702,10 @@ public class JEditTextArea extends JComponent
    */
   public int _offsetToX(int line, int offset)
   {
+    TextAreaPainter.LineLayout layout = painter.getLineLayout(line);
+    if(layout != null)
+      return horizontalOffset + layout.offsetToX(offset);
+
     TokenMarker tokenMarker = getTokenMarker();
 
     /* Use painter's cached info for speed */
@@ -710,7 +727,7 @@ public class JEditTextArea extends JComponent
      * tokens can vary in width */
     else
     {
-      Token tokens;
+      TokenList tokens;
       if(painter.currentLineIndex == line
         && painter.currentLineTokens != null)
         tokens = painter.currentLineTokens;
@@ -724,20 +741,15 @@ public class JEditTextArea extends JComponent
       Font defaultFont = painter.getFont();
       SyntaxStyle[] styles = painter.getStyles();
 
-      for(;;)
+      for(int t = 0; t < tokens.count; t++)
       {
-        byte id = tokens.id;
-        if(id == Token.END)
-        {
-          return x;
-        }
-
+        byte id = tokens.ids[t];
         if(id == Token.NULL)
           fm = painter.getFontMetrics();
         else
           fm = styles[id].getFontMetrics(defaultFont);
 
-        int length = tokens.length;
+        int length = tokens.lengths[t];
 
         if(offset + segmentOffset < lineSegment.offset + length)
         {
@@ -752,8 +764,8 @@ public class JEditTextArea extends JComponent
             lineSegment,fm,x,painter,0);
           lineSegment.offset += length;
         }
-        tokens = tokens.next;
       }
+      return x;
     }
   }
   /**
@@ -772,7 +784,7 @@ public class JEditTextArea extends JComponent
     if(caretBlinks)
     {
       blink = !blink;
-      painter.invalidateSelectedLines();
+      painter.repaintCaret();
     }
     else
       blink = true;
@@ -834,12 +846,14 @@ public class JEditTextArea extends JComponent
     // do magic stuff
     else if(line < firstLine)
     {
+      // the following lines have moved
+      painter.invalidateLineRange(line,Integer.MAX_VALUE);
       setFirstLine(firstLine + count);
     }
     // end of magic stuff
     else
     {
-      painter.invalidateLineRange(line,firstLine + visibleLines);
+      painter.invalidateLineRange(line,Integer.MAX_VALUE);
       updateScrollBars();
     }
   }
@@ -1321,6 +1335,12 @@ public class JEditTextArea extends JComponent
    */
   public void overwriteSetSelectedText(String str)
   {
+    if(!document.canInsert(str))
+    {
+      getToolkit().beep();
+      return;
+    }
+
     // Don't overstrike if there is a selection
     if(!overwrite || selectionStart != selectionEnd)
     {
@@ -1556,14 +1576,14 @@ public class JEditTextArea extends JComponent
       if(painter.isBracketHighlightEnabled())
       {
         if(bracketLine != -1)
-          painter.invalidateLine(bracketLine);
+          painter.repaintLine(bracketLine);
         updateBracketHighlight(end);
         if(bracketLine != -1)
-          painter.invalidateLine(bracketLine);
+          painter.repaintLine(bracketLine);
       }
 
-      painter.invalidateLineRange(selectionStartLine,selectionEndLine);
-      painter.invalidateLineRange(newStartLine,newEndLine);
+      painter.repaintLineRange(selectionStartLine,selectionEndLine);
+      painter.repaintLineRange(newStartLine,newEndLine);
 
       document.addUndoableEdit(new CaretUndo(
         selectionStart,selectionEnd));
@@ -1806,6 +1826,13 @@ public class JEditTextArea extends JComponent
         + " read only");
     }
 
+    // check first, so the selection is not removed either
+    if(selectedText != null && !document.canInsert(selectedText))
+    {
+      getToolkit().beep();
+      return;
+    }
+
     document.beginCompoundEdit();
 
     try
@@ -2011,6 +2038,11 @@ public class JEditTextArea extends JComponent
    */
   public int xToOffset(int line, int x)
   {
+    TextAreaPainter.LineLayout layout = painter.getLineLayout(line);
+    if(layout != null)
+      return layout.xToOffset(x - horizontalOffset,
+        painter.isBlockCaretEnabled());
+
     TokenMarker tokenMarker = getTokenMarker();
 
     /* Use painter's cached info for speed */
@@ -2054,7 +2086,7 @@ public class JEditTextArea extends JComponent
     }
     else
     {
-      Token tokens;
+      TokenList tokens;
       if(painter.currentLineIndex == line && painter
         .currentLineTokens != null)
         tokens = painter.currentLineTokens;
@@ -2069,18 +2101,15 @@ public class JEditTextArea extends JComponent
       Font defaultFont = painter.getFont();
       SyntaxStyle[] styles = painter.getStyles();
 
-      for(;;)
+      for(int t = 0; t < tokens.count; t++)
       {
-        byte id = tokens.id;
-        if(id == Token.END)
-          return offset;
-
+        byte id = tokens.ids[t];
         if(id == Token.NULL)
           fm = painter.getFontMetrics();
         else
           fm = styles[id].getFontMetrics(defaultFont);
 
-        int length = tokens.length;
+        int length = tokens.lengths[t];
 
         for(int i = 0; i < length; i++)
         {
@@ -2107,8 +2136,8 @@ public class JEditTextArea extends JComponent
         }
 
         offset += length;
-        tokens = tokens.next;
       }
+      return offset;
     }
   }
   /**
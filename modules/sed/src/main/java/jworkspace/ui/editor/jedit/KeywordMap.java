@@ -10,6 +10,9 @@
 
 package jworkspace.ui.editor.jedit;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import javax.swing.text.Segment;
 
 /**
@@ -17,6 +20,15 @@ import javax.swing.text.Segment;
  * to values. However, the `keys' are Swing segments. This allows lookups of
  * text substrings without the overhead of creating a new string object.
  * <p>
+ * The keywords are compiled into a deterministic automaton on the first
+ * lookup after they change. The automaton is a trie stored as a double
+ * array: a state is an index, and the transition from state <i>s</i> on
+ * character class <i>c</i> leads to <code>base[s] + c</code> if
+ * <code>check[base[s] + c] == s</code>. A lookup therefore reads every
+ * character of the segment exactly once and never compares keywords.
+ * Characters are mapped to classes through a table which also folds case
+ * for case insensitive maps.
+ * <p>
  * This class is used by <code>CTokenMarker</code> to map keywords to ids.
  *
  * @author Slava Pestov, Mike Dillon
@@ -31,20 +43,18 @@ public class KeywordMap
 	public KeywordMap(boolean ignoreCase)
 	{
 		this(ignoreCase, 52);
-		this.ignoreCase = ignoreCase;
 	}
 
 	/**
 	 * Creates a new <code>KeywordMap</code>.
 	 * @param ignoreCase True if the keys are case insensitive
-	 * @param mapLength The number of `buckets' to create.
-	 * A value of 52 will give good performance for most maps.
+	 * @param mapLength The expected number of keywords
 	 */
 	public KeywordMap(boolean ignoreCase, int mapLength)
 	{
-		this.mapLength = mapLength;
 		this.ignoreCase = ignoreCase;
-		map = new Keyword[mapLength];
+		keywords = new char[Math.max(mapLength, 1)][];
+		keywordIds = new byte[keywords.length];
 	}
 
 	/**
@@ -55,33 +65,59 @@ public class KeywordMap
 	 */
 	public byte lookup(Segment text, int offset, int length)
 	{
-		if(length == 0)
+		if(length < minLength || length > maxLength
+			|| offset + length > text.offset + text.count)
 			return Token.NULL;
-		Keyword k = map[getSegmentMapKey(text, offset, length)];
-		while(k != null)
+		if(base == null)
+			compile();
+
+		char[] array = text.array;
+		char[] classes = this.classes;
+		int[] base = this.base;
+		int[] check = this.check;
+		int state = 0;
+		for(int i = offset, end = offset + length; i < end; i++)
 		{
-			if(length != k.keyword.length)
+			char c = array[i];
+			if(c >= classes.length)
 			{
-				k = k.next;
-				continue;
+				if(!ignoreCase)
+					return Token.NULL;
+				c = Character.toUpperCase(c);
+				if(c >= classes.length)
+					return Token.NULL;
 			}
-			if(SyntaxUtilities.regionMatches(ignoreCase,text,offset,
-				k.keyword))
-				return k.id;
-			k = k.next;
+			int cls = classes[c];
+			if(cls == 0)
+				return Token.NULL;
+			int next = base[state] + cls;
+			if(next >= check.length || check[next] != state)
+				return Token.NULL;
+			state = next;
 		}
-		return Token.NULL;
+		return ids[state];
 	}
 
 	/**
-	 * Adds a key-value mapping.
+	 * Adds a key-value mapping. A key added twice maps to the
+	 * last value.
 	 * @param keyword The key
-	 * @Param id The value
+	 * @param id The value
 	 */
 	public void add(String keyword, byte id)
 	{
-		int key = getStringMapKey(keyword);
-		map[key] = new Keyword(keyword.toCharArray(),id,map[key]);
+		if(keywordCount == keywords.length)
+		{
+			keywords = Arrays.copyOf(keywords, keywordCount * 2);
+			keywordIds = Arrays.copyOf(keywordIds, keywordCount * 2);
+		}
+		keywords[keywordCount] = keyword.toCharArray();
+		keywordIds[keywordCount] = id;
+		keywordCount++;
+
+		minLength = Math.min(minLength, keyword.length());
+		maxLength = Math.max(maxLength, keyword.length());
+		base = null;
 	}
 
 	/**
@@ -101,40 +137,186 @@ public class KeywordMap
 	public void setIgnoreCase(boolean ignoreCase)
 	{
 		this.ignoreCase = ignoreCase;
+		base = null;
 	}
 
-	// protected members
-	protected int mapLength;
+	// private members
+	private char[][] keywords;
+	private byte[] keywordIds;
+	private int keywordCount;
+	private int minLength = Integer.MAX_VALUE;
+	private int maxLength;
+	private boolean ignoreCase;
+
+	// the compiled automaton; base is null while it is out of date
+	private char[] classes;
+	private int[] base;
+	private int[] check;
+	private byte[] ids;
+	private int stateCount;
+	private int firstFree;
 
-	protected int getStringMapKey(String s)
+	private char fold(char c)
 	{
-		return (Character.toUpperCase(s.charAt(0)) +
-				Character.toUpperCase(s.charAt(s.length()-1)))
-				% mapLength;
+		return ignoreCase ? Character.toUpperCase(c) : c;
 	}
 
-	protected int getSegmentMapKey(Segment s, int off, int len)
+	/**
+	 * Builds the character classes and the double array from the
+	 * keywords added so far.
+	 */
+	private void compile()
 	{
-		return (Character.toUpperCase(s.array[off]) +
-				Character.toUpperCase(s.array[off + len - 1]))
-				% mapLength;
+		// every character that may fold to a keyword character
+		// must have a slot in the class table
+		int tableLength = 128;
+		for(int i = 0; i < keywordCount; i++)
+		{
+			for(char c : keywords[i])
+			{
+				tableLength = Math.max(tableLength, c + 1);
+				if(ignoreCase)
+				{
+					tableLength = Math.max(tableLength,
+						Character.toLowerCase(c) + 1);
+					tableLength = Math.max(tableLength,
+						Character.toUpperCase(c) + 1);
+				}
+			}
+		}
+
+		char[] keyClasses = new char[tableLength];
+		int classCount = 0;
+		for(int i = 0; i < keywordCount; i++)
+		{
+			for(char c : keywords[i])
+			{
+				char key = fold(c);
+				if(keyClasses[key] == 0)
+					keyClasses[key] = (char)++classCount;
+			}
+		}
+		classes = new char[tableLength];
+		for(int c = 0; c < tableLength; c++)
+		{
+			char key = fold((char)c);
+			if(key < tableLength)
+				classes[c] = keyClasses[key];
+		}
+
+		// sort the keywords by their class sequences; the sort is
+		// stable, so of two equal keys the one added last comes last
+		final char[][] folded = new char[keywordCount][];
+		Integer[] order = new Integer[keywordCount];
+		for(int i = 0; i < keywordCount; i++)
+		{
+			char[] keyword = keywords[i];
+			folded[i] = new char[keyword.length];
+			for(int j = 0; j < keyword.length; j++)
+				folded[i][j] = classes[keyword[j]];
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer a, Integer b)
+			{
+				char[] s = folded[a];
+				char[] t = folded[b];
+				int len = Math.min(s.length, t.length);
+				for(int i = 0; i < len; i++)
+				{
+					if(s[i] != t[i])
+						return s[i] - t[i];
+				}
+				return s.length - t.length;
+			}
+		});
+
+		int capacity = keywordCount * 4 + classCount + 1;
+		base = new int[capacity];
+		check = new int[capacity];
+		ids = new byte[capacity];
+		Arrays.fill(check, -1);
+		stateCount = 1;
+		firstFree = 1;
+		insertChildren(folded, order, 0, keywordCount, 0, 0);
+
+		base = Arrays.copyOf(base, stateCount);
+		check = Arrays.copyOf(check, stateCount);
+		ids = Arrays.copyOf(ids, stateCount);
 	}
 
-	// private members
-	class Keyword
+	/**
+	 * Places the children of a state. The keywords in the given
+	 * range of the sorted order share the first <code>depth</code>
+	 * classes, which lead to <code>state</code>.
+	 */
+	private void insertChildren(char[][] folded, Integer[] order,
+		int start, int end, int depth, int state)
 	{
-		public Keyword(char[] keyword, byte id, Keyword next)
+		// a keyword ending here makes the state accepting; it sorts
+		// before the longer keywords
+		while(start < end && folded[order[start]].length == depth)
+		{
+			ids[state] = keywordIds[order[start]];
+			start++;
+		}
+		if(start == end)
+			return;
+
+		char[] children = new char[end - start];
+		int[] bounds = new int[end - start + 1];
+		int childCount = 0;
+		for(int i = start; i < end; i++)
 		{
-			this.keyword = keyword;
-			this.id = id;
-			this.next = next;
+			char cls = folded[order[i]][depth];
+			if(childCount == 0 || children[childCount - 1] != cls)
+			{
+				children[childCount] = cls;
+				bounds[childCount] = i;
+				childCount++;
+			}
+		}
+		bounds[childCount] = end;
+
+		// first fit: the lowest base with all child slots free
+		int b = Math.max(1, firstFree - children[0]);
+		for(;;)
+		{
+			ensureStates(b + children[childCount - 1] + 1);
+			boolean free = true;
+			for(int i = 0; i < childCount && free; i++)
+				free = check[b + children[i]] == -1;
+			if(free)
+				break;
+			b++;
+		}
+		base[state] = b;
+		for(int i = 0; i < childCount; i++)
+		{
+			int child = b + children[i];
+			check[child] = state;
+			stateCount = Math.max(stateCount, child + 1);
 		}
+		while(firstFree < check.length && check[firstFree] != -1)
+			firstFree++;
 
-		public char[] keyword;
-		public byte id;
-		public Keyword next;
+		for(int i = 0; i < childCount; i++)
+		{
+			insertChildren(folded, order, bounds[i], bounds[i + 1],
+				depth + 1, b + children[i]);
+		}
 	}
 
-	private Keyword[] map;
-	private boolean ignoreCase;
+	private void ensureStates(int size)
+	{
+		if(size <= check.length)
+			return;
+		int capacity = Math.max(size, check.length * 2);
+		base = Arrays.copyOf(base, capacity);
+		ids = Arrays.copyOf(ids, capacity);
+		int old = check.length;
+		check = Arrays.copyOf(check, capacity);
+		Arrays.fill(check, old, capacity, -1);
+	}
 }
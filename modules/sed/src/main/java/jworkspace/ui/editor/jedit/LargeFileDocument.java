@@ -0,0 +1,1103 @@
+package jworkspace.ui.editor.jedit;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A document for files that are too large to be read into memory. The
+ * file is memory mapped and edits are kept in a piece table (see
+ * <code>MappedContent</code>), so heap use does not depend on the size
+ * of the file.<p>
+ *
+ * Instead of one element per line, the document keeps the start offset of
+ * every 64th line only; other lines are found by scanning from the nearest
+ * of these checkpoints. The checkpoints are collected by a background
+ * thread, which hands the file over to the document in chunks as it goes:
+ * the first screen is available almost at once and the document grows
+ * until the whole file is loaded. Listeners registered with
+ * <code>addChangeListener()</code> are notified as loading progresses,
+ * and when it fails, see <code>getError()</code>.<p>
+ *
+ * Every byte of the file is one character (ISO-8859-1), which keeps file
+ * offsets and document offsets interchangeable; unmodified text is saved
+ * byte for byte. Text with other characters cannot be inserted, see
+ * <code>canInsert()</code>. Since document offsets are ints, files may be
+ * at most <code>MAX_FILE_SIZE</code> bytes long.<p>
+ *
+ * Syntax highlighting keeps state for every line and should not be enabled
+ * for this document.
+ *
+ * @author Anton Troshin
+ * @see jworkspace.ui.editor.jedit.MappedContent
+ */
+public class LargeFileDocument extends SyntaxDocument
+{
+   /**
+    * The largest file that can be opened.
+    */
+   public static final long MAX_FILE_SIZE = Integer.MAX_VALUE - 1;
+
+   /**
+    * Opens a file.
+    * @param file The file
+    * @exception IOException If the file cannot be mapped, or is larger
+    * than <code>MAX_FILE_SIZE</code>
+    */
+   public LargeFileDocument(File file) throws IOException
+   {
+      this(file,map(file));
+   }
+
+   /**
+    * Returns the file this document was opened from.
+    */
+   public File getFile()
+   {
+      return file;
+   }
+
+   /**
+    * Returns true while the file is still being loaded.
+    */
+   public boolean isLoading()
+   {
+      return content.getOriginalLength() < fileLength && !disposed
+         && loadError == null;
+   }
+
+   /**
+    * Returns the error that stopped loading the file, or null. Only
+    * the part of the file loaded before the error is in the document.
+    */
+   public IOException getError()
+   {
+      return loadError;
+   }
+
+   /**
+    * Returns how much of the file has been loaded, in percent.
+    */
+   public int getProgress()
+   {
+      if(fileLength == 0)
+         return 100;
+      return (int)(content.getOriginalLength() * 100L / fileLength);
+   }
+
+   /**
+    * Adds a listener that is notified on the event dispatch thread
+    * each time another part of the file has been loaded.
+    * @param listener The listener
+    */
+   public void addChangeListener(ChangeListener listener)
+   {
+      listenerList.add(ChangeListener.class,listener);
+   }
+
+   /**
+    * Removes a change listener.
+    * @param listener The listener
+    */
+   public void removeChangeListener(ChangeListener listener)
+   {
+      listenerList.remove(ChangeListener.class,listener);
+   }
+
+   /**
+    * Returns true if the text only contains ISO-8859-1 characters, the
+    * only ones this document can hold.
+    * @param text The text
+    */
+   public boolean canInsert(String text)
+   {
+      if(text == null)
+         return true;
+      for(int i = text.length() - 1; i >= 0; i--)
+         if(text.charAt(i) > 0xff)
+            return false;
+      return true;
+   }
+
+   /**
+    * Writes the document to a file. The text is written to a temporary
+    * file first, which then replaces the target. The part of the file
+    * that is not loaded yet is saved unchanged.<p>
+    *
+    * When the target is the file the document is mapped from, the
+    * mapping has to be switched to the saved file, see
+    * <code>replaceFile()</code>, and this must be called on the event
+    * dispatch thread.
+    * @param target The file to write
+    * @exception IOException If an I/O error occurs
+    */
+   public void save(File target) throws IOException
+   {
+      boolean mapped = isMappedFrom(target);
+      if(mapped && !SwingUtilities.isEventDispatchThread())
+      {
+         throw new IllegalStateException("The mapped file can only be"
+            + " replaced on the event dispatch thread");
+      }
+      File tmp = writeCopy(target);
+      try
+      {
+         if(mapped)
+            replaceFile(tmp);
+         else
+         {
+            Files.move(tmp.toPath(),target.toPath(),
+               StandardCopyOption.REPLACE_EXISTING);
+         }
+      }
+      finally
+      {
+         tmp.delete();
+      }
+   }
+
+   /**
+    * Writes the document to a new temporary file in the directory of
+    * the target, which can then be moved over the target. Can be called
+    * on any thread.
+    * @param target The file the copy is for
+    * @return The temporary file
+    * @exception IOException If an I/O error occurs
+    */
+   public File writeCopy(File target) throws IOException
+   {
+      File dir = target.getAbsoluteFile().getParentFile();
+      File tmp = File.createTempFile("sed",".tmp",dir);
+      boolean written = false;
+      try
+      {
+         FileChannel out = FileChannel.open(tmp.toPath(),
+            StandardOpenOption.WRITE);
+         try
+         {
+            readLock();
+            try
+            {
+               content.write(out,content.getOriginalLength(),
+                  (int)fileLength);
+            }
+            finally
+            {
+               readUnlock();
+            }
+         }
+         finally
+         {
+            out.close();
+         }
+         written = true;
+         return tmp;
+      }
+      finally
+      {
+         if(!written)
+            tmp.delete();
+      }
+   }
+
+   /**
+    * Returns true if the given file is the one this document is mapped
+    * from, which <code>replaceFile()</code> has to replace.
+    * @param target The file
+    * @exception IOException If an I/O error occurs
+    */
+   public boolean isMappedFrom(File target) throws IOException
+   {
+      return target.exists() && Files.isSameFile(target.toPath(),
+         file.toPath());
+   }
+
+   /**
+    * Replaces the file this document is mapped from with a saved copy,
+    * see <code>writeCopy()</code>, and maps that instead. The mapping is
+    * released first, since some platforms do not allow replacing a
+    * mapped file. The undo history, which refers to the old mapping, is
+    * cleared. If the copy cannot be moved, the document keeps reading
+    * the old file.<p>
+    *
+    * Nothing may read the old mapping once it is released, so this must
+    * be called on the event dispatch thread, like everything else that
+    * reads the text; the indexer is stopped and the document locked.
+    * @param saved The saved copy
+    * @exception IOException If the copy cannot be moved, or the file
+    * cannot be mapped again
+    */
+   public void replaceFile(File saved) throws IOException
+   {
+      IOException error = null;
+      writeLock();
+      try
+      {
+         indexer.stop();
+         unmap(buffer);
+         try
+         {
+            Files.move(saved.toPath(),file.toPath(),
+               StandardCopyOption.REPLACE_EXISTING);
+         }
+         catch(IOException e)
+         {
+            error = e;
+         }
+
+         // if the move failed, the file is still the old one
+         buffer = map(file);
+         if(error == null)
+         {
+            fileLength = buffer.limit();
+            content.rebase(buffer);
+            loadedLines = lineCount - 1;
+            undo.discardAllEdits();
+         }
+         else
+            content.remap(buffer);
+         loadError = null;
+         indexer = new Indexer(content.getOriginalLength(),loadedLines);
+         startIndexing();
+      }
+      catch(IOException e)
+      {
+         // the document cannot be read any more
+         if(error == null)
+            error = e;
+         buffer = ByteBuffer.allocate(0);
+         content.remap(buffer);
+         dispose();
+      }
+      finally
+      {
+         writeUnlock();
+      }
+      if(error != null)
+         throw error;
+   }
+
+   /**
+    * Stops loading the file. Should be called when the document is
+    * no longer used.
+    */
+   public void dispose()
+   {
+      disposed = true;
+   }
+
+   public Element getDefaultRootElement()
+   {
+      return lineMap != null ? lineMap : super.getDefaultRootElement();
+   }
+
+   public void insertString(int offset, String str, AttributeSet a)
+      throws BadLocationException
+   {
+      if(str == null || str.length() == 0)
+         return;
+      if(offset < 0 || offset > getLength())
+         throw new BadLocationException("Invalid insert",offset);
+      if(!canInsert(str))
+      {
+         throw new IllegalArgumentException("Only ISO-8859-1 characters"
+            + " can be inserted into " + file.getName());
+      }
+
+      writeLock();
+      try
+      {
+         int line = getLineOfOffset(offset);
+         MappedContent.Pieces p = content.insertText(offset,str);
+         textInserted(line,offset,str.length(),countLines(str));
+         fireUndoableEditUpdate(new UndoableEditEvent(this,
+            new TextEdit(offset,p,true)));
+      }
+      finally
+      {
+         writeUnlock();
+      }
+   }
+
+   public void remove(int offset, int len) throws BadLocationException
+   {
+      if(len <= 0)
+         return;
+      if(offset < 0 || offset + len > getLength())
+         throw new BadLocationException("Invalid remove",offset);
+
+      writeLock();
+      try
+      {
+         MappedContent.Pieces p = removeText(offset,len);
+         fireUndoableEditUpdate(new UndoableEditEvent(this,
+            new TextEdit(offset,p,false)));
+      }
+      finally
+      {
+         writeUnlock();
+      }
+   }
+
+   /* internal code follows */
+
+   static final int CHECKPOINT_LINES = 64;
+
+   // the indexer scans this many bytes at a time ...
+   static final int INDEX_CHUNK = 256 * 1024;
+
+   // ... and hands them over at most this often, in milliseconds
+   static final long PUBLISH_INTERVAL = 100;
+
+   private LargeFileDocument(File file, ByteBuffer buffer)
+   {
+      super(new MappedContent(buffer));
+      this.file = file;
+      this.buffer = buffer;
+      fileLength = buffer.limit();
+      content = (MappedContent)getContent();
+      lineMap = new LineMap();
+
+      // the first chunk is loaded at once, so the first screen is there
+      // when the document is shown
+      indexer = new Indexer(0,0);
+      if(indexer.scan())
+         indexer.handOver();
+      startIndexing();
+   }
+
+   // Continues indexing the file in the background, if it is not
+   // loaded completely.
+   private void startIndexing()
+   {
+      if(isLoading())
+      {
+         Thread thread = new Thread(indexer,"Indexing " + file.getName());
+         thread.setDaemon(true);
+         thread.setPriority(Thread.MIN_PRIORITY);
+         thread.start();
+      }
+   }
+
+   // Releases a mapping at once instead of when the buffer is garbage
+   // collected. There is no public API for this; the cleaner of the
+   // mapped buffer does it on the JDKs that have one.
+   private static void unmap(ByteBuffer buffer)
+   {
+      try
+      {
+         Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+         cleanerMethod.setAccessible(true);
+         Object cleaner = cleanerMethod.invoke(buffer);
+         if(cleaner != null)
+            cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+      catch(Exception e)
+      {
+         // left to the garbage collector
+      }
+   }
+
+   private static ByteBuffer map(File file) throws IOException
+   {
+      FileChannel channel = FileChannel.open(file.toPath(),
+         StandardOpenOption.READ);
+      try
+      {
+         long size = channel.size();
+         if(size > MAX_FILE_SIZE)
+            throw new IOException("File is too large: " + file);
+         return channel.map(FileChannel.MapMode.READ_ONLY,0,size);
+      }
+      finally
+      {
+         // the mapping stays valid
+         channel.close();
+      }
+   }
+
+   private MappedContent.Pieces removeText(int offset, int len)
+   {
+      int line = getLineOfOffset(offset);
+      int lines = content.countLines(offset,offset + len);
+      MappedContent.Pieces p = content.removePieces(offset,len);
+
+      // drop the checkpoints of removed line starts, shift the rest
+      int i = findCheckpointByOffset(offset) + 1;
+      int j = i;
+      while(j < checkpoints && checkpointOffsets[j] <= offset + len)
+         j++;
+      System.arraycopy(checkpointLines,j,checkpointLines,i,checkpoints - j);
+      System.arraycopy(checkpointOffsets,j,checkpointOffsets,i,
+         checkpoints - j);
+      checkpoints -= j - i;
+      for(int k = i; k < checkpoints; k++)
+      {
+         checkpointLines[k] -= lines;
+         checkpointOffsets[k] -= len;
+      }
+
+      lineCount -= lines;
+      cacheLine = -1;
+      fireRemoveUpdate(new LineEvent(DocumentEvent.EventType.REMOVE,
+         offset,len,line,lines + 1,1,lines > 0));
+      return p;
+   }
+
+   private void insertPieces(int offset, MappedContent.Pieces p)
+   {
+      int line = getLineOfOffset(offset);
+      content.insertPieces(offset,p);
+      int len = p.length();
+      textInserted(line,offset,len,content.countLines(offset,offset + len));
+   }
+
+   // Updates the line index after text has been inserted into the
+   // content and fires the insert event.
+   private void textInserted(int line, int offset, int len, int lines)
+   {
+      int i = findCheckpointByOffset(offset) + 1;
+      for(int k = i; k < checkpoints; k++)
+      {
+         checkpointLines[k] += lines;
+         checkpointOffsets[k] += len;
+      }
+
+      if(lines >= CHECKPOINT_LINES)
+         addCheckpoints(i,line,offset,offset + len);
+
+      lineCount += lines;
+      cacheLine = -1;
+      fireInsertUpdate(new LineEvent(DocumentEvent.EventType.INSERT,
+         offset,len,line,1,lines + 1,lines > 0));
+   }
+
+   // Adds checkpoints for the lines starting in [from, to), which must
+   // lie between checkpoints index - 1 and index.
+   private void addCheckpoints(int index, int line, int from, int to)
+   {
+      int n = 0;
+      int[] lines = new int[16];
+      int[] offsets = new int[16];
+      for(int pos = content.skipLines(from,CHECKPOINT_LINES);
+         pos <= to; pos = content.skipLines(pos,CHECKPOINT_LINES))
+      {
+         line += CHECKPOINT_LINES;
+         if(n == lines.length)
+         {
+            lines = Arrays.copyOf(lines,n * 2);
+            offsets = Arrays.copyOf(offsets,n * 2);
+         }
+         lines[n] = line;
+         offsets[n] = pos;
+         n++;
+      }
+      insertCheckpoints(index,lines,offsets,0,n);
+   }
+
+   private void insertCheckpoints(int index, int[] lines, int[] offsets,
+      int lineDelta, int count)
+   {
+      if(checkpoints + count > checkpointLines.length)
+      {
+         int capacity = Math.max(checkpoints + count,checkpoints * 2);
+         checkpointLines = Arrays.copyOf(checkpointLines,capacity);
+         checkpointOffsets = Arrays.copyOf(checkpointOffsets,capacity);
+      }
+
+      System.arraycopy(checkpointLines,index,checkpointLines,index + count,
+         checkpoints - index);
+      System.arraycopy(checkpointOffsets,index,checkpointOffsets,
+         index + count,checkpoints - index);
+      for(int k = 0; k < count; k++)
+      {
+         checkpointLines[index + k] = lines[k] + lineDelta;
+         checkpointOffsets[index + k] = offsets[k];
+      }
+      checkpoints += count;
+   }
+
+   // Adds the next part of the file to the end of the document; the
+   // checkpoints are in file coordinates.
+   private void appendChunk(Indexer source, int count, int lines,
+      int[] cpLines, int[] cpOffsets, int cps)
+   {
+      writeLock();
+      try
+      {
+         // a chunk of a mapping that was released meanwhile
+         if(source.stopped)
+            return;
+
+         int line = lineCount - 1;
+         int lineDelta = line - loadedLines;
+         int offsetDelta = getLength() - content.getOriginalLength();
+         int offset = content.appendOriginal(count);
+
+         for(int k = 0; k < cps; k++)
+            cpOffsets[k] += offsetDelta;
+         insertCheckpoints(checkpoints,cpLines,cpOffsets,lineDelta,cps);
+
+         lineCount += lines;
+         loadedLines += lines;
+         cacheLine = -1;
+         fireInsertUpdate(new LineEvent(DocumentEvent.EventType.INSERT,
+            offset,count,line,1,lines + 1,lines > 0));
+      }
+      finally
+      {
+         writeUnlock();
+      }
+      fireStateChanged();
+   }
+
+   private void fireStateChanged()
+   {
+      ChangeEvent evt = new ChangeEvent(this);
+      ChangeListener[] listeners = listenerList.getListeners(
+         ChangeListener.class);
+      for(int i = listeners.length - 1; i >= 0; i--)
+         listeners[i].stateChanged(evt);
+   }
+
+   private int getLineOfOffset(int offset)
+   {
+      offset = Math.min(offset,getLength());
+      int k = findCheckpointByOffset(offset);
+      int line = checkpointLines[k];
+      int start = checkpointOffsets[k];
+      if(cacheLine >= 0 && cacheStart <= offset && cacheStart > start)
+      {
+         line = cacheLine;
+         start = cacheStart;
+      }
+      return line + content.countLines(start,offset);
+   }
+
+   private int getLineStart(int line)
+   {
+      int k = findCheckpointByLine(line);
+      int from = checkpointLines[k];
+      int start = checkpointOffsets[k];
+      if(cacheLine >= 0 && cacheLine <= line && cacheLine > from)
+      {
+         from = cacheLine;
+         start = cacheStart;
+      }
+      return content.skipLines(start,line - from);
+   }
+
+   // the last checkpoint at or before the offset
+   private int findCheckpointByOffset(int offset)
+   {
+      int k = Arrays.binarySearch(checkpointOffsets,0,checkpoints,offset);
+      return k >= 0 ? k : -k - 2;
+   }
+
+   // the last checkpoint at or before the line
+   private int findCheckpointByLine(int line)
+   {
+      int k = Arrays.binarySearch(checkpointLines,0,checkpoints,line);
+      return k >= 0 ? k : -k - 2;
+   }
+
+   private static int countLines(String str)
+   {
+      int count = 0;
+      for(int i = str.length() - 1; i >= 0; i--)
+         if(str.charAt(i) == '\n')
+            count++;
+      return count;
+   }
+
+   private static final Logger LOG = LoggerFactory.getLogger(
+      LargeFileDocument.class);
+
+   private final File file;
+   private ByteBuffer buffer;
+   private long fileLength;
+   private final MappedContent content;
+   private final LineMap lineMap;
+   private Indexer indexer;
+   private volatile boolean disposed;
+
+   // the failure that stopped the indexer, set on the event dispatch thread
+   private IOException loadError;
+
+   // line start offsets of some lines, in increasing order
+   private int[] checkpointLines = new int[64];
+   private int[] checkpointOffsets = new int[64];
+   private int checkpoints = 1;
+
+   private int lineCount = 1;
+
+   // the number of newlines in the loaded part of the file
+   private int loadedLines;
+
+   // the start offset of the line after the last one looked up
+   private int cacheLine = -1;
+   private int cacheStart;
+
+   /**
+    * The root element. Line elements are created on demand and are
+    * not updated when the document changes.
+    */
+   class LineMap implements Element
+   {
+      public Document getDocument()
+      {
+         return LargeFileDocument.this;
+      }
+
+      public Element getParentElement()
+      {
+         return null;
+      }
+
+      public String getName()
+      {
+         return "paragraph";
+      }
+
+      public AttributeSet getAttributes()
+      {
+         return SimpleAttributeSet.EMPTY;
+      }
+
+      public int getStartOffset()
+      {
+         return 0;
+      }
+
+      public int getEndOffset()
+      {
+         return content.length();
+      }
+
+      public int getElementIndex(int offset)
+      {
+         return getLineOfOffset(offset);
+      }
+
+      public int getElementCount()
+      {
+         return lineCount;
+      }
+
+      public Element getElement(int index)
+      {
+         if(index < 0 || index >= lineCount)
+            return null;
+
+         int start = getLineStart(index);
+         int end;
+         if(index == lineCount - 1)
+            end = content.length();
+         else
+         {
+            end = content.skipLines(start,1);
+            cacheLine = index + 1;
+            cacheStart = end;
+         }
+         return new LineElement(this,start,end);
+      }
+
+      public boolean isLeaf()
+      {
+         return false;
+      }
+   }
+
+   /**
+    * A line, as returned by the root element.
+    */
+   static class LineElement implements Element
+   {
+      LineElement(Element parent, int start, int end)
+      {
+         this.parent = parent;
+         this.start = start;
+         this.end = end;
+      }
+
+      public Document getDocument()
+      {
+         return parent.getDocument();
+      }
+
+      public Element getParentElement()
+      {
+         return parent;
+      }
+
+      public String getName()
+      {
+         return "content";
+      }
+
+      public AttributeSet getAttributes()
+      {
+         return SimpleAttributeSet.EMPTY;
+      }
+
+      public int getStartOffset()
+      {
+         return start;
+      }
+
+      public int getEndOffset()
+      {
+         return end;
+      }
+
+      public int getElementIndex(int offset)
+      {
+         return -1;
+      }
+
+      public int getElementCount()
+      {
+         return 0;
+      }
+
+      public Element getElement(int index)
+      {
+         return null;
+      }
+
+      public boolean isLeaf()
+      {
+         return true;
+      }
+
+      private final Element parent;
+      private final int start;
+      private final int end;
+   }
+
+   /**
+    * A line that is only looked up when its offsets are asked for.
+    */
+   class LineRef extends LineElement
+   {
+      LineRef(int line)
+      {
+         super(lineMap,-1,-1);
+         this.line = line;
+      }
+
+      public int getStartOffset()
+      {
+         return lineMap.getElement(line).getStartOffset();
+      }
+
+      public int getEndOffset()
+      {
+         return lineMap.getElement(line).getEndOffset();
+      }
+
+      private final int line;
+   }
+
+   /**
+    * A document event. If lines were added or removed it is also the
+    * element change of the root element; the line elements are only
+    * created when asked for.
+    */
+   class LineEvent implements DocumentEvent, DocumentEvent.ElementChange
+   {
+      LineEvent(DocumentEvent.EventType type, int offset, int length,
+         int index, int removed, int added, boolean changed)
+      {
+         this.type = type;
+         this.offset = offset;
+         this.length = length;
+         this.index = index;
+         this.removed = removed;
+         this.added = added;
+         this.changed = changed;
+      }
+
+      public int getOffset()
+      {
+         return offset;
+      }
+
+      public int getLength()
+      {
+         return length;
+      }
+
+      public Document getDocument()
+      {
+         return LargeFileDocument.this;
+      }
+
+      public DocumentEvent.EventType getType()
+      {
+         return type;
+      }
+
+      public DocumentEvent.ElementChange getChange(Element elem)
+      {
+         return changed && elem == lineMap ? this : null;
+      }
+
+      public Element getElement()
+      {
+         return lineMap;
+      }
+
+      public int getIndex()
+      {
+         return index;
+      }
+
+      public Element[] getChildrenRemoved()
+      {
+         // the removed lines are gone, only their number is known
+         Element[] children = new Element[removed];
+         for(int i = 0; i < removed; i++)
+            children[i] = new LineElement(lineMap,offset,offset);
+         return children;
+      }
+
+      public Element[] getChildrenAdded()
+      {
+         Element[] children = new Element[added];
+         for(int i = 0; i < added; i++)
+            children[i] = new LineRef(index + i);
+         return children;
+      }
+
+      private final DocumentEvent.EventType type;
+      private final int offset;
+      private final int length;
+      private final int index;
+      private final int removed;
+      private final int added;
+      private final boolean changed;
+   }
+
+   /**
+    * Undo information for an insert or a remove; only the pieces that
+    * make up the text are kept.
+    */
+   class TextEdit extends AbstractUndoableEdit
+   {
+      TextEdit(int offset, MappedContent.Pieces pieces, boolean insert)
+      {
+         this.offset = offset;
+         this.pieces = pieces;
+         this.insert = insert;
+      }
+
+      public void undo() throws CannotUndoException
+      {
+         super.undo();
+         apply(!insert);
+      }
+
+      public void redo() throws CannotRedoException
+      {
+         super.redo();
+         apply(insert);
+      }
+
+      public String getPresentationName()
+      {
+         return insert ? "addition" : "deletion";
+      }
+
+      private void apply(boolean add)
+      {
+         writeLock();
+         try
+         {
+            if(add)
+               insertPieces(offset,pieces);
+            else
+               removeText(offset,pieces.length());
+         }
+         finally
+         {
+            writeUnlock();
+         }
+      }
+
+      private final int offset;
+      private final MappedContent.Pieces pieces;
+      private final boolean insert;
+   }
+
+   /**
+    * Scans the file for line starts and hands it over to the document
+    * in chunks.
+    */
+   class Indexer implements Runnable
+   {
+      /**
+       * Creates an indexer that starts at the given file offset.
+       * @param pos The offset
+       * @param lines The number of newlines before the offset
+       */
+      Indexer(int pos, int lines)
+      {
+         this.pos = pos;
+         this.lines = lines;
+         published = pos;
+         publishedLines = lines;
+      }
+
+      public void run()
+      {
+         long lastPublish = System.currentTimeMillis();
+         while(!disposed && scan())
+         {
+            long now = System.currentTimeMillis();
+            if(pos == length || now - lastPublish >= PUBLISH_INTERVAL)
+            {
+               if(!publish())
+                  return;
+               lastPublish = now;
+            }
+         }
+      }
+
+      /**
+       * Scans the next chunk of the file. Returns false at the end
+       * of the file.
+       */
+      synchronized boolean scan()
+      {
+         if(stopped || pos >= length)
+            return false;
+
+         int end = Math.min(pos + INDEX_CHUNK,length);
+         for(int i = pos; i < end; i++)
+         {
+            if(buffer.get(i) != '\n')
+               continue;
+            lines++;
+            if(lines % CHECKPOINT_LINES == 0)
+            {
+               if(cps == cpLines.length)
+               {
+                  cpLines = Arrays.copyOf(cpLines,cps * 2);
+                  cpOffsets = Arrays.copyOf(cpOffsets,cps * 2);
+               }
+               cpLines[cps] = lines;
+               cpOffsets[cps] = i + 1;
+               cps++;
+            }
+         }
+         pos = end;
+         return true;
+      }
+
+      /**
+       * Adds the scanned part of the file to the document.
+       */
+      void handOver()
+      {
+         appendChunk(this,pos - published,lines - publishedLines,
+            cpLines,cpOffsets,cps);
+         published = pos;
+         publishedLines = lines;
+         cps = 0;
+      }
+
+      /**
+       * Stops the indexer; once this returns, the file buffer is not
+       * read any more and no more chunks are added to the document.
+       */
+      synchronized void stop()
+      {
+         stopped = true;
+      }
+
+      private boolean publish()
+      {
+         try
+         {
+            // waiting for the event dispatch thread keeps the indexer
+            // from running ahead of the document
+            SwingUtilities.invokeAndWait(new Runnable()
+            {
+               public void run()
+               {
+                  if(!disposed)
+                     handOver();
+               }
+            });
+            return true;
+         }
+         catch(InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            return false;
+         }
+         catch(InvocationTargetException e)
+         {
+            failed(e.getCause());
+            return false;
+         }
+      }
+
+      /**
+       * Stops loading after the document failed to take a chunk, and
+       * lets the listeners report it.
+       */
+      private void failed(final Throwable cause)
+      {
+         LOG.error("Cannot load " + file,cause);
+         SwingUtilities.invokeLater(new Runnable()
+         {
+            public void run()
+            {
+               if(disposed || indexer != Indexer.this)
+                  return;
+               loadError = cause instanceof IOException ? (IOException)cause
+                  : new IOException(cause.toString(),cause);
+               fireStateChanged();
+            }
+         });
+      }
+
+      private final int length = (int)fileLength;
+      private volatile boolean stopped;
+      private int pos;
+      private int lines;
+      private int published;
+      private int publishedLines;
+
+      // checkpoints found since the last hand over, in file coordinates
+      private int cps;
+      private int[] cpLines = new int[256];
+      private int[] cpOffsets = new int[256];
+   }
+}
@@ -0,0 +1,594 @@
+package jworkspace.ui.editor.jedit;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Document content backed by a read-only file buffer, normally a memory
+ * mapped file, and a piece table for edits. The text is a sequence of
+ * pieces, each of which refers either to a range of the file buffer or
+ * to a range of an append-only buffer that holds all inserted text; the
+ * file itself is never copied to the heap.<p>
+ *
+ * Every byte of the file is one character (ISO-8859-1), so that document
+ * offsets can be mapped to file offsets without decoding, and unmodified
+ * text is written back byte for byte.<p>
+ *
+ * Only a prefix of the file buffer is part of the text at first; more of
+ * it is exposed with <code>appendOriginal()</code> as the file is indexed.
+ *
+ * @author Anton Troshin
+ * @see jworkspace.ui.editor.jedit.LargeFileDocument
+ */
+final class MappedContent implements AbstractDocument.Content
+{
+   /**
+    * The largest number of characters returned by a partial
+    * <code>getChars()</code> call.
+    */
+   static final int MAX_SEGMENT = 65536;
+
+   /**
+    * Creates a new content for the given file buffer. The text is
+    * initially empty.
+    * @param original The file buffer; must not be modified afterwards
+    */
+   MappedContent(ByteBuffer original)
+   {
+      this.original = original.duplicate();
+   }
+
+   /**
+    * Adds the next <code>count</code> characters of the file buffer
+    * to the end of the text.
+    * @param count The number of characters
+    * @return The offset at which the characters were added
+    */
+   int appendOriginal(int count)
+   {
+      int where = total;
+      int last = pieces - 1;
+      if(last >= 0 && !added[last]
+         && starts[last] + lengths[last] == originalLength)
+         lengths[last] += count;
+      else
+         insertPiece(pieces,false,originalLength,count);
+
+      originalLength += count;
+      total += count;
+      hint = 0;
+      hintOffset = 0;
+      return where;
+   }
+
+   /**
+    * Replaces the file buffer with one that holds the same bytes, as
+    * after mapping the file again.
+    * @param original The new file buffer
+    */
+   void remap(ByteBuffer original)
+   {
+      this.original = original.duplicate();
+   }
+
+   /**
+    * Replaces the file buffer with one that starts with the current text,
+    * as after saving it, and makes the text a single piece of the new
+    * buffer. Pieces returned before refer to the old buffers and must
+    * not be inserted again.
+    * @param original The new file buffer
+    */
+   void rebase(ByteBuffer original)
+   {
+      this.original = original.duplicate();
+      int length = total;
+      addBuffer = new char[1024];
+      addLength = 0;
+      pieces = 0;
+      total = 0;
+      originalLength = 0;
+      if(length > 0)
+         appendOriginal(length);
+   }
+
+   /**
+    * Returns the number of characters of the file buffer that are
+    * part of the text so far.
+    */
+   int getOriginalLength()
+   {
+      return originalLength;
+   }
+
+   /**
+    * Inserts a string, returning the pieces that now hold it.
+    */
+   Pieces insertText(int where, String str)
+   {
+      int len = str.length();
+      ensureAddCapacity(addLength + len);
+      str.getChars(0,len,addBuffer,addLength);
+
+      Pieces p = new Pieces(1);
+      p.add(true,addLength,len);
+      addLength += len;
+
+      insertPieces(where,p);
+      return p;
+   }
+
+   /**
+    * Inserts previously removed pieces.
+    */
+   void insertPieces(int where, Pieces p)
+   {
+      int i = split(where);
+
+      for(int k = 0; k < p.count; k++)
+      {
+         // typing at the end of the last insert just extends its piece
+         if(i > 0 && added[i - 1] && p.added[k]
+            && starts[i - 1] + lengths[i - 1] == p.starts[k])
+            lengths[i - 1] += p.lengths[k];
+         else
+            insertPiece(i++,p.added[k],p.starts[k],p.lengths[k]);
+      }
+
+      total += p.length();
+      hint = 0;
+      hintOffset = 0;
+      updateMarksForInsert(where,p.length());
+   }
+
+   /**
+    * Removes a range of text, returning the pieces that held it.
+    */
+   Pieces removePieces(int where, int len)
+   {
+      int i = split(where);
+      int j = split(where + len);
+
+      Pieces p = new Pieces(j - i);
+      for(int k = i; k < j; k++)
+         p.add(added[k],starts[k],lengths[k]);
+
+      System.arraycopy(added,j,added,i,pieces - j);
+      System.arraycopy(starts,j,starts,i,pieces - j);
+      System.arraycopy(lengths,j,lengths,i,pieces - j);
+      pieces -= j - i;
+
+      total -= len;
+      hint = 0;
+      hintOffset = 0;
+      updateMarksForRemove(where,len);
+      return p;
+   }
+
+   /**
+    * Counts the newlines in a range of text.
+    */
+   int countLines(int from, int to)
+   {
+      int count = 0;
+      int pos = from;
+      while(pos < to)
+      {
+         int i = findPiece(pos);
+         int off = pos - hintOffset;
+         int n = Math.min(lengths[i] - off,to - pos);
+         int start = starts[i] + off;
+         if(added[i])
+         {
+            for(int k = start; k < start + n; k++)
+               if(addBuffer[k] == '\n')
+                  count++;
+         }
+         else
+         {
+            for(int k = start; k < start + n; k++)
+               if(original.get(k) == '\n')
+                  count++;
+         }
+         pos += n;
+      }
+      return count;
+   }
+
+   /**
+    * Returns the offset just past the <code>lines</code>-th newline
+    * at or after <code>from</code>, or the length of the text if
+    * there are not as many newlines.
+    */
+   int skipLines(int from, int lines)
+   {
+      int pos = from;
+      while(lines > 0 && pos < total)
+      {
+         int i = findPiece(pos);
+         int off = pos - hintOffset;
+         int start = starts[i] + off;
+         int end = starts[i] + lengths[i];
+         int k = start;
+         if(added[i])
+         {
+            for(; k < end && lines > 0; k++)
+               if(addBuffer[k] == '\n')
+                  lines--;
+         }
+         else
+         {
+            for(; k < end && lines > 0; k++)
+               if(original.get(k) == '\n')
+                  lines--;
+         }
+         pos += k - start;
+      }
+      return lines > 0 ? total + 1 : pos;
+   }
+
+   /**
+    * Writes the text, followed by the given range of the file buffer,
+    * to a channel. Text that comes from the file is written without
+    * copying it to the heap.
+    * @exception UnmappableCharacterException If the text contains a
+    * character that is not in ISO-8859-1
+    */
+   void write(WritableByteChannel out, int tailStart, int tailEnd)
+      throws IOException
+   {
+      ByteBuffer bytes = ByteBuffer.allocate(MAX_SEGMENT);
+      for(int i = 0; i < pieces; i++)
+      {
+         if(added[i])
+         {
+            for(int k = starts[i]; k < starts[i] + lengths[i]; k++)
+            {
+               if(!bytes.hasRemaining())
+                  flush(bytes,out);
+               char c = addBuffer[k];
+               if(c > 0xff)
+                  throw new UnmappableCharacterException(1);
+               bytes.put((byte)c);
+            }
+         }
+         else
+         {
+            flush(bytes,out);
+            writeOriginal(out,starts[i],starts[i] + lengths[i]);
+         }
+      }
+      flush(bytes,out);
+      writeOriginal(out,tailStart,tailEnd);
+   }
+
+   // AbstractDocument.Content implementation
+
+   public Position createPosition(int offset) throws BadLocationException
+   {
+      if(offset < 0 || offset > length())
+         throw new BadLocationException("Invalid position",offset);
+
+      Mark mark = new Mark(offset);
+      if(marks.size() > 16)
+      {
+         for(int i = marks.size() - 1; i >= 0; i--)
+            if(marks.get(i).get() == null)
+               marks.remove(i);
+      }
+      marks.add(new WeakReference<Mark>(mark));
+      return mark;
+   }
+
+   public int length()
+   {
+      // the implied newline at the end of every document
+      return total + 1;
+   }
+
+   /**
+    * LargeFileDocument keeps its own undo information, so this
+    * returns no edit.
+    */
+   public UndoableEdit insertString(int where, String str)
+      throws BadLocationException
+   {
+      if(where < 0 || where > total)
+         throw new BadLocationException("Invalid insert",where);
+      insertText(where,str);
+      return null;
+   }
+
+   /**
+    * LargeFileDocument keeps its own undo information, so this
+    * returns no edit.
+    */
+   public UndoableEdit remove(int where, int nitems)
+      throws BadLocationException
+   {
+      if(where < 0 || nitems < 0 || where + nitems > total)
+         throw new BadLocationException("Invalid remove",where);
+      removePieces(where,nitems);
+      return null;
+   }
+
+   public String getString(int where, int len) throws BadLocationException
+   {
+      Segment s = new Segment();
+      getChars(where,len,s);
+      return new String(s.array,s.offset,s.count);
+   }
+
+   public void getChars(int where, int len, Segment txt)
+      throws BadLocationException
+   {
+      if(where < 0 || len < 0 || where + len > length())
+         throw new BadLocationException("Invalid range",where + len);
+
+      if(txt.isPartialReturn() && len > 0)
+      {
+         if(where == total)
+         {
+            txt.array = NEWLINE;
+            txt.offset = 0;
+            txt.count = 1;
+            return;
+         }
+
+         int i = findPiece(where);
+         int off = where - hintOffset;
+         int n = Math.min(len,lengths[i] - off);
+         if(added[i])
+         {
+            // like GapContent, hand out the buffer itself
+            txt.array = addBuffer;
+            txt.offset = starts[i] + off;
+            txt.count = n;
+            return;
+         }
+         len = Math.min(n,MAX_SEGMENT);
+      }
+
+      char[] chars = new char[len];
+      copy(where,len,chars);
+      txt.array = chars;
+      txt.offset = 0;
+      txt.count = len;
+   }
+
+   /* internal code follows */
+
+   private void copy(int where, int len, char[] dest)
+   {
+      int pos = where;
+      int d = 0;
+      while(d < len)
+      {
+         if(pos >= total)
+         {
+            dest[d++] = '\n';
+            pos++;
+            continue;
+         }
+
+         int i = findPiece(pos);
+         int off = pos - hintOffset;
+         int n = Math.min(lengths[i] - off,len - d);
+         int start = starts[i] + off;
+         if(added[i])
+            System.arraycopy(addBuffer,start,dest,d,n);
+         else
+         {
+            for(int k = 0; k < n; k++)
+               dest[d + k] = (char)(original.get(start + k) & 0xff);
+         }
+         d += n;
+         pos += n;
+      }
+   }
+
+   // Returns the piece containing the offset, which must be less than
+   // the total length; hintOffset is left at the start of that piece.
+   // Lookups are usually close to the previous one, so the search
+   // starts from there.
+   private int findPiece(int offset)
+   {
+      int i = hint;
+      int pos = hintOffset;
+      if(offset < pos)
+      {
+         i = 0;
+         pos = 0;
+      }
+      while(pos + lengths[i] <= offset)
+         pos += lengths[i++];
+
+      hint = i;
+      hintOffset = pos;
+      return i;
+   }
+
+   // Makes sure that a piece starts at the offset and returns its index,
+   // or the number of pieces if the offset is the end of the text.
+   private int split(int offset)
+   {
+      if(offset >= total)
+         return pieces;
+
+      int i = findPiece(offset);
+      int off = offset - hintOffset;
+      if(off == 0)
+         return i;
+
+      insertPiece(i + 1,added[i],starts[i] + off,lengths[i] - off);
+      lengths[i] = off;
+      return i + 1;
+   }
+
+   private void insertPiece(int index, boolean add, int start, int len)
+   {
+      if(pieces == starts.length)
+      {
+         int capacity = pieces * 2;
+         added = Arrays.copyOf(added,capacity);
+         starts = Arrays.copyOf(starts,capacity);
+         lengths = Arrays.copyOf(lengths,capacity);
+      }
+
+      System.arraycopy(added,index,added,index + 1,pieces - index);
+      System.arraycopy(starts,index,starts,index + 1,pieces - index);
+      System.arraycopy(lengths,index,lengths,index + 1,pieces - index);
+      added[index] = add;
+      starts[index] = start;
+      lengths[index] = len;
+      pieces++;
+   }
+
+   private void ensureAddCapacity(int capacity)
+   {
+      if(addBuffer.length < capacity)
+         addBuffer = Arrays.copyOf(addBuffer,Math.max(capacity,
+            addBuffer.length * 2));
+   }
+
+   private void writeOriginal(WritableByteChannel out, int from, int to)
+      throws IOException
+   {
+      if(from >= to)
+         return;
+
+      ByteBuffer slice = original.duplicate();
+      slice.limit(to);
+      slice.position(from);
+      while(slice.hasRemaining())
+         out.write(slice);
+   }
+
+   private static void flush(ByteBuffer bytes, WritableByteChannel out)
+      throws IOException
+   {
+      bytes.flip();
+      while(bytes.hasRemaining())
+         out.write(bytes);
+      bytes.clear();
+   }
+
+   // same rules as StringContent: positions at the insertion point
+   // move, except for the one at the start of the document
+
+   private void updateMarksForInsert(int offset, int len)
+   {
+      if(offset == 0)
+         offset = 1;
+      for(WeakReference<Mark> ref : marks)
+      {
+         Mark mark = ref.get();
+         if(mark != null && mark.offset >= offset)
+            mark.offset += len;
+      }
+   }
+
+   private void updateMarksForRemove(int offset, int len)
+   {
+      for(WeakReference<Mark> ref : marks)
+      {
+         Mark mark = ref.get();
+         if(mark == null)
+            continue;
+         if(mark.offset >= offset + len)
+            mark.offset -= len;
+         else if(mark.offset >= offset)
+            mark.offset = offset;
+      }
+   }
+
+   private static final char[] NEWLINE = { '\n' };
+
+   private ByteBuffer original;
+   private int originalLength;
+
+   private char[] addBuffer = new char[1024];
+   private int addLength;
+
+   // the piece table
+   private boolean[] added = new boolean[16];
+   private int[] starts = new int[16];
+   private int[] lengths = new int[16];
+   private int pieces;
+   private int total;
+
+   // the piece last found by findPiece(), and its offset
+   private int hint;
+   private int hintOffset;
+
+   private final ArrayList<WeakReference<Mark>> marks
+      = new ArrayList<WeakReference<Mark>>();
+
+   /**
+    * A position in the text.
+    */
+   static final class Mark implements Position
+   {
+      Mark(int offset)
+      {
+         this.offset = offset;
+      }
+
+      public int getOffset()
+      {
+         return offset;
+      }
+
+      int offset;
+   }
+
+   /**
+    * A run of pieces, as removed from or inserted into the text.
+    */
+   static final class Pieces
+   {
+      Pieces(int capacity)
+      {
+         added = new boolean[Math.max(capacity,1)];
+         starts = new int[added.length];
+         lengths = new int[added.length];
+      }
+
+      void add(boolean add, int start, int len)
+      {
+         if(count == starts.length)
+         {
+            added = Arrays.copyOf(added,count * 2);
+            starts = Arrays.copyOf(starts,count * 2);
+            lengths = Arrays.copyOf(lengths,count * 2);
+         }
+         added[count] = add;
+         starts[count] = start;
+         lengths[count] = len;
+         count++;
+      }
+
+      int length()
+      {
+         int len = 0;
+         for(int i = 0; i < count; i++)
+            len += lengths[i];
+         return len;
+      }
+
+      boolean[] added;
+      int[] starts;
+      int[] lengths;
+      int count;
+   }
+}
@@ -47,9 +47,9 @@ public class PerlTokenMarker extends TokenMarker
       int length = line.count + offset;
 
       if(token == Token.LITERAL1 && lineIndex != 0
-         && lineInfo[lineIndex - 1].obj != null)
+         && getLineObject(lineIndex - 1) != null)
       {
-         String str = (String)lineInfo[lineIndex - 1].obj;
+         String str = (String)getLineObject(lineIndex - 1);
          if(str != null && str.length() == line.count
             && SyntaxUtilities.regionMatches(false,line,
             offset,str))
@@ -60,7 +60,7 @@ public class PerlTokenMarker extends TokenMarker
          else
          {
             addToken(line.count,token);
-            lineInfo[lineIndex].obj = str;
+            setLineObject(lineIndex,str);
             return token;
          }
       }
@@ -134,7 +134,7 @@ loop:    for(int i = offset; i < length; i++)
                {
                   addToken(i - lastOffset,token);
                   token = Token.LITERAL1;
-                  lineInfo[lineIndex].obj = null;
+                  setLineObject(lineIndex,null);
                   lastOffset = lastKeyword = i;
                }
                break;
@@ -181,8 +181,8 @@ loop:    for(int i = offset; i < length; i++)
                      int len = length - (i+2);
                      if(array[length - 1] == ';')
                         len--;
-                     lineInfo[lineIndex].obj =
-                        createReadinString(array,i + 2,len);
+                     setLineObject(lineIndex,
+                        createReadinString(array,i + 2,len));
                   }
                }
                break;
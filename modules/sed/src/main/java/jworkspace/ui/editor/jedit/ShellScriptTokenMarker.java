@@ -32,9 +32,9 @@ public class ShellScriptTokenMarker extends TokenMarker
       int length = line.count + offset;
 
       if(token == Token.LITERAL1 && lineIndex != 0
-         && lineInfo[lineIndex - 1].obj != null)
+         && getLineObject(lineIndex - 1) != null)
       {
-         String str = (String)lineInfo[lineIndex - 1].obj;
+         String str = (String)getLineObject(lineIndex - 1);
          if(str != null && str.length() == line.count
             && SyntaxUtilities.regionMatches(false,line,
             offset,str))
@@ -45,7 +45,7 @@ public class ShellScriptTokenMarker extends TokenMarker
          else
          {
             addToken(line.count,Token.LITERAL1);
-            lineInfo[lineIndex].obj = str;
+            setLineObject(lineIndex,str);
             return Token.LITERAL1;
          }
       }
@@ -136,7 +136,7 @@ loop:    for(int i = offset; i < length; i++)
                {
                   addToken(i - lastOffset,token);
                   token = Token.LITERAL1;
-                  lineInfo[lineIndex].obj = null;
+                  setLineObject(lineIndex,null);
                   cmdState = 2; /*afterCmd*/
                   lastOffset = i;
                }
@@ -163,9 +163,9 @@ loop:    for(int i = offset; i < length; i++)
                         token);
                      token = Token.LITERAL1;
                      lastOffset = i;
-                     lineInfo[lineIndex].obj =
+                     setLineObject(lineIndex,
                         new String(array,i + 2,
-                           length - (i+2));
+                           length - (i+2)));
                   }
                }
                break;
@@ -0,0 +1,119 @@
+package jworkspace.ui.editor.jedit;
+
+/**
+ * A declaration found by a <code>SymbolIndex</code>: a class or a method
+ * of a Java source, a stored procedure or a table of an SQL script, or an
+ * element of an XML document. A symbol knows its columns in its line; the
+ * line itself is kept by the index, since it changes as lines are
+ * inserted or deleted above the symbol.
+ *
+ * @author Anton Troshin
+ * @see jworkspace.ui.editor.jedit.SymbolIndex
+ */
+public final class Symbol
+{
+   /**
+    * Java class, interface or enum.
+    */
+   public static final byte CLASS = 0;
+
+   /**
+    * Java method or constructor.
+    */
+   public static final byte METHOD = 1;
+
+   /**
+    * SQL procedure, function or trigger.
+    */
+   public static final byte PROCEDURE = 2;
+
+   /**
+    * SQL table or view.
+    */
+   public static final byte TABLE = 3;
+
+   /**
+    * XML element.
+    */
+   public static final byte ELEMENT = 4;
+
+   /**
+    * Creates a new symbol.
+    * @param name The name of the symbol
+    * @param kind The kind of the symbol
+    * @param start The column the name starts at
+    * @param end The column after the name
+    */
+   public Symbol(String name, byte kind, int start, int end)
+   {
+      this.name = name;
+      this.kind = kind;
+      this.start = start;
+      this.end = end;
+      key = name.toLowerCase().toCharArray();
+   }
+
+   /**
+    * Returns the name of the symbol.
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * Returns the kind of the symbol, one of the constants of this class.
+    */
+   public byte getKind()
+   {
+      return kind;
+   }
+
+   /**
+    * Returns a readable name of the kind of the symbol.
+    */
+   public String getKindName()
+   {
+      return KIND_NAMES[kind];
+   }
+
+   /**
+    * Returns the column the name of the symbol starts at.
+    */
+   public int getStart()
+   {
+      return start;
+   }
+
+   /**
+    * Returns the column after the name of the symbol.
+    */
+   public int getEnd()
+   {
+      return end;
+   }
+
+   /**
+    * Returns the name of the symbol.
+    */
+   public String toString()
+   {
+      return name;
+   }
+
+   // package-private members
+
+   /**
+    * The name in lower case, for matching.
+    */
+   final char[] key;
+
+   // private members
+   private static final String[] KIND_NAMES = { "class", "method",
+      "procedure", "table", "element" };
+
+   private final String name;
+   private final byte kind;
+   private final int start;
+   private final int end;
+}
@@ -0,0 +1,654 @@
+package jworkspace.ui.editor.jedit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.swing.text.Segment;
+
+/**
+ * An index of the declarations of a document, built from the output of its
+ * token marker. Java classes and methods, SQL procedures and tables, and
+ * XML elements are recognized.<p>
+ *
+ * The index follows the token marker as a line listener: inserted and
+ * deleted lines are shifted in the index like in the token marker, and a
+ * line is only scanned again when the token marker tokenizes it after it
+ * has been changed, or after a change above it has altered its starting
+ * token. Comments and literals are skipped, since the tokens tell where
+ * they are. Declarations are recognized within a line.<p>
+ *
+ * <code>find()</code> matches a pattern against the names of all symbols
+ * in the way of a "go to symbol" command: the characters of the pattern
+ * must appear in the name in order, and matches at the start of words and
+ * runs of consecutive characters rank first. It only searches the lines
+ * tokenized so far and never tokenizes lines itself; the document
+ * tokenizes the rest in the background, and <code>isComplete()</code>
+ * tells when it is done.<p>
+ *
+ * The index must only be used on the event dispatch thread.
+ *
+ * @author Anton Troshin
+ * @see jworkspace.ui.editor.jedit.TokenMarker#setLineListener(TokenMarker.LineListener)
+ */
+public class SymbolIndex implements TokenMarker.LineListener
+{
+   /**
+    * Creates a new symbol index for a document. The document sets
+    * the token marker of the index.
+    * @param document The document
+    */
+   public SymbolIndex(SyntaxDocument document)
+   {
+      this.document = document;
+   }
+
+   /**
+    * Starts indexing the lines of another token marker. The index is
+    * emptied; it is filled as the new token marker tokenizes the lines
+    * of the document. Token markers of languages the index does not
+    * know are not followed.
+    * @param marker The token marker, or null
+    */
+   public void setTokenMarker(TokenMarker marker)
+   {
+      if(this.marker != null)
+         this.marker.setLineListener(null);
+      this.marker = marker;
+      lines = new Symbol[0][];
+      length = 0;
+      count = 0;
+
+      if(marker instanceof JavaTokenMarker)
+         language = JAVA;
+      else if(marker instanceof SQLTokenMarker)
+         language = SQL;
+      else if(marker instanceof XMLTokenMarker)
+         language = XML;
+      else
+         language = NONE;
+
+      if(language != NONE)
+         marker.setLineListener(this);
+   }
+
+   /**
+    * Returns true if the language of the document is indexed.
+    */
+   public boolean isEnabled()
+   {
+      return language != NONE;
+   }
+
+   /**
+    * Returns true if every line of the document has been indexed, that
+    * is, if the token marker has tokenized all lines since they were
+    * last changed.
+    */
+   public boolean isComplete()
+   {
+      if(marker == null || language == NONE)
+         return true;
+      int lineCount = Math.min(marker.getLineCount(),
+         document.getDefaultRootElement().getElementCount());
+      return marker.getFirstInvalidLine() >= lineCount;
+   }
+
+   /**
+    * Returns the number of symbols in the index.
+    */
+   public int getSymbolCount()
+   {
+      return count;
+   }
+
+   /**
+    * Returns the symbols declared on a line, in the order they appear.
+    * The array must not be modified.
+    * @param line The line number
+    */
+   public Symbol[] getSymbols(int line)
+   {
+      if(line < 0 || line >= length || lines[line] == null)
+         return NO_SYMBOLS;
+      return lines[line];
+   }
+
+   /**
+    * Finds the symbols whose names match a pattern. The characters of
+    * the pattern must appear in the name in the same order, ignoring
+    * case. The best matches are returned first; with an empty pattern,
+    * the first symbols of the document are returned in line order.<p>
+    *
+    * Lines the background tokenizer has not reached yet are not
+    * searched, see <code>isComplete()</code>.
+    * @param pattern The pattern
+    * @param max The maximum number of matches to return
+    */
+   public Match[] find(String pattern, int max)
+   {
+      if(marker == null || language == NONE || max <= 0)
+         return new Match[0];
+
+      char[] chars = pattern.trim().toLowerCase().toCharArray();
+      if(chars.length == 0)
+         return outline(max);
+
+      PriorityQueue<Match> best = new PriorityQueue<Match>(max,
+         WORST_FIRST);
+      for(int i = 0; i < length; i++)
+      {
+         Symbol[] symbols = lines[i];
+         if(symbols == null)
+            continue;
+         for(Symbol symbol : symbols)
+         {
+            int score = score(chars,symbol);
+            if(score < 0)
+               continue;
+            if(best.size() < max)
+               best.add(new Match(symbol,i,score));
+            else if(score > best.peek().score)
+            {
+               best.poll();
+               best.add(new Match(symbol,i,score));
+            }
+         }
+      }
+      Match[] matches = best.toArray(new Match[best.size()]);
+      Arrays.sort(matches,BEST_FIRST);
+      return matches;
+   }
+
+   /**
+    * Scores how well a symbol matches a pattern.
+    * @param pattern The pattern, in lower case
+    * @param symbol The symbol
+    * @return The score, higher is better, or -1 if the characters of
+    * the pattern do not appear in the name in order
+    */
+   public static int score(char[] pattern, Symbol symbol)
+   {
+      char[] key = symbol.key;
+      if(!matchesFrom(pattern,0,key,0))
+         return -1;
+
+      String name = symbol.getName();
+      int score = 0;
+      int last = -1;
+      int k = 0;
+      for(int j = 0; j < pattern.length; j++)
+      {
+         char c = pattern[j];
+         int pos = -1;
+         if(key[k] == c && last == k - 1 && last >= 0)
+            pos = k;
+         else
+         {
+            // the next start of a word, if the rest still matches
+            for(int i = k; i < key.length; i++)
+            {
+               if(key[i] == c && isWordStart(name,i)
+                  && matchesFrom(pattern,j + 1,key,i + 1))
+               {
+                  pos = i;
+                  break;
+               }
+            }
+            if(pos < 0)
+            {
+               pos = k;
+               while(key[pos] != c)
+                  pos++;
+            }
+         }
+
+         if(pos == last + 1 && last >= 0)
+            score += CONSECUTIVE_BONUS;
+         if(isWordStart(name,pos))
+            score += pos == 0 ? START_BONUS : WORD_BONUS;
+         score -= pos - last - 1;
+         last = pos;
+         k = pos + 1;
+      }
+      if(key.length == pattern.length)
+         score += EXACT_BONUS;
+      return score - (key.length - pattern.length) / 4;
+   }
+
+   /**
+    * A symbol found by <code>find()</code>, with its line.
+    */
+   public static final class Match
+   {
+      /**
+       * The symbol.
+       */
+      public final Symbol symbol;
+
+      /**
+       * The line of the symbol, at the time it was found.
+       */
+      public final int line;
+
+      /**
+       * The score of the match, higher is better.
+       */
+      public final int score;
+
+      Match(Symbol symbol, int line, int score)
+      {
+         this.symbol = symbol;
+         this.line = line;
+         this.score = score;
+      }
+
+      /**
+       * Returns the name of the symbol.
+       */
+      public String toString()
+      {
+         return symbol.getName();
+      }
+   }
+
+   // TokenMarker.LineListener implementation
+   public void linesInserted(int index, int lines)
+   {
+      if(length + lines > this.lines.length)
+      {
+         this.lines = Arrays.copyOf(this.lines,
+            (length + lines) * 2);
+      }
+      System.arraycopy(this.lines,index,this.lines,index + lines,
+         length - index);
+      Arrays.fill(this.lines,index,index + lines,null);
+      length += lines;
+   }
+
+   public void linesDeleted(int index, int lines)
+   {
+      int end = index + lines;
+      for(int i = index; i < end; i++)
+      {
+         if(this.lines[i] != null)
+            count -= this.lines[i].length;
+      }
+      System.arraycopy(this.lines,end,this.lines,index,length - end);
+      Arrays.fill(this.lines,length - lines,length,null);
+      length -= lines;
+   }
+
+   public void lineTokenized(Segment line, int lineIndex, TokenList tokens)
+   {
+      if(lineIndex >= length)
+         return;
+      found.clear();
+      switch(language)
+      {
+      case JAVA:
+         splitWords(line,tokens,false);
+         scanJava(line);
+         break;
+      case SQL:
+         splitWords(line,tokens,true);
+         scanSQL(line);
+         break;
+      case XML:
+         scanXML(line,tokens);
+         break;
+      default:
+         break;
+      }
+
+      if(lines[lineIndex] != null)
+         count -= lines[lineIndex].length;
+      if(found.isEmpty())
+         lines[lineIndex] = null;
+      else
+      {
+         lines[lineIndex] = found.toArray(new Symbol[found.size()]);
+         count += found.size();
+      }
+   }
+
+   // private members
+   private static final byte NONE = 0;
+   private static final byte JAVA = 1;
+   private static final byte SQL = 2;
+   private static final byte XML = 3;
+
+   // word kinds besides the token ids of words
+   private static final byte PUNCT = -1;
+   private static final byte LITERAL = -2;
+
+   private static final int CONSECUTIVE_BONUS = 5;
+   private static final int WORD_BONUS = 10;
+   private static final int START_BONUS = 15;
+   private static final int EXACT_BONUS = 100;
+
+   private static final Symbol[] NO_SYMBOLS = new Symbol[0];
+
+   private static final String[] JAVA_TYPES = { "class", "interface",
+      "enum" };
+   private static final String[] JAVA_MODIFIERS = { "public", "protected",
+      "private" };
+   private static final String[] SQL_CREATE = { "CREATE", "ALTER" };
+   private static final String[] SQL_MODIFIERS = { "OR", "REPLACE",
+      "UNIQUE", "CLUSTERED", "NONCLUSTERED", "TEMPORARY", "TEMP",
+      "GLOBAL", "LOCAL", "MATERIALIZED" };
+   private static final String[] SQL_ROUTINES = { "PROCEDURE", "PROC",
+      "FUNCTION", "TRIGGER" };
+   private static final String[] SQL_TABLES = { "TABLE", "VIEW" };
+   private static final String[] SQL_IF = { "IF" };
+   private static final String[] SQL_NOT = { "NOT" };
+   private static final String[] SQL_EXISTS = { "EXISTS" };
+   private static final String[] XML_LABELS = { "id", "name" };
+
+   private static final Comparator<Match> WORST_FIRST =
+      new Comparator<Match>()
+   {
+      public int compare(Match m1, Match m2)
+      {
+         return m1.score != m2.score ? m1.score - m2.score
+            : m2.line - m1.line;
+      }
+   };
+
+   private static final Comparator<Match> BEST_FIRST =
+      new Comparator<Match>()
+   {
+      public int compare(Match m1, Match m2)
+      {
+         return WORST_FIRST.compare(m2,m1);
+      }
+   };
+
+   private final SyntaxDocument document;
+   private TokenMarker marker;
+   private byte language;
+
+   // the symbols of each line, null for lines without symbols
+   private Symbol[][] lines = new Symbol[0][];
+   private int length;
+   private int count;
+
+   // the symbols of the line being scanned
+   private final List<Symbol> found = new ArrayList<Symbol>();
+
+   // the words of the line being scanned: start and end offsets in
+   // the segment, and token id, PUNCT or LITERAL
+   private int[] wordStarts = new int[64];
+   private int[] wordEnds = new int[64];
+   private byte[] wordIds = new byte[64];
+   private int words;
+
+   private Match[] outline(int max)
+   {
+      List<Match> matches = new ArrayList<Match>();
+      for(int i = 0; i < length && matches.size() < max; i++)
+      {
+         Symbol[] symbols = lines[i];
+         if(symbols == null)
+            continue;
+         for(int j = 0; j < symbols.length && matches.size() < max; j++)
+            matches.add(new Match(symbols[j],i,0));
+      }
+      return matches.toArray(new Match[matches.size()]);
+   }
+
+   private static boolean matchesFrom(char[] pattern, int j, char[] key,
+      int k)
+   {
+      for(; j < pattern.length; j++, k++)
+      {
+         while(k < key.length && key[k] != pattern[j])
+            k++;
+         if(k == key.length)
+            return false;
+      }
+      return true;
+   }
+
+   private static boolean isWordStart(String name, int i)
+   {
+      if(i == 0)
+         return true;
+      char prev = name.charAt(i - 1);
+      char c = name.charAt(i);
+      return !Character.isLetterOrDigit(prev)
+         || (Character.isUpperCase(c) && !Character.isUpperCase(prev));
+   }
+
+   /**
+    * Splits a line into words, punctuation characters and literals,
+    * skipping comments.
+    */
+   private void splitWords(Segment line, TokenList tokens, boolean sql)
+   {
+      words = 0;
+      char[] array = line.array;
+      int offset = line.offset;
+      for(int t = 0; t < tokens.count; t++)
+      {
+         byte id = tokens.ids[t];
+         int end = offset + tokens.lengths[t];
+         if(id == Token.COMMENT1 || id == Token.COMMENT2)
+         {
+            // skipped
+         }
+         else if(id == Token.LITERAL1 || id == Token.LITERAL2)
+            addWord(offset,end,LITERAL);
+         else
+         {
+            for(int i = offset; i < end; )
+            {
+               char c = array[i];
+               if(isWordPart(c,sql))
+               {
+                  int start = i;
+                  while(i < end && isWordPart(array[i],sql))
+                     i++;
+                  addWord(start,i,id);
+               }
+               else
+               {
+                  if(!Character.isWhitespace(c))
+                     addWord(i,i + 1,PUNCT);
+                  i++;
+               }
+            }
+         }
+         offset = end;
+      }
+   }
+
+   private static boolean isWordPart(char c, boolean sql)
+   {
+      return sql ? Character.isLetterOrDigit(c) || c == '_' || c == '#'
+         || c == '@' || c == '$' : Character.isJavaIdentifierPart(c);
+   }
+
+   private void addWord(int start, int end, byte id)
+   {
+      if(words == wordStarts.length)
+      {
+         wordStarts = Arrays.copyOf(wordStarts,words * 2);
+         wordEnds = Arrays.copyOf(wordEnds,words * 2);
+         wordIds = Arrays.copyOf(wordIds,words * 2);
+      }
+      wordStarts[words] = start;
+      wordEnds[words] = end;
+      wordIds[words] = id;
+      words++;
+   }
+
+   private boolean isWord(Segment line, int w, String[] texts,
+      boolean ignoreCase)
+   {
+      if(w < 0 || w >= words || wordIds[w] < 0)
+         return false;
+      int len = wordEnds[w] - wordStarts[w];
+      for(String text : texts)
+      {
+         if(text.length() == len && SyntaxUtilities.regionMatches(
+            ignoreCase,line,wordStarts[w],text))
+            return true;
+      }
+      return false;
+   }
+
+   private boolean isPunct(Segment line, int w, char c)
+   {
+      return w >= 0 && w < words && wordIds[w] == PUNCT
+         && line.array[wordStarts[w]] == c;
+   }
+
+   private boolean isIdentifier(int w)
+   {
+      return w >= 0 && w < words && wordIds[w] == Token.NULL;
+   }
+
+   private void addSymbol(Segment line, int start, int end, byte kind)
+   {
+      found.add(new Symbol(new String(line.array,start,end - start),kind,
+         start - line.offset,end - line.offset));
+   }
+
+   /**
+    * Java: a name following <code>class</code>, <code>interface</code>
+    * or <code>enum</code>, and a name followed by an opening parenthesis
+    * and preceded by a type or by an access modifier.
+    */
+   private void scanJava(Segment line)
+   {
+      for(int w = 0; w < words; w++)
+      {
+         if(isWord(line,w,JAVA_TYPES,false) && !isPunct(line,w - 1,'.')
+            && isIdentifier(w + 1))
+         {
+            addSymbol(line,wordStarts[w + 1],wordEnds[w + 1],Symbol.CLASS);
+            w++;
+         }
+         else if(isIdentifier(w) && isPunct(line,w + 1,'(') && w > 0)
+         {
+            int prev = w - 1;
+            boolean type = isIdentifier(prev)
+               || (wordIds[prev] == Token.KEYWORD3
+                  && !isWord(line,prev,JAVA_TYPES,false))
+               || isPunct(line,prev,'>') || isPunct(line,prev,']')
+               || isWord(line,prev,JAVA_MODIFIERS,false);
+            if(type)
+               addSymbol(line,wordStarts[w],wordEnds[w],Symbol.METHOD);
+         }
+      }
+   }
+
+   /**
+    * SQL: the possibly qualified name following <code>CREATE</code> or
+    * <code>ALTER</code>, a kind of routine or table, and optionally
+    * <code>IF NOT EXISTS</code>.
+    */
+   private void scanSQL(Segment line)
+   {
+      for(int w = 0; w < words; w++)
+      {
+         if(!isWord(line,w,SQL_CREATE,true))
+            continue;
+         int k = w + 1;
+         while(isWord(line,k,SQL_MODIFIERS,true))
+            k++;
+         byte kind;
+         if(isWord(line,k,SQL_ROUTINES,true))
+            kind = Symbol.PROCEDURE;
+         else if(isWord(line,k,SQL_TABLES,true))
+            kind = Symbol.TABLE;
+         else
+            continue;
+         k++;
+         if(isWord(line,k,SQL_IF,true) && isWord(line,k + 1,SQL_NOT,true)
+            && isWord(line,k + 2,SQL_EXISTS,true))
+            k += 3;
+         if(k >= words || wordIds[k] == PUNCT)
+            continue;
+
+         int start = wordStarts[k];
+         int end = wordEnds[k];
+         while(isPunct(line,k + 1,'.') && k + 2 < words
+            && wordIds[k + 2] != PUNCT)
+         {
+            k += 2;
+            end = wordEnds[k];
+         }
+         addSymbol(line,start,end,kind);
+         w = k;
+      }
+   }
+
+   /**
+    * XML: the name of every start tag, followed by the value of its
+    * <code>id</code> or <code>name</code> attribute if that is on the
+    * same line.
+    */
+   private void scanXML(Segment line, TokenList tokens)
+   {
+      char[] array = line.array;
+      int offset = line.offset;
+      int element = -1;
+      for(int t = 0; t < tokens.count; t++)
+      {
+         byte id = tokens.ids[t];
+         int end = offset + tokens.lengths[t];
+         if(id == Token.KEYWORD1)
+         {
+            // a markup token may hold more than one tag
+            for(int i = offset; i < end - 1; i++)
+            {
+               char c = array[i + 1];
+               if(array[i] != '<' || !(Character.isLetter(c) || c == '_'
+                  || c == ':'))
+                  continue;
+               int start = ++i;
+               while(i < end && array[i] != '>' && array[i] != '/'
+                  && !Character.isWhitespace(array[i]))
+                  i++;
+               addSymbol(line,start,i,Symbol.ELEMENT);
+               element = found.size() - 1;
+            }
+         }
+         else if(id == Token.KEYWORD2 && element >= 0
+            && t + 2 < tokens.count && tokens.ids[t + 1] == Token.OPERATOR
+            && (tokens.ids[t + 2] == Token.LITERAL1
+            || tokens.ids[t + 2] == Token.LITERAL2)
+            && isAttribute(line,offset,end))
+         {
+            int start = end + tokens.lengths[t + 1];
+            int stop = start + tokens.lengths[t + 2];
+            Symbol tag = found.get(element);
+            String value = new String(array,start + 1,
+               Math.max(stop - start - 2,0));
+            found.set(element,new Symbol(tag.getName() + ' ' + value,
+               Symbol.ELEMENT,tag.getStart(),tag.getEnd()));
+            element = -1;
+         }
+         offset = end;
+      }
+   }
+
+   private static boolean isAttribute(Segment line, int start, int end)
+   {
+      while(start < end && Character.isWhitespace(line.array[start]))
+         start++;
+      while(end > start && Character.isWhitespace(line.array[end - 1]))
+         end--;
+      for(String label : XML_LABELS)
+      {
+         if(label.length() == end - start
+            && SyntaxUtilities.regionMatches(false,line,start,label))
+            return true;
+      }
+      return false;
+   }
+}
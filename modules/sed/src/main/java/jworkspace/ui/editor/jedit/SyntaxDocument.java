@@ -9,6 +9,10 @@ package jworkspace.ui.editor.jedit;
  * remains intact in all source distributions of this package.
  */
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
 import javax.swing.event.*;
 import javax.swing.text.*;
 import javax.swing.undo.UndoableEdit;
@@ -24,8 +28,26 @@ import javax.swing.undo.CompoundEdit;
  */
 public class SyntaxDocument extends PlainDocument implements UndoableEditListener
 {
+	/**
+	 * The time the background tokenizer may spend on the event
+	 * dispatch thread at once, in milliseconds.
+	 */
+	public static final int TOKENIZE_SLICE = 10;
+
 	// protected members
 	protected TokenMarker tokenMarker;
+	/**
+	 * Tokenizes invalid lines in time slices on the event dispatch thread.
+	 */
+	protected Timer tokenizer;
+	/**
+	 * Declarations found by the token marker.
+	 */
+	protected final SymbolIndex symbolIndex = new SymbolIndex(this);
+	/**
+	 * Line text buffer of the background tokenizer.
+	 */
+	private final Segment sliceSegment = new Segment();
     /**
     * UndoManager that we add edits to.
     */
@@ -35,11 +57,20 @@ public class SyntaxDocument extends PlainDocument implements UndoableEditListene
      */
     protected CompoundEdit compound_edit = null;
 
-    SyntaxDocument()
+    public SyntaxDocument()
     {
         super();
         addUndoableEditListener( this );
     }
+    /**
+     * Creates a syntax document with the given content storage
+     * @param content content storage
+     */
+    protected SyntaxDocument(AbstractDocument.Content content)
+    {
+        super(content);
+        addUndoableEditListener( this );
+    }
     /**
      * Returns undo manager for this syntax document
       * @return undo manager for this syntax document
@@ -104,6 +135,9 @@ public class SyntaxDocument extends PlainDocument implements UndoableEditListene
 					ch.getChildrenAdded().length -
 					ch.getChildrenRemoved().length);
 			}
+			tokenMarker.invalidateLine(getDefaultRootElement()
+				.getElementIndex(evt.getOffset()));
+			scheduleTokenizing();
 		}
 
 		super.fireInsertUpdate(evt);
@@ -125,6 +159,9 @@ public class SyntaxDocument extends PlainDocument implements UndoableEditListene
 					ch.getChildrenRemoved().length -
 					ch.getChildrenAdded().length);
 			}
+			tokenMarker.invalidateLine(getDefaultRootElement()
+				.getElementIndex(evt.getOffset()));
+			scheduleTokenizing();
 		}
 
 		super.fireRemoveUpdate(evt);
@@ -141,17 +178,41 @@ public class SyntaxDocument extends PlainDocument implements UndoableEditListene
 	/**
 	 * Sets the token marker that is to be used to split lines of
 	 * this document up into tokens. May throw an exception if
-	 * this is not supported for this type of document.
+	 * this is not supported for this type of document.<p>
+	 *
+	 * The document is not tokenized at once. Visible lines are
+	 * tokenized as they are painted, the rest of the document is
+	 * tokenized in the background by <code>tokenizeSlice()</code>.
 	 * @param tm The new token marker
 	 */
 	public void setTokenMarker(TokenMarker tm)
 	{
 		tokenMarker = tm;
+		symbolIndex.setTokenMarker(tm);
 		if(tm == null)
 			return;
 		tokenMarker.insertLines(0,getDefaultRootElement()
 			.getElementCount());
-		tokenizeLines();
+		scheduleTokenizing();
+	}
+	/**
+	 * Returns true if the text can be inserted into this document.
+	 * Text areas check this before they change the document, so that
+	 * text the document would reject does not remove the selection.
+	 * This implementation accepts any text.
+	 * @param text The text
+	 */
+	public boolean canInsert(String text)
+	{
+		return true;
+	}
+	/**
+	 * Returns the index of the declarations in this document. The
+	 * index is filled as the token marker tokenizes the lines.
+	 */
+	public SymbolIndex getSymbolIndex()
+	{
+		return symbolIndex;
 	}
 	/**
 	 * Reparses the document, by passing all lines to the token
@@ -195,6 +256,91 @@ public class SyntaxDocument extends PlainDocument implements UndoableEditListene
 			//bl.printStackTrace();
 		}
 	}
+	/**
+	 * Tokenizes invalid lines, starting with the first one, until all
+	 * lines are valid or the time limit is exceeded. Lines following
+	 * an edit are only tokenized until their end tokens converge with
+	 * the stored ones. A change event is fired for the lines whose
+	 * starting token has changed, so views can repaint them.<p>
+	 *
+	 * Must be called on the event dispatch thread.
+	 * @param millis The time limit, in milliseconds
+	 * @return True if invalid lines remain
+	 */
+	public boolean tokenizeSlice(long millis)
+	{
+		if(tokenMarker == null || !tokenMarker.supportsMultilineTokens())
+			return false;
+
+		Element map = getDefaultRootElement();
+		int count = Math.min(map.getElementCount(),
+			tokenMarker.getLineCount());
+		long deadline = System.nanoTime() + millis * 1000000L;
+		int firstChanged = -1;
+		int lastChanged = -1;
+		int line;
+
+		try
+		{
+			for(int i = 1; (line = tokenMarker.getFirstInvalidLine())
+				< count; i++)
+			{
+				Element lineElement = map.getElement(line);
+				int lineStart = lineElement.getStartOffset();
+				getText(lineStart,lineElement.getEndOffset()
+					- lineStart - 1,sliceSegment);
+				if(tokenMarker.revalidateLine(sliceSegment,line)
+					&& line + 1 < count)
+				{
+					if(firstChanged < 0)
+						firstChanged = line + 1;
+					lastChanged = line + 1;
+				}
+
+				// checking the clock is not free either
+				if((i & 63) == 0 && System.nanoTime() > deadline)
+					break;
+			}
+		}
+		catch(BadLocationException bl)
+		{
+			line = count;
+		}
+
+		if(firstChanged >= 0)
+		{
+			int start = map.getElement(firstChanged).getStartOffset();
+			int end = map.getElement(lastChanged).getEndOffset();
+			fireChangedUpdate(new DefaultDocumentEvent(start,
+				Math.min(end,getLength()) - start,
+				DocumentEvent.EventType.CHANGE));
+		}
+
+		return line < count;
+	}
+	/**
+	 * Starts the background tokenizer, unless it is running already.
+	 */
+	protected void scheduleTokenizing()
+	{
+		if(tokenMarker == null || !tokenMarker.supportsMultilineTokens())
+			return;
+
+		if(tokenizer == null)
+		{
+			tokenizer = new Timer(TOKENIZE_SLICE,new ActionListener()
+			{
+				public void actionPerformed(ActionEvent evt)
+				{
+					if(!tokenizeSlice(TOKENIZE_SLICE))
+						tokenizer.stop();
+				}
+			});
+			tokenizer.setInitialDelay(0);
+		}
+		if(!tokenizer.isRunning())
+			tokenizer.start();
+	}
 
     /**
      * An undoable edit happened
@@ -58,21 +58,19 @@ public class SyntaxUtilities
 	 * @param y The y co-ordinate
 	 * @return The x co-ordinate, plus the width of the painted string
 	 */
-	public static int paintSyntaxLine(Segment line, Token tokens,
+	public static int paintSyntaxLine(Segment line, TokenList tokens,
 		SyntaxStyle[] styles, TabExpander expander, Graphics gfx,
 		int x, int y)
 	{
 		Font defaultFont = gfx.getFont();
 		Color defaultColor = gfx.getColor();
 
-		int offset = 0;
-		for(;;)
+		int[] lengths = tokens.lengths;
+		byte[] ids = tokens.ids;
+		for(int i = 0; i < tokens.count; i++)
 		{
-			byte id = tokens.id;
-			if(id == Token.END)
-				break;
-
-			int length = tokens.length;
+			byte id = ids[i];
+			int length = lengths[i];
 			if(id == Token.NULL)
 			{
 				if(!defaultColor.equals(gfx.getColor()))
@@ -86,9 +84,6 @@ public class SyntaxUtilities
 			line.count = length;
 			x = Utilities.drawTabbedText(line,x,y,gfx,expander,0);
 			line.offset += length;
-			offset += length;
-
-			tokens = tokens.next;
 		}
 
 		return x;
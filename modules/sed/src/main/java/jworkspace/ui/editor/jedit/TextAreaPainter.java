@@ -16,10 +16,20 @@ import javax.swing.text.*;
 import javax.swing.JComponent;
 import java.awt.event.MouseEvent;
 import java.awt.*;
+import java.util.Arrays;
 
 /**
  * The text area repaint manager. It performs double buffering and paints
- * lines of text.
+ * lines of text.<p>
+ *
+ * The tokens, character positions and text runs of each painted line are
+ * kept in a small cache of line layouts, so repainting a line that has
+ * not changed neither tokenizes nor measures it. Layouts are only
+ * dropped by <code>invalidateLine()</code> and
+ * <code>invalidateLineRange()</code>; changes that leave the text alone,
+ * like moving the selection, use <code>repaintLine()</code> and
+ * <code>repaintLineRange()</code> instead. The caret is painted over the
+ * text, and a blinking caret only repaints its own rectangle.
  * @author Slava Pestov
  * @version $Id: TextAreaPainter.java,v 1.2 2003/11/22 03:39:20 bradford Exp $
  */
@@ -93,6 +103,7 @@ public class TextAreaPainter extends JComponent implements TabExpander
    public final void setStyles(SyntaxStyle[] styles)
    {
       this.styles = styles;
+      layouts = null;
       repaint();
    }
 
@@ -184,7 +195,7 @@ public class TextAreaPainter extends JComponent implements TabExpander
    public final void setBracketHighlightColor(Color bracketHighlightColor)
    {
       this.bracketHighlightColor = bracketHighlightColor;
-      invalidateLine(textArea.getBracketLine());
+      repaintLine(textArea.getBracketLine());
    }
 
    /**
@@ -207,7 +218,7 @@ public class TextAreaPainter extends JComponent implements TabExpander
    public final void setBracketHighlightEnabled(boolean bracketHighlight)
    {
       this.bracketHighlight = bracketHighlight;
-      invalidateLine(textArea.getBracketLine());
+      repaintLine(textArea.getBracketLine());
    }
 
    /**
@@ -353,6 +364,7 @@ public class TextAreaPainter extends JComponent implements TabExpander
    {
       super.setFont(font);
       fm = Toolkit.getDefaultToolkit().getFontMetrics(font);
+      layouts = null;
       textArea.recalculateVisibleLines();
    }
 
@@ -361,9 +373,17 @@ public class TextAreaPainter extends JComponent implements TabExpander
     */
    public void paint(Graphics gfx)
    {
-      tabSize = fm.charWidth(' ') * ((Integer)textArea
+      int newTabSize = fm.charWidth(' ') * ((Integer)textArea
          .getDocument().getProperty(
          PlainDocument.tabSizeAttribute)).intValue();
+      int capacity = textArea.getVisibleLines() + 2;
+      if(newTabSize != tabSize || layouts == null
+         || layouts.length < capacity)
+      {
+         tabSize = newTabSize;
+         layouts = new LineLayout[capacity];
+      }
+      nextLinesInvalid = false;
 
       Rectangle clipRect = gfx.getClipBounds();
 
@@ -391,7 +411,7 @@ public class TextAreaPainter extends JComponent implements TabExpander
             paintLine(gfx,tokenMarker,line,x);
          }
 
-         if(tokenMarker != null && tokenMarker.isNextLineRequested())
+         if(nextLinesInvalid)
          {
             int h = clipRect.y + clipRect.height;
             repaint(0,h,getWidth(),getHeight() - h);
@@ -407,24 +427,52 @@ public class TextAreaPainter extends JComponent implements TabExpander
    }
 
    /**
-    * Marks a line as needing a repaint.
+    * Marks a line as needing a repaint because its text or tokens
+    * have changed. The cached layout of the line is dropped.
     * @param line The line to invalidate
     */
    public final void invalidateLine(int line)
    {
-      repaint(0,textArea.lineToY(line) + fm.getMaxDescent() + fm.getLeading(),
-         getWidth(),fm.getHeight());
+      invalidateLineRange(line,line);
    }
 
    /**
-    * Marks a range of lines as needing a repaint.
+    * Marks a range of lines as needing a repaint because their text or
+    * tokens have changed. The cached layouts of the lines are dropped,
+    * whether the lines are visible or not.
     * @param firstLine The first line to invalidate
     * @param lastLine The last line to invalidate
     */
    public final void invalidateLineRange(int firstLine, int lastLine)
    {
-      repaint(0,textArea.lineToY(firstLine) + fm.getMaxDescent() + fm.getLeading(),
-         getWidth(),(lastLine - firstLine + 1) * fm.getHeight());
+      dropLayouts(firstLine,lastLine);
+      repaintLineRange(firstLine,lastLine);
+   }
+
+   /**
+    * Repaints a line from its cached layout, for changes that do not
+    * affect the text, like the selection or the bracket highlight.
+    * @param line The line to repaint
+    */
+   public final void repaintLine(int line)
+   {
+      repaintLineRange(line,line);
+   }
+
+   /**
+    * Repaints a range of lines from their cached layouts.
+    * @param firstLine The first line to repaint
+    * @param lastLine The last line to repaint
+    */
+   public final void repaintLineRange(int firstLine, int lastLine)
+   {
+      int first = Math.max(firstLine,textArea.getFirstLine());
+      int last = Math.min(lastLine,textArea.getFirstLine()
+         + textArea.getVisibleLines());
+      if(first > last)
+         return;
+      repaint(0,textArea.lineToY(first) + fm.getMaxDescent() + fm.getLeading(),
+         getWidth(),(last - first + 1) * fm.getHeight());
    }
 
    /**
@@ -432,10 +480,26 @@ public class TextAreaPainter extends JComponent implements TabExpander
     */
    public final void invalidateSelectedLines()
    {
-      invalidateLineRange(textArea.getSelectionStartLine(),
+      repaintLineRange(textArea.getSelectionStartLine(),
          textArea.getSelectionEndLine());
    }
 
+   /**
+    * Repaints the rectangle of the caret only. This is what a blinking
+    * caret does.
+    */
+   public final void repaintCaret()
+   {
+      int line = textArea.getCaretLine();
+      int firstLine = textArea.getFirstLine();
+      if(line < firstLine || line > firstLine + textArea.getVisibleLines())
+         return;
+      int caretX = textArea._offsetToX(line,textArea.getCaretPosition()
+         - textArea.getLineStartOffset(line));
+      repaint(caretX,textArea.lineToY(line) + fm.getMaxDescent()
+         + fm.getLeading(),getCaretWidth() + 1,fm.getHeight());
+   }
+
    /**
     * Implementation of TabExpander interface. Returns next tab stop after
     * a specified point.
@@ -472,7 +536,7 @@ public class TextAreaPainter extends JComponent implements TabExpander
 
    // package-private members
    int currentLineIndex;
-   Token currentLineTokens;
+   TokenList currentLineTokens;
    Segment currentLine;
 
    // protected members
@@ -498,13 +562,105 @@ public class TextAreaPainter extends JComponent implements TabExpander
 
    protected Highlight highlights;
 
+   /**
+    * The layout of a painted line: a copy of its text, the x co-ordinate
+    * of every character relative to the start of the line, and the runs
+    * of text to draw, which are the tokens split at tabs. The
+    * co-ordinates come from the same font metrics as before, so text,
+    * caret and selection line up exactly.
+    */
+   static final class LineLayout
+   {
+      int line;
+      SyntaxDocument document;
+      TokenMarker tokenMarker;
+
+      char[] text;
+      int length;
+
+      // the x co-ordinate of each character; x[length] is the width
+      int[] x;
+
+      // the runs, with their token ids, fonts and character ranges
+      int count;
+      byte[] ids = new byte[8];
+      Font[] fonts = new Font[8];
+      int[] starts = new int[8];
+      int[] ends = new int[8];
+
+      void addRun(byte id, Font font, int start, int end)
+      {
+         if(start == end)
+            return;
+         if(count == ids.length)
+         {
+            ids = Arrays.copyOf(ids,count * 2);
+            fonts = Arrays.copyOf(fonts,count * 2);
+            starts = Arrays.copyOf(starts,count * 2);
+            ends = Arrays.copyOf(ends,count * 2);
+         }
+         ids[count] = id;
+         fonts[count] = font;
+         starts[count] = start;
+         ends[count] = end;
+         count++;
+      }
+
+      /**
+       * Returns the x co-ordinate of an offset in the line.
+       */
+      int offsetToX(int offset)
+      {
+         return x[Math.max(0,Math.min(offset,length))];
+      }
+
+      /**
+       * Returns the offset of the character an x co-ordinate falls
+       * on, rounding to the nearest character boundary unless the
+       * caret is a block.
+       */
+      int xToOffset(int x, boolean blockCaret)
+      {
+         // the first character whose middle (right edge, for a
+         // block caret) is not left of x
+         int low = 0;
+         int high = length;
+         while(low < high)
+         {
+            int mid = (low + high) >>> 1;
+            int width = this.x[mid + 1] - this.x[mid];
+            if(x - (blockCaret ? width : width / 2) <= this.x[mid])
+               high = mid;
+            else
+               low = mid + 1;
+         }
+         return low;
+      }
+   }
+
+   /**
+    * Returns the cached layout of a line, or null if the line has
+    * not been painted since it was last invalidated.
+    * @param line The line
+    */
+   LineLayout getLineLayout(int line)
+   {
+      if(layouts == null || line < 0)
+         return null;
+      LineLayout layout = layouts[line % layouts.length];
+      if(layout == null || layout.line != line
+         || layout.document != textArea.getDocument()
+         || layout.tokenMarker != textArea.getTokenMarker())
+         return null;
+      return layout;
+   }
+
    protected void paintLine(Graphics gfx, TokenMarker tokenMarker,
       int line, int x)
    {
       Font defaultFont = getFont();
       Color defaultColor = getForeground();
 
-      currentLineIndex = line;
       int y = textArea.lineToY(line);
 
       if(line < 0 || line >= textArea.getLineCount())
@@ -516,14 +672,22 @@ public class TextAreaPainter extends JComponent implements TabExpander
             gfx.drawString("~",0,y + fm.getHeight());
          }
       }
-      else if(tokenMarker == null)
-      {
-         paintPlainLine(gfx,line,defaultFont,defaultColor,x,y);
-      }
       else
       {
-         paintSyntaxLine(gfx,tokenMarker,line,defaultFont,
-            defaultColor,x,y);
+         if(tokenMarker == null)
+         {
+            paintPlainLine(gfx,line,defaultFont,defaultColor,x,y);
+         }
+         else
+         {
+            paintSyntaxLine(gfx,tokenMarker,line,defaultFont,
+               defaultColor,x,y);
+         }
+
+         // the caret goes over the text, so that blinking it
+         // only needs to repaint its own rectangle
+         if(line == textArea.getCaretLine())
+            paintCaret(gfx,line,y);
       }
    }
 
@@ -531,41 +695,16 @@ public class TextAreaPainter extends JComponent implements TabExpander
       Color defaultColor, int x, int y)
    {
       paintHighlight(gfx,line,y);
-      textArea.getLineText(line,currentLine);
-
-      gfx.setFont(defaultFont);
-      gfx.setColor(defaultColor);
-
-      y += fm.getHeight();
-      x = Utilities.drawTabbedText(currentLine,x,y,gfx,this,0);
-
-      if(eolMarkers)
-      {
-         gfx.setColor(eolMarkerColor);
-         gfx.drawString("",x,y);
-      }
+      paintLayout(gfx,layoutLine(null,line),defaultFont,
+         defaultColor,x,y);
    }
 
    protected void paintSyntaxLine(Graphics gfx, TokenMarker tokenMarker,
       int line, Font defaultFont, Color defaultColor, int x, int y)
    {
-      textArea.getLineText(currentLineIndex,currentLine);
-      currentLineTokens = tokenMarker.markTokens(currentLine,
-         currentLineIndex);
-
       paintHighlight(gfx,line,y);
-
-      gfx.setFont(defaultFont);
-      gfx.setColor(defaultColor);
-      y += fm.getHeight();
-      x = SyntaxUtilities.paintSyntaxLine(currentLine,
-         currentLineTokens,styles,this,gfx,x,y);
-
-      if(eolMarkers)
-      {
-         gfx.setColor(eolMarkerColor);
-         gfx.drawString("",x,y);
-      }
+      paintLayout(gfx,layoutLine(tokenMarker,line),defaultFont,
+         defaultColor,x,y);
    }
 
    protected void paintHighlight(Graphics gfx, int line, int y)
@@ -579,9 +718,6 @@ public class TextAreaPainter extends JComponent implements TabExpander
 
       if(bracketHighlight && line == textArea.getBracketLine())
          paintBracketHighlight(gfx,line,y);
-
-      if(line == textArea.getCaretLine())
-         paintCaret(gfx,line,y);
    }
 
    protected void paintLineHighlight(Graphics gfx, int line, int y)
@@ -668,16 +804,14 @@ public class TextAreaPainter extends JComponent implements TabExpander
          fm.getHeight() - 1);
    }
 
-protected void paintCaret(Graphics gfx, int line, int y)
+   protected void paintCaret(Graphics gfx, int line, int y)
    {
       if(textArea.isCaretVisible())
       {
          int offset = textArea.getCaretPosition()
             - textArea.getLineStartOffset(line);
          int caretX = textArea._offsetToX(line,offset);
-         int caretWidth = ((blockCaret ||
-            textArea.isOverwriteEnabled()) ?
-            fm.charWidth('w') : 1);
+         int caretWidth = getCaretWidth();
          y += fm.getLeading() + fm.getMaxDescent();
          int height = fm.getHeight();
 
@@ -694,4 +828,163 @@ protected void paintCaret(Graphics gfx, int line, int y)
          }
       }
    }
+
+   // private members
+
+   // cached line layouts, indexed by line modulo the length
+   private LineLayout[] layouts;
+
+   // set when tokenizing a line changed the tokens of the next one
+   private boolean nextLinesInvalid;
+
+   private int getCaretWidth()
+   {
+      return (blockCaret || textArea.isOverwriteEnabled())
+         ? fm.charWidth('w') : 1;
+   }
+
+   private void dropLayouts(int firstLine, int lastLine)
+   {
+      if(layouts == null)
+         return;
+      for(int i = 0; i < layouts.length; i++)
+      {
+         LineLayout layout = layouts[i];
+         if(layout != null && layout.line >= firstLine
+            && layout.line <= lastLine)
+            layouts[i] = null;
+      }
+   }
+
+   /**
+    * Returns the layout of a line, tokenizing and measuring the line
+    * unless a valid layout is cached.
+    */
+   private LineLayout layoutLine(TokenMarker tokenMarker, int line)
+   {
+      LineLayout layout = getLineLayout(line);
+      if(layout != null)
+         return layout;
+
+      textArea.getLineText(line,currentLine);
+      TokenList tokens = null;
+      if(tokenMarker != null)
+      {
+         currentLineIndex = line;
+         currentLineTokens = tokens = tokenMarker.markTokens(
+            currentLine,line);
+         if(tokenMarker.isNextLineRequested())
+         {
+            dropLayouts(line + 1,Integer.MAX_VALUE);
+            nextLinesInvalid = true;
+         }
+      }
+
+      layout = new LineLayout();
+      layout.line = line;
+      layout.document = textArea.getDocument();
+      layout.tokenMarker = tokenMarker;
+
+      int length = currentLine.count;
+      char[] text = new char[length];
+      System.arraycopy(currentLine.array,currentLine.offset,text,0,length);
+      layout.text = text;
+      layout.length = length;
+      layout.x = new int[length + 1];
+
+      Font defaultFont = getFont();
+      int start = 0;
+      int x = 0;
+      for(int t = 0; start < length; t++)
+      {
+         byte id;
+         int end;
+         if(tokens == null || t >= tokens.count)
+         {
+            // plain text, or text the token marker left out
+            id = Token.NULL;
+            end = length;
+         }
+         else
+         {
+            id = tokens.ids[t];
+            end = Math.min(length,start + tokens.lengths[t]);
+         }
+
+         Font font;
+         FontMetrics metrics;
+         if(id == Token.NULL)
+         {
+            font = defaultFont;
+            metrics = fm;
+         }
+         else
+         {
+            font = styles[id].getStyledFont(defaultFont);
+            metrics = styles[id].getFontMetrics(defaultFont);
+         }
+
+         // split the token into runs at tabs, which advance to the
+         // next tab stop and are not drawn
+         int runStart = start;
+         for(int i = start; i < end; i++)
+         {
+            layout.x[i] = x;
+            if(text[i] == '\t')
+            {
+               layout.addRun(id,font,runStart,i);
+               runStart = i + 1;
+               x = (x / tabSize + 1) * tabSize;
+            }
+            else
+               x += metrics.charWidth(text[i]);
+         }
+         layout.addRun(id,font,runStart,end);
+         layout.x[end] = x;
+         start = end;
+      }
+
+      layouts[line % layouts.length] = layout;
+      return layout;
+   }
+
+   private void paintLayout(Graphics gfx, LineLayout layout,
+      Font defaultFont, Color defaultColor, int x, int y)
+   {
+      Rectangle clipRect = gfx.getClipBounds();
+      y += fm.getHeight();
+
+      Font lastFont = defaultFont;
+      gfx.setFont(defaultFont);
+      for(int i = 0; i < layout.count; i++)
+      {
+         // runs outside the clip, when only the caret blinks
+         int start = layout.starts[i];
+         int end = layout.ends[i];
+         if(clipRect != null && (x + layout.x[end] < clipRect.x
+            || x + layout.x[start] > clipRect.x + clipRect.width))
+            continue;
+
+         byte id = layout.ids[i];
+         Font font = layout.fonts[i];
+         if(font != lastFont)
+         {
+            gfx.setFont(font);
+            lastFont = font;
+         }
+         gfx.setColor(id == Token.NULL ? defaultColor
+            : styles[id].getColor());
+         gfx.drawChars(layout.text,start,end - start,
+            x + layout.x[start],y);
+      }
+
+      if(eolMarkers)
+      {
+         // in the font of the last token, as it always was
+         gfx.setFont(layout.count == 0 ? defaultFont
+            : layout.fonts[layout.count - 1]);
+         gfx.setColor(eolMarkerColor);
+         gfx.drawString("",x + layout.x[layout.length],y);
+      }
+   }
 }
@@ -14,7 +14,11 @@ package jworkspace.ui.editor.jedit;
  * identifier, which is a byte value that can be looked up in the
  * array returned by <code>SyntaxDocument.getColors()</code>
  * to get a color value, a length value which is the length of the
- * token in the text, and a pointer to the next token in the list.
+ * token in the text, and a pointer to the next token in the list.<p>
+ *
+ * Token markers no longer build token lists from this class; they
+ * return a <code>TokenList</code> instead. The token ids are still
+ * defined here.
  *
  * @author Slava Pestov
  * @version $Id: Token.java,v 1.2 2003/11/22 03:39:20 bradford Exp $
@@ -0,0 +1,91 @@
+package jworkspace.ui.editor.jedit;
+
+/**
+ * The tokens of one line, as produced by a <code>TokenMarker</code>.
+ * Token lengths and ids are kept in two parallel primitive arrays, which
+ * only grow and are reused for every line the token marker processes;
+ * painting a line therefore neither allocates nor chases pointers.<p>
+ *
+ * Since the arrays are reused, a token list is only valid until the token
+ * marker that returned it tokenizes the next line.
+ *
+ * @author Anton Troshin
+ * @see jworkspace.ui.editor.jedit.TokenMarker#markTokens(javax.swing.text.Segment,int)
+ */
+public final class TokenList
+{
+   /**
+    * The lengths of the tokens. Only the first <code>count</code>
+    * entries are valid.
+    */
+   public int[] lengths;
+
+   /**
+    * The ids of the tokens, as defined in <code>Token</code>. Only the
+    * first <code>count</code> entries are valid.
+    */
+   public byte[] ids;
+
+   /**
+    * The number of tokens in the list.
+    */
+   public int count;
+
+   /**
+    * Creates a new, empty token list.
+    */
+   public TokenList()
+   {
+      lengths = new int[INITIAL_CAPACITY];
+      ids = new byte[INITIAL_CAPACITY];
+   }
+
+   /**
+    * Appends a token to the list. Tokens are kept as the token marker
+    * adds them, adjacent tokens with the same id are not merged.
+    * @param length The length of the token
+    * @param id The id of the token
+    */
+   public void add(int length, byte id)
+   {
+      if(count == lengths.length)
+      {
+         int[] lengthsN = new int[count * 2];
+         byte[] idsN = new byte[count * 2];
+         System.arraycopy(lengths,0,lengthsN,0,count);
+         System.arraycopy(ids,0,idsN,0,count);
+         lengths = lengthsN;
+         ids = idsN;
+      }
+
+      lengths[count] = length;
+      ids[count] = id;
+      count++;
+   }
+
+   /**
+    * Removes all tokens from the list, keeping the arrays.
+    */
+   public void clear()
+   {
+      count = 0;
+   }
+
+   /**
+    * Returns a string representation of this token list.
+    */
+   public String toString()
+   {
+      StringBuilder buf = new StringBuilder("[");
+      for(int i = 0; i < count; i++)
+      {
+         if(i != 0)
+            buf.append(',');
+         buf.append(ids[i]).append(':').append(lengths[i]);
+      }
+      return buf.append(']').toString();
+   }
+
+   // private members
+   private static final int INITIAL_CAPACITY = 32;
+}
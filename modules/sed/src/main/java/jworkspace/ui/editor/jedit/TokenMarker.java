@@ -9,6 +9,8 @@ package jworkspace.ui.editor.jedit;
  * remains intact in all source distributions of this package.
  */
 
+import java.util.Arrays;
+
 import javax.swing.text.Segment;
 
 /**
@@ -16,7 +18,7 @@ import javax.swing.text.Segment;
  * a length field and an indentification tag that can be mapped to a color
  * for painting that token.<p>
  *
- * For performance reasons, the linked list of tokens is reused after each
+ * For performance reasons, the token list is reused after each
  * line is tokenized. Therefore, the return value of <code>markTokens</code>
  * should only be used for immediate painting. Notably, it cannot be
  * cached.
@@ -33,8 +35,9 @@ public abstract class TokenMarker
     * that is called to split a line up into tokens.
     * @param line The line
     * @param lineIndex The line number
+    * @return The tokens of the line
     */
-   public Token markTokens(Segment line, int lineIndex)
+   public TokenList markTokens(Segment line, int lineIndex)
    {
       if(lineIndex >= length)
       {
@@ -42,20 +45,10 @@ public abstract class TokenMarker
             + lineIndex);
       }
 
-      lastToken = null;
-
-      LineInfo info = lineInfo[lineIndex];
-      LineInfo prev;
-      if(lineIndex == 0)
-         prev = null;
-      else
-         prev = lineInfo[lineIndex - 1];
-
-      byte oldToken = info.token;
-      byte token = markTokensImpl(prev == null ?
-         Token.NULL : prev.token,line,lineIndex);
+      tokens.clear();
 
-      info.token = token;
+      byte oldToken = lineTokens[lineIndex];
+      byte token = updateLine(line,lineIndex);
 
       /*
        * This is a foul hack. It stops nextLineRequested
@@ -100,9 +93,66 @@ public abstract class TokenMarker
 
       lastLine = lineIndex;
 
-      addToken(0,Token.END);
+      return tokens;
+   }
+
+   /**
+    * Tokenizes an invalid line on behalf of a background tokenizer.
+    * Unlike <code>markTokens()</code>, this leaves the token list
+    * returned by the last <code>markTokens()</code> call and the
+    * <code>nextLineRequested</code> flag untouched, so it can be
+    * interleaved with painting.
+    * @param line The line
+    * @param lineIndex The line number
+    * @return True if the end token of the line has changed, that is,
+    * the next line must be tokenized and repainted again
+    */
+   public boolean revalidateLine(Segment line, int lineIndex)
+   {
+      if(lineIndex >= length)
+      {
+         throw new IllegalArgumentException("Tokenizing invalid line: "
+            + lineIndex);
+      }
+
+      TokenList painted = tokens;
+      tokens = scratchTokens;
+      tokens.clear();
+
+      byte oldToken = lineTokens[lineIndex];
+      byte token = updateLine(line,lineIndex);
+
+      scratchTokens = tokens;
+      tokens = painted;
+
+      return oldToken != token;
+   }
+
+   /**
+    * Returns the first line whose end token may be out of date, or
+    * the line count if all lines are tokenized. Lines after this one
+    * may still be valid; an edit only invalidates lines until their
+    * end tokens converge with the stored ones again.
+    */
+   public int getFirstInvalidLine()
+   {
+      while(firstInvalidLine < length && lineValid[firstInvalidLine])
+         firstInvalidLine++;
+      return firstInvalidLine;
+   }
 
-      return firstToken;
+   /**
+    * Marks a line as needing to be tokenized again, for example
+    * because its text has changed.
+    * @param lineIndex The line number
+    */
+   public void invalidateLine(int lineIndex)
+   {
+      if(lineIndex < 0 || lineIndex >= length)
+         return;
+      lineValid[lineIndex] = false;
+      if(lineIndex < firstInvalidLine)
+         firstInvalidLine = lineIndex;
    }
 
    /**
@@ -141,8 +191,7 @@ public abstract class TokenMarker
 
    /**
     * Informs the token marker that lines have been inserted into
-    * the document. This inserts a gap in the <code>lineInfo</code>
-    * array.
+    * the document. This inserts a gap in the line state arrays.
     * @param index The first line number
     * @param lines The number of lines
     */
@@ -150,22 +199,33 @@ public abstract class TokenMarker
    {
       if(lines <= 0)
          return;
-      length += lines;
-      ensureCapacity(length);
+      ensureCapacity(length + lines);
       int len = index + lines;
-      System.arraycopy(lineInfo,index,lineInfo,len,
-         lineInfo.length - len);
-
-      for(int i = index + lines - 1; i >= index; i--)
+      System.arraycopy(lineTokens,index,lineTokens,len,length - index);
+      System.arraycopy(lineValid,index,lineValid,len,length - index);
+      Arrays.fill(lineTokens,index,len,Token.NULL);
+      Arrays.fill(lineValid,index,len,false);
+      if(lineObjects != null)
       {
-         lineInfo[i] = new LineInfo();
+         System.arraycopy(lineObjects,index,lineObjects,len,
+            length - index);
+         Arrays.fill(lineObjects,index,len,null);
       }
+      length += lines;
+
+      // the line following the gap has a new predecessor
+      invalidateLine(index + lines);
+      if(index < firstInvalidLine)
+         firstInvalidLine = index;
+
+      if(lineListener != null)
+         lineListener.linesInserted(index,lines);
    }
 
    /**
     * Informs the token marker that line have been deleted from
     * the document. This removes the lines in question from the
-    * <code>lineInfo</code> array.
+    * line state arrays.
     * @param index The first line number
     * @param lines The number of lines
     */
@@ -174,9 +234,22 @@ public abstract class TokenMarker
       if (lines <= 0)
          return;
       int len = index + lines;
+      System.arraycopy(lineTokens,len,lineTokens,index,length - len);
+      System.arraycopy(lineValid,len,lineValid,index,length - len);
+      if(lineObjects != null)
+      {
+         System.arraycopy(lineObjects,len,lineObjects,index,
+            length - len);
+         Arrays.fill(lineObjects,length - lines,length,null);
+      }
       length -= lines;
-      System.arraycopy(lineInfo,len,lineInfo,
-         index,lineInfo.length - len);
+
+      if(firstInvalidLine > index)
+         firstInvalidLine = Math.max(index,firstInvalidLine - lines);
+      invalidateLine(index);
+
+      if(lineListener != null)
+         lineListener.linesDeleted(index,lines);
    }
 
    /**
@@ -187,6 +260,48 @@ public abstract class TokenMarker
       return length;
    }
 
+   /**
+    * Returns the object a token marker implementation has stored
+    * for a line, or null.
+    * @param lineIndex The line number
+    */
+   public Object getLineObject(int lineIndex)
+   {
+      if(lineObjects == null || lineIndex < 0 || lineIndex >= length)
+         return null;
+      return lineObjects[lineIndex];
+   }
+
+   /**
+    * Stores an object for a line. This is for use by the token
+    * marker implementations themselves, for state that does not fit
+    * into the end token of the line (for example, the terminator of
+    * a here document).
+    * @param lineIndex The line number
+    * @param obj The object
+    */
+   public void setLineObject(int lineIndex, Object obj)
+   {
+      if(lineObjects == null)
+      {
+         if(obj == null)
+            return;
+         lineObjects = new Object[lineTokens.length];
+      }
+      lineObjects[lineIndex] = obj;
+   }
+
+   /**
+    * Sets the listener told about inserted and deleted lines, and
+    * given the tokens of every line tokenized after it has been
+    * invalidated.
+    * @param listener The listener, or null
+    */
+   public void setLineListener(LineListener listener)
+   {
+      lineListener = listener;
+   }
+
    /**
     * Returns true if the next line should be repainted. This
     * will return true after a line has been tokenized that starts
@@ -200,27 +315,27 @@ public abstract class TokenMarker
    // protected members
 
    /**
-    * The first token in the list. This should be used as the return
-    * value from <code>markTokens()</code>.
+    * The id of the last token of each line. The line state arrays are
+    * enlarged and shrunk automatically by the <code>insertLines()</code>
+    * and <code>deleteLines()</code> methods.
     */
-   protected Token firstToken;
+   protected byte[] lineTokens;
 
    /**
-    * The last token in the list. New tokens are added here.
-    * This should be set to null before a new line is to be tokenized.
+    * True for each line whose end token was computed from the current
+    * text of the line and the current end token of the previous line.
     */
-   protected Token lastToken;
+   protected boolean[] lineValid;
 
    /**
-    * An array for storing information about lines. It is enlarged and
-    * shrunk automatically by the <code>insertLines()</code> and
-    * <code>deleteLines()</code> methods.
+    * Per-line objects of the token marker implementation; created
+    * on demand by <code>setLineObject()</code>.
     */
-   protected LineInfo[] lineInfo;
+   protected Object[] lineObjects;
 
    /**
     * The number of lines in the model being tokenized. This can be
-    * less than the length of the <code>lineInfo</code> array.
+    * less than the length of the line state arrays.
     */
    protected int length;
 
@@ -234,9 +349,19 @@ public abstract class TokenMarker
     */
    protected boolean nextLineRequested;
 
+   /**
+    * All lines before this one have valid end tokens.
+    */
+   protected int firstInvalidLine;
+
+   /**
+    * The listener told about line changes, or null.
+    */
+   protected LineListener lineListener;
+
    /**
     * Creates a new <code>TokenMarker</code>. This DOES NOT create
-    * a lineInfo array; an initial call to <code>insertLines()</code>
+    * the line state arrays; an initial call to <code>insertLines()</code>
     * does that.
     */
    protected TokenMarker()
@@ -245,7 +370,7 @@ public abstract class TokenMarker
    }
 
    /**
-    * Ensures that the <code>lineInfo</code> array can contain the
+    * Ensures that the line state arrays can contain the
     * specified index. This enlarges it if necessary. No action is
     * taken if the array is large enough already.<p>
     *
@@ -257,15 +382,47 @@ public abstract class TokenMarker
     */
    protected void ensureCapacity(int index)
    {
-      if(lineInfo == null)
-         lineInfo = new LineInfo[index + 1];
-      else if(lineInfo.length <= index)
+      if(lineTokens == null)
       {
-         LineInfo[] lineInfoN = new LineInfo[(index + 1) * 2];
-         System.arraycopy(lineInfo,0,lineInfoN,0,
-                lineInfo.length);
-         lineInfo = lineInfoN;
+         lineTokens = new byte[index + 1];
+         lineValid = new boolean[index + 1];
       }
+      else if(lineTokens.length <= index)
+      {
+         int capacity = (index + 1) * 2;
+         lineTokens = Arrays.copyOf(lineTokens,capacity);
+         lineValid = Arrays.copyOf(lineValid,capacity);
+         if(lineObjects != null)
+            lineObjects = Arrays.copyOf(lineObjects,capacity);
+      }
+   }
+
+   /**
+    * Tokenizes a line, starting with the end token of the previous
+    * line, and stores the resulting end token. Lines that have not
+    * been tokenized yet have an end token of <code>Token.NULL</code>,
+    * so the lines following them are marked as plain text until the
+    * background tokenizer catches up.
+    */
+   private byte updateLine(Segment line, int lineIndex)
+   {
+      byte prevToken = lineIndex == 0 ? Token.NULL
+         : lineTokens[lineIndex - 1];
+
+      byte oldToken = lineTokens[lineIndex];
+      boolean valid = lineValid[lineIndex];
+      byte token = markTokensImpl(prevToken,line,lineIndex);
+
+      lineTokens[lineIndex] = token;
+      lineValid[lineIndex] = true;
+      if(oldToken != token)
+         invalidateLine(lineIndex + 1);
+
+      // a valid line is tokenized again for painting only
+      if(!valid && lineListener != null)
+         lineListener.lineTokenized(line,lineIndex,tokens);
+
+      return token;
    }
 
    /**
@@ -278,67 +435,48 @@ public abstract class TokenMarker
       if(id >= Token.INTERNAL_FIRST && id <= Token.INTERNAL_LAST)
          throw new InternalError("Invalid id: " + id);
 
-      if(length == 0 && id != Token.END)
+      if(length == 0)
          return;
 
-      if(firstToken == null)
-      {
-         firstToken = new Token(length,id);
-         lastToken = firstToken;
-      }
-      else if(lastToken == null)
-      {
-         lastToken = firstToken;
-         firstToken.length = length;
-         firstToken.id = id;
-      }
-      else if(lastToken.next == null)
-      {
-         lastToken.next = new Token(length,id);
-         lastToken = lastToken.next;
-      }
-      else
-      {
-         lastToken = lastToken.next;
-         lastToken.length = length;
-         lastToken.id = id;
-      }
+      tokens.add(length,id);
    }
 
+   // private members
+
+   // the token list returned by markTokens(), and the one filled
+   // by revalidateLine()
+   private TokenList tokens = new TokenList();
+   private TokenList scratchTokens = new TokenList();
+
    /**
-    * Inner class for storing information about tokenized lines.
+    * Follows the lines of a token marker, for example to index the
+    * declarations in a document. The line numbers passed are those of
+    * the token marker, which are updated before any document listener
+    * is called.
     */
-   public class LineInfo
+   public interface LineListener
    {
       /**
-       * Creates a new LineInfo object with token = Token.NULL
-       * and obj = null.
+       * Lines have been inserted.
+       * @param index The first line number
+       * @param lines The number of lines
        */
-      public LineInfo()
-      {
-      }
-
-      /**
-       * Creates a new LineInfo object with the specified
-       * parameters.
-       */
-      public LineInfo(byte token, Object obj)
-      {
-         this.token = token;
-         this.obj = obj;
-      }
+      void linesInserted(int index, int lines);
 
       /**
-       * The id of the last token of the line.
+       * Lines have been deleted.
+       * @param index The first line number
+       * @param lines The number of lines
        */
-      public byte token;
+      void linesDeleted(int index, int lines);
 
       /**
-       * This is for use by the token marker implementations
-       * themselves. It can be used to store anything that
-       * is an object and that needs to exist on a per-line
-       * basis.
+       * A line has been tokenized after it was inserted or invalidated.
+       * The segment and the token list are only valid during the call.
+       * @param line The text of the line
+       * @param lineIndex The line number
+       * @param tokens The tokens of the line
        */
-      public Object obj;
+      void lineTokenized(Segment line, int lineIndex, TokenList tokens);
    }
 }
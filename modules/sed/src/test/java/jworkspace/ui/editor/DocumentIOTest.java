@@ -0,0 +1,225 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jworkspace.ui.editor.jedit.LargeFileDocument;
+import jworkspace.ui.editor.jedit.SyntaxDocument;
+
+/**
+ * @author Anton Troshin
+ */
+public class DocumentIOTest {
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final byte[] UTF16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    private static final byte[] UTF16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+
+    private final TemporaryFolder testFolder = new TemporaryFolder();
+
+    private final Charset defaultCharset = DocumentIO.getDefaultCharset();
+
+    private String text;
+
+    @Before
+    public void before() throws IOException {
+        testFolder.create();
+        // more than one chunk, with characters outside of ASCII at the chunk borders
+        StringBuilder buf = new StringBuilder();
+        while (buf.length() < 3 * DocumentIO.CHUNK_SIZE) {
+            buf.append("Gr\u00fc\u00dfe, \u043f\u0440\u0438\u0432\u0435\u0442, \u4f60\u597d\n");
+        }
+        text = buf.toString();
+    }
+
+    @After
+    public void after() {
+        DocumentIO.setDefaultCharset(defaultCharset);
+        testFolder.delete();
+    }
+
+    @Test
+    public void testDetectsByteOrderMarks() throws Exception {
+        assertLoads(StandardCharsets.UTF_8, true, UTF8_BOM, text.getBytes(StandardCharsets.UTF_8));
+        assertLoads(StandardCharsets.UTF_16LE, true, UTF16LE_BOM, text.getBytes(StandardCharsets.UTF_16LE));
+        assertLoads(StandardCharsets.UTF_16BE, true, UTF16BE_BOM, text.getBytes(StandardCharsets.UTF_16BE));
+    }
+
+    @Test
+    public void testDefaultCharset() throws Exception {
+        DocumentIO.setDefaultCharset(StandardCharsets.UTF_8);
+        assertLoads(StandardCharsets.UTF_8, false, new byte[0], text.getBytes(StandardCharsets.UTF_8));
+
+        DocumentIO.setDefaultCharset(StandardCharsets.ISO_8859_1);
+        text = "caf\u00e9";
+        assertLoads(StandardCharsets.ISO_8859_1, false, new byte[0], text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testGivenCharset() throws Exception {
+        DocumentIO.setDefaultCharset(StandardCharsets.ISO_8859_1);
+        File file = write(UTF16LE_BOM, text.getBytes(StandardCharsets.UTF_16LE));
+        SyntaxDocument document = new SyntaxDocument();
+        DocumentIO io = run(DocumentIO.load(file, document, StandardCharsets.UTF_16LE));
+        assertEquals(text, getText(document));
+        assertEquals(Boolean.TRUE, document.getProperty(DocumentIO.BOM_PROPERTY));
+        assertEquals(StandardCharsets.UTF_16LE, io.getCharset());
+    }
+
+    @Test
+    public void testLoadIsNotUndoable() throws Exception {
+        SyntaxDocument document = load(write(UTF8_BOM, text.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(document.getUndoManager().canUndo());
+        assertEquals(text, getText(document));
+    }
+
+    @Test
+    public void testSaveRoundTrip() throws Exception {
+        byte[][] boms = {UTF8_BOM, UTF16LE_BOM, UTF16BE_BOM};
+        Charset[] charsets = {StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16BE};
+        for (int i = 0; i < boms.length; i++) {
+            byte[] content = text.getBytes(charsets[i]);
+            SyntaxDocument document = load(write(boms[i], content));
+
+            File target = testFolder.newFile();
+            DocumentIO io = run(DocumentIO.save(document, target));
+            assertNull(io.getError());
+            assertArrayEquals(concat(boms[i], content), Files.readAllBytes(target.toPath()));
+        }
+    }
+
+    @Test
+    public void testSaveKeepsTarget() throws Exception {
+        DocumentIO.setDefaultCharset(StandardCharsets.UTF_8);
+        SyntaxDocument document = load(write(new byte[0], text.getBytes(StandardCharsets.UTF_8)));
+        document.insertString(0, "edited ", null);
+
+        File target = write(new byte[0], new byte[] {'o', 'l', 'd'});
+        DocumentIO io = DocumentIO.save(document, target);
+        io.cancel();
+        run(io);
+        assertArrayEquals(new byte[] {'o', 'l', 'd'}, Files.readAllBytes(target.toPath()));
+
+        run(DocumentIO.save(document, target));
+        assertEquals("edited " + text, new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test(timeout = 30000)
+    public void testSaveLargeFileOverItself() throws Exception {
+        File file = write(new byte[0], "mapped text\n".getBytes(StandardCharsets.ISO_8859_1));
+        LargeFileDocument[] document = new LargeFileDocument[1];
+        String[] saved = new String[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                document[0] = new LargeFileDocument(file);
+                document[0].insertString(0, "edited ", null);
+
+                // the editor waits for a running save before it closes the document
+                DocumentIO io = DocumentIO.save(document[0], file).start();
+                io.await();
+                saved[0] = new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+                assertNull(io.getError());
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        assertEquals("edited mapped text\n", saved[0]);
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                assertEquals("edited mapped text\n", getText(document[0]));
+                assertFalse(document[0].getUndoManager().canUndo());
+                document[0].dispose();
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        assertEquals(1, testFolder.getRoot().list().length);
+    }
+
+    private void assertLoads(Charset charset, boolean bom, byte[] mark, byte[] content) throws Exception {
+        SyntaxDocument document = new SyntaxDocument();
+        DocumentIO io = run(DocumentIO.load(write(mark, content), document, null));
+        assertNull(io.getError());
+        assertEquals(charset, io.getCharset());
+        assertEquals(charset, document.getProperty(DocumentIO.CHARSET_PROPERTY));
+        assertEquals(bom, document.getProperty(DocumentIO.BOM_PROPERTY));
+        assertEquals(text, getText(document));
+    }
+
+    private SyntaxDocument load(File file) throws Exception {
+        SyntaxDocument document = new SyntaxDocument();
+        assertNull(run(DocumentIO.load(file, document, null)).getError());
+        return document;
+    }
+
+    /*
+     * Run the transfer on this thread and wait for it to tell that it has
+     * finished on the event dispatch thread
+     */
+    private static DocumentIO run(DocumentIO io) throws Exception {
+        io.run();
+        SwingUtilities.invokeAndWait(() -> { });
+        assertEquals(true, io.isDone());
+        return io;
+    }
+
+    private File write(byte[] mark, byte[] content) throws IOException {
+        File file = testFolder.newFile();
+        Files.write(file.toPath(), concat(mark, content));
+        return file;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(first);
+        out.write(second);
+        return out.toByteArray();
+    }
+
+    private static String getText(SyntaxDocument document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+}
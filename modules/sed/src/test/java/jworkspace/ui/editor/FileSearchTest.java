@@ -0,0 +1,205 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Anton Troshin
+ */
+public class FileSearchTest {
+
+    private final TemporaryFolder testFolder = new TemporaryFolder();
+
+    private final Charset defaultCharset = DocumentIO.getDefaultCharset();
+
+    private File root;
+
+    @Before
+    public void before() throws IOException {
+        testFolder.create();
+        root = testFolder.newFolder("root");
+        DocumentIO.setDefaultCharset(StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void after() {
+        DocumentIO.setDefaultCharset(defaultCharset);
+        testFolder.delete();
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        write("a.txt", "one\nFoo two foo\r\nthree");
+        write("src/b.java", "class B { int foo; }");
+        write("src/c.md", "foo");
+        write("target/d.txt", "foo");
+        write("e.txt", "foo\u0000");
+
+        FileSearch search = new FileSearch(root, "foo", false, false);
+        search.setIncludes("*.txt, *.java");
+        search.setExcludes("target");
+        assertEquals("[a.txt:1:0-3:Foo two foo, a.txt:1:8-11:Foo two foo, src/b.java:0:14-17:class B { int foo; }]",
+            list(search).toString());
+        assertEquals(2, search.getFileCount());
+        assertEquals(3, search.getMatchCount());
+        assertEquals(0, search.getSkippedCount());
+        assertFalse(search.isCancelled());
+        assertTrue(search.isDone());
+
+        // case and regular expressions, no patterns
+        assertEquals("[a.txt:1:8-11:Foo two foo, src/b.java:0:14-17:class B { int foo; }, src/c.md:0:0-3:foo,"
+            + " target/d.txt:0:0-3:foo]",
+            list(new FileSearch(root, "foo", true, false)).toString());
+        assertEquals("[a.txt:2:0-5:three]", list(new FileSearch(root, "th\\w+", true, true)).toString());
+    }
+
+    @Test
+    public void testLargeFiles() throws Exception {
+        // mapped and decoded in several windows, with characters outside of ASCII at the borders
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; buf.length() < 3 * FileSearch.WINDOW_SIZE; i++) {
+            buf.append("line ").append(i).append(" caf\u00e9 \u4f60\u597d\n");
+        }
+        String before = buf.toString();
+        int lines = before.split("\n").length;
+        buf.append("the needle\n");
+        // a line longer than a window is matched in pieces
+        for (int i = 0; i <= FileSearch.WINDOW_SIZE; i++) {
+            buf.append('x');
+        }
+        buf.append(" needle");
+        write("large.txt", buf.toString());
+
+        FileSearch search = new FileSearch(root, "needle|9999 caf\u00e9 \u4f60\u597d", true, true);
+        List<FileSearch.Match> matches = new ArrayList<>();
+        for (FileSearch.Match match : run(search)) {
+            if (match.getText().contains("needle")) {
+                matches.add(match);
+            } else {
+                // line i is "line i ..."
+                assertEquals("line " + match.getLine() + " caf\u00e9 \u4f60\u597d", match.getText());
+            }
+        }
+        assertEquals(lines / 10000 + 2, search.getMatchCount());
+        assertEquals(2, matches.size());
+        assertEquals(lines, matches.get(0).getLine());
+        assertEquals(4, matches.get(0).getStart());
+        assertEquals(lines + 1, matches.get(1).getLine());
+        assertEquals(FileSearch.WINDOW_SIZE + 2, matches.get(1).getStart());
+        assertEquals(FileSearch.WINDOW_SIZE + 8, matches.get(1).getEnd());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            write("dir" + i + "/file.txt", "foo");
+        }
+        FileSearch search = new FileSearch(root, "foo", false, false);
+        search.cancel();
+        assertEquals(0, run(search).size());
+        assertTrue(search.isCancelled());
+        assertTrue(search.isDone());
+        assertEquals(0, search.getFileCount());
+    }
+
+    @Test
+    public void testSkipsFilesTheSearchFailsOn() throws Exception {
+        // the expression overflows the stack on a long line
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000000; i++) {
+            buf.append('a');
+        }
+        File failing = write("failing.txt", buf.toString());
+        write("good.txt", "ac");
+
+        FileSearch search = new FileSearch(root, "(a|b)*c", true, true);
+        assertEquals("[good.txt:0:0-2:ac]", list(search).toString());
+        assertEquals(1, search.getFileCount());
+        assertEquals(1, search.getMatchCount());
+        assertEquals(1, search.getSkippedCount());
+        assertEquals(Collections.singletonList(failing), search.getSkippedFiles());
+    }
+
+    /*
+     * Run the search and wait for it to finish
+     */
+    private static List<FileSearch.Match> run(FileSearch search) throws Exception {
+        List<FileSearch.Match> matches = new ArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        search.addListener(new FileSearch.Listener() {
+            public void found(FileSearch source, List<FileSearch.Match> found) {
+                matches.addAll(found);
+            }
+
+            public void finished(FileSearch source) {
+                finished.countDown();
+            }
+        });
+        search.start();
+        assertTrue(finished.await(60, TimeUnit.SECONDS));
+        return matches;
+    }
+
+    /*
+     * Run the search and list the matches as relative path, line, columns
+     * and text, sorted by path
+     */
+    private List<String> list(FileSearch search) throws Exception {
+        List<String> matches = new ArrayList<>();
+        for (FileSearch.Match match : run(search)) {
+            String path = root.toPath().relativize(match.getFile().toPath()).toString().replace(File.separatorChar, '/');
+            matches.add(path + ":" + match.getLine() + ":" + match.getStart() + "-" + match.getEnd()
+                + ":" + match.getText());
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+
+    private File write(String path, String text) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
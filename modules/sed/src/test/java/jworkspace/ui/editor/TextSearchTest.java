@@ -0,0 +1,129 @@
+package jworkspace.ui.editor;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2016 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+import javax.swing.SwingUtilities;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import jworkspace.ui.editor.jedit.SyntaxDocument;
+
+/**
+ * @author Anton Troshin
+ */
+public class TextSearchTest {
+
+    private static final String TEXT = "foo bar Foo foobar _foo foo1 (foo)";
+
+    @Test
+    public void testLiteral() {
+        TextSearch search = new TextSearch("foo", true, false);
+        assertEquals(0, search.find(TEXT, 0));
+        assertEquals(3, search.getMatchEnd());
+        assertEquals(12, search.find(TEXT, 1));
+        assertEquals("$1", search.replacement("$1"));
+        assertEquals(-1, search.find(TEXT, TEXT.length()));
+        assertEquals(-1, search.getMatchEnd());
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        assertEquals(12, new TextSearch("foo", true, false).find(TEXT, 1));
+        assertEquals(8, new TextSearch("foo", false, false).find(TEXT, 1));
+        assertEquals(8, new TextSearch("Foo", true, false).find(TEXT, 1));
+        assertEquals(8, new TextSearch("F[O]+", false, true).find(TEXT, 1));
+    }
+
+    @Test
+    public void testRegex() {
+        TextSearch search = new TextSearch("f(o+)(?<tail>bar)?", true, true);
+        assertEquals(12, search.find(TEXT, 1));
+        assertEquals(18, search.getMatchEnd());
+        assertEquals("<oo|bar|$>", search.replacement("<$1|${tail}|\\$>"));
+        assertEquals(20, search.find(TEXT, 13));
+        assertEquals("[]", search.replacement("[$2]"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReplacementWithoutMatch() {
+        new TextSearch("x", true, true).replacement("$0");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testReplacementOfMissingGroup() {
+        TextSearch search = new TextSearch("f(o)", true, true);
+        search.find(TEXT, 0);
+        search.replacement("$2");
+    }
+
+    @Test
+    public void testWholeWord() {
+        TextSearch search = new TextSearch("foo", false, false, true);
+        assertEquals(0, search.find(TEXT, 0));
+        assertEquals(8, search.find(TEXT, 1));
+        assertEquals(30, search.find(TEXT, 9));
+        assertEquals(3, count(search));
+
+        assertEquals(4, count(new TextSearch("f\\w+", true, true, true)));
+        assertEquals(0, count(new TextSearch("oo", true, false, true)));
+    }
+
+    @Test
+    public void testWrapAround() {
+        TextSearch search = new TextSearch("bar", true, false);
+        assertEquals(-1, search.find(TEXT, 20, false));
+        assertEquals(4, search.find(TEXT, 20, true));
+        assertEquals(15, search.find(TEXT, 5, true));
+        assertEquals(-1, new TextSearch("baz", true, false).find(TEXT, 20, true));
+    }
+
+    @Test
+    public void testReplaceAll() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                SyntaxDocument document = new SyntaxDocument();
+                document.insertString(0, TEXT, null);
+                assertEquals(6, new TextSearch("(f)(oo)", false, true).replaceAll(document, "$2$1"));
+                assertEquals("oof bar ooF oofbar _oof oof1 (oof)", document.getText(0, document.getLength()));
+                assertEquals(2, new TextSearch("oof", true, false, true).replaceAll(document, "$1"));
+                assertEquals("$1 bar ooF oofbar _oof oof1 ($1)", document.getText(0, document.getLength()));
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    private static int count(TextSearch search) {
+        int count = 0;
+        int offset = search.find(TEXT, 0);
+        while (offset >= 0) {
+            count++;
+            offset = search.find(TEXT, search.getMatchEnd());
+        }
+        return count;
+    }
+}
@@ -0,0 +1,143 @@
+package jworkspace.ui.editor.jedit;
+
+import java.util.Random;
+
+import javax.swing.text.Segment;
+
+/**
+ * Tokenizes a generated Transact-SQL script with <code>TSQLTokenMarker</code>
+ * and <code>SQLTokenMarker</code>, whose keyword maps hold several hundred
+ * case insensitive keywords, and measures raw <code>KeywordMap</code>
+ * lookups over the identifiers of the script.
+ * Run with <code>java jworkspace.ui.editor.jedit.KeywordMapBenchmark [lines]</code>.
+ *
+ * @author Anton Troshin
+ */
+public final class KeywordMapBenchmark
+{
+   public static void main(String[] args)
+   {
+      int lines = args.length > 0 ? Integer.parseInt(args[0]) : LINES;
+      char[][] script = generate(lines, new Random(42));
+
+      for(int i = 0; i < WARM_UP; i++)
+      {
+         tokenize(new TSQLTokenMarker(), script);
+         lookup(TSQLTokenMarker.getKeywordMap(), script);
+      }
+
+      long chars = 0;
+      for(char[] line : script)
+         chars += line.length;
+
+      long start = System.nanoTime();
+      long tokens = 0;
+      for(int i = 0; i < ITERATIONS; i++)
+         tokens = tokenize(new TSQLTokenMarker(), script);
+      report("tsql", lines, chars, tokens, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for(int i = 0; i < ITERATIONS; i++)
+         tokens = tokenize(new SQLTokenMarker(
+            TSQLTokenMarker.getKeywordMap(), false), script);
+      report("sql", lines, chars, tokens, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      long words = 0;
+      for(int i = 0; i < ITERATIONS; i++)
+         words = lookup(TSQLTokenMarker.getKeywordMap(), script);
+      report("lookup", lines, chars, words, System.nanoTime() - start);
+   }
+
+   // private members
+   private static final int LINES = 200000;
+   private static final int WARM_UP = 3;
+   private static final int ITERATIONS = 10;
+
+   private static final String[] STATEMENTS = {
+      "SELECT o.order_id, c.name, SUM(l.quantity * l.price) AS total",
+      "  FROM orders o INNER JOIN customers c ON c.customer_id = o.customer_id",
+      "  LEFT OUTER JOIN order_lines l ON l.order_id = o.order_id",
+      " WHERE o.created BETWEEN @from AND @to AND c.region IS NOT NULL",
+      " GROUP BY o.order_id, c.name HAVING COUNT(*) > 1 ORDER BY total DESC",
+      "UPDATE statistics SET last_update = GETDATE() WHERE table_name = 'orders'",
+      "INSERT INTO audit_log (user_name, action) VALUES (SUSER_NAME(), 'import')",
+      "declare @count int, @name varchar(30) -- mixed case keywords",
+      "if exists (select 1 from sysobjects where name = 'tmp_orders')",
+      "   drop table tmp_orders",
+      "begin transaction /* keep the audit and the update together */",
+      "commit tran",
+      "create procedure usp_archive @before datetime as",
+      "   delete from orders where created < @before",
+      "   return @@rowcount",
+      "go"
+   };
+
+   private KeywordMapBenchmark()
+   {
+   }
+
+   private static char[][] generate(int lines, Random random)
+   {
+      char[][] script = new char[lines][];
+      for(int i = 0; i < lines; i++)
+      {
+         String line = STATEMENTS[random.nextInt(STATEMENTS.length)];
+         script[i] = line.toCharArray();
+      }
+      return script;
+   }
+
+   private static long tokenize(TokenMarker marker, char[][] script)
+   {
+      marker.insertLines(0, script.length);
+      Segment segment = new Segment();
+      long tokens = 0;
+      for(int i = 0; i < script.length; i++)
+      {
+         segment.array = script[i];
+         segment.offset = 0;
+         segment.count = script[i].length;
+         tokens += marker.markTokens(segment, i).count;
+      }
+      return tokens;
+   }
+
+   private static long lookup(KeywordMap map, char[][] script)
+   {
+      Segment segment = new Segment();
+      long keywords = 0;
+      for(char[] line : script)
+      {
+         segment.array = line;
+         segment.offset = 0;
+         segment.count = line.length;
+         int start = -1;
+         for(int i = 0; i <= line.length; i++)
+         {
+            boolean word = i < line.length
+               && (Character.isLetterOrDigit(line[i]) || line[i] == '_'
+               || line[i] == '@');
+            if(word && start < 0)
+               start = i;
+            else if(!word && start >= 0)
+            {
+               if(map.lookup(segment, start, i - start) != Token.NULL)
+                  keywords++;
+               start = -1;
+            }
+         }
+      }
+      return keywords;
+   }
+
+   private static void report(String name, int lines, long chars,
+      long count, long nanos)
+   {
+      long millis = Math.max(nanos / 1000000 / ITERATIONS, 1);
+      System.out.println(String.format(
+         "%-8s %d lines in %d ms, %d lines/s, %d MB/s (%d)", name, lines,
+         millis, lines * 1000L / millis, chars * 1000L / millis / 1048576,
+         count));
+   }
+}
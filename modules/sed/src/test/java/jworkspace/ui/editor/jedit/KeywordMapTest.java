@@ -0,0 +1,128 @@
+package jworkspace.ui.editor.jedit;
+
+import javax.swing.text.Segment;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class KeywordMapTest
+{
+   @Test
+   public void testIgnoreCase()
+   {
+      KeywordMap map = new KeywordMap(true);
+      map.add("SELECT",Token.KEYWORD1);
+      map.add("from",Token.KEYWORD2);
+
+      assertEquals(Token.KEYWORD1,lookup(map,"select"));
+      assertEquals(Token.KEYWORD1,lookup(map,"SeLeCt"));
+      assertEquals(Token.KEYWORD2,lookup(map,"FROM"));
+      assertEquals(Token.KEYWORD2,lookup(map,"from"));
+
+      map.setIgnoreCase(false);
+      assertEquals(Token.NULL,lookup(map,"select"));
+      assertEquals(Token.KEYWORD1,lookup(map,"SELECT"));
+      assertEquals(Token.KEYWORD2,lookup(map,"from"));
+      assertEquals(Token.NULL,lookup(map,"From"));
+   }
+
+   @Test
+   public void testIgnoreCaseBeyondAscii()
+   {
+      KeywordMap map = new KeywordMap(true);
+      map.add("caf\u00c9",Token.KEYWORD1);
+
+      assertEquals(Token.KEYWORD1,lookup(map,"caf\u00e9"));
+      assertEquals(Token.KEYWORD1,lookup(map,"CAF\u00c9"));
+      assertEquals(Token.NULL,lookup(map,"cafe"));
+   }
+
+   @Test
+   public void testPrefixes()
+   {
+      KeywordMap map = new KeywordMap(false);
+      map.add("in",Token.KEYWORD1);
+      map.add("int",Token.KEYWORD2);
+      map.add("interface",Token.KEYWORD3);
+
+      assertEquals(Token.KEYWORD1,lookup(map,"in"));
+      assertEquals(Token.KEYWORD2,lookup(map,"int"));
+      assertEquals(Token.KEYWORD3,lookup(map,"interface"));
+
+      // prefixes and extensions of keywords are not keywords
+      assertEquals(Token.NULL,lookup(map,"i"));
+      assertEquals(Token.NULL,lookup(map,"inte"));
+      assertEquals(Token.NULL,lookup(map,"interfaces"));
+      assertEquals(Token.NULL,lookup(map,"ints"));
+   }
+
+   @Test
+   public void testSubRanges()
+   {
+      KeywordMap map = new KeywordMap(false);
+      map.add("for",Token.KEYWORD1);
+      map.add("if",Token.KEYWORD2);
+
+      // the segment is a window into a larger array
+      char[] array = "xx if(a) for(;;) xx".toCharArray();
+      Segment text = new Segment(array,3,array.length - 6);
+
+      assertEquals(Token.KEYWORD2,map.lookup(text,3,2));
+      assertEquals(Token.KEYWORD1,map.lookup(text,9,3));
+      assertEquals(Token.NULL,map.lookup(text,9,2));
+      assertEquals(Token.NULL,map.lookup(text,4,2));
+      assertEquals(Token.NULL,map.lookup(text,3,3));
+
+      // a range past the end of the segment is not looked up
+      Segment cut = new Segment(array,0,11);
+      assertEquals(Token.NULL,map.lookup(cut,9,3));
+      assertEquals(Token.KEYWORD1,map.lookup(new Segment(array,0,12),9,3));
+   }
+
+   @Test
+   public void testOverlappingKeywords()
+   {
+      KeywordMap map = new KeywordMap(false);
+      map.add("do",Token.KEYWORD1);
+      map.add("double",Token.KEYWORD2);
+      map.add("done",Token.KEYWORD3);
+      map.add("node",Token.LITERAL1);
+
+      assertEquals(Token.KEYWORD1,lookup(map,"do"));
+      assertEquals(Token.KEYWORD2,lookup(map,"double"));
+      assertEquals(Token.KEYWORD3,lookup(map,"done"));
+      assertEquals(Token.LITERAL1,lookup(map,"node"));
+
+      // a keyword added again maps to the last id, also after a lookup
+      map.add("done",Token.LABEL);
+      assertEquals(Token.LABEL,lookup(map,"done"));
+      assertEquals(Token.KEYWORD2,lookup(map,"double"));
+   }
+
+   @Test
+   public void testMisses()
+   {
+      KeywordMap map = new KeywordMap(false);
+      assertEquals(Token.NULL,lookup(map,"anything"));
+
+      map.add("return",Token.KEYWORD1);
+      assertEquals(Token.NULL,lookup(map,""));
+      assertEquals(Token.NULL,lookup(map,"retune"));
+      assertEquals(Token.NULL,lookup(map,"xeturn"));
+      assertEquals(Token.NULL,lookup(map,"retur\u4e00"));
+      assertEquals(Token.NULL,lookup(map,"RETURN"));
+   }
+
+   /* internal code follows */
+
+   private static byte lookup(KeywordMap map, String word)
+   {
+      // the word in the middle of a line
+      char[] array = ("(" + word + ")").toCharArray();
+      return map.lookup(new Segment(array,0,array.length),1,word.length());
+   }
+}
@@ -0,0 +1,271 @@
+package jworkspace.ui.editor.jedit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Anton Troshin
+ */
+public class LargeFileDocumentTest
+{
+   private final TemporaryFolder testFolder = new TemporaryFolder();
+
+   private File file;
+
+   private String text;
+
+   private LargeFileDocument document;
+
+   @Before
+   public void before() throws IOException
+   {
+      testFolder.create();
+      file = testFolder.newFile("large.txt");
+
+      // several index chunks, so most of the file is indexed in the background
+      StringBuilder buf = new StringBuilder();
+      for(int i = 0; buf.length() < 3 * LargeFileDocument.INDEX_CHUNK; i++)
+         buf.append("line ").append(i).append(" caf\u00e9\n");
+      buf.append("no newline at the end");
+      text = buf.toString();
+      Files.write(file.toPath(),text.getBytes(StandardCharsets.ISO_8859_1));
+   }
+
+   @After
+   public void after() throws Exception
+   {
+      if(document != null)
+         onEventThread(() -> document.dispose());
+      testFolder.delete();
+   }
+
+   @Test
+   public void testLoad() throws Exception
+   {
+      open();
+      onEventThread(() -> assertText(text));
+   }
+
+   @Test
+   public void testEditAndUndo() throws Exception
+   {
+      open();
+      onEventThread(() ->
+      {
+         PlainDocument expected = new PlainDocument();
+         expected.insertString(0,text,null);
+         document.getUndoManager().setLimit(1000);
+
+         Random random = new Random(42);
+         for(int i = 0; i < 500; i++)
+         {
+            int offset = random.nextInt(document.getLength() + 1);
+            if(random.nextBoolean())
+            {
+               String str = random.nextInt(4) == 0 ? "a\nb\n" : "x";
+               // more lines than between two checkpoints
+               if(random.nextInt(50) == 0)
+                  str = text.substring(0,20000);
+               document.insertString(offset,str,null);
+               expected.insertString(offset,str,null);
+            }
+            else
+            {
+               int len = Math.min(random.nextInt(5000),
+                  document.getLength() - offset);
+               document.remove(offset,len);
+               expected.remove(offset,len);
+            }
+         }
+         assertText(expected.getText(0,expected.getLength()));
+         assertLines(expected);
+
+         while(document.getUndoManager().canUndo())
+            document.getUndoManager().undo();
+         assertText(text);
+      });
+   }
+
+   @Test
+   public void testRejectsWideCharacters() throws Exception
+   {
+      open();
+      onEventThread(() ->
+      {
+         assertTrue(document.canInsert("caf\u00e9"));
+         assertFalse(document.canInsert("\u20ac"));
+         try
+         {
+            document.insertString(0,"price: \u20ac",null);
+            fail();
+         }
+         catch(IllegalArgumentException e)
+         {
+            assertText(text);
+         }
+      });
+   }
+
+   @Test
+   public void testSaveAs() throws Exception
+   {
+      open();
+      File target = testFolder.newFile("saved.txt");
+      onEventThread(() ->
+      {
+         document.insertString(0,"\u00e0 la carte\n",null);
+         document.remove(document.getLength() - 3,3);
+      });
+      document.save(target);
+
+      String expected = "\u00e0 la carte\n" + text.substring(0,text.length() - 3);
+      assertEquals(expected,read(target));
+      assertEquals(text,read(file));
+      onEventThread(() ->
+      {
+         assertText(expected);
+         assertTrue(document.getUndoManager().canUndo());
+      });
+   }
+
+   @Test
+   public void testSaveOverMappedFile() throws Exception
+   {
+      open();
+      onEventThread(() -> document.remove(0,5));
+      try
+      {
+         // the mapping can only be switched on the event dispatch thread
+         document.save(file);
+         fail();
+      }
+      catch(IllegalStateException e)
+      {
+         assertEquals(text,read(file));
+      }
+
+      String saved = text.substring(5);
+      onEventThread(() ->
+      {
+         document.save(file);
+         assertEquals(saved,read(file));
+         assertText(saved);
+         assertFalse(document.getUndoManager().canUndo());
+
+         // the document now reads the saved file
+         document.insertString(document.getLength(),"\nend",null);
+         document.save(file);
+         assertEquals(saved + "\nend",read(file));
+         assertText(saved + "\nend");
+      });
+   }
+
+   @Test
+   public void testReportsIndexingFailure() throws Exception
+   {
+      int[] notified = { 0 };
+      onEventThread(() ->
+      {
+         document = new LargeFileDocument(file);
+         document.addChangeListener(e ->
+         {
+            // the first hand over fails, the second call reports it
+            if(notified[0]++ == 0)
+               throw new IllegalStateException("listener failed");
+         });
+      });
+
+      boolean[] loading = { true };
+      while(loading[0])
+      {
+         Thread.sleep(10);
+         onEventThread(() -> loading[0] = document.isLoading());
+      }
+      onEventThread(() ->
+      {
+         assertTrue(document.getError().getCause()
+            instanceof IllegalStateException);
+         assertEquals(2,notified[0]);
+      });
+   }
+
+   /* internal code follows */
+
+   private void open() throws Exception
+   {
+      onEventThread(() -> document = new LargeFileDocument(file));
+      boolean[] loading = { true };
+      while(loading[0])
+      {
+         Thread.sleep(10);
+         onEventThread(() -> loading[0] = document.isLoading());
+      }
+   }
+
+   private void assertText(String expected) throws BadLocationException
+   {
+      assertEquals(expected.length(),document.getLength());
+      assertEquals(expected,document.getText(0,document.getLength()));
+   }
+
+   private void assertLines(PlainDocument expected)
+   {
+      Element lines = expected.getDefaultRootElement();
+      Element map = document.getDefaultRootElement();
+      assertEquals(lines.getElementCount(),map.getElementCount());
+      for(int i = 0; i < lines.getElementCount(); i++)
+      {
+         Element line = lines.getElement(i);
+         assertEquals(line.getStartOffset(),map.getElement(i).getStartOffset());
+         assertEquals(line.getEndOffset(),map.getElement(i).getEndOffset());
+         assertEquals(i,map.getElementIndex(line.getStartOffset()));
+      }
+   }
+
+   private static String read(File file) throws IOException
+   {
+      return new String(Files.readAllBytes(file.toPath()),
+         StandardCharsets.ISO_8859_1);
+   }
+
+   private static void onEventThread(Task task) throws Exception
+   {
+      Exception[] error = new Exception[1];
+      SwingUtilities.invokeAndWait(() ->
+      {
+         try
+         {
+            task.run();
+         }
+         catch(Exception e)
+         {
+            error[0] = e;
+         }
+      });
+      if(error[0] != null)
+         throw error[0];
+   }
+
+   private interface Task
+   {
+      void run() throws Exception;
+   }
+}
@@ -0,0 +1,236 @@
+package jworkspace.ui.editor.jedit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class SymbolIndexTest
+{
+   private static final String JAVA = "package test;\n"
+      + "public class Foo extends Base {\n"
+      + "   private int count;\n"
+      + "   public void run() {\n"
+      + "      helper(1);\n"
+      + "      if (count > 0) call(count);\n"
+      + "   }\n"
+      + "   static List<String> names(int x) { return null; }\n"
+      + "   int[] values() { return null; }\n"
+      + "   // class NotAClass\n"
+      + "   String s = \"void fake()\";\n"
+      + "   /* void commented() {} */\n"
+      + "   interface Bar {}\n"
+      + "   Object o = Foo.class;\n"
+      + "}\n";
+
+   private static final String SQL = "CREATE OR REPLACE PROCEDURE dbo.load_data AS\n"
+      + "SELECT * FROM orders;\n"
+      + "create table if not exists orders (id INT);\n"
+      + "-- CREATE TABLE commented\n"
+      + "ALTER VIEW recent AS SELECT 1;\n";
+
+   private static final String XML = "<?xml version=\"1.0\"?>\n"
+      + "<root>\n"
+      + "<item id=\"first\"/><item name='second'>\n"
+      + "<!-- <hidden> -->\n"
+      + "</item></root>\n";
+
+   @Test
+   public void testJavaDeclarations() throws Exception
+   {
+      onEventThread(() ->
+      {
+         SymbolIndex index = index(JAVA,new JavaTokenMarker());
+         assertEquals("[Foo class 1, run method 3, names method 7,"
+            + " values method 8, Bar class 12]",symbols(index));
+         Symbol foo = index.getSymbols(1)[0];
+         assertEquals(13,foo.getStart());
+         assertEquals(16,foo.getEnd());
+      });
+   }
+
+   @Test
+   public void testSQLDeclarations() throws Exception
+   {
+      onEventThread(() ->
+      {
+         SymbolIndex index = index(SQL,new TSQLTokenMarker());
+         assertEquals("[dbo.load_data procedure 0, orders table 2,"
+            + " recent table 4]",symbols(index));
+      });
+   }
+
+   @Test
+   public void testXMLDeclarations() throws Exception
+   {
+      onEventThread(() ->
+      {
+         SymbolIndex index = index(XML,new XMLTokenMarker());
+         assertEquals("[root element 1, item first element 2,"
+            + " item second element 2]",symbols(index));
+      });
+   }
+
+   @Test
+   public void testOtherLanguagesAreNotIndexed() throws Exception
+   {
+      onEventThread(() ->
+      {
+         SymbolIndex index = index(JAVA,new CTokenMarker());
+         assertFalse(index.isEnabled());
+         assertTrue(index.isComplete());
+         assertEquals(0,index.find("",10).length);
+      });
+   }
+
+   @Test
+   public void testFindDoesNotTokenize() throws Exception
+   {
+      onEventThread(() ->
+      {
+         SyntaxDocument document = new SyntaxDocument();
+         document.insertString(0,JAVA,null);
+         document.setTokenMarker(new JavaTokenMarker());
+         SymbolIndex index = document.getSymbolIndex();
+         assertFalse(index.isComplete());
+         assertEquals(0,index.find("",10).length);
+
+         tokenize(document);
+         assertTrue(index.isComplete());
+         assertEquals(5,index.find("",10).length);
+
+         // an edit leaves the index incomplete until the line is tokenized
+         int offset = document.getDefaultRootElement().getElement(13)
+            .getStartOffset();
+         document.insertString(offset,"   void added() {}\n",null);
+         assertFalse(index.isComplete());
+         assertEquals(0,index.find("added",10).length);
+         tokenize(document);
+         assertTrue(index.isComplete());
+         assertEquals(13,index.find("added",10)[0].line);
+         assertEquals(12,index.find("Bar",10)[0].line);
+
+         document.remove(offset,19);
+         tokenize(document);
+         assertEquals(0,index.find("added",10).length);
+         assertEquals(5,index.getSymbolCount());
+      });
+   }
+
+   @Test
+   public void testRanking() throws Exception
+   {
+      onEventThread(() ->
+      {
+         SymbolIndex index = index("class A {\n"
+            + "   void longestSingleItem() {}\n"
+            + "   void getSize() {}\n"
+            + "   void gsi() {}\n"
+            + "   void getSymbolIndex() {}\n"
+            + "   void run() {}\n"
+            + "}\n",new JavaTokenMarker());
+
+         // exact match, then by word starts, runs and length
+         SymbolIndex.Match[] matches = index.find("gsi",10);
+         assertEquals("[gsi, getSize, getSymbolIndex, longestSingleItem]",
+            Arrays.toString(matches));
+         for(int i = 1; i < matches.length; i++)
+            assertTrue(matches[i - 1].score > matches[i].score);
+
+         // case is ignored, the characters must appear in order
+         assertEquals("run",index.find("RUN",10)[0].toString());
+         assertEquals(0,index.find("nur",10).length);
+         assertEquals(2,index.find("gsi",2).length);
+
+         // no pattern lists the symbols in line order
+         matches = index.find(" ",3);
+         assertEquals("A",matches[0].toString());
+         assertEquals("longestSingleItem",matches[1].toString());
+         assertEquals("getSize",matches[2].toString());
+      });
+   }
+
+   @Test
+   public void testScore()
+   {
+      char[] pattern = "fb".toCharArray();
+      int exact = SymbolIndex.score(pattern,symbol("fb"));
+      int prefix = SymbolIndex.score(pattern,symbol("fbx"));
+      int words = SymbolIndex.score(pattern,symbol("fooBar"));
+      int underscore = SymbolIndex.score(pattern,symbol("foo_bar"));
+      int inner = SymbolIndex.score(pattern,symbol("fabric"));
+      // word starts count more than consecutive characters
+      assertTrue(exact > words);
+      assertTrue(words > prefix);
+      assertTrue(underscore > prefix);
+      assertTrue(prefix > inner);
+      assertEquals(-1,SymbolIndex.score(pattern,symbol("bf")));
+   }
+
+   /* internal code follows */
+
+   private static SymbolIndex index(String text, TokenMarker marker)
+      throws Exception
+   {
+      SyntaxDocument document = new SyntaxDocument();
+      document.insertString(0,text,null);
+      document.setTokenMarker(marker);
+      tokenize(document);
+      return document.getSymbolIndex();
+   }
+
+   private static void tokenize(SyntaxDocument document)
+   {
+      while(document.tokenizeSlice(1000))
+         continue;
+   }
+
+   private static String symbols(SymbolIndex index)
+   {
+      List<String> symbols = new ArrayList<String>();
+      for(SymbolIndex.Match match : index.find("",100))
+      {
+         symbols.add(match.symbol.getName() + ' '
+            + match.symbol.getKindName() + ' ' + match.line);
+      }
+      return symbols.toString();
+   }
+
+   private static Symbol symbol(String name)
+   {
+      return new Symbol(name,Symbol.METHOD,0,name.length());
+   }
+
+   private static void onEventThread(Task task) throws Exception
+   {
+      Exception[] error = new Exception[1];
+      SwingUtilities.invokeAndWait(() ->
+      {
+         try
+         {
+            task.run();
+         }
+         catch(Exception e)
+         {
+            error[0] = e;
+         }
+      });
+      if(error[0] != null)
+         throw error[0];
+   }
+
+   private interface Task
+   {
+      void run() throws Exception;
+   }
+}
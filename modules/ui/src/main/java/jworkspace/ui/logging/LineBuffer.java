@@ -0,0 +1,144 @@
+package jworkspace.ui.logging;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2003 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+import javax.swing.JTextArea;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * Bounded line buffer. Text is accumulated from any thread and drained
+ * to a text area on the event dispatch thread. Neither the pending text
+ * nor the text area ever hold more than the configured number of lines,
+ * the oldest lines are discarded first.
+ *
+ * @author <a href='mailto:anton.troshin@gmail.com'>Anton Troshin</a>
+ */
+class LineBuffer {
+    /**
+     * Default maximum number of lines
+     */
+    static final int DEFAULT_MAX_LINES = 5000;
+    /**
+     * Pending text, not yet drained to the text area
+     */
+    private final StringBuilder pending = new StringBuilder();
+    /**
+     * Number of line breaks in pending text
+     */
+    private int pendingLines = 0;
+    /**
+     * Maximum number of lines to keep
+     */
+    private volatile int maxLines;
+
+    LineBuffer() {
+        this(DEFAULT_MAX_LINES);
+    }
+
+    LineBuffer(int maxLines) {
+        setMaxLines(maxLines);
+    }
+
+    int getMaxLines() {
+        return maxLines;
+    }
+
+    void setMaxLines(int maxLines) {
+        this.maxLines = Math.max(maxLines, 1);
+    }
+
+    /**
+     * Append characters to pending text. Pending text is trimmed only after it
+     * grows to twice the line limit, so trimming cost is amortized over appends.
+     */
+    synchronized void append(char[] chars, int off, int len) {
+        pending.append(chars, off, len);
+        for (int i = off; i < off + len; i++) {
+            if (chars[i] == '\n') {
+                pendingLines++;
+            }
+        }
+        if (pendingLines > 2 * maxLines) {
+            dropPendingLines(pendingLines - maxLines);
+        }
+    }
+
+    /**
+     * Whether there is any text waiting to be drained
+     */
+    synchronized boolean isEmpty() {
+        return pending.length() == 0;
+    }
+
+    /**
+     * Take all pending text
+     */
+    synchronized String take() {
+        if (pendingLines > maxLines) {
+            dropPendingLines(pendingLines - maxLines);
+        }
+        String text = pending.toString();
+        pending.setLength(0);
+        pendingLines = 0;
+        return text;
+    }
+
+    /**
+     * Move pending text to the end of the text area with a single append and
+     * remove the oldest lines from the text area if it is over the limit.
+     * Must be called on the event dispatch thread.
+     */
+    void drainTo(JTextArea textArea) {
+        String text = take();
+        if (text.isEmpty()) {
+            return;
+        }
+        textArea.append(text);
+
+        // complete lines only, the text area also counts the line after the last break
+        int excess = textArea.getLineCount() - 1 - maxLines;
+        if (excess > 0) {
+            try {
+                Document document = textArea.getDocument();
+                document.remove(0, textArea.getLineStartOffset(excess));
+            } catch (BadLocationException ignored) {
+            }
+        }
+    }
+
+    private void dropPendingLines(int lines) {
+        int count = 0;
+        int i = 0;
+        while (count < lines) {
+            if (pending.charAt(i++) == '\n') {
+                count++;
+            }
+        }
+        pending.delete(0, i);
+        pendingLines -= lines;
+    }
+}
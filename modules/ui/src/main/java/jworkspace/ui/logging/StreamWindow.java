@@ -28,25 +28,43 @@ package jworkspace.ui.logging;
 import java.awt.BorderLayout;
 import java.awt.Container;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 
 import javax.swing.JTextArea;
+import javax.swing.Timer;
 
 import com.hyperrealm.kiwi.ui.KFrame;
 
 /**
  * Stream window
  * This is taken from book of Gregory M. Travis "JDK 1.4 tutorial"
+ * <p>
+ * Bytes written to the stream are decoded and collected in a bounded
+ * line buffer on the writing thread; a coalescing timer moves them to the
+ * text area on the event dispatch thread.
  *
  * @author <a href='mailto:anton.troshin@gmail.com'>Anton Troshin</a>
  * @version 1.0
  */
 public class StreamWindow extends KFrame {
+    // Delay for coalescing writes before they are shown, in milliseconds
+    private static final int DRAIN_DELAY = 150;
+    // Size of decoder buffers
+    private static final int BUFFER_SIZE = 4096;
     // The text area in which we display incoming text
     private JTextArea textArea;
     // Data written to this stream is appended to the
     // text area
     private StreamWindowStream out;
+    // Text waiting to be displayed
+    private final LineBuffer lineBuffer = new LineBuffer();
+    // Timer that drains the line buffer to the text area
+    private final Timer drainTimer = new Timer(DRAIN_DELAY, e -> drain());
 
     /**
      * Create a new StreamWindow -- set up the interface
@@ -56,6 +74,8 @@ public class StreamWindow extends KFrame {
     StreamWindow(String name) {
         super(name);
         out = new StreamWindowStream();
+        drainTimer.setRepeats(false);
+        drainTimer.setCoalesce(true);
         setupGUI();
     }
 
@@ -81,20 +101,55 @@ public class StreamWindow extends KFrame {
         return out;
     }
 
+    /**
+     * Get maximum number of lines kept in the window
+     */
+    public int getMaxLines() {
+        return lineBuffer.getMaxLines();
+    }
+
+    /**
+     * Set maximum number of lines kept in the window,
+     * the oldest lines are discarded first
+     */
+    public void setMaxLines(int maxLines) {
+        lineBuffer.setMaxLines(maxLines);
+    }
+
     /**
      * Close the window, and dispose of it
      */
     public void dispose() {
+        drainTimer.stop();
         setVisible(false);
         super.dispose();
     }
 
     /**
-     * Add text to the end of the text showing in the
-     * text area
+     * Request the pending text to be shown. Requests
+     * made before the timer fires are coalesced.
+     * This method may be called from any thread
      */
-    private void appendText(String string) {
-        textArea.append(string);
+    protected void scheduleDrain() {
+        if (!drainTimer.isRunning()) {
+            drainTimer.start();
+        }
+    }
+
+    /**
+     * Called on the event dispatch thread before
+     * pending text is moved to the text area
+     */
+    protected void beforeDrain() {
+    }
+
+    /**
+     * Add pending text to the end of the text showing
+     * in the text area
+     */
+    private void drain() {
+        beforeDrain();
+        lineBuffer.drainTo(textArea);
     }
 
     /**
@@ -102,9 +157,13 @@ public class StreamWindow extends KFrame {
      * this stream sends the data to the window
      */
     class StreamWindowStream extends OutputStream {
-        // This is used to write a single byte. We
-        // pre-allocate it to save time
-        private byte[] tinyBuffer = new byte[1];
+        // Reusable decoder, keeps incomplete byte
+        // sequences between writes
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
 
         /**
          * Closing the stream closes the window
@@ -116,29 +175,51 @@ public class StreamWindow extends KFrame {
         /**
          * Write a single byte
          */
-        public void write(int b) {
-            // Store the single byte in the array and
-            // write the array
-            tinyBuffer[0] = (byte) b;
-            write(tinyBuffer);
+        public synchronized void write(int b) {
+            bytes.put((byte) b);
+            decode();
         }
 
         /**
          * Write an array of bytes
          */
         public void write(byte[] b) {
-            // Convert the bytes to a string and append
-            String s = new String(b, StandardCharsets.UTF_8);
-            appendText(s);
+            write(b, 0, b.length);
         }
 
         /**
          * Write a sub-array of bytes
          */
-        public void write(byte[] b, int off, int len) {
-            // Convert the bytes to a string and append
-            String s = new String(b, off, len, StandardCharsets.UTF_8);
-            appendText(s);
+        public synchronized void write(byte[] b, int off, int len) {
+            int offset = off;
+            int left = len;
+            while (left > 0) {
+                int n = Math.min(left, bytes.remaining());
+                bytes.put(b, offset, n);
+                offset += n;
+                left -= n;
+                decode();
+            }
+        }
+
+        /**
+         * Decode buffered bytes to the line buffer
+         */
+        private void decode() {
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, false);
+                chars.flip();
+                if (chars.hasRemaining()) {
+                    lineBuffer.append(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+                }
+                chars.clear();
+            } while (result.isOverflow());
+            bytes.compact();
+            if (!lineBuffer.isEmpty()) {
+                scheduleDrain();
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -26,6 +26,8 @@ package jworkspace.ui.logging;
 */
 
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -52,6 +54,8 @@ public class WindowHandler extends StreamHandler {
     private static final int DEFAULT_HEIGHT = 500;
     // The logger being displayed in this window
     private Logger logger;
+    // The window log records are displayed in
+    private WindowHandlerWindow window;
 
     /**
      * Set up the connection between the stream
@@ -62,16 +66,21 @@ public class WindowHandler extends StreamHandler {
         logger = Logger.getLogger(loggerName);
         // Get the output stream that feeds the window
         // and install it in the Stream handler
-        WindowHandlerWindow whw = new WindowHandlerWindow(loggerName);
-        OutputStream out = whw.getOutputStream();
+        window = new WindowHandlerWindow(loggerName);
+        OutputStream out = window.getOutputStream();
         setOutputStream(out);
+        try {
+            // The window decodes the stream as UTF-8
+            setEncoding(StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException ignored) {
+        }
         setLevel(Level.ALL);
     }
 
     /**
-     * Log a LogRecord. We flush after every log
-     * because we want to see log messages as soon as
-     * they arrive
+     * Log a LogRecord. Records are not flushed one by one;
+     * the window flushes this handler just before it shows
+     * pending text, so a burst of records is displayed at once
      */
     public void publish(LogRecord lr) {
         // Check any filter, and possibly other criteria,
@@ -80,7 +89,7 @@ public class WindowHandler extends StreamHandler {
             return;
         }
         super.publish(lr);
-        flush();
+        window.scheduleDrain();
     }
 
     /**
@@ -116,12 +125,20 @@ public class WindowHandler extends StreamHandler {
                 height = Integer.parseInt(heightString);
             }
             setSize(width, height);
+            String maxLinesString = manager.getProperty(className + ".maxLines");
+            if (maxLinesString != null) {
+                setMaxLines(Integer.parseInt(maxLinesString));
+            }
             // Fire event
             Map<String, Object> lparam = new HashMap<>();
             lparam.put("frame", this);
             Workspace.fireEvent(WorkspaceGUI.ExternalFrameListener.CODE, lparam, null);
         }
 
+        protected void beforeDrain() {
+            flush();
+        }
+
         public void dispose() {
             removeHandler();
             super.dispose();
@@ -0,0 +1,86 @@
+package jworkspace.ui.logging;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 1999-2003 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+import javax.swing.JTextArea;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class LineBufferTest {
+
+    @Test
+    public void testKeepsMaxLinesWhenTextEndsWithNewline() {
+        LineBuffer buffer = new LineBuffer(3);
+        JTextArea textArea = new JTextArea();
+        append(buffer, "1\n2\n3\n4\n5\n");
+        buffer.drainTo(textArea);
+        assertEquals("3\n4\n5\n", textArea.getText());
+    }
+
+    @Test
+    public void testKeepsPartialLastLine() {
+        LineBuffer buffer = new LineBuffer(2);
+        JTextArea textArea = new JTextArea();
+        append(buffer, "1\n2\n3\n4");
+        buffer.drainTo(textArea);
+        assertEquals("2\n3\n4", textArea.getText());
+
+        // the partial line is completed by the next drain
+        append(buffer, " end\n5\n");
+        buffer.drainTo(textArea);
+        assertEquals("4 end\n5\n", textArea.getText());
+    }
+
+    @Test
+    public void testDoesNotTrimUnderLimit() {
+        LineBuffer buffer = new LineBuffer(3);
+        JTextArea textArea = new JTextArea();
+        append(buffer, "1\n2\n3\n");
+        buffer.drainTo(textArea);
+        assertEquals("1\n2\n3\n", textArea.getText());
+    }
+
+    @Test
+    public void testTrimsPendingText() {
+        LineBuffer buffer = new LineBuffer(2);
+        for (int i = 0; i < 100; i++) {
+            append(buffer, i + "\n");
+        }
+        assertEquals("98\n99\n", buffer.take());
+        assertTrue(buffer.isEmpty());
+    }
+
+    private static void append(LineBuffer buffer, String text) {
+        char[] chars = text.toCharArray();
+        buffer.append(chars, 0, chars.length);
+    }
+}
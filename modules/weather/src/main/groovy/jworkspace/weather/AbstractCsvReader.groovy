@@ -28,21 +28,42 @@ import groovy.transform.TupleConstructor
 
 import org.apache.commons.csv.CSVFormat
 import org.apache.commons.csv.CSVParser
+import org.apache.commons.csv.CSVRecord
 import org.apache.commons.lang3.math.NumberUtils
 import org.apache.log4j.Logger
 
 import com.google.common.base.Stopwatch
 
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.function.Consumer
+
 @TupleConstructor
 abstract class AbstractCsvReader<T> {
 
     private static final Logger LOG = Logger.getLogger(AbstractCsvReader.class)
 
+    private static final int BYTE_ORDER_MARK = 0xFEFF
+
     boolean hasHeader
 
     String csvFileName
 
-    abstract List<T> mapToItems(CSVParser records)
+    /**
+     * File to read, if not set the csv file name is looked up on the classpath
+     */
+    Path path
+
+    /**
+     * Map a single record to an item
+     * @param record csv record
+     * @return item or null if the record can't be parsed
+     */
+    abstract T mapToItem(CSVRecord record)
+
+    List<T> mapToItems(CSVParser records) {
+        records.collect { mapToItem(it) }
+    }
 
     protected List<T> read() {
         def stopwatch = Stopwatch.createStarted()
@@ -55,8 +76,48 @@ abstract class AbstractCsvReader<T> {
         items
     }
 
+    /**
+     * Read the file one record at a time, handing every parsed item to the consumer,
+     * so no more than a single record is held in memory
+     * @param consumer receives items, unparseable records are skipped
+     * @return number of records read
+     */
+    long stream(Consumer<? super T> consumer) {
+        def stopwatch = Stopwatch.createStarted()
+        LOG.info(String.format("Start streaming %s", csvFileName))
+
+        long count = readItems(consumer)
+
+        LOG.info(String.format("Finish streaming %s, number of records: %s, time: %s", csvFileName, count, stopwatch.stop()))
+        count
+    }
+
+    /**
+     * Read all items, the default implementation uses the generic csv parser
+     * @param consumer receives items
+     * @return number of records read
+     */
+    protected long readItems(Consumer consumer) {
+        long count = 0
+        readRecordsFromCsvFile().withCloseable { CSVParser records ->
+            for (CSVRecord record : records) {
+                T item = mapToItem(record)
+                if (item != null) {
+                    consumer.accept(item)
+                }
+            }
+            count = records.recordNumber
+        }
+        count
+    }
+
     protected CSVParser readRecordsFromCsvFile() {
-        Reader fileReader = getReader()
+        PushbackReader fileReader = new PushbackReader(getReader())
+        // skip the byte order mark, so a comment on the first line is recognized
+        int first = fileReader.read()
+        if (first != -1 && first != BYTE_ORDER_MARK) {
+            fileReader.unread(first)
+        }
         def records = getDefaultParser().parse(fileReader)
         records
     }
@@ -69,13 +130,17 @@ abstract class AbstractCsvReader<T> {
         return NumberUtils.isParsable(text) ? Integer.parseInt(text) : null
     }
 
-    protected InputStreamReader getReader() {
-        new InputStreamReader(AbstractCsvReader.getResourceAsStream(csvFileName))
+    protected Reader getReader() {
+        new InputStreamReader(openStream())
+    }
+
+    protected InputStream openStream() {
+        path != null ? Files.newInputStream(path) : AbstractCsvReader.getResourceAsStream(csvFileName)
     }
 
     private CSVFormat getDefaultParser() {
         def parser = CSVFormat.DEFAULT
-        parser = parser.withDelimiter((char)';')
+        parser = parser.withDelimiter((char)';').withCommentMarker((char)'#')
         hasHeader ? parser.withFirstRecordAsHeader() : parser
     }
 }
\ No newline at end of file
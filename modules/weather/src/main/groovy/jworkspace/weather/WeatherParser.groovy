@@ -27,11 +27,13 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings
    anton.troshin@gmail.com
   ----------------------------------------------------------------------------
 */
-import org.apache.commons.csv.CSVParser
+import org.apache.commons.csv.CSVRecord
 import org.apache.log4j.Logger
 
-import java.text.DateFormat
-import java.text.SimpleDateFormat
+import com.google.common.io.ByteStreams
+
+import java.nio.file.Path
+import java.util.function.Consumer
 
 /**
  * # Weather station Moscow, Russia, WMO_ID=27612,selection from 01.02.2005 till 01.02.2006, all days
@@ -48,68 +50,134 @@ class CsvReader extends AbstractCsvReader<Observation> {
 
     private static final Logger LOG = Logger.getLogger(CsvReader.class)
 
-    static String DATE_FORMAT = "DD.MM.YYYY hh:mm"
+    static String DATE_FORMAT = Rp5DateParser.PATTERN
+
+    /**
+     * Thread safe, files are parsed in parallel
+     */
+    static final Rp5DateParser DATE_PARSER = new Rp5DateParser()
+
+    public static final int VDNH_STATION_ID = 27612
+
+    public static final String ENCODING = "UTF-16BE"
+
+    final int weatherStationId
 
-    static DateFormat df = new SimpleDateFormat(DATE_FORMAT)
+    /**
+     * Byte offset to start reading at, must be the start of a record past the header
+     */
+    long offset = 0
+
+    /**
+     * If set, only observations newer than this time are read. Records older than that are
+     * skipped, and as soon as they turn out to be in descending order, like in rp5 exports,
+     * reading stops, since the rest of the file is older still.
+     */
+    Date after
+
+    /**
+     * Time of the newest observation read, skipped or not
+     */
+    Date latest
 
     CsvReader(boolean hasHeader, String csvFileName) {
+        this(hasHeader, csvFileName, VDNH_STATION_ID)
+    }
+
+    CsvReader(boolean hasHeader, String csvFileName, int weatherStationId) {
         super(hasHeader, csvFileName)
+        this.weatherStationId = weatherStationId
     }
 
-    protected InputStreamReader getReader() {
-        new InputStreamReader(AbstractCsvReader.getResourceAsStream(csvFileName), "UTF-16BE")
+    /**
+     * Read an rp5 export file from disk
+     */
+    CsvReader(boolean hasHeader, Path path, int weatherStationId) {
+        this(hasHeader, path.fileName.toString(), weatherStationId)
+        this.path = path
     }
 
+    protected Reader getReader() {
+        InputStream stream = openStream()
+        if (offset > 0) {
+            ByteStreams.skipFully(stream, offset)
+        }
+        new InputStreamReader(stream, ENCODING)
+    }
+
+    /**
+     * Read observations with the {@link Rp5RecordDecoder} rather than the generic csv parser
+     */
     @Override
-    @SuppressFBWarnings("SE_NO_SERIALVERSIONID")
-    List<Observation> mapToItems(CSVParser records) {
-        int counter = 0
-        records.collect {
-            // "T";"Po";"P";"Pa";"U";"DD";"Ff";"ff10";"ff3";"N";"WW";"W1";"W2";"Tn";"Tx";"Cl";"Nh";
-            // "H";"Cm";"Ch";"VV";"Td";"RRR";"tR";"E";"Tg";"E'";"sss"
-            int pos = 0
-            try {
-                return new Observation(
-                        weatherStationId: 27612,
-                        date: df.parse(it.get(pos++)),
-                        t: safeParseFloat(it.get(pos++)),
-                        pO: safeParseFloat(it.get(pos++)),
-                        p: safeParseFloat(it.get(pos++)),
-                        pA: safeParseFloat(it.get(pos++)),
-                        u: safeParseFloat(it.get(pos++)),
-                        dd: WindDirection.fromString(it.get(pos++)),
-                        ff: it.get(pos++),
-                        ff10: it.get(pos++),
-                        ff3: it.get(pos++),
-                        n: it.get(pos++),
-                        ww: it.get(pos++),
-                        w1: it.get(pos++),
-                        w2: it.get(pos++),
-                        tn: safeParseFloat(it.get(pos++)),
-                        tx: safeParseFloat(it.get(pos++)),
-                        cl: it.get(pos++),
-                        nh: it.get(pos++),
-                        h: it.get(pos++),
-                        cm: it.get(pos++),
-                        ch: it.get(pos++),
-                        vv: safeParseFloat(it.get(pos++)),
-                        td: safeParseFloat(it.get(pos++)),
-                        rrr: safeParseFloat(it.get(pos++)),
-                        tr: safeParseFloat(it.get(pos++)),
-                        e: it.get(pos++),
-                        tg: safeParseFloat(it.get(pos++)),
-                        eApostrophe: it.get(pos++),
-                        sss: safeParseFloat(it.get(pos))
-                )
-            } catch (IllegalArgumentException ignored) {
-                // skip the record
-                counter++
-                String record = "Unparseable record " + it.values
-                String message = String.format(" in %s column: %s" , pos, ignored.getMessage())
-                LOG.error(record + message)
-                println record + message
-                return null
+    protected long readItems(Consumer consumer) {
+        long count = 0
+        new Rp5RecordDecoder(getReader(), weatherStationId, hasHeader && offset == 0, DATE_PARSER).withCloseable { decoder ->
+            long previous = Long.MIN_VALUE
+            for (Observation observation = decoder.next(); observation != null; observation = decoder.next()) {
+                long time = observation.date.time
+                if (latest == null || time > latest.time) {
+                    latest = observation.date
+                }
+                if (after != null && time <= after.time) {
+                    if (previous > time) {
+                        break
+                    }
+                    previous = time
+                    continue
+                }
+                previous = time
+                consumer.accept(observation)
             }
+            count = decoder.records
+        }
+        count
+    }
+
+    @Override
+    @SuppressFBWarnings("SE_NO_SERIALVERSIONID")
+    Observation mapToItem(CSVRecord record) {
+        // "T";"Po";"P";"Pa";"U";"DD";"Ff";"ff10";"ff3";"N";"WW";"W1";"W2";"Tn";"Tx";"Cl";"Nh";
+        // "H";"Cm";"Ch";"VV";"Td";"RRR";"tR";"E";"Tg";"E'";"sss"
+        int pos = 0
+        try {
+            return new Observation(
+                    weatherStationId: weatherStationId,
+                    date: DATE_PARSER.parse(record.get(pos++)),
+                    t: safeParseFloat(record.get(pos++)),
+                    pO: safeParseFloat(record.get(pos++)),
+                    p: safeParseFloat(record.get(pos++)),
+                    pA: safeParseFloat(record.get(pos++)),
+                    u: safeParseFloat(record.get(pos++)),
+                    dd: WindDirection.fromString(record.get(pos++)),
+                    ff: record.get(pos++),
+                    ff10: record.get(pos++),
+                    ff3: record.get(pos++),
+                    n: record.get(pos++),
+                    ww: record.get(pos++),
+                    w1: record.get(pos++),
+                    w2: record.get(pos++),
+                    tn: safeParseFloat(record.get(pos++)),
+                    tx: safeParseFloat(record.get(pos++)),
+                    cl: record.get(pos++),
+                    nh: record.get(pos++),
+                    h: record.get(pos++),
+                    cm: record.get(pos++),
+                    ch: record.get(pos++),
+                    vv: safeParseFloat(record.get(pos++)),
+                    td: safeParseFloat(record.get(pos++)),
+                    rrr: safeParseFloat(record.get(pos++)),
+                    tr: safeParseFloat(record.get(pos++)),
+                    e: record.get(pos++),
+                    tg: safeParseFloat(record.get(pos++)),
+                    eApostrophe: record.get(pos++),
+                    sss: safeParseFloat(record.get(pos))
+            )
+        } catch (IllegalArgumentException ignored) {
+            // skip the record
+            String message = String.format("Unparseable record %s in %s column: %s",
+                    record.values, pos, ignored.getMessage())
+            LOG.error(message)
+            return null
         }
     }
 }
@@ -0,0 +1,66 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.Date;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import lombok.Value;
+
+/**
+ * Statistics of one observation parameter over a range of time
+ *
+ * @author Anton Troshin
+ */
+@Value
+@SuppressFBWarnings({"EI_EXPOSE_REP", "EI_EXPOSE_REP2"})
+public class Aggregate {
+    /**
+     * Start of the range
+     */
+    private final Date start;
+    /**
+     * Number of observations with a value
+     */
+    private final long count;
+    /**
+     * Minimum value, NaN if there are no values
+     */
+    private final double min;
+    /**
+     * Maximum value, NaN if there are no values
+     */
+    private final double max;
+    /**
+     * Sum of values, for totals like precipitation
+     */
+    private final double sum;
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+}
@@ -11,6 +11,9 @@ import javax.persistence.MappedSuperclass;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.StandardToStringStyle;
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -24,10 +27,25 @@ import lombok.Setter;
 @MappedSuperclass
 public abstract class BaseEntity<PKType extends Serializable> implements Serializable {
 
+    /**
+     * Number of identifiers reserved with a single sequence call. The database sequence
+     * has to be incremented by the same value, see the V4 migrations.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     private static final StandardToStringStyle TO_STRING_STYLE = new StandardToStringStyle();
 
+    /**
+     * Identifiers are handed out from blocks reserved on the shared sequence, so batched inserts
+     * do not make a sequence round-trip per row
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pooled")
+    @GenericGenerator(name = "pooled", strategy = "enhanced-sequence", parameters = {
+        @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "hibernate_sequence"),
+        @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "" + ID_ALLOCATION_SIZE),
+        @Parameter(name = SequenceStyleGenerator.OPT_PARAM, value = "pooled-lo")
+    })
     @Column(name = "ID", nullable = false, updatable = false)
     @Getter
     @Setter
@@ -0,0 +1,86 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * How far a source file of a station has been imported, so a re-run of a grown
+ * file only has to read and write what is new
+ *
+ * @author Anton Troshin
+ */
+@Entity
+@Table(name = "import_checkpoint", uniqueConstraints = @UniqueConstraint(
+    columnNames = {"weather_station_id", "file_name"}))
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class ImportCheckpoint extends BaseEntity<Long> {
+    /**
+     * Weather station unique id
+     */
+    @Column(name = "weather_station_id", nullable = false)
+    private Integer weatherStationId;
+    /**
+     * Name of the source file
+     */
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+    /**
+     * Local time of the newest observation imported from the file
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    @Column(name = "last_date", nullable = false)
+    private Date lastDate;
+    /**
+     * Size of the file in bytes, the offset to continue from if data has been appended since
+     */
+    @Column(name = "file_size", nullable = false)
+    private long size;
+    /**
+     * SHA-256 of the file content as imported, hex encoded
+     */
+    @Column(name = "checksum", nullable = false, length = 64)
+    private String checksum;
+    /**
+     * Time of the import
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    @Column(name = "updated", nullable = false)
+    private Date updated;
+}
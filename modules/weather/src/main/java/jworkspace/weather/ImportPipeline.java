@@ -0,0 +1,333 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Streaming import of csv files into the database. A parser thread maps records to entities
+ * and hands them over in chunks through a bounded queue to a writer, which inserts them with
+ * a {@link StatelessSession}, so no entity is kept in a persistence context and memory use
+ * does not depend on the size of the file.
+ * <p>
+ * Every chunk is one JDBC batch, provided the session factory is configured with
+ * <code>hibernate.jdbc.batch_size</code> of at least the chunk size. The transaction is
+ * committed every {@link #getCommitInterval()} rows.
+ *
+ * @param <T> entity type
+ * @author Anton Troshin
+ */
+public class ImportPipeline<T> {
+
+    private static final Logger LOG = Logger.getLogger(ImportPipeline.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    public static final int DEFAULT_COMMIT_INTERVAL = 10000;
+
+    /**
+     * Marks the end of input in the queue
+     */
+    private static final List<Object> END = Collections.emptyList();
+
+    private final SessionFactory sessionFactory;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+
+    private Consumer<? super T> writeListener = null;
+
+    private ChunkWriter<T> chunkWriter = null;
+
+    public ImportPipeline(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of entities in a chunk passed from the parser to the writer
+     */
+    public ImportPipeline<T> setBatchSize(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Number of chunks the parser may run ahead of the writer
+     */
+    public ImportPipeline<T> setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(queueCapacity, 1);
+        return this;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * Number of rows written in one transaction
+     */
+    public ImportPipeline<T> setCommitInterval(int commitInterval) {
+        this.commitInterval = Math.max(commitInterval, 1);
+        return this;
+    }
+
+    /**
+     * Listener to be notified of every entity inserted, on the writer thread,
+     * e.g. to compute aggregates of the imported rows
+     */
+    public ImportPipeline<T> setWriteListener(Consumer<? super T> writeListener) {
+        this.writeListener = writeListener;
+        return this;
+    }
+
+    /**
+     * Writer of chunks to use instead of inserting every entity, e.g. to update rows
+     * that already exist. The write listener is not notified then.
+     */
+    public ImportPipeline<T> setChunkWriter(ChunkWriter<T> chunkWriter) {
+        this.chunkWriter = chunkWriter;
+        return this;
+    }
+
+    /**
+     * Import all records of the given reader. The reader runs on a separate thread,
+     * rows are written on the calling thread.
+     *
+     * @param reader source of entities
+     * @return statistics of this run
+     */
+    public ImportStatistics run(AbstractCsvReader<T> reader) {
+        return run(reader, null);
+    }
+
+    /**
+     * Import all records of the given reader and let the caller write to the same
+     * session before the last commit. With a commit interval larger than the file
+     * the whole file and the completion are written in one transaction, and a failure
+     * of either the reader or the writer rolls the file back.
+     *
+     * @param reader     source of entities
+     * @param completion called before the last commit, may be null
+     * @return statistics of this run
+     */
+    public ImportStatistics run(AbstractCsvReader<T> reader, Completion completion) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        BlockingQueue<List<T>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Parser parser = new Parser(reader, queue);
+
+        Thread thread = new Thread(parser, "import-parser-" + reader.getCsvFileName());
+        thread.setDaemon(true);
+        thread.start();
+
+        ImportStatistics statistics;
+        try {
+            statistics = write(queue, parser, completion, stopwatch);
+        } catch (RuntimeException e) {
+            thread.interrupt();
+            throw e;
+        }
+
+        LOG.info(String.format("Imported %s: %s", reader.getCsvFileName(), statistics));
+        return statistics;
+    }
+
+    /**
+     * Import the given readers one after another
+     */
+    @SafeVarargs
+    public final ImportStatistics run(AbstractCsvReader<T>... readers) {
+        ImportStatistics total = new ImportStatistics(0, 0, 0);
+        for (AbstractCsvReader<T> reader : readers) {
+            total = total.plus(run(reader));
+        }
+        return total;
+    }
+
+    private ImportStatistics write(BlockingQueue<List<T>> queue, Parser parser, Completion completion,
+                                   Stopwatch stopwatch) {
+        long rows = 0;
+        long uncommitted = 0;
+
+        StatelessSession session = sessionFactory.openStatelessSession();
+        Transaction transaction = session.beginTransaction();
+        try {
+            for (List<T> chunk = take(queue); chunk != END; chunk = take(queue)) {
+                int written = chunkWriter != null ? chunkWriter.write(session, chunk) : insert(session, chunk);
+                rows += written;
+                uncommitted += written;
+
+                if (uncommitted >= commitInterval) {
+                    transaction.commit();
+                    transaction = session.beginTransaction();
+                    uncommitted = 0;
+                }
+            }
+
+            if (parser.failure != null) {
+                throw new IllegalStateException("Failed to read " + parser.reader.getCsvFileName(),
+                    parser.failure);
+            }
+
+            ImportStatistics statistics = new ImportStatistics(parser.records, rows,
+                stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            if (completion != null) {
+                completion.beforeCommit(session, statistics);
+            }
+            transaction.commit();
+            return statistics;
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private int insert(StatelessSession session, List<T> chunk) {
+        for (T item : chunk) {
+            session.insert(item);
+            if (writeListener != null) {
+                writeListener.accept(item);
+            }
+        }
+        return chunk.size();
+    }
+
+    private List<T> take(BlockingQueue<List<T>> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        }
+    }
+
+    /**
+     * Callback to write additional rows, e.g. bookkeeping, in the last transaction of an import
+     */
+    @FunctionalInterface
+    public interface Completion {
+
+        void beforeCommit(StatelessSession session, ImportStatistics statistics);
+    }
+
+    /**
+     * Writes a chunk of entities in the current transaction of the session
+     *
+     * @param <T> entity type
+     */
+    @FunctionalInterface
+    public interface ChunkWriter<T> {
+
+        /**
+         * @return number of rows inserted or updated
+         */
+        int write(StatelessSession session, List<T> chunk);
+    }
+
+    /**
+     * Parse stage, reads the file and fills the queue with chunks of entities
+     */
+    private class Parser implements Runnable {
+
+        private final AbstractCsvReader<T> reader;
+
+        private final BlockingQueue<List<T>> queue;
+
+        private volatile long records;
+
+        private volatile Throwable failure;
+
+        private List<T> chunk = new ArrayList<>(batchSize);
+
+        Parser(AbstractCsvReader<T> reader, BlockingQueue<List<T>> queue) {
+            this.reader = reader;
+            this.queue = queue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                records = reader.stream(this::add);
+                if (!chunk.isEmpty()) {
+                    put(chunk);
+                }
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+
+            if (!Thread.currentThread().isInterrupted()) {
+                put((List<T>) END);
+            }
+        }
+
+        private void add(T item) {
+            chunk.add(item);
+            if (chunk.size() == batchSize) {
+                put(chunk);
+                chunk = new ArrayList<>(batchSize);
+            }
+        }
+
+        private void put(List<T> items) {
+            try {
+                queue.put(items);
+            } catch (InterruptedException e) {
+                // the writer has failed, nobody is waiting for the rest
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Import interrupted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import lombok.Value;
+
+/**
+ * Outcome of a single import run
+ *
+ * @author Anton Troshin
+ */
+@Value
+public class ImportStatistics {
+
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /**
+     * Number of records read from the source
+     */
+    private long records;
+    /**
+     * Number of rows written to the database
+     */
+    private long rows;
+    /**
+     * Time spent, from the first read to the last commit
+     */
+    private long elapsedMillis;
+
+    /**
+     * Records that could not be parsed and were skipped
+     */
+    public long getSkipped() {
+        return records - rows;
+    }
+
+    /**
+     * Write throughput of the run
+     */
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? rows : rows * MILLIS_PER_SECOND / elapsedMillis;
+    }
+
+    /**
+     * Combine with the statistics of another run, e.g. of the next file
+     */
+    public ImportStatistics plus(ImportStatistics other) {
+        return new ImportStatistics(records + other.records, rows + other.rows,
+            elapsedMillis + other.elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d records, %d rows written, %d skipped in %d ms (%.0f rows/s)",
+            records, rows, getSkipped(), elapsedMillis, getRowsPerSecond());
+    }
+}
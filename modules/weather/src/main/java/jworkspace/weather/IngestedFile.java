@@ -0,0 +1,85 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * A file that has been ingested, identified by the checksum of its content,
+ * so ingesting the same file again is a no-op
+ *
+ * @author Anton Troshin
+ */
+@Entity
+@Table(name = "ingested_files", uniqueConstraints = @UniqueConstraint(name = "ingested_files_checksum",
+    columnNames = "checksum"))
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class IngestedFile extends BaseEntity<Long> {
+    /**
+     * SHA-256 of the file content, hex encoded
+     */
+    @Column(name = "checksum", nullable = false, length = 64)
+    private String checksum;
+    /**
+     * Name of the file at the time of ingestion
+     */
+    @Column(name = "file_name")
+    private String fileName;
+    /**
+     * Weather station the file belongs to
+     */
+    @Column(name = "weather_station_id")
+    private Integer weatherStationId;
+    /**
+     * Number of records read from the file
+     */
+    @Column(name = "record_count")
+    private Long records;
+    /**
+     * Number of observations written
+     */
+    @Column(name = "row_count")
+    private Long rows;
+    /**
+     * Time of ingestion
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    @Column(name = "ingested")
+    private Date ingested;
+}
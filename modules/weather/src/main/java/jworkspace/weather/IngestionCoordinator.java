@@ -0,0 +1,372 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.BaseEncoding;
+
+import jworkspace.weather.IngestionReport.FileReport;
+import jworkspace.weather.IngestionReport.Status;
+
+/**
+ * Ingests a directory of rp5 exports from any number of stations. Files are imported in
+ * parallel on a bounded pool, each through its own {@link ImportPipeline} and in its own
+ * transaction together with an {@link IngestedFile} record. Files whose checksum has
+ * already been recorded are skipped, so a run can be repeated safely.
+ * <p>
+ * A file that has changed since its last import is read only as far as needed: an {@link ImportCheckpoint}
+ * keeps the time of the newest observation and the size of the file, so data appended to a file is read
+ * from the old end of the file on, and in a newer export listing the newest observations first reading
+ * stops at the first observation imported before. Observations are written with an {@link ObservationUpsert},
+ * so overlapping exports never create duplicates.
+ * <p>
+ * Unless disabled, the {@link Rollup rollups} of every file are merged in the same transaction.
+ * Files of the same station are imported one at a time.
+ *
+ * @author Anton Troshin
+ */
+public class IngestionCoordinator {
+
+    private static final Logger LOG = Logger.getLogger(IngestionCoordinator.class);
+
+    private static final String FILE_PATTERN = "*.{csv,CSV}";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] LINE_BREAK = "\n".getBytes(Charset.forName(CsvReader.ENCODING));
+
+    private final SessionFactory sessionFactory;
+
+    private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private int batchSize = ImportPipeline.DEFAULT_BATCH_SIZE;
+
+    private Consumer<FileReport> progressListener = null;
+
+    private boolean rollups = true;
+
+    private final ConcurrentMap<Integer, Object> stationLocks = new ConcurrentHashMap<>();
+
+    public IngestionCoordinator(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Number of files imported at the same time
+     */
+    public IngestionCoordinator setThreads(int threads) {
+        this.threads = Math.max(threads, 1);
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public IngestionCoordinator setBatchSize(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+        return this;
+    }
+
+    public boolean isRollups() {
+        return rollups;
+    }
+
+    /**
+     * Whether to update rollups of the imported observations
+     */
+    public IngestionCoordinator setRollups(boolean rollups) {
+        this.rollups = rollups;
+        return this;
+    }
+
+    /**
+     * Listener to be notified as soon as each file is done, on the thread that did the work
+     */
+    public IngestionCoordinator setProgressListener(Consumer<FileReport> progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Ingest all csv files in the directory
+     *
+     * @param directory directory with rp5 exports
+     * @return per-file report
+     * @throws IOException if the directory can't be listed
+     */
+    public IngestionReport ingest(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PATTERN)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        IngestionReport report = new IngestionReport();
+        Set<String> checksums = Collections.synchronizedSet(loadChecksums());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "weather-ingestion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path path : paths) {
+                futures.add(executor.submit(() -> report(report, ingest(path, checksums))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ingestion failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LOG.info(String.format("Ingested %s in %d ms%n%s", directory,
+            stopwatch.elapsed(TimeUnit.MILLISECONDS), report));
+        return report;
+    }
+
+    private void report(IngestionReport report, FileReport file) {
+        report.add(file);
+        LOG.info(file);
+        if (progressListener != null) {
+            progressListener.accept(file);
+        }
+    }
+
+    private FileReport ingest(Path path, Set<String> checksums) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        String fileName = path.getFileName().toString();
+        Integer stationId = null;
+        try {
+            Rp5File file = Rp5File.detect(path);
+            stationId = file.getStationId();
+
+            String checksum = checksum(path);
+            // also guards against identical files under different names in one run
+            if (!checksums.add(checksum)) {
+                return new FileReport(fileName, stationId, Status.SKIPPED, null,
+                    stopwatch.elapsed(TimeUnit.MILLISECONDS), "already ingested");
+            }
+
+            ImportStatistics statistics;
+            try {
+                // the stored observations and rollups of a station are read and then written
+                synchronized (stationLocks.computeIfAbsent(stationId, id -> new Object())) {
+                    statistics = importFile(file, checksum);
+                }
+            } catch (IOException | RuntimeException e) {
+                // allow the next run to retry
+                checksums.remove(checksum);
+                throw e;
+            }
+            return new FileReport(fileName, stationId, Status.IMPORTED, statistics,
+                stopwatch.elapsed(TimeUnit.MILLISECONDS), null);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Failed to ingest " + path, e);
+            return new FileReport(fileName, stationId, Status.FAILED, null,
+                stopwatch.elapsed(TimeUnit.MILLISECONDS), String.valueOf(e.getMessage()));
+        }
+    }
+
+    private ImportStatistics importFile(Rp5File file, String checksum) throws IOException {
+        Path path = file.getPath();
+        long size = Files.size(path);
+        CsvReader reader = new CsvReader(true, path, file.getStationId());
+
+        ImportCheckpoint checkpoint = loadCheckpoint(file);
+        if (checkpoint != null) {
+            reader.setAfter(checkpoint.getLastDate());
+            if (isAppended(path, checkpoint)) {
+                reader.setOffset(checkpoint.getSize());
+            }
+        }
+
+        RollupEngine engine = rollups ? new RollupEngine() : null;
+        return new ImportPipeline<Observation>(sessionFactory)
+            .setBatchSize(batchSize)
+            .setCommitInterval(Integer.MAX_VALUE)
+            .setChunkWriter(new ObservationUpsert(engine))
+            .run(reader, (session, result) -> {
+                session.insert(newIngestedFile(file, checksum, result));
+                saveCheckpoint(session, checkpoint, file, checksum, size, reader.getLatest());
+                if (engine != null) {
+                    engine.merge(session);
+                }
+            });
+    }
+
+    /**
+     * Whether the file is the checkpointed file with data appended to it, so reading may
+     * continue at the old end of the file
+     */
+    static boolean isAppended(Path path, ImportCheckpoint checkpoint) throws IOException {
+        long size = checkpoint.getSize();
+        if (size < LINE_BREAK.length || Files.size(path) <= size) {
+            return false;
+        }
+
+        ByteBuffer tail = ByteBuffer.allocate(LINE_BREAK.length);
+        try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+            channel.position(size - LINE_BREAK.length);
+            while (tail.hasRemaining() && channel.read(tail) >= 0) {
+                // fill the buffer
+            }
+        }
+        // the old content must end with a complete record and must not have changed
+        return Arrays.equals(tail.array(), LINE_BREAK) && checksum(path, size).equals(checkpoint.getChecksum());
+    }
+
+    private ImportCheckpoint loadCheckpoint(Rp5File file) {
+        try (Session session = sessionFactory.openSession()) {
+            return (ImportCheckpoint) session.createQuery("from ImportCheckpoint c"
+                + " where c.weatherStationId = :station and c.fileName = :fileName")
+                .setParameter("station", file.getStationId())
+                .setParameter("fileName", file.getPath().getFileName().toString())
+                .uniqueResult();
+        }
+    }
+
+    private static void saveCheckpoint(StatelessSession session, ImportCheckpoint checkpoint, Rp5File file,
+                                       String checksum, long size, Date latest) {
+        if (checkpoint == null && latest == null) {
+            // nothing has been read
+            return;
+        }
+        ImportCheckpoint next = checkpoint;
+        if (next == null) {
+            next = new ImportCheckpoint();
+            next.setWeatherStationId(file.getStationId());
+            next.setFileName(file.getPath().getFileName().toString());
+        }
+        if (latest != null && (next.getLastDate() == null || latest.getTime() > next.getLastDate().getTime())) {
+            next.setLastDate(latest);
+        }
+        next.setSize(size);
+        next.setChecksum(checksum);
+        next.setUpdated(new Date());
+
+        if (checkpoint == null) {
+            session.insert(next);
+        } else {
+            session.update(next);
+        }
+    }
+
+    private static IngestedFile newIngestedFile(Rp5File file, String checksum, ImportStatistics statistics) {
+        IngestedFile ingestedFile = new IngestedFile();
+        ingestedFile.setChecksum(checksum);
+        ingestedFile.setFileName(file.getPath().getFileName().toString());
+        ingestedFile.setWeatherStationId(file.getStationId());
+        ingestedFile.setRecords(statistics.getRecords());
+        ingestedFile.setRows(statistics.getRows());
+        ingestedFile.setIngested(new Date());
+        return ingestedFile;
+    }
+
+    private Set<String> loadChecksums() {
+        try (Session session = sessionFactory.openSession()) {
+            List<?> list = session.createQuery("select f.checksum from IngestedFile f").list();
+            Set<String> checksums = new HashSet<>();
+            for (Object checksum : list) {
+                checksums.add((String) checksum);
+            }
+            return checksums;
+        }
+    }
+
+    static String checksum(Path path) throws IOException {
+        return checksum(path, Long.MAX_VALUE);
+    }
+
+    /**
+     * Checksum of the first bytes of a file
+     */
+    static String checksum(Path path, long length) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            long remaining = length;
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                // digest is updated as the stream is read
+                remaining -= read;
+            }
+        }
+        return BaseEncoding.base16().lowerCase().encode(digest.digest());
+    }
+}
@@ -0,0 +1,117 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * Per-file outcome of an ingestion run
+ *
+ * @author Anton Troshin
+ */
+public class IngestionReport {
+
+    /**
+     * What happened to a file
+     */
+    public enum Status {
+        IMPORTED,
+        SKIPPED,
+        FAILED
+    }
+
+    /**
+     * Outcome for a single file
+     */
+    @Value
+    public static class FileReport {
+
+        private String fileName;
+
+        private Integer stationId;
+
+        private Status status;
+
+        /**
+         * Statistics of the import, null unless imported
+         */
+        private ImportStatistics statistics;
+
+        /**
+         * Time spent on the file, including checksum and detection
+         */
+        private long elapsedMillis;
+
+        /**
+         * Reason of failure or skip
+         */
+        private String message;
+
+        @Override
+        public String toString() {
+            return String.format("%-60s %-8s %-8s %6d ms  %s", fileName, stationId == null ? "-" : stationId,
+                status, elapsedMillis, statistics != null ? statistics : message);
+        }
+    }
+
+    private final List<FileReport> files = new ArrayList<>();
+
+    synchronized void add(FileReport report) {
+        files.add(report);
+    }
+
+    public synchronized List<FileReport> getFiles() {
+        return Collections.unmodifiableList(new ArrayList<>(files));
+    }
+
+    public synchronized long count(Status status) {
+        return files.stream().filter(file -> file.getStatus() == status).count();
+    }
+
+    /**
+     * Total rows written in this run
+     */
+    public synchronized long getRows() {
+        return files.stream().filter(file -> file.getStatistics() != null)
+            .mapToLong(file -> file.getStatistics().getRows()).sum();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (FileReport file : files) {
+            sb.append(file).append(System.lineSeparator());
+        }
+        sb.append(String.format("%d imported, %d skipped, %d failed, %d rows",
+            count(Status.IMPORTED), count(Status.SKIPPED), count(Status.FAILED), getRows()));
+        return sb.toString();
+    }
+}
@@ -27,7 +27,12 @@ package jworkspace.weather;
 
 import java.util.Date;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import lombok.Data;
@@ -36,46 +41,66 @@ import lombok.EqualsAndHashCode;
 /**
  * A weather observation in accordance with Moscow VDNH station logs.
  * The data is provided by the website 'Reliable Prognosis', rp5.ru
+ * There is at most one observation of a station at a time.
  *
  * @author Anton Troshin
  */
 @Entity
+@Table(name = "observations", uniqueConstraints = @UniqueConstraint(name = Observation.NATURAL_KEY,
+    columnNames = {"weather_station_id", "date"}))
 @Data
 @EqualsAndHashCode(callSuper = true)
 public class Observation extends BaseEntity<Long> {
+    /**
+     * Name of the unique index on station and time, which also serves all range queries of a station
+     */
+    public static final String NATURAL_KEY = "observations_station_date";
+    /**
+     * Measurements are stored as FLOAT columns, which both H2 and HSQLDB report as DOUBLE
+     */
+    static final String FLOAT_COLUMN = "double";
     /**
      * Weather station unique id (27612 for VDNH)
      */
+    @Column(name = "weather_station_id", nullable = false)
     private Integer weatherStationId;
     /**
      * Local time in this location. Summer time (Daylight Saving Time) is taken into consideration
      */
     @SuppressFBWarnings("EI_EXPOSE_REP")
+    @Column(name = "date", nullable = false)
     private Date date;
     /**
      * Air temperature (degrees Celsius) at 2 metre height above the earth's surface
      */
+    @Column(name = "t", columnDefinition = FLOAT_COLUMN)
     private Float t;
     /**
      * Atmospheric pressure at weather station level (millimeters of mercury)
      */
+    @Column(name = "po", columnDefinition = FLOAT_COLUMN)
     private Float pO;
     /**
      * Atmospheric pressure reduced to mean sea level (millimeters of mercury)
      */
+    @Column(name = "p", columnDefinition = FLOAT_COLUMN)
     private Float p;
     /**
      * Pressure tendency: changes in atmospheric pressure over the last three hours (millimeters of mercury)
      */
+    @Column(name = "pa", columnDefinition = FLOAT_COLUMN)
     private Float pA;
     /**
      * Relative humidity (%) at a height of 2 metres above the earth's surface'
      */
+    @Column(name = "u", columnDefinition = FLOAT_COLUMN)
     private Float u;
     /**
      * Mean wind direction (compass points) at a height of 10-12 metres
      * above the earth’s surface over the 10-minute period immediately preceding the observation
      */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "dd")
     private WindDirection dd;
     /**
      * Mean wind speed at a height of 10-12 metres above the earth’s surface over the
@@ -111,10 +136,12 @@ public class Observation extends BaseEntity<Long> {
     /**
      * Minimum air temperature (degrees Celsius) during the past period (not exceeding 12 hours)
      */
+    @Column(name = "tn", columnDefinition = FLOAT_COLUMN)
     private Float tn;
     /**
      * Maximum air temperature (degrees Celsius) during the past period (not exceeding 12 hours)
      */
+    @Column(name = "tx", columnDefinition = FLOAT_COLUMN)
     private Float tx;
     /**
      * Clouds of the genera Stratocumulus, Stratus, Cumulus and Cumulonimbus
@@ -139,18 +166,22 @@ public class Observation extends BaseEntity<Long> {
     /**
      * Horizontal visibility (km)
      */
+    @Column(name = "vv", columnDefinition = FLOAT_COLUMN)
     private Float vv;
     /**
      * Dew point temperature at a height of 2 metres above the earth's surface (degrees Celsius)
      */
+    @Column(name = "td", columnDefinition = FLOAT_COLUMN)
     private Float td;
     /**
      * Amount of precipitation (millimeters)
      */
+    @Column(name = "rrr", columnDefinition = FLOAT_COLUMN)
     private Float rrr;
     /**
      * The period of time during which the specified amount of precipitation was accumulated
      */
+    @Column(name = "tr", columnDefinition = FLOAT_COLUMN)
     private Float tr;
     /**
      * State of the ground without snow or measurable ice cover
@@ -159,13 +190,16 @@ public class Observation extends BaseEntity<Long> {
     /**
      * The minimum soil surface temperature at night (degrees Celsius)
      */
+    @Column(name = "tg", columnDefinition = FLOAT_COLUMN)
     private Float tg;
     /**
      * State of the ground with snow or measurable ice cover.
      */
+    @Column(name = "eApos")
     private String eApostrophe;
     /**
      * Snow depth (cm)
      */
+    @Column(name = "sss", columnDefinition = FLOAT_COLUMN)
     private Float sss;
 }
@@ -0,0 +1,65 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.function.Function;
+
+/**
+ * Textual codes of an observation, dictionary encoded in columnar form
+ *
+ * @author Anton Troshin
+ */
+public enum ObservationCode {
+
+    FF(Observation::getFf),
+    FF10(Observation::getFf10),
+    FF3(Observation::getFf3),
+    N(Observation::getN),
+    WW(Observation::getWw),
+    W1(Observation::getW1),
+    W2(Observation::getW2),
+    CL(Observation::getCl),
+    NH(Observation::getNh),
+    H(Observation::getH),
+    CM(Observation::getCm),
+    CH(Observation::getCh),
+    E(Observation::getE),
+    E_APOSTROPHE(Observation::getEApostrophe);
+
+    private final Function<Observation, String> getter;
+
+    ObservationCode(Function<Observation, String> getter) {
+        this.getter = getter;
+    }
+
+    /**
+     * Value of this code in the given observation
+     */
+    public String get(Observation observation) {
+        return getter.apply(observation);
+    }
+}
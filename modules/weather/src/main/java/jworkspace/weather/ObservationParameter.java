@@ -0,0 +1,77 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.function.Function;
+
+/**
+ * Numeric parameters of an observation, stored as floats in columnar form
+ *
+ * @author Anton Troshin
+ */
+public enum ObservationParameter {
+
+    T("t", Observation::getT),
+    PO("pO", Observation::getPO),
+    P("p", Observation::getP),
+    PA("pA", Observation::getPA),
+    U("u", Observation::getU),
+    TN("tn", Observation::getTn),
+    TX("tx", Observation::getTx),
+    VV("vv", Observation::getVv),
+    TD("td", Observation::getTd),
+    RRR("rrr", Observation::getRrr),
+    TR("tr", Observation::getTr),
+    TG("tg", Observation::getTg),
+    SSS("sss", Observation::getSss);
+
+    private final String property;
+
+    private final Function<Observation, Float> getter;
+
+    ObservationParameter(String property, Function<Observation, Float> getter) {
+        this.property = property;
+        this.getter = getter;
+    }
+
+    /**
+     * Name of the observation property, for queries
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Value of this parameter in the given observation
+     *
+     * @return value or NaN if not observed
+     */
+    public float get(Observation observation) {
+        Float value = getter.apply(observation);
+        return value == null ? Float.NaN : value;
+    }
+}
@@ -0,0 +1,454 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of the observations of one station, to reload parsed archives
+ * without parsing them again. A snapshot is memory mapped when opened; apart from the time
+ * column, which is delta encoded and summed up on opening, values are read straight from
+ * the mapped file, so opening a snapshot of a decade of observations takes milliseconds.
+ * <p>
+ * The file is a sequence of big-endian 4-byte units, in the manner of XDR:
+ * <ul>
+ * <li>header: magic, version, station, number of rows, first and last time, time unit</li>
+ * <li>dictionary of the distinct texts, as XDR strings</li>
+ * <li>time deltas from the previous row in time units, the first row at the first time</li>
+ * <li>a block per parameter: its name, encoding and scale, followed by either floats or
+ * shorts holding the value multiplied by a power of ten, whichever represents every value
+ * of the column exactly</li>
+ * <li>a block per textual code: its name and a short dictionary index per row</li>
+ * <li>a byte per row with the wind direction ordinal</li>
+ * </ul>
+ * Blocks are padded to whole units. Rows are in ascending order of time.
+ *
+ * @author Anton Troshin
+ */
+@SuppressWarnings("MagicNumber")
+public final class ObservationSnapshot {
+
+    private static final int MAGIC = 0x52503553;
+
+    private static final int VERSION = 1;
+
+    private static final int UNIT = 4;
+
+    private static final int FLOAT = 0;
+
+    private static final int SCALED = 1;
+
+    private static final short SCALED_NULL = Short.MIN_VALUE;
+
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f};
+
+    private static final long[] TIME_UNITS = {60000L, 1000L, 1L};
+
+    private static final byte NO_DIRECTION = -1;
+
+    private static final WindDirection[] DIRECTIONS = WindDirection.values();
+
+    private final MappedByteBuffer buffer;
+
+    private final int station;
+
+    private final int rows;
+
+    private final long[] times;
+
+    private final String[] texts;
+
+    private final Map<ObservationParameter, Column> values = new EnumMap<>(ObservationParameter.class);
+
+    private final Map<ObservationCode, Integer> codes = new EnumMap<>(ObservationCode.class);
+
+    private final int directions;
+
+    private ObservationSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.remaining() < 10 * UNIT || buffer.getInt() != MAGIC) {
+            throw new IOException("Not an observation snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        station = buffer.getInt();
+        rows = buffer.getInt();
+        long time = buffer.getLong();
+        buffer.getLong();
+        long unit = buffer.getInt();
+
+        texts = new String[buffer.getInt()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = readString(buffer);
+        }
+
+        times = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            time += buffer.getInt() * unit;
+            times[i] = time;
+        }
+
+        int parameters = buffer.getInt();
+        for (int i = 0; i < parameters; i++) {
+            ObservationParameter parameter = ObservationParameter.valueOf(readString(buffer));
+            Column column = new Column(buffer.getInt(), buffer.getInt(), buffer.position());
+            values.put(parameter, column);
+            skip(buffer, rows * (column.encoding == SCALED ? 2 : UNIT));
+        }
+
+        int codeColumns = buffer.getInt();
+        for (int i = 0; i < codeColumns; i++) {
+            codes.put(ObservationCode.valueOf(readString(buffer)), buffer.position());
+            skip(buffer, rows * 2);
+        }
+
+        directions = buffer.position();
+        skip(buffer, rows);
+    }
+
+    /**
+     * Write rows of a station to a snapshot file
+     *
+     * @param slice rows to write
+     * @param path  snapshot file, replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public static void write(ObservationStore.Slice slice, Path path) throws IOException {
+        int rows = slice.size();
+        long first = rows == 0 ? 0 : slice.time(0);
+        long last = rows == 0 ? 0 : slice.time(rows - 1);
+        long unit = timeUnit(slice);
+
+        // dictionary of the texts used by these rows only
+        List<byte[]> texts = new ArrayList<>();
+        Map<String, Integer> indexes = new HashMap<>();
+        short[][] codeColumns = new short[ObservationCode.values().length][rows];
+        for (ObservationCode code : ObservationCode.values()) {
+            for (int row = 0; row < rows; row++) {
+                String text = slice.text(code, row);
+                int index = StringDictionary.NULL;
+                if (text != null) {
+                    index = indexes.computeIfAbsent(text, t -> {
+                        texts.add(t.getBytes(StandardCharsets.UTF_8));
+                        return texts.size() - 1;
+                    });
+                }
+                if (index > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many distinct texts for a snapshot");
+                }
+                codeColumns[code.ordinal()][row] = (short) index;
+            }
+        }
+
+        int[] scales = new int[ObservationParameter.values().length];
+        long size = 10 * UNIT;
+        for (byte[] text : texts) {
+            size += UNIT + padded(text.length);
+        }
+        size += (long) rows * UNIT + UNIT;
+        for (ObservationParameter parameter : ObservationParameter.values()) {
+            scales[parameter.ordinal()] = scale(slice, parameter);
+            size += UNIT + padded(parameter.name().length()) + 2 * UNIT
+                + padded(rows * (scales[parameter.ordinal()] >= 0 ? 2 : UNIT));
+        }
+        size += UNIT;
+        for (ObservationCode code : ObservationCode.values()) {
+            size += UNIT + padded(code.name().length()) + padded(rows * 2);
+        }
+        size += padded(rows);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many rows for a snapshot: " + rows);
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(VERSION).putInt(slice.getStation()).putInt(rows)
+            .putLong(first).putLong(last).putInt((int) unit);
+
+        out.putInt(texts.size());
+        for (byte[] text : texts) {
+            writeBytes(out, text);
+        }
+
+        long previous = first;
+        for (int row = 0; row < rows; row++) {
+            out.putInt((int) ((slice.time(row) - previous) / unit));
+            previous = slice.time(row);
+        }
+
+        out.putInt(ObservationParameter.values().length);
+        for (ObservationParameter parameter : ObservationParameter.values()) {
+            int scale = scales[parameter.ordinal()];
+            writeBytes(out, parameter.name().getBytes(StandardCharsets.US_ASCII));
+            out.putInt(scale >= 0 ? SCALED : FLOAT).putInt(Math.max(scale, 0));
+            for (int row = 0; row < rows; row++) {
+                float value = slice.value(parameter, row);
+                if (scale < 0) {
+                    out.putFloat(value);
+                } else {
+                    out.putShort(Float.isNaN(value) ? SCALED_NULL
+                        : (short) Math.round((double) value * POWERS_OF_TEN[scale]));
+                }
+            }
+            pad(out);
+        }
+
+        out.putInt(ObservationCode.values().length);
+        for (ObservationCode code : ObservationCode.values()) {
+            writeBytes(out, code.name().getBytes(StandardCharsets.US_ASCII));
+            for (short index : codeColumns[code.ordinal()]) {
+                out.putShort(index);
+            }
+            pad(out);
+        }
+
+        for (int row = 0; row < rows; row++) {
+            WindDirection direction = slice.direction(row);
+            out.put(direction == null ? NO_DIRECTION : (byte) direction.ordinal());
+        }
+        pad(out);
+
+        out.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Open a snapshot file by mapping it into memory
+     *
+     * @param path snapshot file
+     * @return snapshot
+     * @throws IOException if the file can't be read or is not a snapshot
+     */
+    public static ObservationSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            try {
+                return new ObservationSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt observation snapshot " + path, e);
+            }
+        }
+    }
+
+    public int getStation() {
+        return station;
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Time of a row in milliseconds since the epoch
+     */
+    public long time(int row) {
+        return times[row];
+    }
+
+    /**
+     * Value of a parameter
+     *
+     * @return value or NaN if it was not observed
+     */
+    public float value(ObservationParameter parameter, int row) {
+        Column column = values.get(parameter);
+        if (column == null) {
+            return Float.NaN;
+        }
+        if (column.encoding == FLOAT) {
+            return buffer.getFloat(column.offset + row * UNIT);
+        }
+        short value = buffer.getShort(column.offset + row * 2);
+        return value == SCALED_NULL ? Float.NaN : value / POWERS_OF_TEN[column.scale];
+    }
+
+    public boolean isNull(ObservationParameter parameter, int row) {
+        return Float.isNaN(value(parameter, row));
+    }
+
+    public String text(ObservationCode code, int row) {
+        Integer offset = codes.get(code);
+        if (offset == null) {
+            return null;
+        }
+        short index = buffer.getShort(offset + row * 2);
+        return index == StringDictionary.NULL ? null : texts[index];
+    }
+
+    public WindDirection direction(int row) {
+        byte direction = buffer.get(directions + row);
+        return direction == NO_DIRECTION ? null : DIRECTIONS[direction];
+    }
+
+    /**
+     * Copy the snapshot into arrays
+     *
+     * @param dictionary dictionary to encode the texts with
+     * @return all rows of the snapshot
+     */
+    public ObservationStore.Slice toSlice(StringDictionary dictionary) {
+        int[] dictionaryCodes = new int[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            dictionaryCodes[i] = dictionary.encode(texts[i]);
+        }
+
+        float[][] valueColumns = new float[ObservationParameter.values().length][];
+        for (ObservationParameter parameter : ObservationParameter.values()) {
+            float[] column = new float[rows];
+            for (int row = 0; row < rows; row++) {
+                column[row] = value(parameter, row);
+            }
+            valueColumns[parameter.ordinal()] = column;
+        }
+
+        int[][] codeColumns = new int[ObservationCode.values().length][];
+        for (ObservationCode code : ObservationCode.values()) {
+            int[] column = new int[rows];
+            Integer offset = codes.get(code);
+            if (offset == null) {
+                Arrays.fill(column, StringDictionary.NULL);
+            } else {
+                for (int row = 0; row < rows; row++) {
+                    short index = buffer.getShort(offset + row * 2);
+                    column[row] = index == StringDictionary.NULL ? StringDictionary.NULL : dictionaryCodes[index];
+                }
+            }
+            codeColumns[code.ordinal()] = column;
+        }
+
+        byte[] directionColumn = new byte[rows];
+        for (int row = 0; row < rows; row++) {
+            directionColumn[row] = buffer.get(directions + row);
+        }
+
+        return new ObservationStore.Slice(station, dictionary, times.clone(), valueColumns, codeColumns,
+            directionColumn, 0, rows);
+    }
+
+    /**
+     * Largest time unit that all time differences are a multiple of
+     */
+    private static long timeUnit(ObservationStore.Slice slice) {
+        for (long unit : TIME_UNITS) {
+            boolean fits = true;
+            for (int row = 1; row < slice.size() && fits; row++) {
+                long delta = slice.time(row) - slice.time(row - 1);
+                fits = delta % unit == 0 && delta / unit <= Integer.MAX_VALUE;
+            }
+            if (fits) {
+                return unit;
+            }
+        }
+        throw new IllegalArgumentException("Time gap too large for a snapshot");
+    }
+
+    /**
+     * Smallest power of ten that makes every value of the column an exact short
+     *
+     * @return scale or -1 if the column must be stored as floats
+     */
+    private static int scale(ObservationStore.Slice slice, ObservationParameter parameter) {
+        for (int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+            boolean exact = true;
+            for (int row = 0; row < slice.size() && exact; row++) {
+                float value = slice.value(parameter, row);
+                if (Float.isNaN(value)) {
+                    continue;
+                }
+                long scaled = Math.round((double) value * POWERS_OF_TEN[scale]);
+                exact = scaled > SCALED_NULL && scaled <= Short.MAX_VALUE
+                    && scaled / POWERS_OF_TEN[scale] == value;
+            }
+            if (exact) {
+                return scale;
+            }
+        }
+        return -1;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        buffer.position(buffer.position() + padded(bytes.length) - bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(ByteBuffer out, byte[] bytes) {
+        out.putInt(bytes.length).put(bytes);
+        pad(out);
+    }
+
+    private static void skip(ByteBuffer buffer, int length) {
+        buffer.position(buffer.position() + padded(length));
+    }
+
+    private static void pad(ByteBuffer out) {
+        while (out.position() % UNIT != 0) {
+            out.put((byte) 0);
+        }
+    }
+
+    private static int padded(int length) {
+        return (length + UNIT - 1) / UNIT * UNIT;
+    }
+
+    /**
+     * Position and encoding of a parameter column
+     */
+    private static final class Column {
+
+        private final int encoding;
+
+        private final int scale;
+
+        private final int offset;
+
+        Column(int encoding, int scale, int offset) {
+            this.encoding = encoding;
+            this.scale = scale;
+            this.offset = offset;
+        }
+    }
+}
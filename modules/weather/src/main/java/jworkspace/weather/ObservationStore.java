@@ -0,0 +1,403 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory columnar store of observations. Rows of every station are kept in primitive
+ * arrays, one per column: times in a <code>long[]</code>, each numeric parameter in a
+ * <code>float[]</code> with NaN for a missing value, wind directions as ordinals in a
+ * <code>byte[]</code> and textual codes as indexes into a shared {@link StringDictionary}.
+ * A row costs about 120 bytes, a fraction of an {@link Observation} entity.
+ * <p>
+ * Rows are sorted by time on the first scan after they were added, so a time range is
+ * found by binary search and returned as a {@link Slice} that reads the arrays directly,
+ * without creating any objects per row.
+ * <p>
+ * Adding rows and scanning may not happen at the same time; any number of threads may scan.
+ *
+ * @author Anton Troshin
+ */
+public class ObservationStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final ObservationParameter[] PARAMETERS = ObservationParameter.values();
+
+    private static final ObservationCode[] CODES = ObservationCode.values();
+
+    private static final WindDirection[] DIRECTIONS = WindDirection.values();
+
+    private static final byte NO_DIRECTION = -1;
+
+    private final Map<Integer, StationColumns> stations = new TreeMap<>();
+
+    private final StringDictionary dictionary = new StringDictionary();
+
+    /**
+     * Add an observation
+     */
+    public synchronized void add(Observation observation) {
+        StationColumns columns = stations.computeIfAbsent(observation.getWeatherStationId(),
+            StationColumns::new);
+        int row = columns.append(observation.getDate().getTime());
+
+        for (ObservationParameter parameter : PARAMETERS) {
+            columns.values[parameter.ordinal()][row] = parameter.get(observation);
+        }
+        for (ObservationCode code : CODES) {
+            columns.codes[code.ordinal()][row] = dictionary.encode(code.get(observation));
+        }
+        WindDirection direction = observation.getDd();
+        columns.directions[row] = direction == null ? NO_DIRECTION : (byte) direction.ordinal();
+    }
+
+    /**
+     * Add all rows of a slice, e.g. of another store or of an {@link ObservationSnapshot}
+     */
+    public synchronized void add(Slice slice) {
+        StationColumns columns = stations.computeIfAbsent(slice.getStation(), StationColumns::new);
+        int[] dictionaryCodes = null;
+        if (slice.dictionary != dictionary) {
+            dictionaryCodes = new int[slice.dictionary.size()];
+            Arrays.fill(dictionaryCodes, StringDictionary.NULL - 1);
+        }
+
+        for (int i = 0; i < slice.size(); i++) {
+            int row = columns.append(slice.time(i));
+            for (ObservationParameter parameter : PARAMETERS) {
+                columns.values[parameter.ordinal()][row] = slice.value(parameter, i);
+            }
+            for (ObservationCode code : CODES) {
+                int value = slice.code(code, i);
+                if (dictionaryCodes != null && value != StringDictionary.NULL) {
+                    if (dictionaryCodes[value] < StringDictionary.NULL) {
+                        dictionaryCodes[value] = dictionary.encode(slice.dictionary.decode(value));
+                    }
+                    value = dictionaryCodes[value];
+                }
+                columns.codes[code.ordinal()][row] = value;
+            }
+            columns.directions[row] = slice.directions[slice.offset + i];
+        }
+    }
+
+    /**
+     * Total number of rows
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (StationColumns columns : stations.values()) {
+            size += columns.size;
+        }
+        return size;
+    }
+
+    /**
+     * Ids of all stations with at least one row, in ascending order
+     */
+    public synchronized int[] getStations() {
+        return stations.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Rows of a station in a time range
+     *
+     * @param station weather station id
+     * @param from    start of the range, inclusive
+     * @param to      end of the range, exclusive
+     * @return rows sorted by time, empty if there are none
+     */
+    public synchronized Slice scan(int station, Date from, Date to) {
+        return scan(station, from.getTime(), to.getTime());
+    }
+
+    /**
+     * Rows of a station in a time range, times in milliseconds since the epoch
+     */
+    public synchronized Slice scan(int station, long from, long to) {
+        StationColumns columns = stations.get(station);
+        if (columns == null) {
+            return new Slice(station, dictionary, new long[0], new float[PARAMETERS.length][0],
+                new int[CODES.length][0], new byte[0], 0, 0);
+        }
+        return columns.slice(dictionary, from, to);
+    }
+
+    /**
+     * Rows of all stations in a time range, one slice per station with rows in the range
+     */
+    public synchronized List<Slice> scan(long from, long to) {
+        List<Slice> slices = new ArrayList<>();
+        for (StationColumns columns : stations.values()) {
+            Slice slice = columns.slice(dictionary, from, to);
+            if (slice.size() > 0) {
+                slices.add(slice);
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * A contiguous, time ordered range of rows of one station. The slice reads the
+     * arrays of the store directly; rows added to the store later are not visible.
+     */
+    public static final class Slice {
+
+        private final int station;
+
+        private final StringDictionary dictionary;
+
+        private final long[] times;
+
+        private final float[][] values;
+
+        private final int[][] codes;
+
+        private final byte[] directions;
+
+        private final int offset;
+
+        private final int size;
+
+        Slice(int station, StringDictionary dictionary, long[] times, float[][] values, int[][] codes,
+              byte[] directions, int offset, int size) {
+            this.station = station;
+            this.dictionary = dictionary;
+            this.times = times;
+            this.values = values;
+            this.codes = codes;
+            this.directions = directions;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public int getStation() {
+            return station;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Time of a row in milliseconds since the epoch
+         */
+        public long time(int row) {
+            return times[offset + row];
+        }
+
+        /**
+         * Value of a parameter
+         *
+         * @return value or NaN if it was not observed
+         */
+        public float value(ObservationParameter parameter, int row) {
+            return values[parameter.ordinal()][offset + row];
+        }
+
+        public boolean isNull(ObservationParameter parameter, int row) {
+            return Float.isNaN(value(parameter, row));
+        }
+
+        /**
+         * Dictionary code of a textual value, see {@link StringDictionary#lookup(String)}
+         */
+        public int code(ObservationCode code, int row) {
+            return codes[code.ordinal()][offset + row];
+        }
+
+        public String text(ObservationCode code, int row) {
+            return dictionary.decode(code(code, row));
+        }
+
+        public WindDirection direction(int row) {
+            byte direction = directions[offset + row];
+            return direction == NO_DIRECTION ? null : DIRECTIONS[direction];
+        }
+    }
+
+    /**
+     * Columns of a single station
+     */
+    private static final class StationColumns {
+
+        private final int station;
+
+        private long[] times = new long[INITIAL_CAPACITY];
+
+        private final float[][] values = new float[PARAMETERS.length][INITIAL_CAPACITY];
+
+        private final int[][] codes = new int[CODES.length][INITIAL_CAPACITY];
+
+        private byte[] directions = new byte[INITIAL_CAPACITY];
+
+        private int size = 0;
+
+        private boolean sorted = true;
+
+        StationColumns(int station) {
+            this.station = station;
+        }
+
+        int append(long time) {
+            if (size == times.length) {
+                grow(size + (size >> 1));
+            }
+            if (size > 0 && time < times[size - 1]) {
+                sorted = false;
+            }
+            times[size] = time;
+            return size++;
+        }
+
+        Slice slice(StringDictionary dictionary, long from, long to) {
+            sort();
+            int start = lowerBound(from);
+            int end = Math.max(start, lowerBound(to));
+            return new Slice(station, dictionary, times, values.clone(), codes.clone(), directions, start,
+                end - start);
+        }
+
+        private int lowerBound(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private void grow(int capacity) {
+            times = Arrays.copyOf(times, capacity);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Arrays.copyOf(values[i], capacity);
+            }
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = Arrays.copyOf(codes[i], capacity);
+            }
+            directions = Arrays.copyOf(directions, capacity);
+        }
+
+        /* Sort the rows by time into new arrays, so slices taken before stay valid.
+         * Archives list the newest rows first, a descending run is simply reversed. */
+
+        private void sort() {
+            if (sorted) {
+                return;
+            }
+            permute(isDescending() ? reversedIndex() : sortedIndex());
+            sorted = true;
+        }
+
+        private boolean isDescending() {
+            for (int i = 1; i < size; i++) {
+                if (times[i] > times[i - 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int[] reversedIndex() {
+            int[] index = new int[size];
+            for (int i = 0; i < size; i++) {
+                index[i] = size - 1 - i;
+            }
+            return index;
+        }
+
+        private int[] sortedIndex() {
+            int[] index = new int[size];
+            for (int i = 0; i < size; i++) {
+                index[i] = i;
+            }
+            int[] buffer = new int[size];
+            for (int width = 1; width < size; width <<= 1) {
+                for (int low = 0; low < size; low += width << 1) {
+                    int middle = Math.min(low + width, size);
+                    int high = Math.min(low + (width << 1), size);
+                    int p = low;
+                    int q = middle;
+                    for (int i = low; i < high; i++) {
+                        if (q >= high || (p < middle && times[index[p]] <= times[index[q]])) {
+                            buffer[i] = index[p++];
+                        } else {
+                            buffer[i] = index[q++];
+                        }
+                    }
+                }
+                int[] swap = index;
+                index = buffer;
+                buffer = swap;
+            }
+            return index;
+        }
+
+        private void permute(int[] index) {
+            long[] sortedTimes = new long[times.length];
+            for (int i = 0; i < size; i++) {
+                sortedTimes[i] = times[index[i]];
+            }
+            times = sortedTimes;
+            for (int c = 0; c < values.length; c++) {
+                float[] column = new float[values[c].length];
+                for (int i = 0; i < size; i++) {
+                    column[i] = values[c][index[i]];
+                }
+                values[c] = column;
+            }
+            for (int c = 0; c < codes.length; c++) {
+                int[] column = new int[codes[c].length];
+                for (int i = 0; i < size; i++) {
+                    column[i] = codes[c][index[i]];
+                }
+                codes[c] = column;
+            }
+            byte[] sortedDirections = new byte[directions.length];
+            for (int i = 0; i < size; i++) {
+                sortedDirections[i] = directions[index[i]];
+            }
+            directions = sortedDirections;
+        }
+    }
+}
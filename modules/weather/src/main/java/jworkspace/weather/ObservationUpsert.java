@@ -0,0 +1,187 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.hibernate.StatelessSession;
+
+/**
+ * Writes observations keyed on station and time: a new observation is inserted, one that
+ * replaces a stored observation with different values is updated and one equal to the stored
+ * observation is not written at all, so importing overlapping exports never creates duplicates.
+ * <p>
+ * The stored observations of a chunk are read with a single range query. Observations written
+ * earlier in the same run are remembered by time within the time range of the current chunk,
+ * which may not be visible to the query yet, so duplicates within a file are updated too.
+ * Rollups, if given, are kept in step: inserted observations are added to them, the periods of
+ * updated ones are recomputed, and the periods the chunk did not touch are flushed after every chunk.
+ *
+ * @author Anton Troshin
+ */
+public class ObservationUpsert implements ImportPipeline.ChunkWriter<Observation> {
+
+    private final RollupEngine rollups;
+
+    /**
+     * Ids of observations written in this run by station and time, in the time range of the current chunk
+     */
+    private final Map<Integer, NavigableMap<Long, Long>> written = new HashMap<>();
+
+    private long inserted = 0;
+
+    private long updated = 0;
+
+    private long unchanged = 0;
+
+    public ObservationUpsert() {
+        this(null);
+    }
+
+    /**
+     * @param rollups rollups to keep in step, may be null
+     */
+    public ObservationUpsert(RollupEngine rollups) {
+        this.rollups = rollups;
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Number of observations equal to the stored ones and not written
+     */
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    @Override
+    public int write(StatelessSession session, List<Observation> chunk) {
+        Map<Integer, long[]> ranges = ranges(chunk);
+        Map<Integer, Map<Long, Observation>> stored = load(session, ranges);
+        retain(ranges);
+
+        int rows = 0;
+        for (Observation observation : chunk) {
+            long time = observation.getDate().getTime();
+            Map<Long, Long> ids = written.computeIfAbsent(observation.getWeatherStationId(), s -> new TreeMap<>());
+
+            Long id = ids.get(time);
+            Observation existing = stored.getOrDefault(observation.getWeatherStationId(),
+                Collections.emptyMap()).get(time);
+            if (id == null && existing != null) {
+                id = existing.getId();
+                observation.setId(id);
+                if (observation.equals(existing)) {
+                    ids.put(time, id);
+                    unchanged++;
+                    continue;
+                }
+            }
+
+            if (id == null) {
+                session.insert(observation);
+                ids.put(time, observation.getId());
+                inserted++;
+                if (rollups != null) {
+                    rollups.add(observation);
+                }
+            } else {
+                observation.setId(id);
+                session.update(observation);
+                updated++;
+                if (rollups != null) {
+                    rollups.invalidate(observation);
+                }
+            }
+            rows++;
+        }
+        if (rollups != null) {
+            rollups.flush(session);
+        }
+        return rows;
+    }
+
+    /**
+     * First and last time of the chunk by station
+     */
+    private static Map<Integer, long[]> ranges(List<Observation> chunk) {
+        Map<Integer, long[]> ranges = new HashMap<>();
+        for (Observation observation : chunk) {
+            long time = observation.getDate().getTime();
+            long[] range = ranges.computeIfAbsent(observation.getWeatherStationId(),
+                s -> new long[] {Long.MAX_VALUE, Long.MIN_VALUE});
+            range[0] = Math.min(range[0], time);
+            range[1] = Math.max(range[1], time);
+        }
+        return ranges;
+    }
+
+    /**
+     * Forget the observations written outside the time range of the chunk, they cannot be looked up by it
+     */
+    private void retain(Map<Integer, long[]> ranges) {
+        written.keySet().retainAll(ranges.keySet());
+        for (Map.Entry<Integer, NavigableMap<Long, Long>> entry : written.entrySet()) {
+            long[] range = ranges.get(entry.getKey());
+            entry.getValue().headMap(range[0], false).clear();
+            entry.getValue().tailMap(range[1], false).clear();
+        }
+    }
+
+    /**
+     * Stored observations in the time range of the chunk, not written in this run
+     */
+    private Map<Integer, Map<Long, Observation>> load(StatelessSession session, Map<Integer, long[]> ranges) {
+        Map<Integer, Map<Long, Observation>> stored = new HashMap<>();
+        for (Map.Entry<Integer, long[]> range : ranges.entrySet()) {
+            Map<Long, Observation> observations = new HashMap<>();
+            for (Object item : session.createQuery("from Observation o where o.weatherStationId = :station"
+                + " and o.date between :from and :to")
+                .setParameter("station", range.getKey())
+                .setParameter("from", new Date(range.getValue()[0]))
+                .setParameter("to", new Date(range.getValue()[1]))
+                .list()) {
+                Observation observation = (Observation) item;
+                observations.put(observation.getDate().getTime(), observation);
+            }
+            stored.put(range.getKey(), observations);
+        }
+        return stored;
+    }
+}
@@ -0,0 +1,97 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregate of one observation parameter of one station over a calendar period.
+ * The mean is not stored, it is the sum divided by the count.
+ *
+ * @author Anton Troshin
+ */
+@Entity
+@Table(name = "rollups", uniqueConstraints = @UniqueConstraint(
+    columnNames = {"weather_station_id", "parameter", "period", "period_start"}))
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class Rollup extends BaseEntity<Long> {
+    /**
+     * Weather station unique id
+     */
+    @Column(name = "weather_station_id", nullable = false)
+    private Integer weatherStationId;
+    /**
+     * Aggregated parameter
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "parameter", nullable = false, length = 8)
+    private ObservationParameter parameter;
+    /**
+     * Length of the period
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "period", nullable = false, length = 8)
+    private RollupPeriod period;
+    /**
+     * Local start time of the period
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    @Column(name = "period_start", nullable = false)
+    private Date periodStart;
+    /**
+     * Number of observations with a value of the parameter
+     */
+    @Column(name = "value_count", nullable = false)
+    private long count;
+
+    @Column(name = "min_value", nullable = false)
+    private double min;
+
+    @Column(name = "max_value", nullable = false)
+    private double max;
+
+    @Column(name = "sum_value", nullable = false)
+    private double sum;
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+}
@@ -0,0 +1,495 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+
+import lombok.Value;
+
+/**
+ * Computes hourly, daily, monthly and yearly {@link Rollup rollups} and {@link WindRollup wind roses}
+ * of observations. Observations are accumulated in memory as they are imported and then merged
+ * into the rollup tables: only the rollups of the periods touched by the new observations are read,
+ * updated in place or inserted, so the cost of a merge depends on the new observations only and not
+ * on the size of the archive. Periods of observations that have been changed rather than added are
+ * recomputed from the stored observations instead.
+ * <p>
+ * Imports call {@link #flush(StatelessSession)} after every chunk, which merges the periods the chunk
+ * did not touch. Observations come in time order, so these periods are finished and only the few
+ * periods still being filled are kept in memory. A period touched again after it has been flushed is
+ * merged once more, which costs an update but gives the same rollup.
+ * <p>
+ * Periods are calendar periods in local time of the given zone, which must be the zone the
+ * observation dates were parsed in. An engine is not thread safe, and merges of the same station
+ * must not run concurrently.
+ *
+ * @author Anton Troshin
+ */
+@SuppressWarnings("MagicNumber")
+public class RollupEngine {
+
+    private static final Logger LOG = Logger.getLogger(RollupEngine.class);
+
+    /**
+     * Number of observations accumulated by {@link #rebuild(SessionFactory, int)} before a merge
+     */
+    public static final int REBUILD_INTERVAL = 10000;
+
+    /**
+     * Maximum number of period starts in one query of stored rollups
+     */
+    private static final int QUERY_STARTS = 500;
+
+    private static final ObservationParameter[] PARAMETERS = ObservationParameter.values();
+
+    private static final WindDirection[] DIRECTIONS = WindDirection.values();
+
+    private static final RollupPeriod[] PERIODS = RollupPeriod.values();
+
+    private final ZoneId zone;
+
+    private final Map<Key, Bucket> buckets = new HashMap<>();
+
+    /**
+     * Number of flushes so far, buckets remember the last one they were touched in
+     */
+    private int generation = 0;
+
+    /**
+     * Engine for dates in the default time zone
+     */
+    public RollupEngine() {
+        this(ZoneId.systemDefault());
+    }
+
+    public RollupEngine(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Add an observation to the rollups of all periods it belongs to. Observations without
+     * a station or a date are ignored.
+     */
+    public void add(Observation observation) {
+        if (observation.getWeatherStationId() == null || observation.getDate() == null) {
+            return;
+        }
+        LocalDateTime time = LocalDateTime.ofInstant(observation.getDate().toInstant(), zone);
+        for (RollupPeriod period : PERIODS) {
+            bucket(new Key(observation.getWeatherStationId(), period, toMillis(period.truncate(time))))
+                .add(observation);
+        }
+    }
+
+    /**
+     * Mark the periods of a stored observation that has been changed. Their rollups are recomputed
+     * from the stored observations on the next merge, so the change must be written by then.
+     */
+    public void invalidate(Observation observation) {
+        if (observation.getWeatherStationId() == null || observation.getDate() == null) {
+            return;
+        }
+        LocalDateTime time = LocalDateTime.ofInstant(observation.getDate().toInstant(), zone);
+        for (RollupPeriod period : PERIODS) {
+            Key key = new Key(observation.getWeatherStationId(), period, toMillis(period.truncate(time)));
+            bucket(key).invalid = true;
+        }
+    }
+
+    /**
+     * Whether there are observations not merged yet
+     */
+    public boolean isEmpty() {
+        return buckets.isEmpty();
+    }
+
+    /**
+     * Merge the periods not touched since the previous flush into the rollup tables, in the current
+     * transaction of the session, and keep accumulating the others
+     *
+     * @param session session to use
+     * @return number of rollup rows inserted or updated
+     */
+    public int flush(StatelessSession session) {
+        List<Map.Entry<Key, Bucket>> entries = new ArrayList<>();
+        for (Iterator<Map.Entry<Key, Bucket>> i = buckets.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Key, Bucket> entry = i.next();
+            if (entry.getValue().generation < generation) {
+                entries.add(entry);
+                i.remove();
+            }
+        }
+        generation++;
+        return merge(session, entries);
+    }
+
+    /**
+     * Merge all accumulated observations into the rollup tables, in the current transaction
+     * of the session
+     *
+     * @param session session to use
+     * @return number of rollup rows inserted or updated
+     */
+    public int merge(StatelessSession session) {
+        List<Map.Entry<Key, Bucket>> entries = new ArrayList<>(buckets.entrySet());
+        buckets.clear();
+        generation++;
+        return merge(session, entries);
+    }
+
+    /**
+     * Drop the rollups of a station and compute them again from the stored observations,
+     * in one transaction
+     *
+     * @param sessionFactory session factory
+     * @param stationId      weather station id
+     * @return number of observations read
+     */
+    public long rebuild(SessionFactory sessionFactory, int stationId) {
+        RollupEngine engine = new RollupEngine(zone);
+        long observations = 0;
+
+        StatelessSession session = sessionFactory.openStatelessSession();
+        Transaction transaction = session.beginTransaction();
+        try {
+            session.createQuery("delete from Rollup r where r.weatherStationId = :station")
+                .setParameter("station", stationId).executeUpdate();
+            session.createQuery("delete from WindRollup r where r.weatherStationId = :station")
+                .setParameter("station", stationId).executeUpdate();
+
+            ScrollableResults results = session
+                .createQuery("from Observation o where o.weatherStationId = :station")
+                .setParameter("station", stationId)
+                .setFetchSize(ImportPipeline.DEFAULT_BATCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (results.next()) {
+                    engine.add((Observation) results.get(0));
+                    if (++observations % REBUILD_INTERVAL == 0) {
+                        engine.flush(session);
+                    }
+                }
+            } finally {
+                results.close();
+            }
+            engine.merge(session);
+            transaction.commit();
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        } finally {
+            session.close();
+        }
+
+        LOG.info(String.format("Rebuilt rollups of station %d from %d observations", stationId, observations));
+        return observations;
+    }
+
+    private Bucket bucket(Key key) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        bucket.generation = generation;
+        return bucket;
+    }
+
+    /**
+     * Merge the given buckets, recomputing the invalid ones
+     */
+    private int merge(StatelessSession session, List<Map.Entry<Key, Bucket>> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        // batched writes of the session, changed observations or rollups of an earlier
+        // flush, must reach the database before it is queried
+        ((SessionImplementor) session).getJdbcCoordinator().executeBatch();
+        entries.sort(Map.Entry.comparingByKey());
+
+        int rows = 0;
+        List<Map.Entry<Key, Bucket>> series = new ArrayList<>();
+        for (Map.Entry<Key, Bucket> entry : entries) {
+            if (entry.getValue().invalid) {
+                rows += recompute(session, entry.getKey());
+                continue;
+            }
+            if (series.size() == QUERY_STARTS
+                || !series.isEmpty() && !series.get(0).getKey().isSameSeries(entry.getKey())) {
+                rows += mergeSeries(session, series);
+                series.clear();
+            }
+            series.add(entry);
+        }
+        if (!series.isEmpty()) {
+            rows += mergeSeries(session, series);
+        }
+        return rows;
+    }
+
+    /**
+     * Merge buckets of one station and period, reading the stored rollups of their periods only
+     */
+    private int mergeSeries(StatelessSession session, List<Map.Entry<Key, Bucket>> series) {
+        Key first = series.get(0).getKey();
+        List<Date> starts = new ArrayList<>(series.size());
+        for (Map.Entry<Key, Bucket> entry : series) {
+            starts.add(new Date(entry.getKey().start));
+        }
+
+        Map<Long, Rollup[]> rollups = new HashMap<>();
+        for (Object item : session.createQuery("from Rollup r where r.weatherStationId = :station"
+            + " and r.period = :period and r.periodStart in (:starts)")
+            .setParameter("station", first.stationId).setParameter("period", first.period)
+            .setParameterList("starts", starts).list()) {
+            Rollup rollup = (Rollup) item;
+            rollups.computeIfAbsent(rollup.getPeriodStart().getTime(),
+                start -> new Rollup[PARAMETERS.length])[rollup.getParameter().ordinal()] = rollup;
+        }
+
+        Map<Long, WindRollup[]> windRollups = new HashMap<>();
+        for (Object item : session.createQuery("from WindRollup r where r.weatherStationId = :station"
+            + " and r.period = :period and r.periodStart in (:starts)")
+            .setParameter("station", first.stationId).setParameter("period", first.period)
+            .setParameterList("starts", starts).list()) {
+            WindRollup rollup = (WindRollup) item;
+            windRollups.computeIfAbsent(rollup.getPeriodStart().getTime(),
+                start -> new WindRollup[DIRECTIONS.length])[rollup.getDirection().ordinal()] = rollup;
+        }
+
+        int rows = 0;
+        for (Map.Entry<Key, Bucket> entry : series) {
+            Key key = entry.getKey();
+            Bucket bucket = entry.getValue();
+            Rollup[] existing = rollups.get(key.start);
+            for (int i = 0; i < PARAMETERS.length; i++) {
+                if (bucket.counts[i] > 0) {
+                    merge(session, key, PARAMETERS[i], bucket, existing == null ? null : existing[i]);
+                    rows++;
+                }
+            }
+            WindRollup[] existingWind = windRollups.get(key.start);
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                if (bucket.wind[i] > 0) {
+                    merge(session, key, DIRECTIONS[i], bucket.wind[i], existingWind == null ? null : existingWind[i]);
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Replace the rollups of a period with aggregates of the stored observations
+     */
+    private int recompute(StatelessSession session, Key key) {
+        Date from = new Date(key.start);
+        Date to = new Date(toMillis(key.period.next(LocalDateTime.ofInstant(Instant.ofEpochMilli(key.start), zone))));
+
+        for (String entity : new String[] {"Rollup", "WindRollup"}) {
+            session.createQuery("delete from " + entity + " r where r.weatherStationId = :station"
+                + " and r.period = :period and r.periodStart = :start")
+                .setParameter("station", key.stationId).setParameter("period", key.period)
+                .setParameter("start", from).executeUpdate();
+        }
+
+        StringBuilder hql = new StringBuilder("select ");
+        for (int i = 0; i < PARAMETERS.length; i++) {
+            String property = "o." + PARAMETERS[i].getProperty();
+            hql.append(i == 0 ? "" : ", ").append("count(").append(property).append("), min(").append(property)
+                .append("), max(").append(property).append("), sum(").append(property).append(')');
+        }
+        hql.append(" from Observation o where o.weatherStationId = :station and o.date >= :from and o.date < :to");
+
+        Object[] row = (Object[]) session.createQuery(hql.toString())
+            .setParameter("station", key.stationId).setParameter("from", from).setParameter("to", to)
+            .uniqueResult();
+        Bucket bucket = new Bucket();
+        for (int i = 0; i < PARAMETERS.length; i++) {
+            bucket.counts[i] = ((Number) row[4 * i]).longValue();
+            if (bucket.counts[i] > 0) {
+                bucket.min[i] = ((Number) row[4 * i + 1]).floatValue();
+                bucket.max[i] = ((Number) row[4 * i + 2]).floatValue();
+                bucket.sum[i] = ((Number) row[4 * i + 3]).doubleValue();
+            }
+        }
+        for (Object item : session.createQuery("select o.dd, count(o) from Observation o"
+            + " where o.weatherStationId = :station and o.date >= :from and o.date < :to"
+            + " and o.dd is not null group by o.dd")
+            .setParameter("station", key.stationId).setParameter("from", from).setParameter("to", to)
+            .list()) {
+            Object[] direction = (Object[]) item;
+            bucket.wind[((WindDirection) direction[0]).ordinal()] = ((Number) direction[1]).longValue();
+        }
+
+        int rows = 0;
+        for (int i = 0; i < PARAMETERS.length; i++) {
+            if (bucket.counts[i] > 0) {
+                merge(session, key, PARAMETERS[i], bucket, null);
+                rows++;
+            }
+        }
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            if (bucket.wind[i] > 0) {
+                merge(session, key, DIRECTIONS[i], bucket.wind[i], null);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static void merge(StatelessSession session, Key key, ObservationParameter parameter,
+                              Bucket bucket, Rollup rollup) {
+        int i = parameter.ordinal();
+        if (rollup == null) {
+            rollup = new Rollup();
+            rollup.setWeatherStationId(key.stationId);
+            rollup.setParameter(parameter);
+            rollup.setPeriod(key.period);
+            rollup.setPeriodStart(new Date(key.start));
+            rollup.setCount(bucket.counts[i]);
+            rollup.setMin(bucket.min[i]);
+            rollup.setMax(bucket.max[i]);
+            rollup.setSum(bucket.sum[i]);
+            session.insert(rollup);
+        } else {
+            rollup.setCount(rollup.getCount() + bucket.counts[i]);
+            rollup.setMin(Math.min(rollup.getMin(), bucket.min[i]));
+            rollup.setMax(Math.max(rollup.getMax(), bucket.max[i]));
+            rollup.setSum(rollup.getSum() + bucket.sum[i]);
+            session.update(rollup);
+        }
+    }
+
+    private static void merge(StatelessSession session, Key key, WindDirection direction,
+                              long count, WindRollup rollup) {
+        if (rollup == null) {
+            rollup = new WindRollup();
+            rollup.setWeatherStationId(key.stationId);
+            rollup.setPeriod(key.period);
+            rollup.setPeriodStart(new Date(key.start));
+            rollup.setDirection(direction);
+            rollup.setCount(count);
+            session.insert(rollup);
+        } else {
+            rollup.setCount(rollup.getCount() + count);
+            session.update(rollup);
+        }
+    }
+
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Station, period and its start
+     */
+    @Value
+    private static class Key implements Comparable<Key> {
+
+        private final int stationId;
+
+        private final RollupPeriod period;
+
+        private final long start;
+
+        boolean isSameSeries(Key key) {
+            return stationId == key.stationId && period == key.period;
+        }
+
+        @Override
+        public int compareTo(Key key) {
+            int result = Integer.compare(stationId, key.stationId);
+            if (result == 0) {
+                result = period.compareTo(key.period);
+            }
+            return result == 0 ? Long.compare(start, key.start) : result;
+        }
+    }
+
+    /**
+     * Aggregates of all parameters and wind directions of one period, not merged yet
+     */
+    private static final class Bucket {
+
+        /**
+         * Last flush the period was touched in
+         */
+        private int generation;
+
+        /**
+         * Whether the period is recomputed from the stored observations
+         */
+        private boolean invalid;
+
+        private final long[] counts = new long[PARAMETERS.length];
+
+        private final float[] min = new float[PARAMETERS.length];
+
+        private final float[] max = new float[PARAMETERS.length];
+
+        private final double[] sum = new double[PARAMETERS.length];
+
+        private final long[] wind = new long[DIRECTIONS.length];
+
+        void add(Observation observation) {
+            for (int i = 0; i < PARAMETERS.length; i++) {
+                float value = PARAMETERS[i].get(observation);
+                if (Float.isNaN(value)) {
+                    continue;
+                }
+                if (counts[i] == 0 || value < min[i]) {
+                    min[i] = value;
+                }
+                if (counts[i] == 0 || value > max[i]) {
+                    max[i] = value;
+                }
+                sum[i] += value;
+                counts[i]++;
+            }
+            if (observation.getDd() != null) {
+                wind[observation.getDd().ordinal()]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Calendar periods of time-series rollups, in local time of the station
+ *
+ * @author Anton Troshin
+ */
+public enum RollupPeriod {
+
+    HOUR {
+        @Override
+        public LocalDateTime truncate(LocalDateTime time) {
+            return time.truncatedTo(ChronoUnit.HOURS);
+        }
+
+        @Override
+        public LocalDateTime next(LocalDateTime start) {
+            return start.plusHours(1);
+        }
+    },
+
+    DAY {
+        @Override
+        public LocalDateTime truncate(LocalDateTime time) {
+            return time.truncatedTo(ChronoUnit.DAYS);
+        }
+
+        @Override
+        public LocalDateTime next(LocalDateTime start) {
+            return start.plusDays(1);
+        }
+    },
+
+    MONTH {
+        @Override
+        public LocalDateTime truncate(LocalDateTime time) {
+            return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        }
+
+        @Override
+        public LocalDateTime next(LocalDateTime start) {
+            return start.plusMonths(1);
+        }
+    },
+
+    YEAR {
+        @Override
+        public LocalDateTime truncate(LocalDateTime time) {
+            return time.toLocalDate().withDayOfYear(1).atStartOfDay();
+        }
+
+        @Override
+        public LocalDateTime next(LocalDateTime start) {
+            return start.plusYears(1);
+        }
+    };
+
+    /**
+     * Start of the period containing the given time
+     */
+    public abstract LocalDateTime truncate(LocalDateTime time);
+
+    /**
+     * Start of the period following the one starting at the given time
+     */
+    public abstract LocalDateTime next(LocalDateTime start);
+
+    /**
+     * Whether the given time is the start of a period
+     */
+    public boolean isStart(LocalDateTime time) {
+        return truncate(time).equals(time);
+    }
+}
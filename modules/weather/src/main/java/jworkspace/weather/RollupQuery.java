@@ -0,0 +1,247 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+/**
+ * Answers range queries over the archive from the {@link Rollup rollup} tables, without reading
+ * any observation. A range is covered with the coarsest periods that fit in it, e.g. a range of
+ * ten years and a few days is summed up from ten yearly rollups and a few daily ones, so a query
+ * reads at most a few dozen rows whatever the length of the range.
+ * <p>
+ * Ranges include the start and exclude the end; both are rounded down to whole hours of local time
+ * in the zone of the {@link RollupEngine} that has computed the rollups.
+ *
+ * @author Anton Troshin
+ */
+public class RollupQuery {
+
+    private static final RollupPeriod[] COARSEST_FIRST = {
+        RollupPeriod.YEAR, RollupPeriod.MONTH, RollupPeriod.DAY, RollupPeriod.HOUR
+    };
+
+    private final SessionFactory sessionFactory;
+
+    private final ZoneId zone;
+
+    /**
+     * Query rollups computed in the default time zone
+     */
+    public RollupQuery(SessionFactory sessionFactory) {
+        this(sessionFactory, ZoneId.systemDefault());
+    }
+
+    public RollupQuery(SessionFactory sessionFactory, ZoneId zone) {
+        this.sessionFactory = sessionFactory;
+        this.zone = zone;
+    }
+
+    /**
+     * Statistics of a parameter over a range of time
+     *
+     * @param stationId weather station id
+     * @param parameter observation parameter
+     * @param from      start of the range, inclusive
+     * @param to        end of the range, exclusive
+     * @return aggregate starting at the rounded start of the range
+     */
+    public Aggregate aggregate(int stationId, ObservationParameter parameter, Date from, Date to) {
+        LocalDateTime start = toLocal(from);
+        List<Segment> segments = cover(start, toLocal(to));
+        if (segments.isEmpty()) {
+            return new Aggregate(toDate(start), 0, Double.NaN, Double.NaN, 0);
+        }
+
+        StringBuilder hql = new StringBuilder("select sum(r.count), min(r.min), max(r.max), sum(r.sum)"
+            + " from Rollup r where r.weatherStationId = :station and r.parameter = :parameter and (");
+        appendSegments(hql, segments);
+
+        try (Session session = sessionFactory.openSession()) {
+            Query query = session.createQuery(hql.toString())
+                .setParameter("station", stationId)
+                .setParameter("parameter", parameter);
+            setSegments(query, segments);
+
+            Object[] row = (Object[]) query.uniqueResult();
+            if (row[0] == null) {
+                return new Aggregate(toDate(start), 0, Double.NaN, Double.NaN, 0);
+            }
+            return new Aggregate(toDate(start), ((Number) row[0]).longValue(), ((Number) row[1]).doubleValue(),
+                ((Number) row[2]).doubleValue(), ((Number) row[3]).doubleValue());
+        }
+    }
+
+    /**
+     * Statistics of a parameter for every period in a range of time, e.g. monthly means
+     * of temperature for a year. Periods without values are not returned.
+     *
+     * @param stationId weather station id
+     * @param parameter observation parameter
+     * @param period    length of the periods
+     * @param from      start of the range, rounded down to the start of the period
+     * @param to        end of the range, exclusive
+     * @return aggregates ordered by start
+     */
+    public List<Aggregate> series(int stationId, ObservationParameter parameter, RollupPeriod period,
+                                  Date from, Date to) {
+        try (Session session = sessionFactory.openSession()) {
+            List<?> rollups = session.createQuery("from Rollup r where r.weatherStationId = :station"
+                + " and r.parameter = :parameter and r.period = :period"
+                + " and r.periodStart >= :from and r.periodStart < :to order by r.periodStart")
+                .setParameter("station", stationId)
+                .setParameter("parameter", parameter)
+                .setParameter("period", period)
+                .setParameter("from", toDate(period.truncate(toLocal(from))))
+                .setParameter("to", to)
+                .list();
+
+            List<Aggregate> series = new ArrayList<>(rollups.size());
+            for (Object item : rollups) {
+                Rollup rollup = (Rollup) item;
+                series.add(new Aggregate(new Date(rollup.getPeriodStart().getTime()), rollup.getCount(),
+                    rollup.getMin(), rollup.getMax(), rollup.getSum()));
+            }
+            return series;
+        }
+    }
+
+    /**
+     * Number of observations for every wind direction over a range of time
+     *
+     * @param stationId weather station id
+     * @param from      start of the range, inclusive
+     * @param to        end of the range, exclusive
+     * @return counts of the directions observed
+     */
+    public Map<WindDirection, Long> windRose(int stationId, Date from, Date to) {
+        Map<WindDirection, Long> rose = new EnumMap<>(WindDirection.class);
+        List<Segment> segments = cover(toLocal(from), toLocal(to));
+        if (segments.isEmpty()) {
+            return rose;
+        }
+
+        StringBuilder hql = new StringBuilder("select r.direction, sum(r.count)"
+            + " from WindRollup r where r.weatherStationId = :station and (");
+        appendSegments(hql, segments);
+        hql.append(" group by r.direction");
+
+        try (Session session = sessionFactory.openSession()) {
+            Query query = session.createQuery(hql.toString()).setParameter("station", stationId);
+            setSegments(query, segments);
+            for (Object item : query.list()) {
+                Object[] row = (Object[]) item;
+                rose.put((WindDirection) row[0], ((Number) row[1]).longValue());
+            }
+        }
+        return rose;
+    }
+
+    /**
+     * Cover a range with the coarsest periods that fit in it. Consecutive periods of the same
+     * length are joined into one segment, so there are at most seven segments: hours, days and
+     * months up to the first whole year, whole years, and months, days and hours after them.
+     */
+    static List<Segment> cover(LocalDateTime from, LocalDateTime to) {
+        List<Segment> segments = new ArrayList<>();
+        LocalDateTime time = from;
+        while (time.isBefore(to)) {
+            for (RollupPeriod period : COARSEST_FIRST) {
+                LocalDateTime next = period.next(time);
+                if (period == RollupPeriod.HOUR || (period.isStart(time) && !next.isAfter(to))) {
+                    Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                    if (last != null && last.period == period) {
+                        last.end = next;
+                    } else {
+                        segments.add(new Segment(period, time, next));
+                    }
+                    time = next;
+                    break;
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static void appendSegments(StringBuilder hql, List<Segment> segments) {
+        for (int i = 0; i < segments.size(); i++) {
+            if (i > 0) {
+                hql.append(" or ");
+            }
+            hql.append("(r.period = :period").append(i)
+                .append(" and r.periodStart >= :from").append(i)
+                .append(" and r.periodStart < :to").append(i).append(')');
+        }
+        hql.append(')');
+    }
+
+    private void setSegments(Query query, List<Segment> segments) {
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            query.setParameter("period" + i, segment.period)
+                .setParameter("from" + i, toDate(segment.start))
+                .setParameter("to" + i, toDate(segment.end));
+        }
+    }
+
+    private LocalDateTime toLocal(Date date) {
+        return LocalDateTime.ofInstant(date.toInstant(), zone).truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private Date toDate(LocalDateTime time) {
+        return Date.from(time.atZone(zone).toInstant());
+    }
+
+    /**
+     * Consecutive periods of the same length
+     */
+    static final class Segment {
+
+        final RollupPeriod period;
+
+        final LocalDateTime start;
+
+        LocalDateTime end;
+
+        Segment(RollupPeriod period, LocalDateTime start, LocalDateTime end) {
+            this.period = period;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
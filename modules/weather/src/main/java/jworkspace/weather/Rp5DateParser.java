@@ -0,0 +1,108 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Date;
+
+/**
+ * Parser for the fixed <code>dd.MM.yyyy HH:mm</code> local time stamps of rp5 archives.
+ * The digits are read directly at their fixed positions, there is no pattern to interpret
+ * and no mutable state, so a single instance may be shared by any number of threads.
+ *
+ * @author Anton Troshin
+ */
+@SuppressWarnings("MagicNumber")
+public final class Rp5DateParser {
+
+    public static final String PATTERN = "dd.MM.yyyy HH:mm";
+
+    private static final int LENGTH = PATTERN.length();
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    private final ZoneRules rules;
+
+    /**
+     * Parser for local times of the default time zone
+     */
+    public Rp5DateParser() {
+        this(ZoneId.systemDefault());
+    }
+
+    public Rp5DateParser(ZoneId zone) {
+        this.rules = zone.getRules();
+    }
+
+    public Date parse(String text) {
+        return new Date(parse(text.toCharArray(), 0, text.length()));
+    }
+
+    /**
+     * Parse a time stamp
+     *
+     * @param chars  buffer containing the time stamp
+     * @param offset start of the time stamp
+     * @param length length of the time stamp
+     * @return milliseconds since the epoch
+     * @throws IllegalArgumentException if the text is not a valid time stamp
+     */
+    public long parse(char[] chars, int offset, int length) {
+        if (length != LENGTH
+            || chars[offset + 2] != '.' || chars[offset + 5] != '.'
+            || chars[offset + 10] != ' ' || chars[offset + 13] != ':') {
+            throw new IllegalArgumentException("Unparseable date: " + new String(chars, offset, length));
+        }
+        int day = digits(chars, offset, 2);
+        int month = digits(chars, offset + 3, 2);
+        int year = digits(chars, offset + 6, 4);
+        int hour = digits(chars, offset + 11, 2);
+        int minute = digits(chars, offset + 14, 2);
+
+        try {
+            LocalDateTime time = LocalDateTime.of(year, month, day, hour, minute);
+            return time.toEpochSecond(rules.getOffset(time)) * MILLIS_PER_SECOND;
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid date: " + new String(chars, offset, length), e);
+        }
+    }
+
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Unparseable date: " + new String(chars, offset, count));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,110 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.Value;
+
+/**
+ * An archive file exported from rp5.ru. The station and the date range are taken from
+ * the file name, e.g. <code>27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv</code>,
+ * or, if the file was renamed, from the comment lines at the top of the file:
+ * <pre>
+ * # Weather station Moscow, Russia, WMO_ID=27612,selection from 01.02.2005 till 01.02.2006, all days
+ * </pre>
+ *
+ * @author Anton Troshin
+ */
+@Value
+public class Rp5File {
+
+    private static final Pattern FILE_NAME = Pattern.compile(
+        "(\\d+)\\.(\\d{2}\\.\\d{2}\\.\\d{4})\\.(\\d{2}\\.\\d{2}\\.\\d{4})\\..*\\.csv", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern STATION = Pattern.compile("WMO_ID=(\\d+)");
+
+    private static final Pattern RANGE = Pattern.compile(
+        "from (\\d{2}\\.\\d{2}\\.\\d{4}) till (\\d{2}\\.\\d{2}\\.\\d{4})");
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    private static final int HEADER_LINES = 10;
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private Path path;
+
+    private int stationId;
+
+    private LocalDate from;
+
+    private LocalDate till;
+
+    /**
+     * Detect the station and the date range of an rp5 file
+     *
+     * @param path rp5 archive file
+     * @return description of the file
+     * @throws IOException              if the header can't be read
+     * @throws IllegalArgumentException if neither the name nor the header describe the file
+     */
+    public static Rp5File detect(Path path) throws IOException {
+        Matcher name = FILE_NAME.matcher(path.getFileName().toString());
+        if (name.matches()) {
+            return new Rp5File(path, Integer.parseInt(name.group(1)),
+                LocalDate.parse(name.group(2), DATE), LocalDate.parse(name.group(3), DATE));
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path),
+            Charset.forName(CsvReader.ENCODING)))) {
+            String line;
+            for (int i = 0; i < HEADER_LINES && (line = reader.readLine()) != null; i++) {
+                line = line.replace(String.valueOf(BYTE_ORDER_MARK), "");
+                if (!line.startsWith("#")) {
+                    break;
+                }
+                Matcher station = STATION.matcher(line);
+                Matcher range = RANGE.matcher(line);
+                if (station.find() && range.find()) {
+                    return new Rp5File(path, Integer.parseInt(station.group(1)),
+                        LocalDate.parse(range.group(1), DATE), LocalDate.parse(range.group(2), DATE));
+                }
+            }
+        }
+        throw new IllegalArgumentException("Not an rp5 archive: " + path);
+    }
+}
@@ -0,0 +1,428 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decoder of rp5 archive records. The input is tokenized in place in a reusable char buffer:
+ * numbers are parsed straight from the buffer, wind directions are looked up by the hash of
+ * their characters and repeated texts, such as cloud and weather descriptions, are shared
+ * through a small string cache, so apart from the observation itself and its boxed values
+ * decoding a record allocates next to nothing.
+ * <p>
+ * Records are <code>;</code> separated lines of optionally quoted fields in the column order
+ * of rp5 exports. A byte order mark, empty lines and <code>#</code> comment lines are skipped.
+ * A decoder is not thread safe, use one per file.
+ *
+ * @author Anton Troshin
+ */
+@SuppressWarnings("MagicNumber")
+public class Rp5RecordDecoder implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(Rp5RecordDecoder.class);
+
+    private static final Rp5DateParser DEFAULT_DATE_PARSER = new Rp5DateParser();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int COLUMNS = 29;
+
+    private static final int STRING_CACHE_SIZE = 1024;
+
+    private static final char QUOTE = '"';
+
+    private static final char SEPARATOR = ';';
+
+    private static final char COMMENT = '#';
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Powers of ten that are exact in float
+     */
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    /**
+     * Largest mantissa that is exact in float
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 24;
+
+    private static final int MAX_DIGITS = 18;
+
+    private final Reader reader;
+
+    private final int weatherStationId;
+
+    private final Rp5DateParser dateParser;
+
+    private boolean skipHeader;
+
+    private char[] buffer = new char[BUFFER_SIZE];
+
+    /* start of the unread input, end of the valid input and the record end scan position */
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    private int scan = 0;
+
+    private boolean quoted = false;
+
+    private boolean started = false;
+
+    private boolean eof = false;
+
+    /* field boundaries of the current record */
+
+    private int[] starts = new int[COLUMNS + 1];
+
+    private int[] ends = new int[COLUMNS + 1];
+
+    private int fields = 0;
+
+    private final String[] strings = new String[STRING_CACHE_SIZE];
+
+    private long records = 0;
+
+    private long skipped = 0;
+
+    public Rp5RecordDecoder(Reader reader, int weatherStationId, boolean hasHeader) {
+        this(reader, weatherStationId, hasHeader, DEFAULT_DATE_PARSER);
+    }
+
+    public Rp5RecordDecoder(Reader reader, int weatherStationId, boolean hasHeader, Rp5DateParser dateParser) {
+        this.reader = reader;
+        this.weatherStationId = weatherStationId;
+        this.skipHeader = hasHeader;
+        this.dateParser = dateParser;
+    }
+
+    /**
+     * Number of records read so far, not counting the header
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Number of records that could not be decoded
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Decode the next record, skipping the ones that can't be decoded
+     *
+     * @return observation or null at the end of input
+     * @throws IOException if the input can't be read
+     */
+    public Observation next() throws IOException {
+        while (readRecord()) {
+            if (skipHeader) {
+                skipHeader = false;
+                continue;
+            }
+            records++;
+            Observation observation = decode();
+            if (observation != null) {
+                return observation;
+            }
+            skipped++;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // "Local time";"T";"Po";"P";"Pa";"U";"DD";"Ff";"ff10";"ff3";"N";"WW";"W1";"W2";"Tn";"Tx";"Cl";"Nh";
+    // "H";"Cm";"Ch";"VV";"Td";"RRR";"tR";"E";"Tg";"E'";"sss"
+    private Observation decode() {
+        int column = 0;
+        try {
+            Observation observation = new Observation();
+            observation.setWeatherStationId(weatherStationId);
+            observation.setDate(new Date(dateParser.parse(buffer, start(column), length(column++))));
+            observation.setT(number(column++));
+            observation.setPO(number(column++));
+            observation.setP(number(column++));
+            observation.setPA(number(column++));
+            observation.setU(number(column++));
+            observation.setDd(direction(column++));
+            observation.setFf(string(column++));
+            observation.setFf10(string(column++));
+            observation.setFf3(string(column++));
+            observation.setN(string(column++));
+            observation.setWw(string(column++));
+            observation.setW1(string(column++));
+            observation.setW2(string(column++));
+            observation.setTn(number(column++));
+            observation.setTx(number(column++));
+            observation.setCl(string(column++));
+            observation.setNh(string(column++));
+            observation.setH(string(column++));
+            observation.setCm(string(column++));
+            observation.setCh(string(column++));
+            observation.setVv(number(column++));
+            observation.setTd(number(column++));
+            observation.setRrr(number(column++));
+            observation.setTr(number(column++));
+            observation.setE(string(column++));
+            observation.setTg(number(column++));
+            observation.setEApostrophe(string(column++));
+            observation.setSss(number(column));
+            return observation;
+        } catch (IllegalArgumentException e) {
+            LOG.error(String.format("Unparseable record %d in %s column: %s", records, column, e.getMessage()));
+            return null;
+        }
+    }
+
+    private int start(int column) {
+        return column < fields ? starts[column] : 0;
+    }
+
+    private int length(int column) {
+        return column < fields ? ends[column] - starts[column] : 0;
+    }
+
+    private Float number(int column) {
+        int length = length(column);
+        if (length == 0) {
+            return null;
+        }
+        int offset = start(column);
+        int end = offset + length;
+        int i = offset;
+
+        boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c >= '0' && c <= '9') {
+                // stop accumulating before the mantissa overflows, the slow path takes over
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                digits++;
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                // not a plain decimal, e.g. "Trace of precipitation"
+                return null;
+            }
+        }
+        if (digits == 0 || fraction == 0) {
+            return null;
+        }
+        fraction = Math.max(fraction, 0);
+        if (digits > MAX_DIGITS || mantissa >= MAX_EXACT_MANTISSA || fraction >= POWERS_OF_TEN.length) {
+            return Float.parseFloat(new String(buffer, offset, length));
+        }
+        // both operands are exact, so the quotient is rounded once, like Float.parseFloat
+        float value = mantissa / POWERS_OF_TEN[fraction];
+        return negative ? -value : value;
+    }
+
+    private WindDirection direction(int column) {
+        int length = length(column);
+        if (length == 0) {
+            return null;
+        }
+        WindDirection direction = WindDirection.fromChars(buffer, start(column), length);
+        if (direction == null) {
+            throw new IllegalArgumentException("No wind direction for string: "
+                + new String(buffer, start(column), length));
+        }
+        return direction;
+    }
+
+    private String string(int column) {
+        int length = length(column);
+        if (length == 0) {
+            return "";
+        }
+        int offset = start(column);
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + buffer[i];
+        }
+        int slot = (h ^ (h >>> 16)) & (STRING_CACHE_SIZE - 1);
+
+        String cached = strings[slot];
+        if (cached != null && cached.length() == length && matches(cached, offset)) {
+            return cached;
+        }
+        String text = new String(buffer, offset, length);
+        strings[slot] = text;
+        return text;
+    }
+
+    private boolean matches(String text, int offset) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* read the next non-empty, non-comment record and split it into fields */
+
+    private boolean readRecord() throws IOException {
+        while (true) {
+            int end = findRecordEnd();
+            if (end < 0) {
+                if (!eof) {
+                    fill();
+                    continue;
+                }
+                if (position >= limit) {
+                    return false;
+                }
+                end = limit;
+                scan = limit;
+            }
+
+            int from = position;
+            int to = end > from && buffer[end - 1] == '\r' ? end - 1 : end;
+            position = scan;
+
+            if (!started) {
+                started = true;
+                if (from < to && buffer[from] == BYTE_ORDER_MARK) {
+                    from++;
+                }
+            }
+            if (from < to && buffer[from] != COMMENT) {
+                split(from, to);
+                return true;
+            }
+        }
+    }
+
+    /* find the end of line of the current record, quoted line breaks don't count */
+
+    private int findRecordEnd() {
+        for (; scan < limit; scan++) {
+            char c = buffer[scan];
+            if (c == QUOTE) {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                return scan++;
+            }
+        }
+        return -1;
+    }
+
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            scan -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /* split a record into fields, unescaping doubled quotes in place */
+
+    private void split(int from, int to) {
+        fields = 0;
+        int i = from;
+        while (true) {
+            int start = i;
+            int end;
+            if (i < to && buffer[i] == QUOTE) {
+                start = ++i;
+                int write = start;
+                while (i < to) {
+                    char c = buffer[i++];
+                    if (c == QUOTE) {
+                        if (i < to && buffer[i] == QUOTE) {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    buffer[write++] = c;
+                }
+                end = write;
+                while (i < to && buffer[i] != SEPARATOR) {
+                    i++;
+                }
+            } else {
+                while (i < to && buffer[i] != SEPARATOR) {
+                    i++;
+                }
+                end = i;
+            }
+            addField(start, end);
+            if (i >= to) {
+                return;
+            }
+            i++;
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+        }
+        starts[fields] = start;
+        ends[fields] = end;
+        fields++;
+    }
+}
@@ -56,6 +56,22 @@ public enum WindDirection {
     SOUTH_SOUTHEAST("Wind blowing from the south-southeast"),
     SOUTH_SOUTHWEST("Wind blowing from the south-southwest");
 
+    /**
+     * Open addressing table of directions, indexed by case-insensitive hash of the description
+     */
+    private static final WindDirection[] TABLE = new WindDirection[64];
+
+    static {
+        for (WindDirection windDirection : values()) {
+            char[] text = windDirection.description.toCharArray();
+            int i = hash(text, 0, text.length) & (TABLE.length - 1);
+            while (TABLE[i] != null) {
+                i = (i + 1) & (TABLE.length - 1);
+            }
+            TABLE[i] = windDirection;
+        }
+    }
+
     private final String description;
 
     WindDirection(String description) {
@@ -70,12 +86,52 @@ public enum WindDirection {
         if (text == null || text.isEmpty()) {
             return null;
         }
-        for (WindDirection windDirection : WindDirection.values()) {
-            if (windDirection.getDescription().equalsIgnoreCase(text)) {
-                return windDirection;
+        WindDirection windDirection = fromChars(text.toCharArray(), 0, text.length());
+        if (windDirection == null) {
+            throw new IllegalArgumentException("No wind direction for string: " + text);
+        }
+        return windDirection;
+    }
+
+    /**
+     * Find a direction by its description without creating a string
+     *
+     * @param chars  buffer containing the description
+     * @param offset start of the description
+     * @param length length of the description
+     * @return direction or null if the text is not a known description
+     */
+    public static WindDirection fromChars(char[] chars, int offset, int length) {
+        int i = hash(chars, offset, length) & (TABLE.length - 1);
+        for (WindDirection candidate = TABLE[i]; candidate != null; candidate = TABLE[i]) {
+            if (candidate.matches(chars, offset, length)) {
+                return candidate;
             }
+            i = (i + 1) & (TABLE.length - 1);
+        }
+        return null;
+    }
+
+    private boolean matches(char[] chars, int offset, int length) {
+        if (description.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char a = description.charAt(i);
+            char b = chars[offset + i];
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] chars, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + Character.toLowerCase(chars[i]);
         }
-        throw new IllegalArgumentException("No wind direction for string: " + text);
+        return h ^ (h >>> 16);
     }
 
 }
@@ -0,0 +1,82 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of observations of one station with the given wind direction over a calendar
+ * period, a bar of a wind rose
+ *
+ * @author Anton Troshin
+ */
+@Entity
+@Table(name = "wind_rollups", uniqueConstraints = @UniqueConstraint(
+    columnNames = {"weather_station_id", "period", "period_start", "direction"}))
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class WindRollup extends BaseEntity<Long> {
+    /**
+     * Weather station unique id
+     */
+    @Column(name = "weather_station_id", nullable = false)
+    private Integer weatherStationId;
+    /**
+     * Length of the period
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "period", nullable = false, length = 8)
+    private RollupPeriod period;
+    /**
+     * Local start time of the period
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    @Column(name = "period_start", nullable = false)
+    private Date periodStart;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "direction", nullable = false, length = 32)
+    private WindDirection direction;
+    /**
+     * Number of observations with this direction
+     */
+    @Column(name = "value_count", nullable = false)
+    private long count;
+}
@@ -25,9 +25,8 @@ package jworkspace.weather;
   ----------------------------------------------------------------------------
 */
 
-import java.util.List;
-
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
@@ -43,6 +42,8 @@ public class ImportPipelineTest {
 
     private static final int TEST_DATA_SIZE = 52018;
 
+    private static final int BATCH_SIZE = 500;
+
     private SessionFactory sessionFactory;
 
     private Session session = null;
@@ -56,6 +57,7 @@ public class ImportPipelineTest {
         configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
         configuration.setProperty("hibernate.connection.url", "jdbc:h2:./test/resources/db/mem");
         configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.setProperty("hibernate.jdbc.batch_size", String.valueOf(BATCH_SIZE));
         sessionFactory = configuration.buildSessionFactory();
         session = sessionFactory.openSession();
     }
@@ -63,16 +65,30 @@ public class ImportPipelineTest {
     @Test
     public void test() {
 
-        List<Observation> result = new CsvReader(true, "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv").read();
-        result.addAll(new CsvReader(true, "27612.01.02.2006.01.02.2010.1.0.0.en.unic.00000000.csv").read());
-        result.addAll(new CsvReader(true, "27612.01.02.2010.01.02.2015.1.0.0.en.unic.00000000.csv").read());
-        result.addAll(new CsvReader(true, "27612.01.02.2015.28.07.2019.1.0.0.en.unic.00000000.csv").read());
-        assertEquals(result.size(), TEST_DATA_SIZE);
+        ImportStatistics statistics = new ImportPipeline<Observation>(sessionFactory)
+            .setBatchSize(BATCH_SIZE)
+            .run(new CsvReader(true, "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv"),
+                new CsvReader(true, "27612.01.02.2006.01.02.2010.1.0.0.en.unic.00000000.csv"),
+                new CsvReader(true, "27612.01.02.2010.01.02.2015.1.0.0.en.unic.00000000.csv"),
+                new CsvReader(true, "27612.01.02.2015.28.07.2019.1.0.0.en.unic.00000000.csv"));
+        assertEquals(statistics.getRecords(), TEST_DATA_SIZE);
+        assertEquals(countRows(), statistics.getRows());
+    }
 
-        for (Observation observation : result) {
-            session.save(observation);
-        }
+    @Test
+    public void testStreaming() {
+
+        ImportStatistics statistics = new ImportPipeline<Observation>(sessionFactory)
+            .setBatchSize(BATCH_SIZE)
+            .setCommitInterval(BATCH_SIZE * 2)
+            .run(new CsvReader(true, "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv"));
+        assertTrue(statistics.getRows() > 0);
+        assertEquals(statistics.getRows() + statistics.getSkipped(), statistics.getRecords());
+        assertEquals(countRows(), statistics.getRows());
+    }
 
+    private long countRows() {
+        return (Long) session.createQuery("select count(o) from Observation o").uniqueResult();
     }
 
     @After
@@ -0,0 +1,228 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * @author Anton Troshin
+ */
+public class IngestionCoordinatorTest {
+
+    private static final String RP5_FILE = "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv";
+
+    private static final int OTHER_STATION = 27611;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void before() {
+        Configuration configuration = new Configuration();
+        configuration.addAnnotatedClass(Observation.class);
+        configuration.addAnnotatedClass(IngestedFile.class);
+        configuration.addAnnotatedClass(Rollup.class);
+        configuration.addAnnotatedClass(WindRollup.class);
+        configuration.addAnnotatedClass(ImportCheckpoint.class);
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        configuration.setProperty("hibernate.connection.url", "jdbc:h2:mem:ingestion;DB_CLOSE_DELAY=-1");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        configuration.setProperty("hibernate.jdbc.batch_size", "500");
+        sessionFactory = configuration.buildSessionFactory();
+    }
+
+    @Test
+    public void testIngestion() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        byte[] content;
+        try (InputStream in = AbstractCsvReader.class.getResourceAsStream(RP5_FILE)) {
+            content = ByteStreams.toByteArray(in);
+        }
+        Files.write(directory.resolve(RP5_FILE), content);
+        // a renamed export of another station, described by its comment header
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(directory.resolve("other.csv")),
+            Charset.forName(CsvReader.ENCODING))) {
+            writer.write("# Weather station Moscow, Russia, WMO_ID=" + OTHER_STATION
+                + ",selection from 01.02.2005 till 01.02.2006, all days\n");
+            writer.write(new String(content, CsvReader.ENCODING).replace("\uFEFF", ""));
+        }
+        // an exact copy of the first file
+        try (OutputStream out = Files.newOutputStream(directory.resolve("27612.01.02.2005.01.02.2006.copy.csv"))) {
+            out.write(content);
+        }
+
+        Rp5File other = Rp5File.detect(directory.resolve("other.csv"));
+        assertEquals(other.getStationId(), OTHER_STATION);
+        assertEquals(other.getTill(), LocalDate.of(2006, 2, 1));
+
+        IngestionReport report = new IngestionCoordinator(sessionFactory).setThreads(2).ingest(directory);
+        assertEquals(report.count(IngestionReport.Status.IMPORTED), 2);
+        assertEquals(report.count(IngestionReport.Status.SKIPPED), 1);
+        long rows = countRows(CsvReader.VDNH_STATION_ID);
+        assertEquals(countRows(OTHER_STATION), rows);
+        assertEquals(report.getRows(), 2 * rows);
+
+        // the second run has nothing to do
+        report = new IngestionCoordinator(sessionFactory).ingest(directory);
+        assertEquals(report.count(IngestionReport.Status.SKIPPED), 3);
+        assertEquals(report.getRows(), 0);
+        assertEquals(countRows(CsvReader.VDNH_STATION_ID), rows);
+    }
+
+    @Test
+    public void testIncrementalReimport() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        String content;
+        try (InputStream in = AbstractCsvReader.class.getResourceAsStream(RP5_FILE)) {
+            content = new String(ByteStreams.toByteArray(in), CsvReader.ENCODING).replace("\uFEFF", "");
+        }
+        List<String> lines = new ArrayList<>(Arrays.asList(content.split("\r\n")));
+        String header = lines.remove(0);
+        int half = lines.size() / 2;
+
+        // an export listing the newest observations first, downloaded again a year later
+        Path latest = directory.resolve("27612.01.02.2005.01.02.2006.latest.csv");
+        write(latest, header, lines.subList(half, lines.size()), false);
+        IngestionReport report = new IngestionCoordinator(sessionFactory).ingest(directory);
+        long rows = countRows(CsvReader.VDNH_STATION_ID);
+        assertEquals(report.getRows(), rows);
+
+        write(latest, header, lines, false);
+        report = new IngestionCoordinator(sessionFactory).ingest(directory);
+        ImportStatistics statistics = imported(report);
+        // reading stops right after the first observation imported before
+        assertEquals(statistics.getRecords(), half + 1);
+        long newRows = countRows(CsvReader.VDNH_STATION_ID) - rows;
+        assertTrue(newRows > 0);
+        assertEquals(statistics.getRows(), newRows);
+        rows += newRows;
+
+        // a file of the other station growing at its end, oldest observations first
+        List<String> ascending = new ArrayList<>(lines);
+        Collections.reverse(ascending);
+        Path growing = directory.resolve(OTHER_STATION + ".01.02.2005.01.02.2006.growing.csv");
+        write(growing, header, ascending.subList(0, half), false);
+        new IngestionCoordinator(sessionFactory).ingest(directory);
+        write(growing, null, ascending.subList(half, ascending.size()), true);
+        report = new IngestionCoordinator(sessionFactory).ingest(directory);
+        // only the appended part is read
+        assertEquals(imported(report).getRecords(), lines.size() - half);
+        assertEquals(countRows(OTHER_STATION), rows);
+
+        // an overlapping export with a corrected temperature
+        List<String> corrected = new ArrayList<>(lines);
+        corrected.set(0, lines.get(0).replaceFirst("^(\"[^\"]*\";)\"[^\"]*\"", "$1\"-40.5\""));
+        write(directory.resolve(OTHER_STATION + ".01.02.2005.01.02.2006.overlap.csv"), header, corrected, false);
+        report = new IngestionCoordinator(sessionFactory).ingest(directory);
+        assertEquals(report.getRows(), 1);
+        assertEquals(countRows(OTHER_STATION), rows);
+
+        // rollups have been kept in step with all of the above
+        Date from = new Rp5DateParser().parse("01.01.2005 00:00");
+        Date to = new Rp5DateParser().parse("01.01.2007 00:00");
+        RollupQuery query = new RollupQuery(sessionFactory);
+        for (int station : new int[] {CsvReader.VDNH_STATION_ID, OTHER_STATION}) {
+            Aggregate temperature = query.aggregate(station, ObservationParameter.T, from, to);
+            try (Session session = sessionFactory.openSession()) {
+                Object[] expected = (Object[]) session.createQuery("select count(o.t), min(o.t), sum(o.t)"
+                    + " from Observation o where o.weatherStationId = :station")
+                    .setParameter("station", station).uniqueResult();
+                assertEquals(temperature.getCount(), expected[0]);
+                assertEquals(temperature.getMin(), ((Number) expected[1]).doubleValue());
+                assertEquals(temperature.getSum(), ((Number) expected[2]).doubleValue(), 0.01);
+            }
+        }
+        assertEquals(query.aggregate(OTHER_STATION, ObservationParameter.T, from, to).getMin(), -40.5, 0.001);
+    }
+
+    private static ImportStatistics imported(IngestionReport report) {
+        for (IngestionReport.FileReport file : report.getFiles()) {
+            if (file.getStatus() == IngestionReport.Status.IMPORTED) {
+                return file.getStatistics();
+            }
+        }
+        throw new AssertionError("No file imported: " + report);
+    }
+
+    private static void write(Path path, String header, List<String> lines, boolean append) throws IOException {
+        try (Writer writer = new OutputStreamWriter(append
+            ? Files.newOutputStream(path, StandardOpenOption.APPEND) : Files.newOutputStream(path),
+            Charset.forName(CsvReader.ENCODING))) {
+            if (header != null) {
+                writer.write(header + "\r\n");
+            }
+            for (String line : lines) {
+                writer.write(line + "\r\n");
+            }
+        }
+    }
+
+    private long countRows(int stationId) {
+        try (Session session = sessionFactory.openSession()) {
+            List<?> result = session.createQuery(
+                "select count(o) from Observation o where o.weatherStationId = :station")
+                .setParameter("station", stationId).list();
+            return (Long) result.get(0);
+        }
+    }
+
+    @After
+    public void after() {
+        sessionFactory.close();
+    }
+}
@@ -0,0 +1,95 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Anton Troshin
+ */
+public class ObservationSnapshotTest {
+
+    private static final String RP5_FILE = "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ObservationStore store = new ObservationStore();
+        new CsvReader(true, RP5_FILE).stream(store::add);
+        ObservationStore.Slice slice = store.scan(CsvReader.VDNH_STATION_ID, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(slice.size() > 0);
+
+        Path path = folder.getRoot().toPath().resolve("27612.snapshot");
+        ObservationSnapshot.write(slice, path);
+        // scaled shorts instead of floats, short dictionary indexes
+        assertTrue(Files.size(path) < slice.size() * 64L);
+
+        ObservationSnapshot snapshot = ObservationSnapshot.open(path);
+        assertEquals(snapshot.getStation(), CsvReader.VDNH_STATION_ID);
+        assertEquals(snapshot.size(), slice.size());
+        assertSameRows(slice, snapshot);
+
+        // loaded into another store, the texts are encoded with its dictionary
+        ObservationStore copy = new ObservationStore();
+        copy.getDictionary().encode("not in the archive");
+        copy.add(snapshot.toSlice(copy.getDictionary()));
+        assertSameRows(copy.scan(CsvReader.VDNH_STATION_ID, Long.MIN_VALUE, Long.MAX_VALUE), snapshot);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot() throws IOException {
+        Path path = folder.newFile("empty.snapshot").toPath();
+        Files.write(path, new byte[64]);
+        ObservationSnapshot.open(path);
+    }
+
+    private static void assertSameRows(ObservationStore.Slice slice, ObservationSnapshot snapshot) {
+        assertEquals(slice.size(), snapshot.size());
+        for (int row = 0; row < slice.size(); row++) {
+            assertEquals(snapshot.time(row), slice.time(row));
+            for (ObservationParameter parameter : ObservationParameter.values()) {
+                assertEquals(Float.floatToIntBits(snapshot.value(parameter, row)),
+                    Float.floatToIntBits(slice.value(parameter, row)), parameter + " in row " + row);
+            }
+            for (ObservationCode code : ObservationCode.values()) {
+                assertEquals(snapshot.text(code, row), slice.text(code, row));
+            }
+            assertEquals(snapshot.direction(row), slice.direction(row));
+        }
+    }
+}
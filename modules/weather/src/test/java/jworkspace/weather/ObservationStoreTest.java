@@ -0,0 +1,113 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.util.Date;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class ObservationStoreTest {
+
+    private static final long HOUR = 3600_000L;
+
+    @Test
+    public void testRangeScan() {
+        ObservationStore store = new ObservationStore();
+        // archives list the newest rows first
+        for (int hour = 99; hour >= 0; hour--) {
+            store.add(observation(1, hour, (float) hour, hour % 2 == 0 ? "Clear" : "Rain"));
+        }
+        store.add(observation(2, 5, null, null));
+        store.add(observation(2, 3, 3f, "Clear"));
+        store.add(observation(2, 4, 4f, "Snow"));
+
+        assertEquals(store.size(), 103);
+        assertEquals(store.getStations(), new int[]{1, 2});
+
+        ObservationStore.Slice slice = store.scan(1, 10 * HOUR, 20 * HOUR);
+        assertEquals(slice.size(), 10);
+        for (int row = 0; row < slice.size(); row++) {
+            assertEquals(slice.time(row), (10 + row) * HOUR);
+            assertEquals(slice.value(ObservationParameter.T, row), 10f + row);
+            assertEquals(slice.text(ObservationCode.WW, row), row % 2 == 0 ? "Clear" : "Rain");
+            assertEquals(slice.direction(row), WindDirection.NORTH);
+        }
+
+        slice = store.scan(2, new Date(0), new Date(10 * HOUR));
+        assertEquals(slice.size(), 3);
+        assertEquals(slice.value(ObservationParameter.T, 1), 4f);
+        assertTrue(slice.isNull(ObservationParameter.T, 2));
+        assertNull(slice.text(ObservationCode.WW, 2));
+        assertEquals(slice.code(ObservationCode.WW, 0), store.getDictionary().lookup("Clear"));
+        assertEquals(store.getDictionary().size(), 3);
+
+        List<ObservationStore.Slice> slices = store.scan(4 * HOUR, 5 * HOUR);
+        assertEquals(slices.size(), 2);
+        assertEquals(slices.get(1).size(), 1);
+        assertEquals(store.scan(3, 0, HOUR).size(), 0);
+    }
+
+    @Test
+    public void testSlicesSurviveLaterAdds() {
+        ObservationStore store = new ObservationStore();
+        for (int hour = 0; hour < 2000; hour += 2) {
+            store.add(observation(1, hour, (float) hour, null));
+        }
+        ObservationStore.Slice slice = store.scan(1, 0, 10 * HOUR);
+
+        // grows the arrays and forces a resort
+        for (int hour = 1; hour < 2000; hour += 2) {
+            store.add(observation(1, hour, (float) hour, null));
+        }
+        assertEquals(slice.size(), 5);
+        assertEquals(slice.value(ObservationParameter.T, 4), 8f);
+
+        slice = store.scan(1, 0, 2000 * HOUR);
+        assertEquals(slice.size(), 2000);
+        for (int row = 0; row < slice.size(); row++) {
+            assertEquals(slice.value(ObservationParameter.T, row), (float) row);
+        }
+    }
+
+    private static Observation observation(int station, int hour, Float t, String ww) {
+        Observation observation = new Observation();
+        observation.setWeatherStationId(station);
+        observation.setDate(new Date(hour * HOUR));
+        observation.setT(t);
+        observation.setWw(ww);
+        observation.setDd(WindDirection.NORTH);
+        return observation;
+    }
+}
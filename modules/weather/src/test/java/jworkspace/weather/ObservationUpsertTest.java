@@ -0,0 +1,101 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class ObservationUpsertTest {
+
+    private static final int STATION = 27612;
+
+    private static final long HOUR = 3600000L;
+
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void before() {
+        Configuration configuration = new Configuration();
+        configuration.addAnnotatedClass(Observation.class);
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        configuration.setProperty("hibernate.connection.url", "jdbc:h2:mem:upsert;DB_CLOSE_DELAY=-1");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        configuration.setProperty("hibernate.jdbc.batch_size", "500");
+        sessionFactory = configuration.buildSessionFactory();
+    }
+
+    @Test
+    public void testDuplicatesAcrossChunks() {
+        ObservationUpsert upsert = new ObservationUpsert();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            // chunks of a file listing the newest observations first, overlapping at their edges
+            assertEquals(upsert.write(session, chunk(5, 4, 3, 3)), 4);
+            assertEquals(upsert.write(session, chunk(3, 2, 1)), 3);
+            assertEquals(upsert.write(session, chunk(1, 0)), 2);
+            transaction.commit();
+        }
+        assertEquals(upsert.getInserted(), 6);
+        assertEquals(upsert.getUpdated(), 3);
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            assertEquals(((Number) session.createQuery("select count(o) from Observation o")
+                .uniqueResult()).intValue(), 6);
+        }
+    }
+
+    private static List<Observation> chunk(int... hours) {
+        List<Observation> chunk = new ArrayList<>();
+        for (int hour : hours) {
+            Observation observation = new Observation();
+            observation.setWeatherStationId(STATION);
+            observation.setDate(new Date(hour * HOUR));
+            observation.setT((float) chunk.size());
+            chunk.add(observation);
+        }
+        return chunk;
+    }
+
+    @After
+    public void after() {
+        sessionFactory.close();
+    }
+}
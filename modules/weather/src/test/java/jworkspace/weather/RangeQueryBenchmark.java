@@ -0,0 +1,175 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.flywaydb.core.Flyway;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Measures station range queries over a synthetic observation table with and without
+ * the {@link Observation#NATURAL_KEY} index, along with the batched load of the table.
+ * The schema is created by the h2 migrations, so the measured table is the one that is deployed.
+ * Run with <code>java jworkspace.weather.RangeQueryBenchmark [stations] [years] [queries]</code>.
+ *
+ * @author Anton Troshin
+ */
+@SuppressWarnings("MagicNumber")
+public final class RangeQueryBenchmark {
+
+    private static final int STATIONS = 20;
+
+    private static final int YEARS = 5;
+
+    private static final int QUERIES = 500;
+
+    private static final int FIRST_YEAR = 2005;
+
+    private static final int OBSERVATIONS_PER_DAY = 8;
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String URL = "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private static final String RANGE_QUERY = "select count(o), avg(o.t) from Observation o"
+        + " where o.weatherStationId = :station and o.date >= :from and o.date < :to";
+
+    private RangeQueryBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int stations = args.length > 0 ? Integer.parseInt(args[0]) : STATIONS;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : YEARS;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : QUERIES;
+
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(URL, "sa", "");
+        flyway.setLocations("classpath:db/migration/h2");
+        flyway.migrate();
+
+        Configuration configuration = new Configuration();
+        configuration.addAnnotatedClass(Observation.class);
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        configuration.setProperty("hibernate.connection.url", URL);
+        configuration.setProperty("hibernate.connection.username", "sa");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "validate");
+        configuration.setProperty("hibernate.jdbc.batch_size", String.valueOf(CHUNK_SIZE));
+
+        try (SessionFactory sessionFactory = configuration.buildSessionFactory()) {
+            Stopwatch load = Stopwatch.createStarted();
+            long rows = load(sessionFactory, stations, years);
+            load.stop();
+            report("load", rows, "rows", load);
+
+            execute(sessionFactory, "drop index " + Observation.NATURAL_KEY);
+            ranges(sessionFactory, stations, years, queries / 10);
+            Stopwatch scan = Stopwatch.createStarted();
+            ranges(sessionFactory, stations, years, queries);
+            report("no index", queries, "queries", scan.stop());
+
+            execute(sessionFactory, "create unique index " + Observation.NATURAL_KEY
+                + " on observations (weather_station_id, date)");
+            ranges(sessionFactory, stations, years, queries / 10);
+            Stopwatch seek = Stopwatch.createStarted();
+            ranges(sessionFactory, stations, years, queries);
+            report("natural key", queries, "queries", seek.stop());
+        }
+    }
+
+    private static long load(SessionFactory sessionFactory, int stations, int years) {
+        Random random = new Random(1);
+        long rows = 0;
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (int station = 0; station < stations; station++) {
+                LocalDateTime time = LocalDateTime.of(FIRST_YEAR, 1, 1, 0, 0);
+                LocalDateTime end = time.plusYears(years);
+                for (; time.isBefore(end); time = time.plusHours(24 / OBSERVATIONS_PER_DAY)) {
+                    Observation observation = new Observation();
+                    observation.setWeatherStationId(CsvReader.VDNH_STATION_ID + station);
+                    observation.setDate(Date.from(time.atZone(ZONE).toInstant()));
+                    observation.setT((float) (random.nextGaussian() * 10));
+                    session.insert(observation);
+                    if (++rows % CHUNK_SIZE == 0) {
+                        transaction.commit();
+                        transaction = session.beginTransaction();
+                    }
+                }
+            }
+            transaction.commit();
+        }
+        return rows;
+    }
+
+    /**
+     * Runs month long range queries of random stations, returns the number of matched rows
+     */
+    private static long ranges(SessionFactory sessionFactory, int stations, int years, int queries) {
+        Random random = new Random(2);
+        long rows = 0;
+        try (Session session = sessionFactory.openSession()) {
+            for (int i = 0; i < queries; i++) {
+                LocalDateTime from = LocalDateTime.of(FIRST_YEAR + random.nextInt(years),
+                    1 + random.nextInt(12), 1, 0, 0);
+                Object[] result = (Object[]) session.createQuery(RANGE_QUERY)
+                    .setParameter("station", CsvReader.VDNH_STATION_ID + random.nextInt(stations))
+                    .setParameter("from", Date.from(from.atZone(ZONE).toInstant()))
+                    .setParameter("to", Date.from(from.plusMonths(1).atZone(ZONE).toInstant()))
+                    .uniqueResult();
+                rows += (Long) result[0];
+            }
+        }
+        return rows;
+    }
+
+    private static void execute(SessionFactory sessionFactory, String sql) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            session.createSQLQuery(sql).executeUpdate();
+            transaction.commit();
+        }
+    }
+
+    private static void report(String name, long count, String unit, Stopwatch stopwatch) {
+        long millis = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1);
+        System.out.println(String.format("%-12s %d %s in %d ms, %d %s/s", name, count, unit, millis,
+            count * TimeUnit.SECONDS.toMillis(1) / millis, unit));
+    }
+}
@@ -0,0 +1,322 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.flywaydb.core.Flyway;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * @author Anton Troshin
+ */
+public class RollupQueryTest {
+
+    private static final String RP5_FILE = "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv";
+
+    private static final int STATION = CsvReader.VDNH_STATION_ID;
+
+    private static final int OTHER_STATION = 27611;
+
+    private static final Rp5DateParser DATES = new Rp5DateParser();
+
+    private static final double DELTA = 0.01;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void before() throws IOException {
+        sessionFactory = configure("jdbc:h2:mem:rollups;DB_CLOSE_DELAY=-1")
+            .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+            .buildSessionFactory();
+
+        Path directory = folder.getRoot().toPath();
+        try (InputStream in = AbstractCsvReader.class.getResourceAsStream(RP5_FILE)) {
+            Files.write(directory.resolve(RP5_FILE), ByteStreams.toByteArray(in));
+        }
+        new IngestionCoordinator(sessionFactory).ingest(directory);
+    }
+
+    @Test
+    public void testMigrations() throws SQLException {
+        assertMigrations("jdbc:h2:mem:migrations;DB_CLOSE_DELAY=-1", "h2", "org.hibernate.dialect.H2Dialect");
+    }
+
+    @Test
+    public void testHsqldbMigrations() throws SQLException {
+        assertMigrations("jdbc:hsqldb:mem:migrations", "hsqldb", "org.hibernate.dialect.HSQLDialect");
+    }
+
+    @Test
+    public void testPopulatedMigrations() throws SQLException {
+        assertPopulatedMigration("jdbc:h2:mem:populated;DB_CLOSE_DELAY=-1", "h2");
+        assertPopulatedMigration("jdbc:hsqldb:mem:populated", "hsqldb");
+    }
+
+    @Test
+    public void testRangeQueries() {
+        Date from = DATES.parse("15.03.2005 06:00");
+        Date to = DATES.parse("20.11.2005 00:00");
+        RollupQuery query = new RollupQuery(sessionFactory);
+
+        for (ObservationParameter parameter : new ObservationParameter[] {
+            ObservationParameter.T, ObservationParameter.P, ObservationParameter.RRR}) {
+            assertAggregate(query.aggregate(STATION, parameter, from, to), scan(parameter, from, to));
+        }
+
+        Date year = DATES.parse("01.01.2005 00:00");
+        Date nextYear = DATES.parse("01.01.2006 00:00");
+        List<Aggregate> months = query.series(STATION, ObservationParameter.RRR, RollupPeriod.MONTH, year, nextYear);
+        assertEquals(months.size(), 11);
+        long count = 0;
+        double sum = 0;
+        for (Aggregate month : months) {
+            count += month.getCount();
+            sum += month.getSum();
+        }
+        Aggregate total = scan(ObservationParameter.RRR, year, nextYear);
+        assertEquals(count, total.getCount());
+        assertEquals(sum, total.getSum(), DELTA);
+
+        long directions = 0;
+        for (long bar : query.windRose(STATION, from, to).values()) {
+            directions += bar;
+        }
+        try (Session session = sessionFactory.openSession()) {
+            assertEquals(directions, session.createQuery("select count(o.dd) from Observation o"
+                + " where o.weatherStationId = :station and o.date >= :from and o.date < :to")
+                .setParameter("station", STATION).setParameter("from", from).setParameter("to", to)
+                .uniqueResult());
+        }
+    }
+
+    @Test
+    public void testIncrementalMerge() {
+        List<?> observations;
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            observations = session.createQuery("from Observation o where o.weatherStationId = :station")
+                .setParameter("station", STATION).list();
+        }
+
+        // the same observations for another station, merged in two parts that share periods
+        RollupEngine engine = new RollupEngine();
+        int half = observations.size() / 2;
+        merge(engine, observations.subList(0, half));
+        merge(engine, observations.subList(half, observations.size()));
+
+        Date from = DATES.parse("01.02.2005 00:00");
+        Date to = DATES.parse("02.02.2006 00:00");
+        RollupQuery query = new RollupQuery(sessionFactory);
+        Aggregate expected = query.aggregate(STATION, ObservationParameter.T, from, to);
+        assertTrue(expected.getCount() > 0);
+        assertAggregate(query.aggregate(OTHER_STATION, ObservationParameter.T, from, to), expected);
+        Map<WindDirection, Long> rose = query.windRose(STATION, from, to);
+        assertEquals(query.windRose(OTHER_STATION, from, to), rose);
+
+        assertEquals(engine.rebuild(sessionFactory, STATION), observations.size());
+        assertAggregate(query.aggregate(STATION, ObservationParameter.T, from, to), expected);
+        assertEquals(query.windRose(STATION, from, to), rose);
+    }
+
+    @Test
+    public void testFlushedMerge() {
+        List<?> observations;
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            observations = session.createQuery("from Observation o where o.weatherStationId = :station"
+                + " order by o.date").setParameter("station", STATION).list();
+        }
+
+        // finished periods are written after every chunk, the periods of the last chunk at the end
+        RollupEngine engine = new RollupEngine();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (int i = 0; i < observations.size(); i += 100) {
+                for (Object item : observations.subList(i, Math.min(i + 100, observations.size()))) {
+                    Observation observation = (Observation) item;
+                    observation.setWeatherStationId(OTHER_STATION);
+                    engine.add(observation);
+                }
+                engine.flush(session);
+                assertFalse(engine.isEmpty());
+            }
+            assertTrue(engine.merge(session) > 0);
+            transaction.commit();
+        }
+        assertTrue(engine.isEmpty());
+
+        Date from = DATES.parse("01.02.2005 00:00");
+        Date to = DATES.parse("02.02.2006 00:00");
+        RollupQuery query = new RollupQuery(sessionFactory);
+        for (ObservationParameter parameter : new ObservationParameter[] {
+            ObservationParameter.T, ObservationParameter.P, ObservationParameter.RRR}) {
+            assertAggregate(query.aggregate(OTHER_STATION, parameter, from, to),
+                query.aggregate(STATION, parameter, from, to));
+        }
+        assertEquals(query.windRose(OTHER_STATION, from, to), query.windRose(STATION, from, to));
+    }
+
+    private void merge(RollupEngine engine, List<?> observations) {
+        for (Object item : observations) {
+            Observation observation = (Observation) item;
+            observation.setWeatherStationId(OTHER_STATION);
+            engine.add(observation);
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            assertTrue(engine.merge(session) > 0);
+            transaction.commit();
+        }
+        assertTrue(engine.isEmpty());
+    }
+
+    private Aggregate scan(ObservationParameter parameter, Date from, Date to) {
+        String column = "o." + parameter.getProperty();
+        try (Session session = sessionFactory.openSession()) {
+            Object[] row = (Object[]) session.createQuery("select count(" + column + "), min(" + column + "), max("
+                + column + "), sum(" + column + ") from Observation o where o.weatherStationId = :station"
+                + " and o.date >= :from and o.date < :to")
+                .setParameter("station", STATION).setParameter("from", from).setParameter("to", to)
+                .uniqueResult();
+            return new Aggregate(from, (Long) row[0], ((Number) row[1]).doubleValue(),
+                ((Number) row[2]).doubleValue(), ((Number) row[3]).doubleValue());
+        }
+    }
+
+    private static void assertAggregate(Aggregate actual, Aggregate expected) {
+        assertEquals(actual.getCount(), expected.getCount());
+        assertEquals(actual.getMin(), expected.getMin());
+        assertEquals(actual.getMax(), expected.getMax());
+        assertEquals(actual.getSum(), expected.getSum(), DELTA);
+    }
+
+    private static void assertMigrations(String url, String vendor, String dialect) throws SQLException {
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(url, "sa", "");
+        flyway.setLocations("classpath:db/migration/" + vendor);
+        assertEquals(flyway.migrate(), 5);
+
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             ResultSet sequence = connection.createStatement().executeQuery("SELECT INCREMENT"
+                 + " FROM INFORMATION_SCHEMA.SEQUENCES WHERE UPPER(SEQUENCE_NAME) = 'HIBERNATE_SEQUENCE'")) {
+            assertTrue(sequence.next());
+            assertEquals(sequence.getLong(1), BaseEntity.ID_ALLOCATION_SIZE);
+        }
+
+        Configuration configuration = new Configuration();
+        configuration.addAnnotatedClass(Observation.class);
+        configuration.addAnnotatedClass(Rollup.class);
+        configuration.addAnnotatedClass(WindRollup.class);
+        configuration.addAnnotatedClass(ImportCheckpoint.class);
+        configuration.addAnnotatedClass(IngestedFile.class);
+        configuration.setProperty("hibernate.dialect", dialect);
+        configuration.setProperty("hibernate.connection.url", url);
+        configuration.setProperty("hibernate.connection.username", "sa");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "validate");
+        configuration.buildSessionFactory().close();
+    }
+
+    /**
+     * Observations stored with binary identifiers are renumbered, below the blocks reserved afterwards
+     */
+    private static void assertPopulatedMigration(String url, String vendor) throws SQLException {
+        Flyway flyway = new Flyway();
+        flyway.setDataSource(url, "sa", "");
+        flyway.setLocations("classpath:db/migration/" + vendor);
+        flyway.setTargetAsString("3");
+        assertEquals(flyway.migrate(), 3);
+
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            for (int i = 1; i <= 3; i++) {
+                connection.createStatement().executeUpdate("INSERT INTO observations (id, weather_station_id, date)"
+                    + " VALUES (X'" + String.format("%032x", i) + "', " + STATION
+                    + ", TIMESTAMP '2005-01-0" + i + " 00:00:00')");
+            }
+        }
+
+        flyway.setTargetAsString(Integer.toString(Integer.MAX_VALUE));
+        assertEquals(flyway.migrate(), 2);
+
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             ResultSet ids = connection.createStatement().executeQuery("SELECT COUNT(DISTINCT id), MAX(id)"
+                 + " FROM observations")) {
+            assertTrue(ids.next());
+            assertEquals(ids.getInt(1), 3);
+            long max = ids.getLong(2);
+            try (ResultSet next = connection.createStatement().executeQuery("CALL NEXT VALUE FOR hibernate_sequence")) {
+                assertTrue(next.next());
+                assertTrue(next.getLong(1) > max);
+            }
+        }
+    }
+
+    private static Configuration configure(String url) {
+        Configuration configuration = new Configuration();
+        configuration.addAnnotatedClass(Observation.class);
+        configuration.addAnnotatedClass(IngestedFile.class);
+        configuration.addAnnotatedClass(Rollup.class);
+        configuration.addAnnotatedClass(WindRollup.class);
+        configuration.addAnnotatedClass(ImportCheckpoint.class);
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        configuration.setProperty("hibernate.connection.url", url);
+        configuration.setProperty("hibernate.jdbc.batch_size", "500");
+        return configuration;
+    }
+
+    @After
+    public void after() {
+        sessionFactory.close();
+    }
+}
@@ -0,0 +1,134 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
+
+/**
+ * Compares the generic csv parser with {@link Rp5RecordDecoder} over the bundled rp5 archives,
+ * and both with reloading the parsed archives from an {@link ObservationSnapshot}.
+ * Run with <code>java jworkspace.weather.Rp5DecoderBenchmark [iterations]</code>.
+ *
+ * @author Anton Troshin
+ */
+public final class Rp5DecoderBenchmark {
+
+    private static final String[] FILES = {
+        "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv",
+        "27612.01.02.2006.01.02.2010.1.0.0.en.unic.00000000.csv",
+        "27612.01.02.2010.01.02.2015.1.0.0.en.unic.00000000.csv",
+        "27612.01.02.2015.28.07.2019.1.0.0.en.unic.00000000.csv"
+    };
+
+    private static final int WARM_UP = 5;
+
+    private static final int ITERATIONS = 20;
+
+    private Rp5DecoderBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<CsvReader> readers = new ArrayList<>();
+        for (String file : FILES) {
+            if (AbstractCsvReader.class.getResource(file) != null) {
+                readers.add(new CsvReader(true, file));
+            }
+        }
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : ITERATIONS;
+
+        for (int i = 0; i < WARM_UP; i++) {
+            csvParser(readers);
+            decoder(readers);
+        }
+
+        Path snapshot = Files.createTempFile("rp5", ".snapshot");
+        ObservationStore store = new ObservationStore();
+        for (CsvReader reader : readers) {
+            reader.stream(store::add);
+        }
+        ObservationSnapshot.write(store.scan(CsvReader.VDNH_STATION_ID, Long.MIN_VALUE, Long.MAX_VALUE), snapshot);
+        for (int i = 0; i < WARM_UP; i++) {
+            snapshot(snapshot);
+        }
+
+        long rows = 0;
+        Stopwatch csv = Stopwatch.createUnstarted();
+        Stopwatch decoder = Stopwatch.createUnstarted();
+        Stopwatch reload = Stopwatch.createUnstarted();
+        for (int i = 0; i < iterations; i++) {
+            csv.start();
+            rows = csvParser(readers);
+            csv.stop();
+            decoder.start();
+            decoder(readers);
+            decoder.stop();
+            reload.start();
+            snapshot(snapshot);
+            reload.stop();
+        }
+        Files.delete(snapshot);
+
+        report("csv parser", rows * iterations, csv);
+        report("rp5 decoder", rows * iterations, decoder);
+        report("snapshot", rows * iterations, reload);
+    }
+
+    private static long csvParser(List<CsvReader> readers) {
+        long rows = 0;
+        for (CsvReader reader : readers) {
+            rows += reader.read().size();
+        }
+        return rows;
+    }
+
+    private static long decoder(List<CsvReader> readers) {
+        long rows = 0;
+        for (CsvReader reader : readers) {
+            rows += reader.stream(observation -> { });
+        }
+        return rows;
+    }
+
+    private static long snapshot(Path path) throws IOException {
+        ObservationSnapshot snapshot = ObservationSnapshot.open(path);
+        snapshot.toSlice(new StringDictionary());
+        return snapshot.size();
+    }
+
+    private static void report(String name, long rows, Stopwatch stopwatch) {
+        long millis = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1);
+        System.out.println(String.format("%-12s %d rows in %d ms, %d rows/s", name, rows, millis,
+            rows * TimeUnit.SECONDS.toMillis(1) / millis));
+    }
+}
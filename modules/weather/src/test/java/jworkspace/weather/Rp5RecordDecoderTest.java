@@ -0,0 +1,109 @@
+package jworkspace.weather;
+/* ----------------------------------------------------------------------------
+   Java Workspace
+   Copyright (C) 2019 Anton Troshin
+
+   This file is part of Java Workspace.
+
+   This application is free software; you can redistribute it and/or
+   modify it under the terms of the GNU Library General Public
+   License as published by the Free Software Foundation; either
+   version 2 of the License, or (at your option) any later version.
+
+   This application is distributed in the hope that it will be useful,
+   but WITHOUT ANY WARRANTY; without even the implied warranty of
+   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+   Library General Public License for more details.
+
+   You should have received a copy of the GNU Library General Public
+   License along with this application; if not, write to the Free
+   Software Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+
+   The author may be contacted at:
+
+   anton.troshin@gmail.com
+  ----------------------------------------------------------------------------
+*/
+
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * @author Anton Troshin
+ */
+public class Rp5RecordDecoderTest {
+
+    private static final String RP5_FILE = "27612.01.02.2005.01.02.2006.1.0.0.en.unic.00000000.csv";
+
+    @Test
+    public void testSameAsCsvParser() throws IOException {
+        CsvReader reader = new CsvReader(true, RP5_FILE);
+        List<Observation> expected = new ArrayList<>();
+        for (Observation observation : reader.read()) {
+            if (observation != null) {
+                expected.add(observation);
+            }
+        }
+
+        List<Observation> decoded = new ArrayList<>();
+        long records = reader.stream(decoded::add);
+
+        assertEquals(decoded.size(), expected.size());
+        assertEquals(records, expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(decoded.get(i), expected.get(i));
+        }
+    }
+
+    @Test
+    public void testFields() throws IOException {
+        String text = "\uFEFF# comment\r\n"
+            + "\"Local time\";\"T\"\r\n"
+            + "\r\n"
+            + "\"01.02.2006 21:00\";\"-15.4\";\"740\";\"Trace\";\"\";\"1e3\";\"Wind blowing from the NORTH\";"
+            + "\"say \"\"hi\"\"\";\"\";\"\";\"\";\"\";\"\";\"\";\"0.123456789\";\"+.5\"\r\n"
+            + "\"32.01.2006 21:00\";\"1\"\n"
+            + "02.02.2006 03:00;1.25;;;;;;a;b";
+        Rp5RecordDecoder decoder = new Rp5RecordDecoder(new StringReader(text), 1, true,
+            new Rp5DateParser(ZoneOffset.UTC));
+
+        Observation observation = decoder.next();
+        assertEquals(observation.getDate().getTime(), 1138827600000L);
+        assertEquals(observation.getT(), -15.4f);
+        assertEquals(observation.getPO(), 740f);
+        assertNull(observation.getP());
+        assertNull(observation.getPA());
+        assertNull(observation.getU());
+        assertEquals(observation.getDd(), WindDirection.NORTH);
+        assertEquals(observation.getFf(), "say \"hi\"");
+        assertEquals(observation.getTn(), Float.parseFloat("0.123456789"));
+        assertEquals(observation.getTx(), 0.5f);
+        assertNull(observation.getSss());
+
+        // the invalid date is skipped, unquoted fields are accepted
+        observation = decoder.next();
+        assertEquals(observation.getT(), 1.25f);
+        assertEquals(observation.getFf(), "a");
+        assertEquals(observation.getFf10(), "b");
+        assertNull(decoder.next());
+        assertEquals(decoder.getRecords(), 3);
+        assertEquals(decoder.getSkipped(), 1);
+    }
+
+    @Test
+    public void testWindDirections() {
+        for (WindDirection direction : WindDirection.values()) {
+            assertEquals(WindDirection.fromString(direction.getDescription().toUpperCase()), direction);
+        }
+        assertNull(WindDirection.fromString(""));
+    }
+}
@@ -0,0 +1,30 @@
+-- // Hourly, daily, monthly and yearly aggregates of observations, maintained during import
+
+CREATE SEQUENCE IF NOT EXISTS `hibernate_sequence`;
+
+CREATE TABLE `rollups` (
+     `id` bigint(20) NOT NULL,
+     `weather_station_id` int(11) NOT NULL,
+     `parameter` varchar(8) NOT NULL,
+     `period` varchar(8) NOT NULL,
+     `period_start` datetime NOT NULL,
+     `value_count` bigint(20) NOT NULL,
+     `min_value` double NOT NULL,
+     `max_value` double NOT NULL,
+     `sum_value` double NOT NULL,
+     PRIMARY KEY (`id`)
+);
+
+CREATE UNIQUE INDEX `rollups_station_period` ON `rollups` (`weather_station_id`, `parameter`, `period`, `period_start`);
+
+CREATE TABLE `wind_rollups` (
+     `id` bigint(20) NOT NULL,
+     `weather_station_id` int(11) NOT NULL,
+     `period` varchar(8) NOT NULL,
+     `period_start` datetime NOT NULL,
+     `direction` varchar(32) NOT NULL,
+     `value_count` bigint(20) NOT NULL,
+     PRIMARY KEY (`id`)
+);
+
+CREATE UNIQUE INDEX `wind_rollups_station_period` ON `wind_rollups` (`weather_station_id`, `period`, `period_start`, `direction`);
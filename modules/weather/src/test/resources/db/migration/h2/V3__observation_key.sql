@@ -0,0 +1,23 @@
+-- // An observation is identified by its station and local time, keep the first of any duplicates
+
+DELETE FROM `observations` WHERE EXISTS (
+     SELECT 1 FROM `observations` `d`
+     WHERE `d`.`weather_station_id` = `observations`.`weather_station_id`
+       AND `d`.`date` = `observations`.`date`
+       AND `d`.`id` < `observations`.`id`
+);
+
+CREATE UNIQUE INDEX `observations_station_date` ON `observations` (`weather_station_id`, `date`);
+
+CREATE TABLE `import_checkpoint` (
+     `id` bigint(20) NOT NULL,
+     `weather_station_id` int(11) NOT NULL,
+     `file_name` varchar(255) NOT NULL,
+     `last_date` datetime NOT NULL,
+     `file_size` bigint(20) NOT NULL,
+     `checksum` varchar(64) NOT NULL,
+     `updated` datetime NOT NULL,
+     PRIMARY KEY (`id`)
+);
+
+CREATE UNIQUE INDEX `import_checkpoint_station_file` ON `import_checkpoint` (`weather_station_id`, `file_name`);
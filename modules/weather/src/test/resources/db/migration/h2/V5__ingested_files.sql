@@ -0,0 +1,14 @@
+-- // Files already ingested, identified by the checksum of their content
+
+CREATE TABLE `ingested_files` (
+     `id` bigint(20) NOT NULL,
+     `checksum` varchar(64) NOT NULL,
+     `file_name` varchar(255) DEFAULT NULL,
+     `weather_station_id` int(11) DEFAULT NULL,
+     `record_count` bigint(20) DEFAULT NULL,
+     `row_count` bigint(20) DEFAULT NULL,
+     `ingested` datetime DEFAULT NULL,
+     PRIMARY KEY (`id`)
+);
+
+CREATE UNIQUE INDEX `ingested_files_checksum` ON `ingested_files` (`checksum`);
@@ -0,0 +1,37 @@
+-- // "T";"Po";"P";"Pa";"U";"DD";"Ff";"ff10";"ff3";"N";"WW";"W1";"W2";"Tn";"Tx";"Cl";"Nh";
+-- // "H";"Cm";"Ch";"VV";"Td";"RRR";"tR";"E";"Tg";"E'";"sss"
+
+CREATE CACHED TABLE observations (
+     id binary(16) NOT NULL,
+     weather_station_id integer NOT NULL,
+     date timestamp NOT NULL,
+     t float DEFAULT NULL,
+     po float DEFAULT NULL,
+     p float DEFAULT NULL,
+     pa float DEFAULT NULL,
+     u float DEFAULT NULL,
+     dd varchar(255) DEFAULT NULL,
+     ff varchar(255) DEFAULT NULL,
+     ff10 varchar(255) DEFAULT NULL,
+     ff3 varchar(255) DEFAULT NULL,
+     n varchar(255) DEFAULT NULL,
+     ww varchar(255) DEFAULT NULL,
+     w1 varchar(255) DEFAULT NULL,
+     w2 varchar(255) DEFAULT NULL,
+     tn float DEFAULT NULL,
+     tx float DEFAULT NULL,
+     cl varchar(255) DEFAULT NULL,
+     nh varchar(255) DEFAULT NULL,
+     h varchar(255) DEFAULT NULL,
+     cm varchar(255) DEFAULT NULL,
+     ch varchar(255) DEFAULT NULL,
+     vv float DEFAULT NULL,
+     td float DEFAULT NULL,
+     rrr float DEFAULT NULL,
+     tr float DEFAULT NULL,
+     e varchar(255) DEFAULT NULL,
+     tg float DEFAULT NULL,
+     eApos varchar(255) DEFAULT NULL,
+     sss float DEFAULT NULL,
+     PRIMARY KEY (id)
+);
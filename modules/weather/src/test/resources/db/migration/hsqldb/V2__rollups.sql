@@ -0,0 +1,31 @@
+-- // Hourly, daily, monthly and yearly aggregates of observations, maintained during import
+-- // PERIOD is a reserved word in HSQLDB, so the column is quoted in upper case to match unquoted references
+
+CREATE SEQUENCE IF NOT EXISTS hibernate_sequence AS bigint START WITH 1;
+
+CREATE CACHED TABLE rollups (
+     id bigint NOT NULL,
+     weather_station_id integer NOT NULL,
+     parameter varchar(8) NOT NULL,
+     "PERIOD" varchar(8) NOT NULL,
+     period_start timestamp NOT NULL,
+     value_count bigint NOT NULL,
+     min_value double NOT NULL,
+     max_value double NOT NULL,
+     sum_value double NOT NULL,
+     PRIMARY KEY (id)
+);
+
+CREATE UNIQUE INDEX rollups_station_period ON rollups (weather_station_id, parameter, "PERIOD", period_start);
+
+CREATE CACHED TABLE wind_rollups (
+     id bigint NOT NULL,
+     weather_station_id integer NOT NULL,
+     "PERIOD" varchar(8) NOT NULL,
+     period_start timestamp NOT NULL,
+     direction varchar(32) NOT NULL,
+     value_count bigint NOT NULL,
+     PRIMARY KEY (id)
+);
+
+CREATE UNIQUE INDEX wind_rollups_station_period ON wind_rollups (weather_station_id, "PERIOD", period_start, direction);
@@ -0,0 +1,20 @@
+-- // Identifiers are reserved in blocks of 50 (BaseEntity.ID_ALLOCATION_SIZE) for batched inserts,
+-- // observations share the numeric sequence with all other entities.
+-- // Stored observations are numbered from the sequence before its increment is raised, so the
+-- // blocks handed out afterwards start above all of them.
+
+ALTER TABLE observations ADD COLUMN numeric_id bigint;
+
+UPDATE observations SET numeric_id = NEXT VALUE FOR hibernate_sequence;
+
+ALTER TABLE observations DROP PRIMARY KEY;
+
+ALTER TABLE observations DROP COLUMN id;
+
+ALTER TABLE observations ALTER COLUMN numeric_id RENAME TO id;
+
+ALTER TABLE observations ALTER COLUMN id SET NOT NULL;
+
+ALTER TABLE observations ADD PRIMARY KEY (id);
+
+ALTER SEQUENCE hibernate_sequence INCREMENT BY 50;
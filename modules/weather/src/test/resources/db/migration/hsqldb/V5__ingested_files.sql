@@ -0,0 +1,14 @@
+-- // Files already ingested, identified by the checksum of their content
+
+CREATE CACHED TABLE ingested_files (
+     id bigint NOT NULL,
+     checksum varchar(64) NOT NULL,
+     file_name varchar(255) DEFAULT NULL,
+     weather_station_id integer DEFAULT NULL,
+     record_count bigint DEFAULT NULL,
+     row_count bigint DEFAULT NULL,
+     ingested timestamp DEFAULT NULL,
+     PRIMARY KEY (id)
+);
+
+CREATE UNIQUE INDEX ingested_files_checksum ON ingested_files (checksum);